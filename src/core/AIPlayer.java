@@ -2,18 +2,16 @@ package core;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.PriorityQueue;
-import java.util.Set;
-
-import com.google.common.collect.Collections2;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 public class AIPlayer extends Player {
 	/*
@@ -28,498 +26,1147 @@ public class AIPlayer extends Player {
 	 * (polymorphism) to enable the AIPlayer to change direction when required.
 	 */
 
-	private class CheckpointVertexPair {
-		/*
-		 * This inner class consists of two checkpoint RGVertex objects, to be
-		 * used as a key for the shortestPathsBetweenCheckpointVertices hash
-		 * table in the AIPlayer class.
-		 */
-
-		/*
-		 * The two checkpoint RGVertex objects. This is aggregation as the
-		 * CheckpointVertexPair class has a HAS-A relationship with the RGVertex
-		 * class but the checkpointVertex1 and checkpointVertex2 objects will
-		 * not be destroyed if the CheckpointVertexPair object is destroyed.
-		 */
-		private final RGVertex checkpointVertex1;
-		private final RGVertex checkpointVertex2;
-
-		/*
-		 * Constructor.
-		 */
-		public CheckpointVertexPair(RGVertex checkpointVertex1,
-				RGVertex checkpointVertex2) {
-			this.checkpointVertex1 = checkpointVertex1;
-			this.checkpointVertex2 = checkpointVertex2;
-		}
+	/*
+	 * The planning data of the maze in which the AI player will be (see the
+	 * MazePlan class), which may be shared with other AIPlayer objects in the
+	 * same maze. This is aggregation as the AIPlayer class has a HAS-A
+	 * relationship with the MazePlan class but the MazePlan object will not be
+	 * destroyed if the AIPlayer object is destroyed.
+	 */
+	private final MazePlan mazePlan;
 
-		/*
-		 * Generates the hash code for the CheckpointVertexPair object. Always
-		 * gives the same hash code given a CheckpointVertexPair object with the
-		 * same two RGVertex objects.
-		 */
-		@Override
-		public int hashCode() {
+	/*
+	 * The reduced graph of mazePlan.
+	 */
+	private final ReducedGraph reducedGraph;
 
-			/*
-			 * Multiplication is a commutative operation, the order of the Cell
-			 * objects does not matter, so given the same two Cell objects, the
-			 * hash code will always be the same, regardless of the order.
-			 */
-			return checkpointVertex1.hashCode() * checkpointVertex2.hashCode();
-		}
+	/*
+	 * All the checkpoint RGVertex objects in the reduced graph. The index of a
+	 * checkpoint RGVertex object in this list is its checkpoint index (see the
+	 * RGVertex class), so the checkpoints are numbered 0 to k-1 and the route
+	 * planning methods below work purely on these int indices. This is
+	 * aggregation as the AIPlayer class has a HAS-A relationship with the
+	 * RGVertex class but the RGVertex objects in the checkpointVertices list
+	 * will not be destroyed if the AIPlayer object is destroyed.
+	 */
+	private final List<RGVertex> checkpointVertices;
 
-		/*
-		 * Checks if two CheckpointVertexPair objects are equal (i.e. if they
-		 * both have the same RGVertex objects).
-		 */
-		@Override
-		public boolean equals(Object o) {
-			boolean equals = false;
-			if (o instanceof CheckpointVertexPair) {
-				CheckpointVertexPair otherPair = (CheckpointVertexPair) o;
-				equals = (otherPair.checkpointVertex1 == checkpointVertex1 && otherPair.checkpointVertex2 == checkpointVertex2)
-						|| (otherPair.checkpointVertex1 == checkpointVertex2 && otherPair.checkpointVertex2 == checkpointVertex1);
-			}
-			return equals;
-		}
+	/*
+	 * Used instead of the shortest paths in mazePlan when the maze is too
+	 * big for mazePlan to have a distance matrix (see the MazePlan and
+	 * SpatialRoutePlanner classes), and null otherwise. Unlike a MazePlan
+	 * object, it finds and caches shortest paths as they are asked for, so
+	 * each AIPlayer object has its own. This is composition as
+	 * the AIPlayer class has a HAS-A relationship with the
+	 * SpatialRoutePlanner class and the SpatialRoutePlanner object will be
+	 * destroyed if the AIPlayer object is destroyed.
+	 */
+	private final SpatialRoutePlanner spatialRoutePlanner;
 
-		/*
-		 * Getters.
-		 */
+	/*
+	 * The route that the AI is currently following (see the RoutePlan class).
+	 * Its stepRuns array encodes the path that the AI will follow through the
+	 * maze as a sequence of directions. This is composition as
+	 * the AIPlayer class has a HAS-A relationship with the RoutePlan class and
+	 * the RoutePlan object will be destroyed if the AIPlayer object is
+	 * destroyed. It is only ever replaced by the update method, on the game
+	 * loop thread, and it is volatile so that the route planner thread always
+	 * sees the latest one.
+	 */
+	private volatile RoutePlan currentPlan;
 
-		public RGVertex getCheckpointVertex1() {
-			return checkpointVertex1;
-		}
+	/*
+	 * The number of steps (moves from one Cell object to the next) of the
+	 * route of currentPlan that this AIPlayer object has taken. It is volatile
+	 * so that the route planner thread always sees how far along the route the
+	 * AI is.
+	 */
+	private volatile int currentStepIndex;
 
-		public RGVertex getCheckpointVertex2() {
-			return checkpointVertex2;
-		}
-	}
+	/*
+	 * The cursor that the update method uses to follow the stepRuns array of
+	 * currentPlan without decoding it: the index of the run that the current
+	 * step is in and how many steps of that run have been taken. Only the
+	 * update method (on the game loop thread) uses these.
+	 */
+	private int currentRunIndex;
+	private int currentRunStepsTaken;
 
 	/*
-	 * The reduced graph representation of the cell-based maze in which the AI
-	 * player will be. This is aggregation as the AIPlayer class has a HAS-A
-	 * relationship with the ReducedGraph class but the ReducedGraph object will
-	 * not be destroyed if the AIPlayer object is destroyed.
+	 * The Cell object that the AI has reached on its route, and the Cell
+	 * object that the current step moves it into, which is found once per step
+	 * (rather than every game cycle) and is null until then. This is
+	 * aggregation as the AIPlayer class has a HAS-A relationship with the Cell
+	 * class but the Cell objects will not be destroyed if the AIPlayer object
+	 * is destroyed.
 	 */
-	private final ReducedGraph reducedGraph;
+	private Cell currentRouteCell;
+	private Cell nextRouteCell;
 
 	/*
-	 * The RGPath objects (values) representing the shortest paths (consisting
-	 * of RGVertex objects) between every pair of RGVertex objects (representing
-	 * all the pairs of checkpoint Cell objects in the maze), which are found in
-	 * the CheckpointVertexPair objects (keys). This is effectively an adjacency
-	 * matrix for a weighted, undirected, complete graph (the checkpoint graph),
-	 * where the vertices are all of the checkpoint RGVertex objects in the
-	 * reduced graph and the edges are the RGPath objects representing the
-	 * shortest paths between them; the weight of an edge (an RGPath object) is
-	 * the total weight of all of the RGEdges in the path of RGVertex objects
-	 * represented by the RGPath object. The Map interface is used rather than a
-	 * concrete class such as HashMap because it separates the actual
-	 * implementation of the Map interface from this class's use of the
-	 * interface's methods, allowing the implementation to change (say, from
-	 * HashMap to Hashtable) in the future. This is composition as the AIPlayer
-	 * class has a HAS-A relationship with the CheckpointVertexPair class and
-	 * the CheckpointVertexPair objects in the
-	 * shortestPathsBetweenCheckpointVertices hash table will be destroyed if
-	 * the AIPlayer object is destroyed. This is composition as the AIPlayer
-	 * class has a HAS-A relationship with the RGPath class and the RGPath
-	 * objects in the shortestPathsBetweenCheckpointVertices hash table will be
-	 * destroyed if the AIPlayer object is destroyed.
+	 * The Direction enum constants indexed by their ordinals, which is how
+	 * they are stored in the stepRuns array of a RoutePlan object. The values
+	 * method creates a new array every time it is called, so it is only
+	 * called once.
 	 */
-	private final Map<CheckpointVertexPair, RGPath> shortestPathsBetweenCheckpointVertices;
+	private static final Direction[] DIRECTIONS = Direction.values();
 
 	/*
-	 * The ordered list of Cell objects representing the path that the AI will
-	 * follow through the maze. This is aggregation as the AIPlayer class has a
-	 * HAS-A relationship with the Cell class but the Cell objects in the
-	 * cellRoute list will not be destroyed if the AIPlayer object is destroyed.
+	 * A better route found by the route planner thread that has not been
+	 * switched to yet, or null if there is none. The planner thread puts it
+	 * here and the update method takes it out, so neither thread ever has to
+	 * wait for the other.
 	 */
-	private final List<Cell> cellRoute;
+	private final AtomicReference<RouteSwap> pendingRouteSwap = new AtomicReference<RouteSwap>();
 
 	/*
-	 * The index in the cellRoute list of the current Cell object where this
-	 * AIPlayer object is.
+	 * Completed with the final route of the AI once no more improvements will
+	 * be made to it, which is at the end of the constructor, or once the route
+	 * planner thread stops if anytimePlanning is true (see the
+	 * getFinishedRoute method).
 	 */
-	private int currentCellIndex;
+	private final CompletableFuture<RoutePlan> finishedPlan = new CompletableFuture<RoutePlan>();
 
 	/*
 	 * Constructor. startCell is the Cell object where the AIPlayer object will
 	 * start and endCell is the Cell object where the AIPlayer will need to end
-	 * up after visiting all the checkpoint Cell objects.
+	 * up after visiting all the checkpoint Cell objects. The route is fully
+	 * planned before the constructor returns.
 	 */
 	public AIPlayer(Cell startCell, Cell endCell, double baseVel,
 			double toleranceConstant, Color color, String name,
 			double playerProportionOfCellDimensions, int numCheckpointsToReach,
 			ReducedGraph reducedGraph) {
+		this(startCell, endCell, baseVel, toleranceConstant, color, name,
+				playerProportionOfCellDimensions, numCheckpointsToReach,
+				new MazePlan(reducedGraph), false);
+	}
+
+	/*
+	 * Constructor for an AIPlayer object that does not share its MazePlan
+	 * object with any other AIPlayer object (see below).
+	 */
+	public AIPlayer(Cell startCell, Cell endCell, double baseVel,
+			double toleranceConstant, Color color, String name,
+			double playerProportionOfCellDimensions, int numCheckpointsToReach,
+			ReducedGraph reducedGraph, boolean anytimePlanning) {
+		this(startCell, endCell, baseVel, toleranceConstant, color, name,
+				playerProportionOfCellDimensions, numCheckpointsToReach,
+				new MazePlan(reducedGraph), anytimePlanning);
+	}
+
+	/*
+	 * Constructor for an AIPlayer object that does not report how far its
+	 * planning has got (see below).
+	 */
+	public AIPlayer(Cell startCell, Cell endCell, double baseVel,
+			double toleranceConstant, Color color, String name,
+			double playerProportionOfCellDimensions, int numCheckpointsToReach,
+			MazePlan mazePlan, boolean anytimePlanning) {
+		this(startCell, endCell, baseVel, toleranceConstant, color, name,
+				playerProportionOfCellDimensions, numCheckpointsToReach,
+				mazePlan, anytimePlanning, new PlanningProgress());
+	}
+
+	/*
+	 * Constructor. If anytimePlanning is true, the AIPlayer object starts on
+	 * the greedy route straight away (rather than waiting for it to be
+	 * improved), and a background thread keeps improving the part of the
+	 * route that the AI has not reached yet for
+	 * GameConstants.AI_PLANNING_TIME_BUDGET_MILLIS milliseconds, switching the
+	 * AI onto each better route as it is found (see the
+	 * improveRouteInBackground method). mazePlan can be shared by any number
+	 * of AIPlayer objects in the same maze, so the shortest paths between the
+	 * checkpoints are only found once however many AI players there are. The
+	 * stage that the planning is at is reported to progress, so that the
+	 * constructor can be run on another thread while the user is shown how
+	 * far it has got.
+	 */
+	public AIPlayer(Cell startCell, Cell endCell, double baseVel,
+			double toleranceConstant, Color color, String name,
+			double playerProportionOfCellDimensions, int numCheckpointsToReach,
+			MazePlan mazePlan, boolean anytimePlanning,
+			PlanningProgress progress) {
 		/*
 		 * The superclass's constructor must be called first.
 		 */
 		super(startCell, endCell, baseVel, toleranceConstant, color, name,
 				playerProportionOfCellDimensions, numCheckpointsToReach);
-		this.reducedGraph = reducedGraph;
+		this.mazePlan = mazePlan;
+		reducedGraph = mazePlan.getReducedGraph();
+		checkpointVertices = mazePlan.getCheckpointVertices();
+		int startCheckpointIndex = reducedGraph.getVertex(startCell)
+				.getCheckpointIndex();
+		int endCheckpointIndex = reducedGraph.getVertex(endCell)
+				.getCheckpointIndex();
+
+		/*
+		 * The AIPlayer starts at the start of its route (startCell), before
+		 * the first step.
+		 */
+		currentStepIndex = 0;
+		currentRunIndex = 0;
+		currentRunStepsTaken = 0;
+		currentRouteCell = startCell;
+		nextRouteCell = null;
+
+		/*
+		 * With too many checkpoints or too big a maze, the shortest paths
+		 * between every pair of checkpoints cannot be found in a reasonable
+		 * time, so the initial route is found by a SpatialRoutePlanner object
+		 * instead of greedily, and only the shortest paths between nearby
+		 * checkpoints are found.
+		 */
+		progress.setStage(PlanningStage.PLANNING_ROUTE);
+		int[] initialRoute;
+		if (!mazePlan.hasDistanceMatrix()) {
+			spatialRoutePlanner = new SpatialRoutePlanner(reducedGraph);
+			initialRoute = spatialRoutePlanner.generateCheckpointVertexRoute(
+					startCheckpointIndex, endCheckpointIndex);
+		} else {
+			spatialRoutePlanner = null;
+			initialRoute = generateGreedyCheckpointVertexRoute(
+					startCheckpointIndex, endCheckpointIndex);
+		}
+		if (anytimePlanning) {
+			progress.setStage(PlanningStage.EXPANDING_ROUTE);
+			currentPlan = generateRoutePlan(initialRoute);
 
-		/*
-		 * The shortestPathsBetweenCheckpointVertices table should be made
-		 * before generating the final route because these shortest paths are
-		 * required for the latter part.
-		 */
-		shortestPathsBetweenCheckpointVertices = initShortestPathsBetweenCheckpointVertices();
-		cellRoute = generateCellRoute(reducedGraph.getVertex(startCell),
-				reducedGraph.getVertex(endCell));
+			/*
+			 * In a maze with too many checkpoints for a distance matrix, the
+			 * neighbour lists are created here, before the planner thread
+			 * starts, as the SpatialRoutePlanner class is not thread-safe
+			 * (only the planner thread uses it from then on). The thread is a
+			 * daemon thread so that it never stops the program from exiting.
+			 */
+			getCheckpointNeighbourLists();
+			final long deadline = System.nanoTime()
+					+ GameConstants.AI_PLANNING_TIME_BUDGET_MILLIS * 1000000L;
+			Thread plannerThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					RoutePlan plan;
+					try {
+						improveRouteInBackground(deadline, progress);
+					} finally {
+						/*
+						 * The latest route is the one waiting to be switched
+						 * to, if there is one.
+						 */
+						RouteSwap swap = pendingRouteSwap.get();
+						plan = swap == null ? currentPlan : swap.newPlan;
+						finishedPlan.complete(plan);
+					}
 
-		/*
-		 * The AIPlayer starts at the first Cell object in the cellRoute list
-		 * (which should be startCell).
-		 */
-		currentCellIndex = 0;
+					/*
+					 * The optimality gap can only be found with a distance
+					 * matrix (see the calculateCheckpointVertexRouteLowerBound
+					 * method).
+					 */
+					if (spatialRoutePlanner == null
+							&& !progress.isCancelled()) {
+						progress.setRouteOptimalityGap(calculateRouteOptimalityGap(plan.checkpointRoute));
+					}
+				}
+			}, "AI route planner");
+			plannerThread.setDaemon(true);
+			plannerThread.start();
+		} else {
+			progress.setStage(PlanningStage.IMPROVING_ROUTE);
+			int[] improvedRoute = new RouteImprover(initialRoute).improve();
+			progress.setStage(PlanningStage.EXPANDING_ROUTE);
+			currentPlan = generateRoutePlan(improvedRoute);
+			finishedPlan.complete(currentPlan);
+		}
+		progress.setStage(PlanningStage.READY);
+	}
+
+	/*
+	 * Constructor for an AIPlayer object that follows a route returned by the
+	 * getFinishedRoute method of an earlier AIPlayer object with the same
+	 * start and end in the same maze (see the PlanCache class), so no
+	 * planning is done at all. The AIPlayer object does not have the reduced
+	 * graph of the maze, so the route cannot be improved and the test methods
+	 * below cannot be used.
+	 */
+	public AIPlayer(Cell startCell, Cell endCell, double baseVel,
+			double toleranceConstant, Color color, String name,
+			double playerProportionOfCellDimensions, int numCheckpointsToReach,
+			byte[] finishedRoute) {
+		super(startCell, endCell, baseVel, toleranceConstant, color, name,
+				playerProportionOfCellDimensions, numCheckpointsToReach);
+		mazePlan = null;
+		reducedGraph = null;
+		checkpointVertices = null;
+		spatialRoutePlanner = null;
+		currentStepIndex = 0;
+		currentRunIndex = 0;
+		currentRunStepsTaken = 0;
+		currentRouteCell = startCell;
+		nextRouteCell = null;
+		currentPlan = RoutePlan.fromBytes(finishedRoute);
+		finishedPlan.complete(currentPlan);
+	}
+
+	/*
+	 * Returns a CompletableFuture object that is completed with the final
+	 * route of the AI (encoded as bytes, which the constructor above can
+	 * decode) once no more improvements will be made to it. The route starts
+	 * from the start of the maze, however far the AI has got along it.
+	 */
+	public CompletableFuture<byte[]> getFinishedRoute() {
+		return finishedPlan.thenApply(new Function<RoutePlan, byte[]>() {
+			@Override
+			public byte[] apply(RoutePlan plan) {
+				return plan.toBytes();
+			}
+		});
 	}
 
 	/*
-	 * Computes the RGPath objects representing the shortest paths (consisting
-	 * of RGVertex objects) between every pair of RGVertex objects in the
-	 * reduced graph that represent checkpoint Cell objects. Puts these RGPath
-	 * objects in a hash table as values with the key being the
-	 * checkpointVertexPair object consisting of the two checkpoint RGVertex
-	 * objects at either end of the RGPath object. Returns this hash table.
+	 * This class is used to represent a route that the AI can follow. It is
+	 * immutable, so it can be created on the route planner thread and then
+	 * handed to the game loop thread without any locking.
 	 */
-	private Map<CheckpointVertexPair, RGPath> initShortestPathsBetweenCheckpointVertices() {
+	private static class RoutePlan {
+
 		/*
-		 * All the traversable RGVertex objects in the reduced graph.
+		 * The ordered checkpoint indices in the order in which the AI visits
+		 * them.
 		 */
-		Collection<RGVertex> vertices = reducedGraph.getVertices();
+		private final int[] checkpointRoute;
 
 		/*
-		 * All the checkpoint RGVertex objects in the reduced graph between
-		 * which shortest paths need to be found
+		 * checkpointStepIndices[i] is the number of steps that the AI has
+		 * taken when it reaches the checkpoint checkpointRoute[i].
 		 */
-		List<RGVertex> checkpointVertices = reducedGraph
-				.getCheckpointVertices();
+		private final int[] checkpointStepIndices;
 
 		/*
-		 * This hash table is to store the RGPath objects (values) representing
-		 * the shortest paths (consisting of RGVertex objects) between every
-		 * pair of RGVertex objects (representing all the pairs of checkpoint
-		 * Cell objects in the maze), which are found in the
-		 * CheckpointVertexPair objects (keys).
+		 * The path that the AI will follow through the maze, run-length
+		 * encoded. Each step moves the AI into the neighbouring Cell object in
+		 * some direction, and each run is a sequence of up to 255 steps in the
+		 * same direction: stepRuns[2r] is the ordinal of the Direction enum of
+		 * run r and stepRuns[2r + 1] (read as an unsigned byte) is how many
+		 * steps it has. Corridors in a maze are often straight, so this takes
+		 * far less memory than a list with a reference to every Cell object
+		 * on the path, which can be millions long in a large maze.
 		 */
-		Map<CheckpointVertexPair, RGPath> shortestPathsBetweenCheckpointVertices = new HashMap<CheckpointVertexPair, RGPath>();
+		private final byte[] stepRuns;
 
 		/*
-		 * This set is to store the checkpoint RGVertex objects which have acted
-		 * as source vertices for Dijkstras algorithm
+		 * The total number of steps in stepRuns.
 		 */
-		Set<RGVertex> doneCheckpointVertices = new HashSet<RGVertex>();
+		private final int numSteps;
 
 		/*
-		 * Dijkstras algorithm is carried out from each checkpoint RGVertex
-		 * object (called sourceVertex here) in checkpointVertices
+		 * Constructor. The path is taken from stepRunEncoder.
 		 */
-		for (RGVertex sourceVertex : checkpointVertices) {
+		private RoutePlan(int[] checkpointRoute, int[] checkpointStepIndices,
+				StepRunEncoder stepRunEncoder) {
+			this(checkpointRoute, checkpointStepIndices, stepRunEncoder
+					.toStepRuns(), stepRunEncoder.numSteps);
+		}
 
-			/*
-			 * This hash table is to store the weight of the of the minimum
-			 * weight path found, at any given time, from sourceVertex to each
-			 * RGVertex object in reducedGraph.
-			 */
-			Map<RGVertex, Double> weightsFromSourceMap = new HashMap<RGVertex, Double>();
+		private RoutePlan(int[] checkpointRoute, int[] checkpointStepIndices,
+				byte[] stepRuns, int numSteps) {
+			this.checkpointRoute = checkpointRoute;
+			this.checkpointStepIndices = checkpointStepIndices;
+			this.stepRuns = stepRuns;
+			this.numSteps = numSteps;
+		}
 
-			/*
-			 * This hash table is to store the RGVertex that is just before the
-			 * key RGVertex object in the minimum weight path found, at any
-			 * given time, from sourceVertex to each RGVertex object in
-			 * reducedGraph.
-			 */
-			Map<RGVertex, RGVertex> previousVerticesMap = new HashMap<RGVertex, RGVertex>();
+		/*
+		 * Encodes the RoutePlan object as bytes: the number of checkpoints,
+		 * checkpointRoute, checkpointStepIndices, numSteps, the length of
+		 * stepRuns and then stepRuns itself.
+		 */
+		private byte[] toBytes() {
+			ByteBuffer buffer = ByteBuffer.allocate(4
+					* (3 + 2 * checkpointRoute.length) + stepRuns.length);
+			buffer.putInt(checkpointRoute.length);
+			for (int checkpointIndex : checkpointRoute) {
+				buffer.putInt(checkpointIndex);
+			}
+			for (int stepIndex : checkpointStepIndices) {
+				buffer.putInt(stepIndex);
+			}
+			buffer.putInt(numSteps);
+			buffer.putInt(stepRuns.length);
+			buffer.put(stepRuns);
+			return buffer.array();
+		}
 
-			/*
-			 * FibonacciHeap is a class (source:
-			 * http://www.keithschwarz.com/interesting
-			 * /code/fibonacci-heap/FibonacciHeap.java.html) implementing a
-			 * Fibonacci heap, which is a data structure that can be used as a
-			 * minimum priority queue. This queue is to store the RGVertex
-			 * objects for which shortest paths from sourceVertex have not been
-			 * found yet. The priority of RGVertex objects in the queue should
-			 * represent the value given by weightsFromSourceMap.get for the
-			 * RGVertex object.
-			 */
-			FibonacciHeap<RGVertex> vertexQueue = new FibonacciHeap<RGVertex>();
+		/*
+		 * Decodes a RoutePlan object encoded by the toBytes method.
+		 */
+		private static RoutePlan fromBytes(byte[] bytes) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			int[] checkpointRoute = new int[buffer.getInt()];
+			int[] checkpointStepIndices = new int[checkpointRoute.length];
+			for (int i = 0; i < checkpointRoute.length; i++) {
+				checkpointRoute[i] = buffer.getInt();
+			}
+			for (int i = 0; i < checkpointStepIndices.length; i++) {
+				checkpointStepIndices[i] = buffer.getInt();
+			}
+			int numSteps = buffer.getInt();
+			byte[] stepRuns = new byte[buffer.getInt()];
+			buffer.get(stepRuns);
+			return new RoutePlan(checkpointRoute, checkpointStepIndices,
+					stepRuns, numSteps);
+		}
+	}
 
-			/*
-			 * The particular implementation of a Fibonacci heap stores RGVertex
-			 * objects with their priorities using a class called Entry. Thus,
-			 * in order for us to access the corresponding entry for a RGVertex
-			 * object, we need a dictionary data structure to store the RGVertex
-			 * objects as keys and the Entry objects as values. A hash table is
-			 * used because it has constant look-up time complexity, which makes
-			 * it an efficient data structure to use for this purpose.
-			 */
-			Map<RGVertex, FibonacciHeap.Entry<RGVertex>> queueEntriesMap = new HashMap<RGVertex, FibonacciHeap.Entry<RGVertex>>();
+	/*
+	 * This class is used to build up the stepRuns array of a RoutePlan object
+	 * one Cell object at a time.
+	 */
+	private static class StepRunEncoder {
+		private byte[] stepRuns;
+		private int length;
+		private int numSteps;
 
-			/*
-			 * This set is to store the RGVertex objects that have been visited.
-			 */
-			Set<RGVertex> visitedVertices = new HashSet<RGVertex>();
+		/*
+		 * The last Cell object added. This is aggregation as the
+		 * StepRunEncoder class has a HAS-A relationship with the Cell class but
+		 * the Cell object will not be destroyed if the StepRunEncoder object
+		 * is destroyed.
+		 */
+		private Cell lastCell;
 
-			/*
-			 * This integer counts how many checkpoint RGVertex objects in
-			 * reducedGraph either do not need shortest paths from sourceVertex
-			 * calculated again (as it would have been done in a previous
-			 * iteration) or have been visited in this Dijkstras algorithm.
-			 */
-			int numVisitedCheckpointVertices = doneCheckpointVertices.size();
+		/*
+		 * Constructor for a path that starts at startCell.
+		 */
+		private StepRunEncoder(Cell startCell) {
+			stepRuns = new byte[64];
+			lastCell = startCell;
+		}
 
-			/*
-			 * Populates weightsFromSourceMap and vertexQueue.
-			 */
-			for (RGVertex vertex : vertices) {
+		/*
+		 * Constructor for a path that starts with the first numPrefixSteps
+		 * steps of the path of plan, which finish at the Cell object
+		 * prefixEndCell. The runs are copied without going through the Cell
+		 * objects, and the run that the prefix finishes part of the way
+		 * through is cut short.
+		 */
+		private StepRunEncoder(RoutePlan plan, int numPrefixSteps,
+				Cell prefixEndCell) {
+			stepRuns = new byte[Math.max(64, plan.stepRuns.length)];
+			lastCell = prefixEndCell;
+			for (int run = 0; numSteps < numPrefixSteps; run++) {
+				addSteps(plan.stepRuns[2 * run], Math.min(
+						plan.stepRuns[2 * run + 1] & 0xFF, numPrefixSteps
+								- numSteps));
+			}
+		}
 
+		/*
+		 * Adds the step from the last Cell object added to cell, unless they
+		 * are the same Cell object (which happens where two RGEdge objects of
+		 * a path meet).
+		 */
+		private void addCell(Cell cell) {
+			if (cell == lastCell) {
+				return;
+			}
+			Direction direction = lastCell.getDirectionToNeighbouringCell(cell);
+			if (direction == null) {
 				/*
-				 * No path has been found yet from each RGVertex object to
-				 * sourceVertex, so weights should not exist, but rather than
-				 * using null references for the weights, we can simply use a
-				 * very large weight (e.g. 1 billion) that will be greater than
-				 * the weight of any possible path in reducedGraph. This means
-				 * that when checking if alternativeWeight is less than this
-				 * weight later on in the algorithm, we dont need to check
-				 * whether the weight is null. Instead, any value for
-				 * alternativeWeight would be less than this very large value
-				 * and so the weight stored in the entry in weightFromSourceMap
-				 * hash table would be updated to alternativeWeight.
+				 * Consecutive Cell objects on a path should always neighbour
+				 * each other. If they do not, there is a logical error
+				 * elsewhere in the program, so a RuntimeException is thrown to
+				 * make debugging and tracing the error easier.
 				 */
-				weightsFromSourceMap.put(vertex, 1000000000d);
-				FibonacciHeap.Entry<RGVertex> entry = vertexQueue.enqueue(
-						vertex, 1000000000d);
-				queueEntriesMap.put(vertex, entry);
+				throw new RuntimeException();
 			}
+			addSteps((byte) direction.ordinal(), 1);
+			lastCell = cell;
+		}
 
-			/*
-			 * However, the minimum path from sourceVertex to sourceVertex is
-			 * clearly 0. Rather than checking every iteration whether the
-			 * RGVertex object is sourceVertex in the loop above, we just change
-			 * the weight value to 0 here, as it uses fewer operations, making
-			 * the algorithm slightly more efficient
-			 */
-			weightsFromSourceMap.put(sourceVertex, 0.0);
-			vertexQueue.decreaseKey(queueEntriesMap.get(sourceVertex), 0.0);
+		/*
+		 * Adds numNewSteps steps in the direction with the given ordinal,
+		 * extending the last run if it is in the same direction and not full.
+		 */
+		private void addSteps(byte directionOrdinal, int numNewSteps) {
+			while (numNewSteps > 0) {
+				if (length > 0 && stepRuns[length - 2] == directionOrdinal
+						&& (stepRuns[length - 1] & 0xFF) < 255) {
+					int numAddedSteps = Math.min(numNewSteps,
+							255 - (stepRuns[length - 1] & 0xFF));
+					stepRuns[length - 1] += numAddedSteps;
+					numSteps += numAddedSteps;
+					numNewSteps -= numAddedSteps;
+				} else {
+					if (length == stepRuns.length) {
+						stepRuns = Arrays.copyOf(stepRuns, length * 2);
+					}
+					stepRuns[length++] = directionOrdinal;
+					stepRuns[length++] = 0;
+				}
+			}
+		}
 
-			/*
-			 * This is the main loop of Dijkstras algorithm. Once vertexQueue
-			 * is empty or once numVisitedCheckpointVertices = number of
-			 * RGVertex objects in the CheckpointVertices set, shortest paths
-			 * will have been found from sourceVertex to all the checkpoint
-			 * RGVertex objects in reducedGraph, so we can terminate the loop
-			 * below.
-			 */
-			while (!vertexQueue.isEmpty()
-					&& checkpointVertices.size() != numVisitedCheckpointVertices) {
+		private byte[] toStepRuns() {
+			return Arrays.copyOf(stepRuns, length);
+		}
+	}
 
-				/*
-				 * We select the RGVertex object whose weight of the minimum
-				 * weight path found, at this stage, from sourceVertex to the
-				 * RGVertex object, is the lowest, because the optimum minimum
-				 * weight path to this RGVertex object has been found (and so we
-				 * also put it in the visitedVertices set because we do not need
-				 * to check it again).
-				 */
-				FibonacciHeap.Entry<RGVertex> currentVertexEntry = vertexQueue
-						.dequeueMin();
-				RGVertex currentVertex = currentVertexEntry.getValue();
-				visitedVertices.add(currentVertex);
+	/*
+	 * This class is used to represent a better route found by the route
+	 * planner thread. newPlan is only switched to if the AI is still following
+	 * basePlan and has not taken more than fixedStepIndex steps, as the two
+	 * routes are the same up to there, so the AI can carry on from the same
+	 * step of the new route.
+	 */
+	private static class RouteSwap {
+		private final RoutePlan basePlan;
+		private final RoutePlan newPlan;
+		private final int fixedStepIndex;
 
-				/*
-				 * Checks if currentVertex is a checkpoint RGVertex object and
-				 * updates the counting variable numVisitedCheckpointVertices.
-				 */
-				if (!doneCheckpointVertices.contains(currentVertex)
-						&& checkpointVertices.contains(currentVertex)) {
-					numVisitedCheckpointVertices++;
+		/*
+		 * Constructor.
+		 */
+		private RouteSwap(RoutePlan basePlan, RoutePlan newPlan,
+				int fixedStepIndex) {
+			this.basePlan = basePlan;
+			this.newPlan = newPlan;
+			this.fixedStepIndex = fixedStepIndex;
+		}
+	}
+
+	/*
+	 * Run on the route planner thread until deadline (in System.nanoTime
+	 * units). Each round, the first checkpoint in the route that the AI has
+	 * not reached yet is fixed, and the rest of the route from there to the
+	 * end checkpoint is improved with a RouteImprover object. Once that is a
+	 * local optimum, iterated local search is used: the route is perturbed
+	 * with a random double-bridge move (which local search cannot easily
+	 * undo) and improved again, and the result is kept if it is better. If
+	 * GameConstants.USE_ANNEALING is true, there is a distance matrix and at
+	 * least GameConstants.MIN_ANNEALING_CHECKPOINTS checkpoints are left,
+	 * the route is annealed for up to GameConstants.ANNEALING_ROUND_MILLIS
+	 * milliseconds instead (see the annealCheckpointVertexRoute method),
+	 * with one chain for each processor. Each better route is published as a
+	 * RouteSwap object for the update method to pick up. The thread stops
+	 * early once there are too few checkpoints left for anything to be
+	 * improved, or once progress has been cancelled (the level has been
+	 * left), which is checked before each round, so it stops at most one
+	 * round after being cancelled.
+	 */
+	private void improveRouteInBackground(long deadline,
+			PlanningProgress progress) {
+		Random random = new Random();
+		while (System.nanoTime() < deadline
+				&& !Thread.currentThread().isInterrupted()
+				&& !progress.isCancelled()) {
+
+			/*
+			 * If an earlier better route has not been picked up yet, it is
+			 * built upon so that it is not thrown away, and the new RouteSwap
+			 * object keeps its base plan.
+			 */
+			RouteSwap pendingSwap = pendingRouteSwap.get();
+			RoutePlan basePlan = pendingSwap == null ? currentPlan
+					: pendingSwap.basePlan;
+			RoutePlan plan = pendingSwap == null ? currentPlan
+					: pendingSwap.newPlan;
+			int[] route = plan.checkpointRoute;
+			int fixedPosition = 0;
+			int stepIndex = currentStepIndex;
+			while (fixedPosition < route.length
+					&& plan.checkpointStepIndices[fixedPosition] <= stepIndex) {
+				fixedPosition++;
+			}
+			if (route.length - fixedPosition < 4) {
+				return;
+			}
+			int[] remainingRoute = Arrays.copyOfRange(route, fixedPosition,
+					route.length);
+			double remainingWeight = calculateTotalCheckpointVertexRouteWeight(remainingRoute);
+			int[] improvedRoute = new RouteImprover(remainingRoute).improve();
+			if (calculateTotalCheckpointVertexRouteWeight(improvedRoute) > remainingWeight - 1e-9) {
+				if (GameConstants.USE_ANNEALING
+						&& spatialRoutePlanner == null
+						&& remainingRoute.length >= GameConstants.MIN_ANNEALING_CHECKPOINTS) {
+					improvedRoute = annealCheckpointVertexRoute(
+							remainingRoute, random.nextLong(), Runtime
+									.getRuntime().availableProcessors(),
+							Math.min(deadline, System.nanoTime()
+									+ GameConstants.ANNEALING_ROUND_MILLIS
+									* 1000000L));
+				} else {
+					improvedRoute = new RouteImprover(doubleBridge(
+							remainingRoute, random)).improve();
 				}
+			}
+			if (calculateTotalCheckpointVertexRouteWeight(improvedRoute) < remainingWeight - 1e-9) {
+				int fixedStepIndex = plan.checkpointStepIndices[fixedPosition];
+				RouteSwap swap = new RouteSwap(basePlan, generateRoutePlan(plan,
+						fixedPosition, improvedRoute),
+						pendingSwap == null ? fixedStepIndex : Math.min(
+								fixedStepIndex, pendingSwap.fixedStepIndex));
 
 				/*
-				 * We look at each unvisited adjacent RGVertex object of
-				 * currentVertex and check whether the minimum weight path to
-				 * currentVertex from sourceVertex (which we know cannot be made
-				 * shorter) added to the weight between the unvisited adjacent
-				 * RGVertex object and currentVertex (this sum being called
-				 * alternativeWeight) is less than the minimum weight path found
-				 * so far to that adjacent RGVertex object from sourceVertex.
+				 * If the update method took out pendingSwap in the meantime,
+				 * the new route may not be based on the route the AI is now
+				 * following, so it is thrown away and the next round starts
+				 * again from the current route.
 				 */
-				for (RGAdjacency adjacency : currentVertex.getAdjacencies()) {
-					RGVertex adjacentVertex = adjacency.getAdjacentVertex();
-					if (!visitedVertices.contains(adjacentVertex)) {
-
-						double alternativeWeight = weightsFromSourceMap
-								.get(currentVertex)
-								+ currentVertex
-										.getWeightToAdjacentVertex(adjacentVertex);
-						if (alternativeWeight < weightsFromSourceMap
-								.get(adjacentVertex)) {
-
-							/*
-							 * This means we have found a shorter path to
-							 * adjacentVertex from sourceVertex and we know that
-							 * it goes through currentVertex, so we update the
-							 * relevant hash tables and decrease the priority of
-							 * adjacentVertex in vertexQueue.
-							 */
-							weightsFromSourceMap.put(adjacentVertex,
-									alternativeWeight);
-							previousVerticesMap.put(adjacentVertex,
-									currentVertex);
-							vertexQueue.decreaseKey(
-									queueEntriesMap.get(adjacentVertex),
-									alternativeWeight);
-						}
-					}
+				pendingRouteSwap.compareAndSet(pendingSwap, swap);
+			}
+		}
+	}
 
-				}
+	/*
+	 * Used in the improveRouteInBackground method. Returns a copy of
+	 * checkpointRoute with a random double-bridge move applied: the route is
+	 * cut into four sections A, B, C and D and rejoined as A, C, B, D. The
+	 * endpoints of the route do not move. checkpointRoute must have at least
+	 * 4 checkpoints.
+	 */
+	private static int[] doubleBridge(int[] checkpointRoute, Random random) {
+		int[] cuts = new int[3];
+		do {
+			for (int i = 0; i < 3; i++) {
+				cuts[i] = 1 + random.nextInt(checkpointRoute.length - 1);
 			}
+			Arrays.sort(cuts);
+		} while (cuts[0] == cuts[1] || cuts[1] == cuts[2]);
+		int[] newRoute = new int[checkpointRoute.length];
+		int newIndex = 0;
+		for (int i = 0; i < cuts[0]; i++) {
+			newRoute[newIndex++] = checkpointRoute[i];
+		}
+		for (int i = cuts[1]; i < cuts[2]; i++) {
+			newRoute[newIndex++] = checkpointRoute[i];
+		}
+		for (int i = cuts[0]; i < cuts[1]; i++) {
+			newRoute[newIndex++] = checkpointRoute[i];
+		}
+		for (int i = cuts[2]; i < checkpointRoute.length; i++) {
+			newRoute[newIndex++] = checkpointRoute[i];
+		}
+		return newRoute;
+	}
 
-			/*
-			 * Once vertexQueue is empty, all the RGVertex objects in
-			 * reducedGraph have been visited so we can be sure that the
-			 * shortest paths from sourceVertex to all the RGVertex objects have
-			 * been found. We can then update the
-			 * shortestPathsBetweenCheckpointVertices to add the paths from
-			 * sourceVertex to all of the checkpoint RGVertex object.
-			 */
-			for (RGVertex checkpointVertex : checkpointVertices) {
-				if (checkpointVertex != sourceVertex) {
-					CheckpointVertexPair pair = new CheckpointVertexPair(
-							sourceVertex, checkpointVertex);
-					/*
-					 * If the shortest path between the RGVertex objects of pair
-					 * has already been found and added to the
-					 * shortestPathsBetweenCheckpointVertices hash table
-					 * (because Dijkstras algorithm has already been applied
-					 * using checkpointVertex as the source), then we do not
-					 * need to add the shortest path again.
-					 */
-					if (!shortestPathsBetweenCheckpointVertices
-							.containsKey(pair)) {
-						RGPath pairPath = new RGPath();
-						RGVertex currentVertex = checkpointVertex;
+	/*
+	 * Returns the RGPath object representing the shortest path (consisting of
+	 * RGVertex objects) between the two checkpoints with the checkpoint
+	 * indices in the parameters.
+	 */
+	private RGPath getShortestPathBetweenCheckpoints(int checkpointIndex1,
+			int checkpointIndex2) {
+		if (spatialRoutePlanner != null) {
+			return spatialRoutePlanner.getShortestPath(checkpointIndex1,
+					checkpointIndex2);
+		}
+		return mazePlan.getShortestPathBetweenCheckpoints(checkpointIndex1,
+				checkpointIndex2);
+	}
 
-						/*
-						 * pairPath is iteratively built up starting from
-						 * checkpointVertex. When currentVertex is null, it
-						 * means sourceVertex has been added (as it has no
-						 * previous RGVertex object) and pairPath has been
-						 * built.
-						 */
-						while (currentVertex != null) {
-							pairPath.appendVertex(currentVertex);
-							currentVertex = previousVerticesMap
-									.get(currentVertex);
-						}
+	/*
+	 * Returns the weight of the shortest path between the two checkpoints with
+	 * the checkpoint indices in the parameters. This is 0 if the two
+	 * checkpoint indices are the same.
+	 */
+	private double getShortestPathWeightBetweenCheckpoints(
+			int checkpointIndex1, int checkpointIndex2) {
+		return getShortestPathWeightBetweenCheckpoints(checkpointIndex1,
+				checkpointIndex2, Double.POSITIVE_INFINITY);
+	}
 
-						if (!(pair.getCheckpointVertex1() == pairPath
-								.getVertex1() && pair.getCheckpointVertex2() == pairPath
-								.getVertex2())
-								&& !(pair.getCheckpointVertex1() == pairPath
-										.getVertex2() && pair
-										.getCheckpointVertex2() == pairPath
-										.getVertex1())) {
-							/*
-							 * If the RGVertex objects on either end of pairPath
-							 * are not the same as the two RGVertex objects in
-							 * pair, then there is a logical error elsewhere in
-							 * the code, so a RuntimeException is thrown to quit
-							 * the program and make debugging and tracing the
-							 * error easier. A try-catch block would not be
-							 * useful here as the issue cannot be fixed without
-							 * changing the code.
-							 */
-							throw new RuntimeException();
-						}
-						shortestPathsBetweenCheckpointVertices.put(pair,
-								pairPath);
-					}
-				}
+	/*
+	 * The same as above, except that if the weight is greater than maxWeight,
+	 * infinity may be returned instead (see the SpatialRoutePlanner class).
+	 */
+	private double getShortestPathWeightBetweenCheckpoints(
+			int checkpointIndex1, int checkpointIndex2, double maxWeight) {
+		if (spatialRoutePlanner != null) {
+			return spatialRoutePlanner.getShortestPathWeight(checkpointIndex1,
+					checkpointIndex2, maxWeight);
+		}
+		return mazePlan.getShortestPathWeightBetweenCheckpoints(
+				checkpointIndex1, checkpointIndex2);
+	}
+
+	/*
+	 * Returns the total weight of a route of checkpoint indices (the sum of the
+	 * shortest path weights between each pair of consecutive checkpoints).
+	 */
+	private double calculateTotalCheckpointVertexRouteWeight(
+			int[] checkpointRoute) {
+		double totalWeight = 0;
+
+		/*
+		 * Iterates over the checkpoint indices in the checkpointRoute array,
+		 * adding the shortest path weight between each pair of consecutive
+		 * checkpoints in the array to the totalWeight variable.
+		 */
+		for (int i = 0; i < checkpointRoute.length - 1; i++) {
+			totalWeight += getShortestPathWeightBetweenCheckpoints(
+					checkpointRoute[i], checkpointRoute[i + 1]);
+		}
+		return totalWeight;
+	}
+
+	/*
+	 * Returns the percentage by which the weight of the route that the AI is
+	 * currently following is greater than a lower bound on the weight of the
+	 * optimal route (see the calculateCheckpointVertexRouteLowerBound
+	 * method), so the route is at most this far from optimal. Only the
+	 * distance matrix of the MazePlan object is used, which is never changed
+	 * once it has been found, so this can be called while the route is still
+	 * being improved on the planner thread.
+	 */
+	public double calculateRouteOptimalityGap() {
+		return calculateRouteOptimalityGap(currentPlan.checkpointRoute);
+	}
+
+	/*
+	 * The same as above, for the given route of checkpoint indices. This takes
+	 * about half a second for 2000 checkpoints, so the game only calls it on
+	 * the planner thread, for the finished route (see the constructor), and
+	 * shows the result on the performance overlay.
+	 */
+	private double calculateRouteOptimalityGap(int[] checkpointRoute) {
+		double routeWeight = calculateTotalCheckpointVertexRouteWeight(checkpointRoute);
+		double lowerBound = calculateCheckpointVertexRouteLowerBound(
+				checkpointRoute[0], checkpointRoute[checkpointRoute.length - 1],
+				routeWeight);
+		return 100 * (routeWeight - lowerBound) / lowerBound;
+	}
+
+	/*
+	 * Calculates a lower bound on the weight of every route that starts at
+	 * startCheckpointIndex, visits all the checkpoints, and finishes at
+	 * endCheckpointIndex, using the Held-Karp bound. Such a route is a
+	 * spanning tree of the checkpoint graph in which the start and end
+	 * checkpoints have degree 1 and every other checkpoint has degree 2 (this
+	 * plays the part of the 1-tree in the Held-Karp bound for round trips), so
+	 * the weight of a minimum spanning tree is a lower bound. This is made
+	 * much tighter by adding a penalty to each checkpoint, which is added to
+	 * the weight of every edge at that checkpoint: the routes weight goes up
+	 * by exactly the sum of each penalty times the checkpoints degree in the
+	 * route, which is subtracted back off, but the minimum spanning tree
+	 * changes. Subgradient ascent raises the penalties of the checkpoints with
+	 * too high a degree in the tree and lowers the others, which pushes the
+	 * tree towards being a route, with step sizes based on how far the bound
+	 * is below upperBound (the weight of a known route).
+	 *
+	 * The minimum spanning tree has to be found once per iteration, so during
+	 * the ascent it is found over the edges to each checkpoints nearest
+	 * neighbours only (see the CandidateGraph class), in O(k log k) time
+	 * rather than the O(k) time of the whole checkpoint graph. A tree of
+	 * those edges may weigh more than a tree of the whole graph, so it is not
+	 * a lower bound itself; the bound returned is found from the minimum
+	 * spanning tree of the whole graph with the best penalties found, which
+	 * is a lower bound whatever the penalties are. The penalties that are
+	 * best for the candidate edges are very nearly the best overall, as the
+	 * edges of the optimal route almost always join near neighbours.
+	 *
+	 * Only the distance matrix is used, so this cannot be used with a
+	 * SpatialRoutePlanner object, which is not thread-safe and would need a
+	 * search for each of the O(k) pairs of checkpoints.
+	 */
+	private double calculateCheckpointVertexRouteLowerBound(
+			int startCheckpointIndex, int endCheckpointIndex, double upperBound) {
+		if (!mazePlan.hasDistanceMatrix()) {
+			throw new RuntimeException(
+					"The lower bound needs the distance matrix of the maze plan.");
+		}
+		int numCheckpoints = checkpointVertices.size();
+		int[] routeDegrees = new int[numCheckpoints];
+		Arrays.fill(routeDegrees, 2);
+		routeDegrees[startCheckpointIndex] = 1;
+		routeDegrees[endCheckpointIndex] = 1;
+		double[] penalties = new double[numCheckpoints];
+		double[] bestPenalties = new double[numCheckpoints];
+		int[] treeDegrees = new int[numCheckpoints];
+		double bestLowerBound = Double.NEGATIVE_INFINITY;
+		CandidateGraph candidateGraph = new CandidateGraph();
+
+		/*
+		 * If the candidate edges do not join every checkpoint (which can
+		 * happen when the checkpoints are in separate clusters), the whole
+		 * checkpoint graph has to be used instead.
+		 */
+		boolean useCandidateGraph = true;
+
+		/*
+		 * stepScale is halved whenever the bound has not improved for a
+		 * while, which is the usual way of making subgradient ascent converge.
+		 */
+		double stepScale = 2;
+		int numIterationsWithoutImprovement = 0;
+		for (int iteration = 0; iteration < GameConstants.MAX_LOWER_BOUND_ITERATIONS
+				&& stepScale > 1e-3; iteration++) {
+			double lowerBound = Double.NaN;
+			if (useCandidateGraph) {
+				lowerBound = candidateGraph.calculateMinimumSpanningTreeWeight(
+						penalties, treeDegrees);
+				useCandidateGraph = !Double.isNaN(lowerBound);
+			}
+			if (!useCandidateGraph) {
+				lowerBound = calculateMinimumSpanningTreeWeight(penalties,
+						treeDegrees);
+			}
+			double sumOfSquaredDegreeErrors = 0;
+			for (int i = 0; i < numCheckpoints; i++) {
+				lowerBound -= penalties[i] * routeDegrees[i];
+				int degreeError = treeDegrees[i] - routeDegrees[i];
+				sumOfSquaredDegreeErrors += degreeError * degreeError;
+			}
+			if (lowerBound > bestLowerBound + 1e-9) {
+				bestLowerBound = lowerBound;
+				System.arraycopy(penalties, 0, bestPenalties, 0,
+						numCheckpoints);
+				numIterationsWithoutImprovement = 0;
+			} else if (++numIterationsWithoutImprovement == GameConstants.LOWER_BOUND_PATIENCE) {
+				stepScale /= 2;
+				numIterationsWithoutImprovement = 0;
 			}
 
 			/*
-			 * We have computed all shortest paths from sourceVertex.
+			 * If every checkpoint has the right degree, the tree is a route
+			 * whose weight is the bound, so the bound cannot go any higher. The
+			 * same is true if the bound has reached the known routes weight.
 			 */
-			doneCheckpointVertices.add(sourceVertex);
+			if (sumOfSquaredDegreeErrors == 0
+					|| bestLowerBound >= upperBound - 1e-9) {
+				break;
+			}
+			double step = stepScale * (upperBound - lowerBound)
+					/ sumOfSquaredDegreeErrors;
+			for (int i = 0; i < numCheckpoints; i++) {
+				penalties[i] += step * (treeDegrees[i] - routeDegrees[i]);
+			}
 		}
-		return shortestPathsBetweenCheckpointVertices;
+
+		double lowerBound = calculateMinimumSpanningTreeWeight(bestPenalties,
+				treeDegrees);
+		for (int i = 0; i < numCheckpoints; i++) {
+			lowerBound -= bestPenalties[i] * routeDegrees[i];
+		}
+		return lowerBound;
 	}
 
 	/*
-	 * Returns the weight of the shortest path RGPath object between the two
-	 * RGVertex objects in the parameters (which should represent checkpoint
-	 * cells) as found in the shortestPathsBetweenCheckpointVertices hash table.
+	 * Used in the calculateCheckpointVertexRouteLowerBound method. Finds a
+	 * minimum spanning tree of the whole checkpoint graph using Prims
+	 * algorithm, where the weight of each edge has the penalties of both of
+	 * its checkpoints added to it. The checkpoint graph is complete, so the
+	 * simple O(k) version of Prims algorithm with arrays (rather than a
+	 * heap) is the fastest. The degree of each checkpoint in the tree is put
+	 * into treeDegrees and the total penalised weight of the tree is
+	 * returned.
 	 */
-	private double getShortestPathWeightBetweenCheckpointVertices(RGVertex v1,
-			RGVertex v2) {
-		return shortestPathsBetweenCheckpointVertices.get(
-				new CheckpointVertexPair(v1, v2)).getTotalWeight();
+	private double calculateMinimumSpanningTreeWeight(double[] penalties,
+			int[] treeDegrees) {
+		int numCheckpoints = checkpointVertices.size();
+		Arrays.fill(treeDegrees, 0);
+
+		/*
+		 * For each checkpoint not in the tree yet, the lowest penalised
+		 * weight of an edge from it to the tree and the checkpoint in the tree
+		 * at the other end of that edge.
+		 */
+		double[] connectionWeights = new double[numCheckpoints];
+		int[] connectionCheckpoints = new int[numCheckpoints];
+		boolean[] inTree = new boolean[numCheckpoints];
+		Arrays.fill(connectionWeights, Double.POSITIVE_INFINITY);
+		connectionWeights[0] = 0;
+		connectionCheckpoints[0] = -1;
+		double treeWeight = 0;
+
+		/*
+		 * The checkpoint not in the tree yet with the lowest connection
+		 * weight is found in the same loop that updates the connection
+		 * weights, so each checkpoint added only takes one pass.
+		 */
+		int nextCheckpoint = 0;
+		for (int numInTree = 0; numInTree < numCheckpoints; numInTree++) {
+			int addedCheckpoint = nextCheckpoint;
+			inTree[addedCheckpoint] = true;
+			treeWeight += connectionWeights[addedCheckpoint];
+			if (connectionCheckpoints[addedCheckpoint] != -1) {
+				treeDegrees[addedCheckpoint]++;
+				treeDegrees[connectionCheckpoints[addedCheckpoint]]++;
+			}
+			nextCheckpoint = -1;
+			for (int i = 0; i < numCheckpoints; i++) {
+				if (!inTree[i]) {
+					double weight = getShortestPathWeightBetweenCheckpoints(
+							addedCheckpoint, i)
+							+ penalties[addedCheckpoint]
+							+ penalties[i];
+					if (weight < connectionWeights[i]) {
+						connectionWeights[i] = weight;
+						connectionCheckpoints[i] = addedCheckpoint;
+					}
+					if (nextCheckpoint == -1
+							|| connectionWeights[i] < connectionWeights[nextCheckpoint]) {
+						nextCheckpoint = i;
+					}
+				}
+			}
+		}
+		return treeWeight;
 	}
 
 	/*
-	 * Calls generateGreedyCheckpointVertexRoute and improves the returned list
-	 * using the twoOpt method on it. The final improved list of RGVertex
-	 * objects (representing all the checkpoint Cell objects in the maze) is
-	 * converted to the full list of Cell objects (such that consecutive Cell
-	 * objects are adjacent), representing a route of Cell objects which the AI
-	 * player can actually traverse through in the maze. This list will be an
-	 * optimal or near-optimal ordered list of Cell objects for the AI player to
-	 * visit, which starts at the Cell object represented by startVertex, visits
-	 * all the checkpoints and finishes at the Cell object represented by
-	 * endVertex.
+	 * This class is used by the calculateCheckpointVertexRouteLowerBound
+	 * method. It is the graph of the checkpoints where each checkpoint is
+	 * only joined to the checkpoints in its neighbour list (see the
+	 * getCheckpointNeighbourLists method) and to the checkpoints that have it
+	 * in theirs, so it has O(k) edges rather than O(k). The edges at each
+	 * checkpoint are stored one after the other in primitive arrays (the
+	 * edges at checkpoint i are at indices edgeStarts[i] to
+	 * edgeStarts[i + 1] - 1), so that no object has to be created for each
+	 * edge. An edge can be stored twice if each checkpoint is in the others
+	 * neighbour list, which makes no difference to a minimum spanning tree.
 	 */
-	private List<Cell> generateCellRoute(RGVertex startVertex,
-			RGVertex endVertex) {
+	private class CandidateGraph {
+		private final int[] edgeStarts;
+		private final int[] edgeCheckpoints;
+		private final double[] edgeWeights;
 
 		/*
-		 * The stores the ordered list of checkpoint RGVertex objects
-		 * representing the order in which the AIPlayer object will visit the
-		 * checkpoints of the maze. This route is initially generated using
-		 * generateGreedyCheckpointVertexRoute and is improved by using the
-		 * twoOpt method.
+		 * For each checkpoint not in the tree yet, the lowest penalised
+		 * weight of a candidate edge from it to the tree and the checkpoint
+		 * in the tree at the other end of that edge, as in the
+		 * calculateMinimumSpanningTreeWeight method of the AIPlayer class.
 		 */
-		List<RGVertex> checkpointVertexRoute = twoOpt(generateGreedyCheckpointVertexRoute(
-				startVertex, endVertex));
+		private final double[] connectionWeights;
+		private final int[] connectionCheckpoints;
+		private final boolean[] inTree;
 
 		/*
-		 * This list is to store the ordered lists of all the Cell objects that
-		 * the AIPlayer object will visit and in the order it will visit them
-		 * in.
+		 * The binary min-heap used by Prims algorithm, of the checkpoints
+		 * that have a candidate edge to the tree but are not in it yet,
+		 * ordered by their connection weights. The index of each checkpoint in
+		 * the heap is kept in heapIndices (-1 if it is not in the heap), so
+		 * that when a lighter edge to a checkpoint is found it can be moved up
+		 * the heap rather than added again, and the heap never holds more than
+		 * k checkpoints.
 		 */
-		List<Cell> cellRoute = new ArrayList<Cell>();
+		private final int[] heap;
+		private final int[] heapIndices;
+		private int heapSize;
 
 		/*
-		 * To convert checkpointVertexRoute into a list of Cell objects, we
-		 * iterate over the checkpoint RGVertex objects in
-		 * checkpointVertexRoute. For each pair of consecutive checkpoint
-		 * RGVertex objects, we get the shortest path (made up of RGVertex
-		 * objects) between them. We then iterate over these RGVertex objects
-		 * making up the shortest path. For each pair of consecutive RGVertex
-		 * objects in the shortest path, we add the Cell objects making up the
-		 * RGEdge object between them to cellRoute. We do this in a way that
-		 * order is preserved.
+		 * Constructor.
 		 */
+		private CandidateGraph() {
+			int numCheckpoints = checkpointVertices.size();
+			int[][] neighbourLists = mazePlan.getCheckpointNeighbourLists();
+			edgeStarts = new int[numCheckpoints + 1];
+			for (int i = 0; i < numCheckpoints; i++) {
+				edgeStarts[i + 1] += neighbourLists[i].length;
+				for (int j : neighbourLists[i]) {
+					edgeStarts[j + 1]++;
+				}
+			}
+			for (int i = 0; i < numCheckpoints; i++) {
+				edgeStarts[i + 1] += edgeStarts[i];
+			}
+			int numEdges = edgeStarts[numCheckpoints];
+			edgeCheckpoints = new int[numEdges];
+			edgeWeights = new double[numEdges];
+			int[] nextEdgeIndices = Arrays.copyOf(edgeStarts, numCheckpoints);
+			for (int i = 0; i < numCheckpoints; i++) {
+				for (int j : neighbourLists[i]) {
+					double weight = getShortestPathWeightBetweenCheckpoints(i,
+							j);
+					edgeCheckpoints[nextEdgeIndices[i]] = j;
+					edgeWeights[nextEdgeIndices[i]++] = weight;
+					edgeCheckpoints[nextEdgeIndices[j]] = i;
+					edgeWeights[nextEdgeIndices[j]++] = weight;
+				}
+			}
+			connectionWeights = new double[numCheckpoints];
+			connectionCheckpoints = new int[numCheckpoints];
+			inTree = new boolean[numCheckpoints];
+			heap = new int[numCheckpoints];
+			heapIndices = new int[numCheckpoints];
+		}
+
+		/*
+		 * The same as the calculateMinimumSpanningTreeWeight method of the
+		 * AIPlayer class, but over the candidate edges only, using Prims
+		 * algorithm with the heap. Returns NaN if the candidate edges do not
+		 * join every checkpoint.
+		 */
+		private double calculateMinimumSpanningTreeWeight(double[] penalties,
+				int[] treeDegrees) {
+			Arrays.fill(treeDegrees, 0);
+			Arrays.fill(connectionWeights, Double.POSITIVE_INFINITY);
+			Arrays.fill(inTree, false);
+			Arrays.fill(heapIndices, -1);
+			connectionWeights[0] = 0;
+			connectionCheckpoints[0] = -1;
+			heapSize = 0;
+			moveUp(0, heapSize++);
+			double treeWeight = 0;
+			int numInTree = 0;
+			while (heapSize > 0) {
+				int addedCheckpoint = removeLightest();
+				inTree[addedCheckpoint] = true;
+				numInTree++;
+				treeWeight += connectionWeights[addedCheckpoint];
+				if (connectionCheckpoints[addedCheckpoint] != -1) {
+					treeDegrees[addedCheckpoint]++;
+					treeDegrees[connectionCheckpoints[addedCheckpoint]]++;
+				}
+				for (int edgeIndex = edgeStarts[addedCheckpoint]; edgeIndex < edgeStarts[addedCheckpoint + 1]; edgeIndex++) {
+					int i = edgeCheckpoints[edgeIndex];
+					if (!inTree[i]) {
+						double weight = edgeWeights[edgeIndex]
+								+ penalties[addedCheckpoint] + penalties[i];
+						if (weight < connectionWeights[i]) {
+							connectionWeights[i] = weight;
+							connectionCheckpoints[i] = addedCheckpoint;
+							moveUp(i, heapIndices[i] == -1 ? heapSize++
+									: heapIndices[i]);
+						}
+					}
+				}
+			}
+			return numInTree == heap.length ? treeWeight : Double.NaN;
+		}
+
+		/*
+		 * Puts checkpoint at index in the heap and moves it up until its
+		 * parents connection weight is no higher.
+		 */
+		private void moveUp(int checkpoint, int index) {
+			double weight = connectionWeights[checkpoint];
+			while (index > 0) {
+				int parentIndex = (index - 1) / 2;
+				int parent = heap[parentIndex];
+				if (connectionWeights[parent] <= weight) {
+					break;
+				}
+				heap[index] = parent;
+				heapIndices[parent] = index;
+				index = parentIndex;
+			}
+			heap[index] = checkpoint;
+			heapIndices[checkpoint] = index;
+		}
+
+		/*
+		 * Removes and returns the checkpoint at the root of the heap, moving
+		 * the last checkpoint down from the root until neither of its
+		 * children has a lower connection weight.
+		 */
+		private int removeLightest() {
+			int lightest = heap[0];
+			heapIndices[lightest] = -1;
+			heapSize--;
+			if (heapSize == 0) {
+				return lightest;
+			}
+			int checkpoint = heap[heapSize];
+			double weight = connectionWeights[checkpoint];
+			int index = 0;
+			while (true) {
+				int childIndex = 2 * index + 1;
+				if (childIndex >= heapSize) {
+					break;
+				}
+				if (childIndex + 1 < heapSize
+						&& connectionWeights[heap[childIndex + 1]] < connectionWeights[heap[childIndex]]) {
+					childIndex++;
+				}
+				if (connectionWeights[heap[childIndex]] >= weight) {
+					break;
+				}
+				heap[index] = heap[childIndex];
+				heapIndices[heap[index]] = index;
+				index = childIndex;
+			}
+			heap[index] = checkpoint;
+			heapIndices[checkpoint] = index;
+			return lightest;
+		}
+	}
+
+	/*
+	 * Converts an array of checkpoint indices (representing all the checkpoint
+	 * Cell objects in the maze) to a RoutePlan object holding the full route
+	 * of steps between adjacent Cell objects, representing a route of Cell
+	 * objects which the AI player can actually traverse through in the maze.
+	 */
+	private RoutePlan generateRoutePlan(int[] checkpointRoute) {
+		StepRunEncoder stepRunEncoder = new StepRunEncoder(checkpointVertices
+				.get(checkpointRoute[0]).getSuperCell());
+		int[] checkpointStepIndices = new int[checkpointRoute.length];
+		addCellRoute(checkpointRoute, 0, stepRunEncoder, checkpointStepIndices);
+		return new RoutePlan(checkpointRoute, checkpointStepIndices,
+				stepRunEncoder);
+	}
+
+	/*
+	 * Returns a RoutePlan object that is the same as plan up to and including
+	 * the checkpoint at fixedPosition in its checkpoint route, followed by
+	 * remainingRoute (which must start at that checkpoint and finish at the
+	 * same end checkpoint). Only the steps of the new part of the route are
+	 * found again; the ones before it are copied from plan.
+	 */
+	private RoutePlan generateRoutePlan(RoutePlan plan, int fixedPosition,
+			int[] remainingRoute) {
+		int[] checkpointRoute = plan.checkpointRoute.clone();
+		System.arraycopy(remainingRoute, 0, checkpointRoute, fixedPosition,
+				remainingRoute.length);
+		StepRunEncoder stepRunEncoder = new StepRunEncoder(plan,
+				plan.checkpointStepIndices[fixedPosition], checkpointVertices
+						.get(checkpointRoute[fixedPosition]).getSuperCell());
+		int[] checkpointStepIndices = Arrays.copyOf(plan.checkpointStepIndices,
+				checkpointRoute.length);
+		addCellRoute(checkpointRoute, fixedPosition, stepRunEncoder,
+				checkpointStepIndices);
+		return new RoutePlan(checkpointRoute, checkpointStepIndices,
+				stepRunEncoder);
+	}
+
+	/*
+	 * Adds the Cell objects making up the route from the checkpoint at
+	 * startPosition in checkpointRoute to the end of checkpointRoute to
+	 * stepRunEncoder, and puts the number of steps after which each of these
+	 * checkpoints is reached into checkpointStepIndices.
+	 */
+	private void addCellRoute(int[] checkpointRoute, int startPosition,
+			StepRunEncoder stepRunEncoder, int[] checkpointStepIndices) {
+
+		/*
+		 * To convert checkpointRoute into a list of Cell objects, we iterate
+		 * over the checkpoint indices in checkpointRoute. For each pair of
+		 * consecutive checkpoint indices, we get the shortest path (made up of
+		 * RGVertex objects) between them. We then iterate over these RGVertex
+		 * objects making up the shortest path. For each pair of consecutive
+		 * RGVertex objects in the shortest path, we add the Cell objects making
+		 * up the RGEdge object between them to stepRunEncoder. We do this in a
+		 * way that order is preserved.
+		 */
+		checkpointStepIndices[startPosition] = stepRunEncoder.numSteps;
+		for (int i = startPosition; i < checkpointRoute.length - 1; i++) {
+
+			/*
+			 * For each pair of consecutive checkpoint indices in
+			 * checkpointRoute, we retrieve the list of RGVertex objects making
+			 * up the shortest path (i.e. an RGPath object) between them.
+			 */
+			RGVertex currentCheckpointVertex = checkpointVertices
+					.get(checkpointRoute[i]);
+			List<RGVertex> pathVertices = getShortestPathBetweenCheckpoints(
+					checkpointRoute[i], checkpointRoute[i + 1])
+					.getPathVertices();
 
-		for (int i = 0; i < checkpointVertexRoute.size() - 1; i++) {
-
-			/*
-			 * For each pair of consecutive checkpoint RGVertex objects in
-			 * checkpointVertexRoute, we retrieve the list of RGVertex objects
-			 * making up the shortest path (i.e. an RGPath object) between them.
-			 */
-			RGVertex currentCheckpointVertex = checkpointVertexRoute.get(i);
-			RGVertex nextCheckpointVertex = checkpointVertexRoute.get(i + 1);
-			List<RGVertex> pathVertices = shortestPathsBetweenCheckpointVertices
-					.get(new CheckpointVertexPair(currentCheckpointVertex,
-							nextCheckpointVertex)).getPathVertices();
-
 			/*
 			 * We need to iterate over pathVertices in such a way that we start
 			 * at currentCheckpointVertex and end at nextCheckpointVertex. This
-			 * will let us add the Cell objects to cellRoute in the correct
+			 * will let us add the Cell objects to stepRunEncoder in the correct
 			 * order (rather than in reverse order).
 			 */
 
@@ -566,8 +1213,8 @@ public class AIPlayer extends Player {
 				/*
 				 * We need to iterate over edgeCells in such a way that we start
 				 * at currentVertex and end at nextVertex. This will let us add
-				 * the Cell objects to cellRoute in the correct order (rather
-				 * than in reverse order).
+				 * the Cell objects to stepRunEncoder in the correct order
+				 * (rather than in reverse order).
 				 */
 
 				/*
@@ -603,649 +1250,1840 @@ public class AIPlayer extends Player {
 
 				/*
 				 * This loop iterates over edgeCells, adding the Cell objects to
-				 * cellRoute.
+				 * stepRunEncoder (which ignores the first one, as it is the
+				 * same as the last Cell object of the previous RGEdge object).
 				 */
 				for (int index2 = inclusiveStartIndex2; index2 != exclusiveEndIndex2; index2 += increment2) {
-					cellRoute.add(edgeCells.get(index2));
+					stepRunEncoder.addCell(edgeCells.get(index2));
 				}
 			}
+
+			/*
+			 * The last Cell object added is the next checkpoint's super Cell
+			 * object.
+			 */
+			checkpointStepIndices[i + 1] = stepRunEncoder.numSteps;
 		}
-		return cellRoute;
 	}
 
 	/*
-	 * Uses the greedy tour construction heuristic to generate an ordered list
-	 * of RGVertex objects, representing the route of super cells that the AI
-	 * player should visit, which starts at startVertex, visits all the
-	 * checkpoint RGVertex objects, and finishes at endVertex.
+	 * Uses the greedy tour construction heuristic to generate an ordered array
+	 * of checkpoint indices, representing the route of checkpoint super cells
+	 * that the AI player should visit, which starts at startCheckpointIndex,
+	 * visits all the checkpoints, and finishes at endCheckpointIndex.
 	 */
-	private List<RGVertex> generateGreedyCheckpointVertexRoute(
-			RGVertex startVertex, RGVertex endVertex) {
+	private int[] generateGreedyCheckpointVertexRoute(int startCheckpointIndex,
+			int endCheckpointIndex) {
 
 		/*
-		 * If startVertex and endVertex dont represent checkpoints, then the
-		 * algorithm wont work as the shortestPathsBetweenCheckpointVertices
-		 * hash table would not have keys that include the startVertex and
-		 * endVertex. This should not happen and must indicate a logical error
-		 * elsewhere in the code, and a try-catch block would not be useful as
-		 * the issue cannot be fixed without changing the code. Throwing a
-		 * runtime exception here would make debugging and tracing the error
-		 * easier.
+		 * If the start and end RGVertex objects dont represent checkpoints
+		 * (in which case their checkpoint index is -1), then the algorithm
+		 * wont work as the shortestPathWeightsBetweenCheckpoints array would
+		 * not have entries for them. This should not happen and must indicate
+		 * a logical error elsewhere in the code, and a try-catch block would
+		 * not be useful as the issue cannot be fixed without changing the
+		 * code. Throwing a runtime exception here would make debugging and
+		 * tracing the error easier.
 		 */
-		if (!startVertex.getSuperCell().isCheckpoint()
-				|| !endVertex.getSuperCell().isCheckpoint()) {
+		if (startCheckpointIndex < 0 || endCheckpointIndex < 0) {
 			throw new RuntimeException();
 		}
 
 		/*
-		 * All the traversable checkpoint RGVertex objects in the reduced graph.
+		 * The number of traversable checkpoint RGVertex objects in the reduced
+		 * graph.
+		 */
+		int numCheckpoints = checkpointVertices.size();
+
+		/*
+		 * In order to repeatedly choose the shortest path (which is how the
+		 * greedy algorithm works), we need to take the pairs of checkpoints in
+		 * ascending order of shortest path weight. The start and end
+		 * checkpoints will be connected to the route afterwards (otherwise
+		 * incomplete routes would be created) so pairs that have either of
+		 * them as an endpoint are left out. Only the first few pairs are ever
+		 * needed, so the pairs are kept in a heap rather than all being
+		 * sorted.
+		 */
+		CheckpointPairHeap pairHeap = new CheckpointPairHeap(
+				startCheckpointIndex, endCheckpointIndex);
+
+		/*
+		 * This disjoint-set is needed to efficiently check if, in the route at
+		 * any given time, a path exists along adjacent checkpoints between two
+		 * checkpoints, when deciding whether to add a path to the route.
+		 */
+		List<Integer> checkpointIndices = new ArrayList<Integer>();
+		for (int i = 0; i < numCheckpoints; i++) {
+			checkpointIndices.add(i);
+		}
+		DisjointSet<Integer> checkpointsDisjointSet = new DisjointSet<Integer>(
+				checkpointIndices);
+
+		/*
+		 * This array is to store the (one or two) checkpoint indices that are
+		 * connected (via a shortest path) to each checkpoint in the route as
+		 * the route is being built up, with routeOrders storing how many of
+		 * them there are for each checkpoint. This is effectively a table of
+		 * adjacency lists for the route (a subgraph of the checkpoint graph).
+		 */
+		int[][] routeAdjacencies = new int[numCheckpoints][2];
+		int[] routeOrders = new int[numCheckpoints];
+
+		int pathsAdded = 0;
+
+		/*
+		 * We keep adding paths until pathsAdded = numCheckpoints  3 because
+		 * at this point, only the two endpoint checkpoints would be left to
+		 * connect to the route.
+		 */
+		while (!pairHeap.isEmpty() && pathsAdded < numCheckpoints - 3) {
+			int pair = pairHeap.poll();
+			int checkpointIndex1 = pair / numCheckpoints;
+			int checkpointIndex2 = pair % numCheckpoints;
+
+			/*
+			 * Here, order refers to the number of checkpoints next to
+			 * checkpointIndex1 and checkpointIndex2 in the route. If either
+			 * order is equal to 2, then we cant add the path to the route
+			 * because then one of the checkpoints would have order 3, which
+			 * should not happen in a route. If checkpointIndex1 and
+			 * checkpointIndex2 are joined in checkpointsDisjointSet, then this
+			 * indicates that they are already indirectly connected, so adding
+			 * the path to the route would create a cycle, which should not
+			 * happen either.
+			 */
+			if (routeOrders[checkpointIndex1] != 2
+					&& routeOrders[checkpointIndex2] != 2
+					&& !checkpointsDisjointSet.areJoined(checkpointIndex1,
+							checkpointIndex2)) {
+				/*
+				 * Then we can add the path to the route. We do this by making
+				 * checkpointIndex2 and checkpointIndex1 adjacent to each other
+				 * in the route subgraph.
+				 */
+				routeAdjacencies[checkpointIndex1][routeOrders[checkpointIndex1]++] = checkpointIndex2;
+				routeAdjacencies[checkpointIndex2][routeOrders[checkpointIndex2]++] = checkpointIndex1;
+				pathsAdded++;
+
+				/*
+				 * checkpointIndex1 and checkpointIndex2 are now connected in
+				 * the route so they should be in the same subset in
+				 * checkpointsDisjointSet.
+				 */
+				checkpointsDisjointSet.join(checkpointIndex1, checkpointIndex2);
+			}
+		}
+
+		int orderOneCheckpointIndex1 = -1, orderOneCheckpointIndex2 = -1;
+		/*
+		 * This loop tries to find the two checkpoints at the ends of the route
+		 * built so far (as these are the only checkpoints with order 1 and so
+		 * the start and end checkpoints can only be connected to these)
+		 */
+		for (int checkpointIndex = 0; checkpointIndex < numCheckpoints; checkpointIndex++) {
+			if (routeOrders[checkpointIndex] == 1) {
+				if (orderOneCheckpointIndex1 == -1) {
+					orderOneCheckpointIndex1 = checkpointIndex;
+				} else {
+					orderOneCheckpointIndex2 = checkpointIndex;
+					break;
+				}
+			}
+		}
+
+		/*
+		 * There are only two ways to connect the endpoint checkpoints to these
+		 * two order-1 checkpoints in the route. This If statement compares both
+		 * ways and selects the one which results in a shorter route.
+		 */
+		if (getShortestPathWeightBetweenCheckpoints(orderOneCheckpointIndex1,
+				startCheckpointIndex)
+				+ getShortestPathWeightBetweenCheckpoints(
+						orderOneCheckpointIndex2, endCheckpointIndex) < getShortestPathWeightBetweenCheckpoints(
+				orderOneCheckpointIndex2, startCheckpointIndex)
+				+ getShortestPathWeightBetweenCheckpoints(
+						orderOneCheckpointIndex1, endCheckpointIndex)) {
+			/*
+			 * Then connect the start checkpoint to orderOneCheckpointIndex1
+			 * and connect the end checkpoint to orderOneCheckpointIndex2.
+			 */
+			routeAdjacencies[orderOneCheckpointIndex1][routeOrders[orderOneCheckpointIndex1]++] = startCheckpointIndex;
+			routeAdjacencies[startCheckpointIndex][routeOrders[startCheckpointIndex]++] = orderOneCheckpointIndex1;
+			routeAdjacencies[orderOneCheckpointIndex2][routeOrders[orderOneCheckpointIndex2]++] = endCheckpointIndex;
+			routeAdjacencies[endCheckpointIndex][routeOrders[endCheckpointIndex]++] = orderOneCheckpointIndex2;
+		} else {
+			/*
+			 * Then connect the start checkpoint to orderOneCheckpointIndex2
+			 * and connect the end checkpoint to orderOneCheckpointIndex1.
+			 */
+			routeAdjacencies[orderOneCheckpointIndex2][routeOrders[orderOneCheckpointIndex2]++] = startCheckpointIndex;
+			routeAdjacencies[startCheckpointIndex][routeOrders[startCheckpointIndex]++] = orderOneCheckpointIndex2;
+			routeAdjacencies[orderOneCheckpointIndex1][routeOrders[orderOneCheckpointIndex1]++] = endCheckpointIndex;
+			routeAdjacencies[endCheckpointIndex][routeOrders[endCheckpointIndex]++] = orderOneCheckpointIndex1;
+		}
+
+		/*
+		 * This array is to store the checkpoint indices that make up the route
+		 * that the AIPlayer object will follow in order.
 		 */
-		List<RGVertex> checkpointVertices = reducedGraph
-				.getCheckpointVertices();
+		int[] checkpointRoute = new int[numCheckpoints];
+
+		/*
+		 * To generate an ordered array of checkpoint indices (i.e. in the order
+		 * that they should be visited by the AI) from the route adjacencies, we
+		 * start off with the start checkpoint and add it to the route array.
+		 * The start checkpoint only has one adjacent checkpoint in the route
+		 * (as it is an endpoint of the route), which we add next. Every other
+		 * checkpoint has two adjacent checkpoints, but one of them has already
+		 * been added to the route array, so we add the other one and repeat
+		 * from there until all the checkpoints have been added. In effect, we
+		 * are traversing along the greedy checkpoint route subgraph.
+		 */
+		checkpointRoute[0] = startCheckpointIndex;
+		int previousCheckpointIndex = -1;
+		int currentCheckpointIndex = startCheckpointIndex;
+		for (int routeIndex = 1; routeIndex < numCheckpoints; routeIndex++) {
+			int nextCheckpointIndex = routeAdjacencies[currentCheckpointIndex][0];
+			if (nextCheckpointIndex == previousCheckpointIndex) {
+				nextCheckpointIndex = routeAdjacencies[currentCheckpointIndex][1];
+			}
+			checkpointRoute[routeIndex] = nextCheckpointIndex;
+			previousCheckpointIndex = currentCheckpointIndex;
+			currentCheckpointIndex = nextCheckpointIndex;
+		}
+
+		return checkpointRoute;
+	}
+
+	/*
+	 * This class is used by the generateGreedyCheckpointVertexRoute method to
+	 * take pairs of checkpoints in ascending order of shortest path weight. It
+	 * is a binary min-heap of encoded checkpoint pairs (the pair of checkpoint
+	 * indices i < j is encoded as the single int i * numCheckpoints + j so
+	 * that no object has to be created for each pair), with the weight of each
+	 * pair kept in a parallel primitive array so that comparing two pairs does
+	 * not need any index arithmetic. Building the heap takes O(n) time for n
+	 * pairs and each pair taken out takes O(log n) time, so only the pairs
+	 * that the greedy algorithm actually looks at are ever put in order,
+	 * rather than sorting all of them in O(n log n) time. Pairs with the same
+	 * weight come out in ascending order of their encoding, which is the
+	 * order that a stable sort would give.
+	 */
+	private class CheckpointPairHeap {
+		private final int[] pairs;
+		private final double[] weights;
+		private int size;
+
+		/*
+		 * Constructor. The heap holds every pair of checkpoints that does not
+		 * include excludedCheckpointIndex1 or excludedCheckpointIndex2.
+		 */
+		private CheckpointPairHeap(int excludedCheckpointIndex1,
+				int excludedCheckpointIndex2) {
+			int numCheckpoints = checkpointVertices.size();
+			int maxNumPairs = numCheckpoints * (numCheckpoints - 1) / 2;
+			pairs = new int[maxNumPairs];
+			weights = new double[maxNumPairs];
+			for (int i = 0; i < numCheckpoints; i++) {
+				if (i == excludedCheckpointIndex1
+						|| i == excludedCheckpointIndex2) {
+					continue;
+				}
+				for (int j = i + 1; j < numCheckpoints; j++) {
+					if (j == excludedCheckpointIndex1
+							|| j == excludedCheckpointIndex2) {
+						continue;
+					}
+					pairs[size] = i * numCheckpoints + j;
+					weights[size] = getShortestPathWeightBetweenCheckpoints(i,
+							j);
+					size++;
+				}
+			}
+
+			/*
+			 * Floyds method: sifting down every parent from the bottom of the
+			 * heap up to the root turns the array into a heap in O(n) time.
+			 */
+			for (int index = size / 2 - 1; index >= 0; index--) {
+				siftDown(index);
+			}
+		}
+
+		private boolean isEmpty() {
+			return size == 0;
+		}
+
+		/*
+		 * Removes and returns the encoded pair with the lowest weight.
+		 */
+		private int poll() {
+			int pair = pairs[0];
+			size--;
+			pairs[0] = pairs[size];
+			weights[0] = weights[size];
+			siftDown(0);
+			return pair;
+		}
 
 		/*
-		 * The list of all the possible RGPath objects that can be part of the
-		 * route
+		 * Returns whether the pair at index1 should come out of the heap
+		 * before the pair at index2.
 		 */
-		List<RGPath> paths = new ArrayList<RGPath>(
-				shortestPathsBetweenCheckpointVertices.values());
+		private boolean isBefore(int index1, int index2) {
+			return weights[index1] < weights[index2]
+					|| (weights[index1] == weights[index2] && pairs[index1] < pairs[index2]);
+		}
+
+		/*
+		 * Moves the pair at index down the heap until neither of its children
+		 * should come out before it.
+		 */
+		private void siftDown(int index) {
+			while (true) {
+				int smallestIndex = index;
+				int leftChildIndex = 2 * index + 1;
+				int rightChildIndex = leftChildIndex + 1;
+				if (leftChildIndex < size
+						&& isBefore(leftChildIndex, smallestIndex)) {
+					smallestIndex = leftChildIndex;
+				}
+				if (rightChildIndex < size
+						&& isBefore(rightChildIndex, smallestIndex)) {
+					smallestIndex = rightChildIndex;
+				}
+				if (smallestIndex == index) {
+					return;
+				}
+				int tempPair = pairs[index];
+				pairs[index] = pairs[smallestIndex];
+				pairs[smallestIndex] = tempPair;
+				double tempWeight = weights[index];
+				weights[index] = weights[smallestIndex];
+				weights[smallestIndex] = tempWeight;
+				index = smallestIndex;
+			}
+		}
+	}
+
+	/*
+	 * Returns the result of performing the 2-opt tour improvement heuristic on
+	 * a given ordered array of checkpoint indices, representing the route of
+	 * checkpoint super Cell objects that the AI player should visit, which
+	 * starts at the start checkpoint, visits all the checkpoints, and finishes
+	 * at the end checkpoint.
+	 */
+	private int[] twoOpt(int[] checkpointRoute) {
+		/*
+		 * This array stores the route of checkpoint indices as it is being
+		 * improved. A copy of checkpointRoute is created so that it does not
+		 * get directly altered.
+		 */
+		int[] improvedCheckpointRoute = checkpointRoute.clone();
+
+		double minChange;
+
+		/*
+		 * In every iteration of the following loop, we select the two pairs of
+		 * adjacent checkpoints (where adjacent means next to each other in the
+		 * improvedCheckpointRoute array) such that performing a 2-opt swap on
+		 * them decreases the total weight of the route the most. We then
+		 * perform the 2-opt swap and repeat until no 2-opt swap can be made
+		 * that decreases the total weight of the route.
+		 */
+		do {
+			minChange = 0;
+			int minIndex1 = -1;
+			int minIndex2 = -1;
+
+			/*
+			 * To select the two pairs of adjacent checkpoints to perform a
+			 * 2-opt swap on, only two checkpoints need to be selected. The
+			 * following nested For loop is used to find two different
+			 * checkpoints (checkpointB and checkpointC) in the
+			 * improvedCheckpointRoute array (that are not the endpoint
+			 * checkpoints, which are at the first and last index of the array).
+			 * The other two checkpoints (checkpointA and checkpointD) are found
+			 * from subtracting 1 from the index of checkpointB and adding 1 to
+			 * the index of checkpointC respectively. At any point during the
+			 * iterations, the indices of the two checkpoints for which a 2-opt
+			 * swap gives the least weight are stored in the minIndex1 and
+			 * minIndex2 variables. At the end of the loop, if any 2-opt swap
+			 * would reduce the weight of the path, a 2-opt swap is performed for
+			 * these two indices using the twoOptSwap method. The lower bound for
+			 * index1 and index2 is 1 and the upper bound is the length of
+			 * checkpointRoute - 2 because we do not want to change the position
+			 * of the start and end checkpoints.
+			 */
+			for (int index1 = 1; index1 < improvedCheckpointRoute.length - 2; index1++) {
+				int checkpointA = improvedCheckpointRoute[index1 - 1];
+				int checkpointB = improvedCheckpointRoute[index1];
+				for (int index2 = index1 + 1; index2 < improvedCheckpointRoute.length - 1; index2++) {
+					int checkpointC = improvedCheckpointRoute[index2];
+					int checkpointD = improvedCheckpointRoute[index2 + 1];
+					double previousWeight = getShortestPathWeightBetweenCheckpoints(
+							checkpointA, checkpointB)
+							+ getShortestPathWeightBetweenCheckpoints(
+									checkpointC, checkpointD);
+					double afterWeight = getShortestPathWeightBetweenCheckpoints(
+							checkpointA, checkpointC)
+							+ getShortestPathWeightBetweenCheckpoints(
+									checkpointB, checkpointD);
+					double change = afterWeight - previousWeight;
+					if (change < minChange) {
+						minChange = change;
+						minIndex1 = index1;
+						minIndex2 = index2;
+					}
+				}
+			}
+
+			/*
+			 * Performs a 2-opt swap if there are two pairs of adjacent
+			 * checkpoints for which a 2-opt swap would decrease the total
+			 * weight of the route. If minChange is 0, then no such pairs exist
+			 * so we terminate the loop.
+			 */
+			if (minChange != 0) {
+				twoOptSwap(improvedCheckpointRoute, minIndex1, minIndex2);
+			}
+		} while (minChange != 0);
+		return improvedCheckpointRoute;
+	}
+
+	/*
+	 * Used in the twoOpt method to perform a 2-opt swap on checkpointRoute.
+	 * The indices in the parameters represent the position of the four
+	 * checkpoints in the array (the two checkpoints at the indices startIndex
+	 * and endIndex, the checkpoint at index startIndex-1, and the checkpoint at
+	 * index endIndex+1) that are involved in the 2-opt swap.
+	 */
+	private void twoOptSwap(int[] checkpointRoute, int startIndex, int endIndex) {
+
+		/*
+		 * Performs a 2-opt swap by reversing the order of the checkpointRoute
+		 * array between indices startIndex and endIndex inclusive by swapping
+		 * the elements at indices startIndex and endIndex, the elements at
+		 * startIndex + 1 and endIndex  1, and so on until all the required
+		 * elements have been swapped.
+		 */
+		for (int i = 0; i < (endIndex - startIndex + 1) / 2; i++) {
+			int temp = checkpointRoute[startIndex + i];
+			checkpointRoute[startIndex + i] = checkpointRoute[endIndex - i];
+			checkpointRoute[endIndex - i] = temp;
+		}
+	}
+
+	/*
+	 * Returns the neighbour lists of the checkpoints. The neighbour list of a
+	 * checkpoint holds the
+	 * checkpoint indices of the (at most) NUM_ROUTE_NEIGHBOURS other
+	 * checkpoints with the lowest shortest path weights from it, in ascending
+	 * order of weight. These are the only checkpoints that the
+	 * RouteImprover class tries to connect a checkpoint to, which is what
+	 * makes each of its passes near-linear in the number of checkpoints.
+	 */
+	private int[][] getCheckpointNeighbourLists() {
+		if (spatialRoutePlanner != null) {
+			return spatialRoutePlanner.getNearestCheckpointLists();
+		}
+		return mazePlan.getCheckpointNeighbourLists();
+	}
+
+	/*
+	 * This class is used to improve a route of checkpoint indices with fixed
+	 * endpoints using local search. It is used instead of the twoOpt method,
+	 * which looks at every pair of positions in the route after every single
+	 * improvement. Three kinds of moves are tried: 2-opt moves (reversing a
+	 * section of the route), Or-opt moves (moving a section of 1 to 3
+	 * checkpoints, possibly reversed, to somewhere else in the route) and
+	 * sequential 3-opt moves found in the style of the Lin-Kernighan
+	 * heuristic (swapping two sections of any length, possibly reversing
+	 * them). The moves tried from a checkpoint only
+	 * connect it to the checkpoints in its neighbour list, and a queue of
+	 * "active" checkpoints is kept so that a checkpoint is only looked at again
+	 * once one of the route edges next to it has changed (the checkpoints not
+	 * in the queue have their "don't-look bit" set). The route does not have
+	 * to contain every checkpoint, so that the route planner thread can improve
+	 * just the part of the route that the AI has not reached yet.
+	 */
+	private class RouteImprover {
+
+		/*
+		 * The route being improved.
+		 */
+		private final int[] route;
+
+		/*
+		 * The position of each checkpoint in route, indexed by checkpoint
+		 * index, or -1 if the checkpoint is not in route.
+		 */
+		private final int[] positions;
+
+		/*
+		 * The neighbour lists of the checkpoints (see the
+		 * getCheckpointNeighbourLists method).
+		 */
+		private final int[][] neighbourLists;
+
+		/*
+		 * A circular queue of the active checkpoints and whether each
+		 * checkpoint is currently in it. A checkpoint is only added if it is
+		 * not already in the queue, so the queue never holds more than k
+		 * checkpoints.
+		 */
+		private final int[] activeQueue;
+		private final boolean[] active;
+		private int activeQueueHead;
+		private int activeQueueSize;
+
+		/*
+		 * Constructor. A copy of checkpointRoute is improved so that it does
+		 * not get directly altered.
+		 */
+		private RouteImprover(int[] checkpointRoute) {
+			route = checkpointRoute.clone();
+			positions = new int[checkpointVertices.size()];
+			Arrays.fill(positions, -1);
+			neighbourLists = getCheckpointNeighbourLists();
+			activeQueue = new int[route.length];
+			active = new boolean[checkpointVertices.size()];
+			for (int i = 0; i < route.length; i++) {
+				positions[route[i]] = i;
+			}
+		}
+
+		/*
+		 * Keeps looking for improving moves from the active checkpoints until
+		 * there are none left, and returns the improved route. A 2-opt move
+		 * reverses a section of the route, which changes which moves are
+		 * possible from the checkpoints in that section even though their
+		 * route edges have not changed, so their don't-look bits can be
+		 * wrong. To make sure that the route is a local optimum with respect
+		 * to all the kinds of moves, every checkpoint is made active again once
+		 * the queue empties, until a whole pass finds no improving move.
+		 *
+		 * The neighbour lists can leave out moves that the twoOpt method would
+		 * find, so with a distance matrix every 2-opt and Or-opt move is also
+		 * tried once the queue empties (see the tryFullScanMove method), and
+		 * the queue is started again if one is found. The route is then a
+		 * local optimum for every move that the twoOpt method makes, but it
+		 * can still be a worse local optimum than the one that the twoOpt
+		 * method finds from the same route. So that the result is never worse
+		 * than that of the twoOpt method, for routes of up to
+		 * GameConstants.MAX_TWO_OPT_BASELINE_CHECKPOINTS checkpoints the twoOpt
+		 * method is run as well, and if its route is better, the search is
+		 * carried on from there.
+		 */
+		private int[] improve() {
+			if (route.length < 4) {
+				return route;
+			}
+			boolean useTwoOptBaseline = spatialRoutePlanner == null
+					&& route.length <= GameConstants.MAX_TWO_OPT_BASELINE_CHECKPOINTS;
+			int[] initialRoute = useTwoOptBaseline ? route.clone() : null;
+			search();
+			if (useTwoOptBaseline) {
+				int[] twoOptRoute = twoOpt(initialRoute);
+				if (calculateTotalCheckpointVertexRouteWeight(twoOptRoute) < calculateTotalCheckpointVertexRouteWeight(route) - 1e-9) {
+					System.arraycopy(twoOptRoute, 0, route, 0, route.length);
+					for (int i = 0; i < route.length; i++) {
+						positions[route[i]] = i;
+					}
+					search();
+				}
+			}
+			return route;
+		}
+
+		/*
+		 * Used in the improve method. Keeps making improving moves until
+		 * there are none left.
+		 */
+		private void search() {
+			boolean improved;
+			do {
+				improved = false;
+				for (int checkpoint : route) {
+					activate(checkpoint);
+				}
+				while (activeQueueSize > 0) {
+					int checkpoint = activeQueue[activeQueueHead];
+					activeQueueHead = (activeQueueHead + 1)
+							% activeQueue.length;
+					activeQueueSize--;
+					active[checkpoint] = false;
+					if (tryTwoOptMove(checkpoint) || tryOrOptMove(checkpoint)
+							|| tryThreeOptMove(checkpoint)) {
+						activate(checkpoint);
+						improved = true;
+					}
+				}
+				if (!improved && spatialRoutePlanner == null) {
+					improved = tryFullScanMove();
+				}
+			} while (improved);
+		}
+
+		/*
+		 * Looks at every 2-opt move and then every Or-opt move in the route,
+		 * whichever checkpoints it connects, and performs the first one found
+		 * that decreases the total weight of the route. Returns whether a move
+		 * was made. This takes time quadratic in the length of the route, and
+		 * every checkpoint pair may be looked at, so it is only used with a
+		 * distance matrix.
+		 */
+		private boolean tryFullScanMove() {
+			for (int positionA = 0; positionA < route.length - 3; positionA++) {
+				int checkpointA = route[positionA];
+				int checkpointB = route[positionA + 1];
+				double weightAB = weight(checkpointA, checkpointB);
+				for (int positionC = positionA + 2; positionC < route.length - 1; positionC++) {
+					int checkpointC = route[positionC];
+					int checkpointD = route[positionC + 1];
+					double gain = weightAB + weight(checkpointC, checkpointD)
+							- weight(checkpointA, checkpointC)
+							- weight(checkpointB, checkpointD);
+					if (gain > 1e-9) {
+						reverseSection(route, positions, positionA + 1,
+								positionC);
+						return true;
+					}
+				}
+			}
+			for (int sectionLength = 1; sectionLength <= 3; sectionLength++) {
+				for (int sectionStart = 1; sectionStart + sectionLength < route.length; sectionStart++) {
+					int sectionEnd = sectionStart + sectionLength - 1;
+					int firstCheckpoint = route[sectionStart];
+					int lastCheckpoint = route[sectionEnd];
+					int previousCheckpoint = route[sectionStart - 1];
+					int nextCheckpoint = route[sectionEnd + 1];
+					double removalGain = weight(previousCheckpoint,
+							firstCheckpoint)
+							+ weight(lastCheckpoint, nextCheckpoint)
+							- weight(previousCheckpoint, nextCheckpoint);
+
+					/*
+					 * The section is put into the gap between gapIndex and
+					 * gapIndex + 1, either way round.
+					 */
+					for (int gapIndex = 0; gapIndex < route.length - 1; gapIndex++) {
+						if (gapIndex >= sectionStart - 1 && gapIndex <= sectionEnd) {
+							continue;
+						}
+						int checkpointC = route[gapIndex];
+						int checkpointE = route[gapIndex + 1];
+						double gapWeight = weight(checkpointC, checkpointE);
+						double keptGain = removalGain + gapWeight
+								- weight(checkpointC, firstCheckpoint)
+								- weight(lastCheckpoint, checkpointE);
+						double reversedGain = removalGain + gapWeight
+								- weight(checkpointC, lastCheckpoint)
+								- weight(firstCheckpoint, checkpointE);
+						if (keptGain > 1e-9 || reversedGain > 1e-9) {
+							moveSection(route, positions, sectionStart,
+									sectionEnd, gapIndex,
+									keptGain >= reversedGain);
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+		/*
+		 * Adds a checkpoint to the back of the queue of active checkpoints if
+		 * it is not already in it (i.e. clears its don't-look bit).
+		 */
+		private void activate(int checkpoint) {
+			if (!active[checkpoint]) {
+				active[checkpoint] = true;
+				activeQueue[(activeQueueHead + activeQueueSize)
+						% activeQueue.length] = checkpoint;
+				activeQueueSize++;
+			}
+		}
+
+		private double weight(int checkpoint1, int checkpoint2) {
+			return getShortestPathWeightBetweenCheckpoints(checkpoint1,
+					checkpoint2);
+		}
+
+		/*
+		 * Used for the last new route edge of each move, which only needs to
+		 * be known exactly if it weighs less than maxWeight, as otherwise the
+		 * move is not an improvement.
+		 */
+		private double weight(int checkpoint1, int checkpoint2,
+				double maxWeight) {
+			return getShortestPathWeightBetweenCheckpoints(checkpoint1,
+					checkpoint2, maxWeight);
+		}
+
+		/*
+		 * Tries to find a 2-opt move that removes one of the route edges next
+		 * to checkpointA and connects checkpointA to a checkpoint in its
+		 * neighbour list, performing the first one found that decreases the
+		 * total weight of the route. Returns whether a move was made.
+		 */
+		private boolean tryTwoOptMove(int checkpointA) {
+			int positionA = positions[checkpointA];
+
+			/*
+			 * direction is 1 when the route edge from checkpointA to the next
+			 * checkpoint is removed and -1 when the route edge from checkpointA
+			 * to the previous checkpoint is removed. In both cases, the route
+			 * edge from checkpointC to the checkpoint in the same direction
+			 * (checkpointD) is removed as well, and checkpointA is connected to
+			 * checkpointC and checkpointB to checkpointD.
+			 */
+			for (int direction = 1; direction >= -1; direction -= 2) {
+				int positionB = positionA + direction;
+				if (positionB < 0 || positionB >= route.length) {
+					continue;
+				}
+				int checkpointB = route[positionB];
+				double weightAB = weight(checkpointA, checkpointB);
+				for (int checkpointC : neighbourLists[checkpointA]) {
+
+					/*
+					 * The neighbour list is in ascending order of weight, so
+					 * once checkpointC is further from checkpointA than
+					 * checkpointB is, every later checkpoint in the list is as
+					 * well, and such moves will be found from checkpointD
+					 * instead if they are improvements. Moves where the two
+					 * weights are equal are still tried because many shortest
+					 * paths in a maze have the same weight.
+					 */
+					double gainAC = weightAB - weight(checkpointA, checkpointC);
+					if (gainAC < 0) {
+						break;
+					}
+					int positionC = positions[checkpointC];
+					int positionD = positionC + direction;
+					if (positionC < 0 || positionD < 0
+							|| positionD >= route.length
+							|| Math.abs(positionA - positionC) < 2) {
+						continue;
+					}
+					int checkpointD = route[positionD];
+					double gainACD = gainAC + weight(checkpointC, checkpointD);
+					double gain = gainACD
+							- weight(checkpointB, checkpointD, gainACD);
+					if (gain > 1e-9) {
+						/*
+						 * The section of the route between the two removed
+						 * route edges is reversed. As the removed route edges
+						 * always have an endpoint on either side of them, the
+						 * endpoints of the route never move.
+						 */
+						if (direction == 1) {
+							reverseSection(route, positions,
+									Math.min(positionA, positionC) + 1,
+									Math.max(positionA, positionC));
+						} else {
+							reverseSection(route, positions,
+									Math.min(positionA, positionC),
+									Math.max(positionA, positionC) - 1);
+						}
+						activate(checkpointB);
+						activate(checkpointC);
+						activate(checkpointD);
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		/*
+		 * Tries to find an Or-opt move that moves a section of 1 to 3
+		 * checkpoints with checkpointA at one end of it to between a
+		 * checkpoint in checkpointA's neighbour list (checkpointC, which
+		 * checkpointA will be connected to) and one of the checkpoints next to
+		 * it in the route, performing the first one found that decreases the
+		 * total weight of the route. Returns whether a move was made.
+		 */
+		private boolean tryOrOptMove(int checkpointA) {
+			int positionA = positions[checkpointA];
+			for (int sectionLength = 1; sectionLength <= 3; sectionLength++) {
+
+				/*
+				 * The section either starts at checkpointA and goes forwards
+				 * or ends at checkpointA and goes backwards. A section of
+				 * length 1 is the same either way so it is only tried once.
+				 */
+				for (int direction = 1; direction >= (sectionLength == 1 ? 1
+						: -1); direction -= 2) {
+					int positionOtherEnd = positionA + direction
+							* (sectionLength - 1);
+					int sectionStart = Math.min(positionA, positionOtherEnd);
+					int sectionEnd = Math.max(positionA, positionOtherEnd);
+
+					/*
+					 * The endpoints of the route cannot be moved.
+					 */
+					if (sectionStart < 1 || sectionEnd > route.length - 2) {
+						continue;
+					}
+					int checkpointOtherEnd = route[positionOtherEnd];
+					int previousCheckpoint = route[sectionStart - 1];
+					int nextCheckpoint = route[sectionEnd + 1];
+
+					/*
+					 * The decrease in weight from taking the section out of
+					 * the route and joining up the gap it leaves. It has to be
+					 * more than the weight from checkpointA to its nearest
+					 * checkpoint for any move to be an improvement.
+					 */
+					double removedWeight = weight(previousCheckpoint,
+							route[sectionStart])
+							+ weight(route[sectionEnd], nextCheckpoint);
+					double removalGain = removedWeight
+							- weight(previousCheckpoint, nextCheckpoint,
+									removedWeight
+											- weight(checkpointA,
+													neighbourLists[checkpointA][0]));
+					for (int checkpointC : neighbourLists[checkpointA]) {
+						double weightAC = weight(checkpointA, checkpointC);
+						if (weightAC > removalGain) {
+							break;
+						}
+						int positionC = positions[checkpointC];
+						if (positionC < 0
+								|| (positionC >= sectionStart && positionC <= sectionEnd)) {
+							continue;
+						}
+
+						/*
+						 * The section can be put either after or before
+						 * checkpointC, between it and checkpointE.
+						 */
+						for (int side = 1; side >= -1; side -= 2) {
+							int positionE = positionC + side;
+							if (positionE < 0
+									|| positionE >= route.length
+									|| (positionE >= sectionStart && positionE <= sectionEnd)) {
+								continue;
+							}
+							int checkpointE = route[positionE];
+							double gainCE = removalGain
+									+ weight(checkpointC, checkpointE)
+									- weightAC;
+							double gain = gainCE
+									- weight(checkpointOtherEnd, checkpointE,
+											gainCE);
+							if (gain > 1e-9) {
+								moveSection(route, positions, sectionStart,
+										sectionEnd,
+										Math.min(positionC, positionE),
+										(side == 1) == (positionA == sectionStart));
+								activate(checkpointOtherEnd);
+								activate(previousCheckpoint);
+								activate(nextCheckpoint);
+								activate(checkpointC);
+								activate(checkpointE);
+								return true;
+							}
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+		/*
+		 * Tries to find a sequential 3-opt move in the style of the
+		 * Lin-Kernighan heuristic, performing the first one found that
+		 * decreases the total weight of the route. Starting from checkpoint1,
+		 * the route edge to checkpoint2 (next to it) is removed and checkpoint2
+		 * is connected to checkpoint3 from its neighbour list; the route edge
+		 * from checkpoint3 to checkpoint4 (next to it) is removed and
+		 * checkpoint4 is connected to checkpoint5 from its neighbour list; and
+		 * the route edge from checkpoint5 to checkpoint6 (next to it) is
+		 * removed and checkpoint6 is connected back to checkpoint1. The search
+		 * only goes deeper while the sum of the gains so far is positive,
+		 * which is what keeps it fast. Returns whether a move was made.
+		 */
+		private boolean tryThreeOptMove(int checkpoint1) {
+			int[] checkpoints = new int[6];
+			checkpoints[0] = checkpoint1;
+			for (int direction1 = 1; direction1 >= -1; direction1 -= 2) {
+				int position2 = positions[checkpoint1] + direction1;
+				if (position2 < 0 || position2 >= route.length) {
+					continue;
+				}
+				checkpoints[1] = route[position2];
+				double weight12 = weight(checkpoints[0], checkpoints[1]);
+				for (int checkpoint3 : neighbourLists[checkpoints[1]]) {
+					double gain1 = weight12
+							- weight(checkpoints[1], checkpoint3);
+					if (gain1 <= 0) {
+						break;
+					}
+					if (positions[checkpoint3] < 0) {
+						continue;
+					}
+					checkpoints[2] = checkpoint3;
+					for (int direction3 = 1; direction3 >= -1; direction3 -= 2) {
+						int position4 = positions[checkpoint3] + direction3;
+						if (position4 < 0 || position4 >= route.length) {
+							continue;
+						}
+						checkpoints[3] = route[position4];
+						double weight34 = weight(checkpoints[2], checkpoints[3]);
+						for (int checkpoint5 : neighbourLists[checkpoints[3]]) {
+							double gain2 = gain1 + weight34
+									- weight(checkpoints[3], checkpoint5);
+							if (gain2 <= 0) {
+								break;
+							}
+							if (positions[checkpoint5] < 0) {
+								continue;
+							}
+							checkpoints[4] = checkpoint5;
+							for (int direction5 = 1; direction5 >= -1; direction5 -= 2) {
+								int position6 = positions[checkpoint5]
+										+ direction5;
+								if (position6 < 0 || position6 >= route.length) {
+									continue;
+								}
+								checkpoints[5] = route[position6];
+								double gain56 = gain2
+										+ weight(checkpoints[4], checkpoints[5]);
+								double gain = gain56
+										- weight(checkpoints[5],
+												checkpoints[0], gain56);
+								if (gain > 1e-9 && reconnect(checkpoints)) {
+									for (int checkpoint : checkpoints) {
+										activate(checkpoint);
+									}
+									return true;
+								}
+							}
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+		/*
+		 * Used in the tryThreeOptMove method. The route edges between
+		 * checkpoints[0] and checkpoints[1], checkpoints[2] and checkpoints[3],
+		 * and checkpoints[4] and checkpoints[5] are removed, which splits the
+		 * route into four sections, and the new edges between checkpoints[1]
+		 * and checkpoints[2], checkpoints[3] and checkpoints[4], and
+		 * checkpoints[5] and checkpoints[0] are added. If this gives a valid
+		 * route from the same start checkpoint to the same end checkpoint, the
+		 * two middle sections are rearranged accordingly and true is returned.
+		 * Otherwise, the route is not changed and false is returned.
+		 */
+		private boolean reconnect(int[] checkpoints) {
+			/*
+			 * The six checkpoints must all be different for the three removed
+			 * route edges and the three new edges to be different.
+			 */
+			for (int i = 0; i < 6; i++) {
+				for (int j = i + 1; j < 6; j++) {
+					if (checkpoints[i] == checkpoints[j]) {
+						return false;
+					}
+				}
+			}
+
+			/*
+			 * Each removed route edge is identified by the lower of the
+			 * positions of its two checkpoints. sectionEnds holds these three
+			 * positions in ascending order, so the sections of the route are
+			 * [0, sectionEnds[0]], [sectionEnds[0] + 1, sectionEnds[1]],
+			 * [sectionEnds[1] + 1, sectionEnds[2]] and [sectionEnds[2] + 1,
+			 * route.length - 1].
+			 */
+			int[] sectionEnds = new int[3];
+			for (int i = 0; i < 3; i++) {
+				sectionEnds[i] = Math.min(positions[checkpoints[2 * i]],
+						positions[checkpoints[2 * i + 1]]);
+			}
+			Arrays.sort(sectionEnds);
+			if (sectionEnds[0] == sectionEnds[1]
+					|| sectionEnds[1] == sectionEnds[2]) {
+				return false;
+			}
+			int[] sectionStarts = { 0, sectionEnds[0] + 1, sectionEnds[1] + 1,
+					sectionEnds[2] + 1 };
+			int[] sectionFinishes = { sectionEnds[0], sectionEnds[1],
+					sectionEnds[2], route.length - 1 };
+
+			/*
+			 * The new route is found by walking from the end of the first
+			 * section along the new edges. Each new edge must lead to one end
+			 * of a section that has not been visited yet, which is then
+			 * traversed to its other end, and the walk must visit both middle
+			 * sections before reaching the start of the last section.
+			 */
+			int[] newSectionOrder = new int[2];
+			boolean[] newSectionReversed = new boolean[2];
+			int exitCheckpoint = route[sectionFinishes[0]];
+			for (int step = 0; step < 3; step++) {
+				int nextCheckpoint = -1;
+				for (int i = 0; i < 6; i += 2) {
+					int newEdgeCheckpoint1 = checkpoints[(i + 1) % 6];
+					int newEdgeCheckpoint2 = checkpoints[(i + 2) % 6];
+					if (newEdgeCheckpoint1 == exitCheckpoint) {
+						nextCheckpoint = newEdgeCheckpoint2;
+					} else if (newEdgeCheckpoint2 == exitCheckpoint) {
+						nextCheckpoint = newEdgeCheckpoint1;
+					}
+				}
+				if (nextCheckpoint == -1) {
+					return false;
+				}
+				int nextPosition = positions[nextCheckpoint];
+				int section = 0;
+				while (nextPosition > sectionFinishes[section]) {
+					section++;
+				}
+				if (step < 2) {
+					if (section == 0 || section == 3
+							|| (step == 1 && section == newSectionOrder[0])) {
+						return false;
+					}
+					newSectionOrder[step] = section;
+					if (nextPosition == sectionStarts[section]) {
+						exitCheckpoint = route[sectionFinishes[section]];
+					} else if (nextPosition == sectionFinishes[section]) {
+						newSectionReversed[step] = true;
+						exitCheckpoint = route[sectionStarts[section]];
+					} else {
+						return false;
+					}
+				} else if (section != 3 || nextPosition != sectionStarts[3]) {
+					return false;
+				}
+			}
+
+			/*
+			 * The two middle sections are written back in their new order and
+			 * orientation.
+			 */
+			int[] middle = new int[sectionFinishes[2] - sectionStarts[1] + 1];
+			int middleIndex = 0;
+			for (int step = 0; step < 2; step++) {
+				int section = newSectionOrder[step];
+				for (int i = 0; i <= sectionFinishes[section]
+						- sectionStarts[section]; i++) {
+					middle[middleIndex++] = newSectionReversed[step] ? route[sectionFinishes[section]
+							- i]
+							: route[sectionStarts[section] + i];
+				}
+			}
+			System.arraycopy(middle, 0, route, sectionStarts[1], middle.length);
+			for (int i = sectionStarts[1]; i <= sectionFinishes[2]; i++) {
+				positions[route[i]] = i;
+			}
+			return true;
+		}
+	}
+
+	/*
+	 * Reverses the section of route between the positions startIndex and
+	 * endIndex inclusive, updating the positions array (which holds the
+	 * position of each checkpoint in route, indexed by checkpoint index).
+	 */
+	private static void reverseSection(int[] route, int[] positions,
+			int startIndex, int endIndex) {
+		while (startIndex < endIndex) {
+			int temp = route[startIndex];
+			route[startIndex] = route[endIndex];
+			route[endIndex] = temp;
+			positions[route[startIndex]] = startIndex;
+			positions[route[endIndex]] = endIndex;
+			startIndex++;
+			endIndex--;
+		}
+	}
+
+	/*
+	 * Moves the section of route between the positions sectionStart and
+	 * sectionEnd inclusive to between the positions gapIndex and gapIndex + 1
+	 * (which are both outside the section), keeping the order of the section
+	 * if keepOrder is true and reversing it otherwise. The checkpoints between
+	 * the section and the gap are shifted along to make room, and the
+	 * positions array is updated.
+	 */
+	private static void moveSection(int[] route, int[] positions,
+			int sectionStart, int sectionEnd, int gapIndex, boolean keepOrder) {
+		int sectionLength = sectionEnd - sectionStart + 1;
+		int[] section = Arrays.copyOfRange(route, sectionStart, sectionEnd + 1);
+		int newSectionStart;
+		if (gapIndex < sectionStart) {
+			System.arraycopy(route, gapIndex + 1, route, gapIndex + 1
+					+ sectionLength, sectionStart - gapIndex - 1);
+			newSectionStart = gapIndex + 1;
+		} else {
+			System.arraycopy(route, sectionEnd + 1, route, sectionStart,
+					gapIndex - sectionEnd);
+			newSectionStart = gapIndex - sectionLength + 1;
+		}
+		for (int i = 0; i < sectionLength; i++) {
+			route[newSectionStart + i] = keepOrder ? section[i]
+					: section[sectionLength - 1 - i];
+		}
+		for (int i = Math.min(sectionStart, newSectionStart); i <= Math.max(
+				sectionEnd, gapIndex); i++) {
+			positions[route[i]] = i;
+		}
+	}
+
+	/*
+	 * Uses parallel simulated annealing to generate an ordered array of
+	 * checkpoint indices, representing the route of checkpoint super cells
+	 * that the AI player should visit, which starts at startCheckpointIndex,
+	 * visits all the checkpoints, and finishes at endCheckpointIndex. This is
+	 * meant for mazes with hundreds of checkpoints, where the route found by
+	 * generateGreedyCheckpointVertexRoute and the RouteImprover class can
+	 * still be improved on given more time. The same seed always gives the
+	 * same route, as GameConstants.NUM_ANNEALING_CHAINS chains are always
+	 * used and they are run for exactly GameConstants.NUM_ANNEALING_EPOCHS
+	 * epochs.
+	 */
+	private int[] generateAnnealedCheckpointVertexRoute(
+			int startCheckpointIndex, int endCheckpointIndex, long seed) {
+		return annealCheckpointVertexRoute(new RouteImprover(
+				generateGreedyCheckpointVertexRoute(startCheckpointIndex,
+						endCheckpointIndex)).improve(), seed,
+				GameConstants.NUM_ANNEALING_CHAINS, 0);
+	}
+
+	/*
+	 * Improves initialRoute (which must be a local optimum for the
+	 * RouteImprover class) with parallel simulated annealing, and is also
+	 * used by the improveRouteInBackground method. Each of the numChains
+	 * chains (see the AnnealingChain class) starts from initialRoute. The
+	 * search is split into
+	 * epochs: in each epoch, every chain makes the same number of random
+	 * moves at the same temperature, in parallel with the other chains. After
+	 * each epoch, the best route found by any of the chains is shared by
+	 * restarting every chain from it. The chains never touch each others
+	 * data during an epoch, so the result only depends on the seed (and on
+	 * how many epochs there are time for). The temperature falls
+	 * geometrically from the start of the search to the end, which is
+	 * deadline (in System.nanoTime units) if that comes before the last
+	 * epoch. A deadline of 0 means that there is no time limit.
+	 *
+	 * The chains run on other threads, so this cannot be used with a
+	 * SpatialRoutePlanner object, which is not thread-safe. The distance
+	 * matrix of the MazePlan object is never changed once it has been found,
+	 * so the chains can all read it at once.
+	 */
+	private int[] annealCheckpointVertexRoute(int[] initialRoute, long seed,
+			int numChains, long deadline) {
+		if (spatialRoutePlanner != null) {
+			throw new RuntimeException(
+					"Annealing needs the distance matrix of the maze plan.");
+		}
+		long startTime = System.nanoTime();
+		int[] bestRoute = initialRoute;
+		if (bestRoute.length < 4) {
+			return bestRoute;
+		}
+		double bestRouteWeight = calculateTotalCheckpointVertexRouteWeight(bestRoute);
+
+		/*
+		 * The starting temperature is a fraction of the average weight of an
+		 * edge in the starting route, so that it suits mazes of any size.
+		 */
+		double initialTemperature = GameConstants.ANNEALING_INITIAL_TEMPERATURE_PROPORTION
+				* bestRouteWeight / (bestRoute.length - 1);
+		final AnnealingChain[] chains = new AnnealingChain[numChains];
+		for (int i = 0; i < numChains; i++) {
+			chains[i] = new AnnealingChain(bestRoute, seed + i);
+		}
+		final int numMovesPerEpoch = GameConstants.NUM_ANNEALING_MOVES_PER_CHECKPOINT
+				* bestRoute.length;
+		for (int epoch = 0; epoch < GameConstants.NUM_ANNEALING_EPOCHS; epoch++) {
+			double progress = (double) epoch
+					/ GameConstants.NUM_ANNEALING_EPOCHS;
+			if (deadline != 0) {
+				double timeProgress = (double) (System.nanoTime() - startTime)
+						/ (deadline - startTime);
+				if (timeProgress >= 1) {
+					break;
+				}
+				progress = Math.max(progress, timeProgress);
+			}
+			final double temperature = initialTemperature
+					* Math.pow(GameConstants.ANNEALING_FINAL_TEMPERATURE_RATIO,
+							progress);
+			IntStream.range(0, numChains).parallel().forEach(new IntConsumer() {
+				@Override
+				public void accept(int chainIndex) {
+					chains[chainIndex].anneal(numMovesPerEpoch, temperature);
+				}
+			});
+
+			/*
+			 * The chains are looked at in order and only a strictly better
+			 * route replaces bestRoute, so that ties always go the same way.
+			 */
+			for (AnnealingChain chain : chains) {
+				if (chain.bestRouteWeight < bestRouteWeight - 1e-9) {
+					bestRoute = chain.bestRoute.clone();
+					bestRouteWeight = chain.bestRouteWeight;
+				}
+			}
+			for (AnnealingChain chain : chains) {
+				chain.restartFrom(bestRoute);
+			}
+		}
+
+		/*
+		 * Annealing only tries random moves, so the best route is finished off
+		 * with a RouteImprover object to make sure it is a local optimum.
+		 */
+		return new RouteImprover(bestRoute).improve();
+	}
+
+	/*
+	 * This class is used to represent one simulated annealing chain for the
+	 * annealCheckpointVertexRoute method, which is used both by the
+	 * generateAnnealedCheckpointVertexRoute method and by the
+	 * improveRouteInBackground method. The route being annealed may be only
+	 * the part of the full route that the AI has not reached yet, so a
+	 * neighbour of a checkpoint may not be in it. Each move picks a random
+	 * checkpoint A (other than the endpoints) and a random checkpoint C from
+	 * As neighbour list that is in the route, and then either reverses the
+	 * section of the route that makes A and C next to each other (a 2-opt
+	 * move) or moves a section of 1 to 3 checkpoints starting at A to next to
+	 * C (an Or-opt move). A move that decreases the weight of the route is always made, and a move that
+	 * increases it by d is made with probability e^(-d/T), where T is the
+	 * temperature, which is what lets the chain get out of local optima.
+	 */
+	private class AnnealingChain {
+		private final int[] route;
+		private final int[] positions;
+		private double routeWeight;
+		private int[] bestRoute;
+		private double bestRouteWeight;
+		private final Random random;
+		private final int[][] neighbourLists;
+
+		/*
+		 * Constructor. Each chain has its own Random object, seeded with seed,
+		 * so that chains running in parallel do not share any state. The
+		 * position of a checkpoint that is not in the route is -1.
+		 */
+		private AnnealingChain(int[] initialRoute, long seed) {
+			route = initialRoute.clone();
+			positions = new int[checkpointVertices.size()];
+			Arrays.fill(positions, -1);
+			random = new Random(seed);
+			neighbourLists = getCheckpointNeighbourLists();
+			restartFrom(initialRoute);
+		}
+
+		/*
+		 * Makes newRoute both the current and the best route of the chain. The
+		 * weight is recalculated from scratch, which also gets rid of any
+		 * rounding errors built up by adding and subtracting the changes in
+		 * weight of each move.
+		 */
+		private void restartFrom(int[] newRoute) {
+			System.arraycopy(newRoute, 0, route, 0, route.length);
+			for (int i = 0; i < route.length; i++) {
+				positions[route[i]] = i;
+			}
+			routeWeight = calculateTotalCheckpointVertexRouteWeight(route);
+			bestRoute = route.clone();
+			bestRouteWeight = routeWeight;
+		}
+
+		/*
+		 * Tries numMoves random moves at the given temperature, keeping track
+		 * of the best route seen.
+		 */
+		private void anneal(int numMoves, double temperature) {
+			for (int move = 0; move < numMoves; move++) {
+				int positionA = 1 + random.nextInt(route.length - 2);
+				int[] neighbourList = neighbourLists[route[positionA]];
+				int positionC = positions[neighbourList[random
+						.nextInt(neighbourList.length)]];
+				if (positionC < 0) {
+					continue;
+				}
+				boolean moved = random.nextBoolean() ? tryTwoOptMove(positionA,
+						positionC, temperature) : tryOrOptMove(positionA,
+						positionC, 1 + random.nextInt(3), temperature);
+				if (moved && routeWeight < bestRouteWeight - 1e-9) {
+					System.arraycopy(route, 0, bestRoute, 0, route.length);
+					bestRouteWeight = routeWeight;
+				}
+			}
+		}
 
 		/*
-		 * In order to repeatedly choose the shortest RGPath object (which is
-		 * how the greedy algorithm works), we need to sort a list of all the
-		 * RGPath objects in ascending order of weight.
+		 * Returns whether a move that changes the weight of the route by
+		 * weightChange should be made at the given temperature.
 		 */
-		mergeSort(paths, 0, paths.size());
+		private boolean accept(double weightChange, double temperature) {
+			return weightChange <= 0
+					|| random.nextDouble() < Math.exp(-weightChange
+							/ temperature);
+		}
 
-		/*
-		 * This disjoint-set is needed to efficiently check if, in the route at
-		 * any given time, a path exists along adjacent RGVertex objects between
-		 * two RGVertex objects, when deciding whether to add an RGEdge object
-		 * to the route.
-		 */
-		DisjointSet<RGVertex> checkpointVerticesDisjointSet = new DisjointSet<RGVertex>(
-				checkpointVertices);
+		private double weight(int position1, int position2) {
+			return getShortestPathWeightBetweenCheckpoints(route[position1],
+					route[position2]);
+		}
 
 		/*
-		 * This table is to store the (one or two) checkpoint RGVertex objects
-		 * (in a list) that are connected (via an RGPath) to each checkpoint
-		 * RGVertex object in the route as the route is being built up. This is
-		 * effectively a table of adjacency lists for the route (a subgraph of
-		 * the checkpoint graph).
+		 * The 2-opt move that makes the checkpoints at positionA and positionC
+		 * next to each other reverses the section of the route from the
+		 * position after the lower of the two to the higher of the two. The
+		 * end checkpoint cannot be in the section.
 		 */
-		Map<RGVertex, ArrayList<RGVertex>> routeAdjacencyListMap = new HashMap<RGVertex, ArrayList<RGVertex>>();
-		for (RGVertex checkpointVertex : checkpointVertices) {
-			routeAdjacencyListMap.put(checkpointVertex,
-					new ArrayList<RGVertex>());
+		private boolean tryTwoOptMove(int positionA, int positionC,
+				double temperature) {
+			int startIndex = Math.min(positionA, positionC) + 1;
+			int endIndex = Math.max(positionA, positionC);
+			if (startIndex >= endIndex || endIndex > route.length - 2) {
+				return false;
+			}
+			double weightChange = weight(startIndex - 1, endIndex)
+					+ weight(startIndex, endIndex + 1)
+					- weight(startIndex - 1, startIndex)
+					- weight(endIndex, endIndex + 1);
+			if (!accept(weightChange, temperature)) {
+				return false;
+			}
+			reverseSection(route, positions, startIndex, endIndex);
+			routeWeight += weightChange;
+			return true;
 		}
 
-		int pathsAdded = 0;
-		int i = 0;
-
 		/*
-		 * We keep adding RGPath objects until pathsAdded =
-		 * checkpointVertices.size()  3 because at this point, only the two
-		 * endpoint vertices would be left to connect to the route.
+		 * The Or-opt move takes the section of sectionLength checkpoints
+		 * starting at positionA out of the route and puts it into the gap
+		 * either just after or just before the checkpoint at positionC,
+		 * whichever way round is better.
 		 */
-		for (i = 0; i < paths.size()
-				&& pathsAdded < checkpointVertices.size() - 3; i++) {
-			RGPath path = paths.get(i);
-			RGVertex checkpointVertex1 = path.getVertex1();
-			RGVertex checkpointVertex2 = path.getVertex2();
+		private boolean tryOrOptMove(int positionA, int positionC,
+				int sectionLength, double temperature) {
+			int sectionStart = positionA;
+			int sectionEnd = positionA + sectionLength - 1;
+			int gapIndex = random.nextBoolean() ? positionC : positionC - 1;
 
 			/*
-			 * The startVertex and endVertex will be connected to the route
-			 * afterwards (otherwise incomplete routes would be created) so we
-			 * skip RGPath objects that have startVertex or endVertex as their
-			 * endpoints.
+			 * The section cannot include the end checkpoint, and both sides
+			 * of the gap must be outside the section (otherwise the move would
+			 * do nothing).
 			 */
-			if (checkpointVertex1 != startVertex
-					&& checkpointVertex1 != endVertex
-					&& checkpointVertex2 != startVertex
-					&& checkpointVertex2 != endVertex) {
-
-				/*
-				 * Here, order refers to the number of checkpoint RGVertex
-				 * objects next to checkpointVertex1 and checkpointVertex2 in
-				 * the route.
-				 */
-				int checkpointVertex1Order = routeAdjacencyListMap.get(
-						checkpointVertex1).size();
-				int checkpointVertex2Order = routeAdjacencyListMap.get(
-						checkpointVertex2).size();
-
-				/*
-				 * If either of checkpointVertex1Order or checkpointVertex2Order
-				 * is equal to 2, then we cant add Path to the route because
-				 * then one of the checkpoint RGVertex objects would have order
-				 * 3, which should not happen in a route. If checkpointVertex1
-				 * and checkpointVertex2 are joined in
-				 * checkpointVerticesDisjointSet, then this indicates that
-				 * checkpointVertex1 and checkpointVertex2 are already
-				 * indirectly connected, so adding Path to the route would
-				 * create a cycle, which should not happen either.
-				 */
-				if (checkpointVertex1Order != 2
-						&& checkpointVertex2Order != 2
-						&& !checkpointVerticesDisjointSet.areJoined(
-								checkpointVertex1, checkpointVertex2)) {
-					/*
-					 * Then we can add Path to the route. We do this by making
-					 * checkpointVertex2 and checkpointVertex1 adjacent to each
-					 * other in the route subgraph.
-					 */
-					routeAdjacencyListMap.get(checkpointVertex1).add(
-							checkpointVertex2);
-					routeAdjacencyListMap.get(checkpointVertex2).add(
-							checkpointVertex1);
-					pathsAdded++;
-
-					/*
-					 * checkpointVertex1 and checkpointVertex2 are now connected
-					 * in the route by Path so these checkpoint RGVertex objects
-					 * should be in the same subset in
-					 */
-					checkpointVerticesDisjointSet.join(checkpointVertex1,
-							checkpointVertex2);
-
-				}
+			if (sectionEnd > route.length - 2 || gapIndex < 0
+					|| gapIndex >= route.length - 1
+					|| (gapIndex >= sectionStart - 1 && gapIndex <= sectionEnd)) {
+				return false;
+			}
+			double removalChange = weight(sectionStart - 1, sectionEnd + 1)
+					- weight(sectionStart - 1, sectionStart)
+					- weight(sectionEnd, sectionEnd + 1);
+			double keepOrderChange = weight(gapIndex, sectionStart)
+					+ weight(sectionEnd, gapIndex + 1);
+			double reverseOrderChange = weight(gapIndex, sectionEnd)
+					+ weight(sectionStart, gapIndex + 1);
+			boolean keepOrder = keepOrderChange <= reverseOrderChange;
+			double weightChange = removalChange
+					+ Math.min(keepOrderChange, reverseOrderChange)
+					- weight(gapIndex, gapIndex + 1);
+			if (!accept(weightChange, temperature)) {
+				return false;
 			}
+			moveSection(route, positions, sectionStart, sectionEnd, gapIndex,
+					keepOrder);
+			routeWeight += weightChange;
+			return true;
 		}
+	}
+
+	/*
+	 * Inherited and overridden from the Player class (polymorphism). It is
+	 * called every game cycle. It uses the stepRuns array of currentPlan and
+	 * the cursor (currentRunIndex and currentRunStepsTaken) to determine the
+	 * direction in which the AI player must move next and then attempts to
+	 * change direction if needed. Moves the cursor on once the AI player moves
+	 * to the next cell. Nothing is allocated and no Cell objects are searched
+	 * for direction, so each call takes constant time.
+	 */
+	@Override
+	public void update() {
 
-		RGVertex orderOneCheckpointVertex1 = null, orderOneCheckpointVertex2 = null;
 		/*
-		 * This loop tries to find the two checkpoint RGVertex objects at the
-		 * ends of the route built so far (as these are the only RGVertex
-		 * objects with order 1 and so startVertex and endVertex can only be
-		 * connected to these)
+		 * If the route planner thread has found a better route, it is switched
+		 * to here, which is just a reference assignment. The new route is the
+		 * same as the current one up to fixedStepIndex, so currentStepIndex
+		 * stays the same, but the cursor has to be moved to the same step in
+		 * the runs of the new route.
 		 */
-		for (RGVertex checkpointVertex : checkpointVertices) {
-			if (routeAdjacencyListMap.get(checkpointVertex).size() == 1) {
-				if (orderOneCheckpointVertex1 == null) {
-					orderOneCheckpointVertex1 = checkpointVertex;
-				} else {
-					orderOneCheckpointVertex2 = checkpointVertex;
-					break;
-				}
-			}
+		RouteSwap swap = pendingRouteSwap.getAndSet(null);
+		if (swap != null && swap.basePlan == currentPlan
+				&& currentStepIndex <= swap.fixedStepIndex) {
+			currentPlan = swap.newPlan;
+			seekCurrentStep();
 		}
+		byte[] stepRuns = currentPlan.stepRuns;
 
 		/*
-		 * There are only two ways to connect the endpoint vertices (i.e.
-		 * startVertex and endVertex) to these two order-1 checkpoint RGVertex
-		 * objects in the route. This If statement compares both ways and
-		 * selects the one which results in a shorter route.
+		 * Once currentStepIndex = numSteps, the AIPlayer object has reached the
+		 * final Cell object so no more changes of directions are needed.
 		 */
-		if (getShortestPathWeightBetweenCheckpointVertices(
-				orderOneCheckpointVertex1, startVertex)
-				+ getShortestPathWeightBetweenCheckpointVertices(
-						orderOneCheckpointVertex2, endVertex) < getShortestPathWeightBetweenCheckpointVertices(
-				orderOneCheckpointVertex2, startVertex)
-				+ getShortestPathWeightBetweenCheckpointVertices(
-						orderOneCheckpointVertex1, endVertex)) {
-			/*
-			 * Then connect startVertex to orderOneCheckpointVertex1 and connect
-			 * endVertex to orderOneCheckpointVertex2.
-			 */
-			routeAdjacencyListMap.get(orderOneCheckpointVertex1).add(
-					startVertex);
-			routeAdjacencyListMap.get(startVertex).add(
-					orderOneCheckpointVertex1);
-			routeAdjacencyListMap.get(orderOneCheckpointVertex2).add(endVertex);
-			routeAdjacencyListMap.get(endVertex).add(orderOneCheckpointVertex2);
-		} else {
+		if (currentStepIndex < currentPlan.numSteps) {
+
 			/*
-			 * Then connect startVertex to orderOneCheckpointVertex2 and connect
-			 * endVertex to orderOneCheckpointVertex1.
+			 * The target direction is the direction of the current run, and
+			 * the inherited changeDirection method is called to change the
+			 * AIPlayer object's direction to this target direction if
+			 * required. The Cell object that the step moves into is only found
+			 * once per step.
 			 */
-			routeAdjacencyListMap.get(orderOneCheckpointVertex2).add(
-					startVertex);
-			routeAdjacencyListMap.get(startVertex).add(
-					orderOneCheckpointVertex2);
-			routeAdjacencyListMap.get(orderOneCheckpointVertex1).add(endVertex);
-			routeAdjacencyListMap.get(endVertex).add(orderOneCheckpointVertex1);
+			Direction targetDirection = DIRECTIONS[stepRuns[2 * currentRunIndex]];
+			if (nextRouteCell == null) {
+				nextRouteCell = currentRouteCell
+						.getNeighbouringCell(targetDirection);
+			}
+			if (targetDirection != currentDirection) {
+				changeDirection(targetDirection);
+			}
 		}
+		/*
+		 * Calls the superclass method (which handles the moving and queuing of
+		 * directions).
+		 */
+		super.update();
 
 		/*
-		 * This list is to store the RGVertex objects that make up the route
-		 * that the AIPlayer object will follow in order.
+		 * Moves the cursor on once the AIPlayer has successfully moved to the
+		 * next Cell object in the route.
 		 */
-		List<RGVertex> checkpointVertexRoute = new ArrayList<RGVertex>();
-
-		/*
-		 * To generate an ordered list of checkpoint RGVertex objects (i.e. in
-		 * the order that they should be visited by the AI) from this hash table
-		 * structure, we start off with startVertex and add it to the route list
-		 * (which is going to build up to be this ordered list).
-		 */
-
-		checkpointVertexRoute.add(startVertex);
-		RGVertex previousVertex = null;
-		RGVertex currentVertex = startVertex;
-
-		/*
-		 * We can then retrieve the adjacency list for it from the
-		 * routeAdjacencyListMap hash table. This adjacency list would only have
-		 * one other checkpoint RGVertex object in it because startVertex will
-		 * only be connected to one other checkpoint RGVertex object in the
-		 * route (as it is an endpoint of the route). We add this sole adjacent
-		 * checkpoint RGVertex object to the checkpointVertexRoute list. Then we
-		 * retrieve the adjacency list for this RGVertex object from the
-		 * routeAdjacencyListMap hash table. This adjacency list would have two
-		 * other checkpoint RGVertex objects in it, but one of them has already
-		 * been added to the checkpointVertexRoute list, so we add the other
-		 * checkpoint RGVertex object to the checkpointVertexRoute list and then
-		 * repeat from that checkpoint RGVertex object, and so on, until all the
-		 * checkpoint RGVertex objects have been added to the
-		 * checkpointVertexRoute list. In effect, we are traversing along the
-		 * greedy checkpoint route subgraph.
-		 */
-		while (checkpointVertexRoute.size() < checkpointVertices.size()) {
-			ArrayList<RGVertex> adjacencyList = routeAdjacencyListMap
-					.get(currentVertex);
-			for (RGVertex nextVertex : adjacencyList) {
-				if (nextVertex != previousVertex) {
-					checkpointVertexRoute.add(nextVertex);
-					previousVertex = currentVertex;
-					currentVertex = nextVertex;
-					break;
-				}
+		if (nextRouteCell != null && currentCell == nextRouteCell) {
+			currentRouteCell = nextRouteCell;
+			nextRouteCell = null;
+			currentStepIndex++;
+			if (++currentRunStepsTaken == (stepRuns[2 * currentRunIndex + 1] & 0xFF)) {
+				currentRunIndex++;
+				currentRunStepsTaken = 0;
 			}
 		}
+	}
 
-		return checkpointVertexRoute;
+	/*
+	 * Moves the cursor to step currentStepIndex of the runs of currentPlan.
+	 * This is only needed when the route is switched, so it does not matter
+	 * that it goes through the runs from the start.
+	 */
+	private void seekCurrentStep() {
+		byte[] stepRuns = currentPlan.stepRuns;
+		int stepsBeforeRun = 0;
+		int run = 0;
+		while (run < stepRuns.length / 2
+				&& stepsBeforeRun + (stepRuns[2 * run + 1] & 0xFF) <= currentStepIndex) {
+			stepsBeforeRun += stepRuns[2 * run + 1] & 0xFF;
+			run++;
+		}
+		currentRunIndex = run;
+		currentRunStepsTaken = currentStepIndex - stepsBeforeRun;
+		nextRouteCell = null;
 	}
 
 	/*
-	 * Sorts the elements in paths between the indices startIndex and endIndex
-	 * into ascending order of path weight using the merge sort algorithm.
+	 * Tests.
+	 */
+
+	/*
+	 * Uses the Held-Karp dynamic programming algorithm to generate the optimal
+	 * ordered array of checkpoint indices, which starts at
+	 * startCheckpointIndex, visits all the checkpoints, and finishes at
+	 * endCheckpointIndex. The checkpoints other than the endpoints (the inner
+	 * checkpoints) are numbered 0 to m-1 and every subset of them is
+	 * represented by an int bitmask. For each subset and each inner checkpoint
+	 * j in it, the weight of the shortest route that starts at the start
+	 * checkpoint, visits exactly the checkpoints in the subset and finishes at
+	 * j is found from the same values for the subset without j. This takes
+	 * O(2^mm) time rather than the O(m!) time of trying every permutation.
 	 */
-	private void mergeSort(List<RGPath> paths, int startIndex, int endIndex) {
+	private int[] generateOptimalCheckpointVertexRoute(
+			int startCheckpointIndex, int endCheckpointIndex) {
+
 		/*
-		 * Paths is the main list of RGPath objects to be sorted. startIndex is
-		 * the index of the first RGPath object in the sublist to be sorted.
-		 * endIndex is the index of the last RGPath object in the sublist.
+		 * If the start and end RGVertex objects dont represent checkpoints,
+		 * or there are too many checkpoints for the table below to fit in
+		 * memory, then this method cannot be used. This should not happen and
+		 * must indicate a logical error elsewhere in the code, and a try-catch
+		 * block would not be useful as the issue cannot be fixed without
+		 * changing the code. Throwing a runtime exception here would make
+		 * debugging and tracing the error easier.
 		 */
+		if (startCheckpointIndex < 0 || endCheckpointIndex < 0
+				|| checkpointVertices.size() > GameConstants.MAX_OPTIMAL_ROUTE_CHECKPOINTS) {
+			throw new RuntimeException();
+		}
 
 		/*
-		 * If startIndex is equal to endIndex  1, then that means the sublist
-		 * to be sorted is of length 1 and a list of length 1 is already sorted,
-		 * and so merge sort does not need to be used to sort it.
+		 * The checkpoint indices of the inner checkpoints, indexed by their
+		 * inner index.
 		 */
-		if (startIndex < endIndex - 1) {
-			/*
-			 * midIndex is the middle index of the sublist. It is used to split
-			 * the sublist in half into two smaller sublists.
-			 */
-			int midIndex = (startIndex + endIndex) / 2;
-
-			/*
-			 * Recursively sorts the first half of the sublist.
-			 */
-			mergeSort(paths, startIndex, midIndex);
-
-			/*
-			 * Recursively sorts the second half of the sublist.
-			 */
-			mergeSort(paths, midIndex, endIndex);
+		final int[] innerCheckpoints = new int[checkpointVertices.size() - 2];
+		int numInnerCheckpoints = 0;
+		for (int i = 0; i < checkpointVertices.size(); i++) {
+			if (i != startCheckpointIndex && i != endCheckpointIndex) {
+				innerCheckpoints[numInnerCheckpoints++] = i;
+			}
+		}
+		final int m = numInnerCheckpoints;
+		if (m == 0) {
+			return new int[] { startCheckpointIndex, endCheckpointIndex };
+		}
 
-			/*
-			 * Combines the two sorted halves of the sublist together to form a
-			 * sorted sublist.
-			 */
-			merge(paths, startIndex, midIndex, endIndex);
+		/*
+		 * The weights between the inner checkpoints are copied into a dense
+		 * m x m array (and the weights from the start checkpoint and to the end
+		 * checkpoint into their own arrays) so that the inner loops below only
+		 * do sequential array accesses.
+		 */
+		final double[] innerWeights = new double[m * m];
+		double[] startWeights = new double[m];
+		double[] endWeights = new double[m];
+		for (int i = 0; i < m; i++) {
+			startWeights[i] = getShortestPathWeightBetweenCheckpoints(
+					startCheckpointIndex, innerCheckpoints[i]);
+			endWeights[i] = getShortestPathWeightBetweenCheckpoints(
+					innerCheckpoints[i], endCheckpointIndex);
+			for (int j = 0; j < m; j++) {
+				innerWeights[i * m + j] = getShortestPathWeightBetweenCheckpoints(
+						innerCheckpoints[i], innerCheckpoints[j]);
+			}
 		}
-	}
 
-	/*
-	 * Used in the mergeSort method to systematically combine the two sorted
-	 * halves of a sublist to form a fully sorted sublist.
-	 */
-	private void merge(List<RGPath> paths, int startIndex, int midIndex,
-			int endIndex) {
 		/*
-		 * These lists are created to temporarily store the two store halves of
-		 * the sublist
+		 * routeWeights[subset * m + j] is the weight of the shortest route
+		 * that starts at the start checkpoint, visits exactly the inner
+		 * checkpoints in subset and finishes at inner checkpoint j (which must
+		 * be in subset). Entries for which j is not in subset are never read.
 		 */
-		List<RGPath> leftHalf = new ArrayList<RGPath>();
-		List<RGPath> rightHalf = new ArrayList<RGPath>();
-		for (int i = startIndex; i < midIndex; i++) {
-			leftHalf.add(paths.get(i));
-		}
-		for (int i = midIndex; i < endIndex; i++) {
-			rightHalf.add(paths.get(i));
+		final double[] routeWeights = new double[(1 << m) * m];
+		for (int j = 0; j < m; j++) {
+			routeWeights[(1 << j) * m + j] = startWeights[j];
 		}
 
 		/*
-		 * leftIndex is used to keep track of the first index of the first half
-		 * of the sublist whose RGPath object has not been inserted into the
-		 * main list yet. rightIndex is used for the same purpose for the second
-		 * half.
+		 * The value for a subset only depends on the values for subsets with
+		 * one fewer inner checkpoint, so all the subsets of the same size (a
+		 * layer) can be worked out at the same time. The subsets are sorted by
+		 * size (using a counting sort on the number of set bits) so that each
+		 * layer is a contiguous range of the subsets array, and each layer is
+		 * then processed in parallel.
 		 */
-		int leftIndex = 0;
-		int rightIndex = 0;
+		final int[] subsets = new int[1 << m];
+		int[] layerStarts = new int[m + 2];
+		for (int subset = 0; subset < (1 << m); subset++) {
+			layerStarts[Integer.bitCount(subset) + 1]++;
+		}
+		for (int size = 1; size <= m + 1; size++) {
+			layerStarts[size] += layerStarts[size - 1];
+		}
+		int[] layerPositions = Arrays.copyOf(layerStarts, m + 1);
+		for (int subset = 0; subset < (1 << m); subset++) {
+			subsets[layerPositions[Integer.bitCount(subset)]++] = subset;
+		}
+		for (int size = 2; size <= m; size++) {
+			IntStream.range(layerStarts[size], layerStarts[size + 1])
+					.parallel().forEach(new IntConsumer() {
+						@Override
+						public void accept(int subsetIndex) {
+							int subset = subsets[subsetIndex];
+							for (int j = 0; j < m; j++) {
+								if ((subset & (1 << j)) != 0) {
+									routeWeights[subset * m + j] = getMinRouteWeightThrough(
+											routeWeights, innerWeights, m,
+											subset ^ (1 << j), j, null);
+								}
+							}
+						}
+					});
+		}
 
 		/*
-		 * We iterate over paths from startIndex to endIndex (the indices
-		 * bounding the sublist), adding RGPath objects from the two halves of
-		 * the sublist. insertIndex is used to keep track of the next index of
-		 * the main list into which the RGPath object with the smallest weight
-		 * from the two halves of the sublist will be inserted.
+		 * The optimal route finishes by going from the last inner checkpoint
+		 * to the end checkpoint, so we choose the last inner checkpoint that
+		 * minimises the total weight.
 		 */
-		for (int insertIndex = startIndex; insertIndex < endIndex; insertIndex++) {
+		int allInnerCheckpoints = (1 << m) - 1;
+		int lastInnerCheckpoint = 0;
+		for (int j = 1; j < m; j++) {
+			if (routeWeights[allInnerCheckpoints * m + j] + endWeights[j] < routeWeights[allInnerCheckpoints
+					* m + lastInnerCheckpoint]
+					+ endWeights[lastInnerCheckpoint]) {
+				lastInnerCheckpoint = j;
+			}
+		}
 
-			/*
-			 * The selection structure below checks which half of the sublist
-			 * (out of leftHalf and rightHalf) has the smallest weight RGPath
-			 * object at the front (because the sublists are sorted, only the
-			 * front has to be checked) and then inserts it into the next index
-			 * of the main list. If leftIndex has exceeded the length of
-			 * leftHalf list, then all the elements of the leftHalf list have
-			 * been inserted into the main list, and so we can insert the rest
-			 * of the rightHalf list into the main list without having to
-			 * compare anything. The same is true for when rightIndex exceeds
-			 * the rightHalf list.
-			 */
-			if (leftIndex < leftHalf.size()
-					&& (rightIndex >= rightHalf.size() || leftHalf.get(
-							leftIndex).getTotalWeight() < rightHalf.get(
-							rightIndex).getTotalWeight())) {
-				paths.set(insertIndex, leftHalf.get(leftIndex));
-				leftIndex++;
-			} else {
-				paths.set(insertIndex, rightHalf.get(rightIndex));
-				rightIndex++;
+		/*
+		 * The optimal route is reconstructed backwards from the end
+		 * checkpoint. Rather than storing the previous inner checkpoint for
+		 * every entry of the table, it is found again for each of the m
+		 * entries on the optimal route by repeating the minimisation.
+		 */
+		int[] route = new int[m + 2];
+		route[0] = startCheckpointIndex;
+		route[m + 1] = endCheckpointIndex;
+		int subset = allInnerCheckpoints;
+		int[] previousInnerCheckpoint = new int[1];
+		for (int position = m; position >= 1; position--) {
+			route[position] = innerCheckpoints[lastInnerCheckpoint];
+			subset ^= 1 << lastInnerCheckpoint;
+			if (subset != 0) {
+				getMinRouteWeightThrough(routeWeights, innerWeights, m, subset,
+						lastInnerCheckpoint, previousInnerCheckpoint);
+				lastInnerCheckpoint = previousInnerCheckpoint[0];
 			}
 		}
+		return route;
 	}
 
 	/*
-	 * Returns the result of performing the 2-opt tour improvement heuristic on
-	 * a given ordered list of RGVertex objects, representing the route of super
-	 * Cell objects that the AI player should visit, which starts at
-	 * startVertex, visits all the All the checkpoint RGVertex objects, and
-	 * finishes at endVertex.
+	 * Used in the generateOptimalCheckpointVertexRoute method. Returns the
+	 * weight of the shortest route that starts at the start checkpoint, visits
+	 * exactly the inner checkpoints in subset and then goes to inner checkpoint
+	 * j (which is not in subset). If argMin is not null, the inner checkpoint
+	 * in subset that is visited just before j on this route is put into
+	 * argMin[0].
 	 */
-	private List<RGVertex> twoOpt(List<RGVertex> checkpointVertexRoute) {
+	private static double getMinRouteWeightThrough(double[] routeWeights,
+			double[] innerWeights, int m, int subset, int j, int[] argMin) {
+		double minWeight = Double.MAX_VALUE;
+		for (int p = 0; p < m; p++) {
+			if ((subset & (1 << p)) != 0) {
+				double weight = routeWeights[subset * m + p]
+						+ innerWeights[p * m + j];
+				if (weight < minWeight) {
+					minWeight = weight;
+					if (argMin != null) {
+						argMin[0] = p;
+					}
+				}
+			}
+		}
+		return minWeight;
+	}
+
+	public double calculatePercentageDifferenceBetweenTwoOptAndOptimal(
+			RGVertex startVertex, RGVertex endVertex) {
+		int startCheckpointIndex = startVertex.getCheckpointIndex();
+		int endCheckpointIndex = endVertex.getCheckpointIndex();
+
 		/*
-		 * This list stores the route of checkpoint RGVertex objects as it is
-		 * being improved. A copy of checkpointVertexRoute is created so that it
-		 * does not get directly altered.
+		 * The greedy checkpoint route.
 		 */
-		List<RGVertex> improvedCheckpointVertexRoute = new ArrayList<RGVertex>(
-				checkpointVertexRoute);
-
-		double minChange;
+		int[] greedyCheckpointRoute = generateGreedyCheckpointVertexRoute(
+				startCheckpointIndex, endCheckpointIndex);
 
 		/*
-		 * In every iteration of the following loop, we select the two pairs of
-		 * adjacent checkpoint RGVertex objects (where adjacent means next to
-		 * each other in the improvedCheckpointVertexRoute list) such that
-		 * performing a 2-opt swap on them decreases the total weight of the
-		 * route the most. We then perform the 2-opt swap and repeat until no
-		 * 2-opt swap can be made that decreases the total weight of the route.
+		 * The checkpoint route after the twoOpt method has been applied to the
+		 * above route.
 		 */
-		do {
-			minChange = 0;
-			int minIndex1 = -1;
-			int minIndex2 = -1;
+		int[] twoOptCheckpointRoute = twoOpt(greedyCheckpointRoute);
 
-			/*
-			 * To select the two pairs of adjacent checkpoint RGVertex objects
-			 * to perform a 2-opt swap on, only two checkpoint RGVertex objects
-			 * need to be selected. The following nested For loop is used to
-			 * find two different checkpoint RGVertex objects (checkpointVertexB
-			 * and checkpointVertexC) in the improvedCheckpointVertexRoute list
-			 * (that are not the endpoint checkpoint RGVertex objects, which are
-			 * at the first and last index of the list). The other two
-			 * checkpoint RGVertex objects (checkpointVertexA and
-			 * checkpointVertexD are found from subtracting 1 from the index of
-			 * checkpointVertexB and adding 1 to the index of checkpointVertexC
-			 * respectively. At any point during the iterations, the indices of
-			 * the two different checkpoint RGVertex objects (checkpointVertexB
-			 * and checkpointVertexC) for which a 2-opt swap gives the least
-			 * weight is stored in the minIndex1 and minIndex2 variables. At the
-			 * end of the loop, if any 2-opt swap would reduce the weight of the
-			 * path, a 2-opt swap is performed for these two indices using the
-			 * twoOptSwap method. The lower bound for index1 and index2 is 1 and
-			 * the upper bound is the number of elements in
-			 * checkpointVertexRoute - 2 because we do not want to change the
-			 * position of the start and end RGVertex objects.
-			 */
-			for (int index1 = 1; index1 < checkpointVertexRoute.size() - 2; index1++) {
-				for (int index2 = index1 + 1; index2 < checkpointVertexRoute
-						.size() - 1; index2++) {
-					RGVertex checkpointVertexA = improvedCheckpointVertexRoute
-							.get(index1 - 1);
-					RGVertex checkpointVertexB = improvedCheckpointVertexRoute
-							.get(index1);
-					RGVertex checkpointVertexC = improvedCheckpointVertexRoute
-							.get(index2);
-					RGVertex checkpointVertexD = improvedCheckpointVertexRoute
-							.get(index2 + 1);
-					double previousWeight = getShortestPathWeightBetweenCheckpointVertices(
-							checkpointVertexA, checkpointVertexB)
-							+ getShortestPathWeightBetweenCheckpointVertices(
-									checkpointVertexC, checkpointVertexD);
-					double afterWeight = getShortestPathWeightBetweenCheckpointVertices(
-							checkpointVertexA, checkpointVertexC)
-							+ getShortestPathWeightBetweenCheckpointVertices(
-									checkpointVertexB, checkpointVertexD);
-					double change = afterWeight - previousWeight;
-					if (change < minChange) {
-						minChange = change;
-						minIndex1 = index1;
-						minIndex2 = index2;
-					}
-				}
-			}
+		/*
+		 * The best possible checkpoint route computed using the Held-Karp
+		 * algorithm.
+		 */
+		int[] optimalCheckpointRoute = generateOptimalCheckpointVertexRoute(
+				startCheckpointIndex, endCheckpointIndex);
 
-			/*
-			 * Performs a 2-opt swap if there are two pairs of adjacent
-			 * checkpoint RGVertex objects for which a 2-opt swap would decrease
-			 * the total weight of the route. If minChange is 0, then no such
-			 * pairs exist so we terminate the loop.
-			 */
-			if (minChange != 0) {
-				twoOptSwap(improvedCheckpointVertexRoute, minIndex1, minIndex2);
-			}
-		} while (minChange != 0);
-		return improvedCheckpointVertexRoute;
-	}
+		/*
+		 * The weight of the checkpoint route generated using the greedy
+		 * algorithm and 2-opt algorithm.
+		 */
+		double twoOptWeight = calculateTotalCheckpointVertexRouteWeight(twoOptCheckpointRoute);
 
-	/*
-	 * Used in the twoOpt method to perform a 2-opt swap on
-	 * checkpointVertexRoute. The indices in the parameters represent the
-	 * position of the four checkpoint RGVertex objects in the list (the two
-	 * checkpoint RGVertex objects at the indices startIndex and endIndex, the
-	 * RGVertex object at index startIndex-1, and the RGVertex object at index
-	 * endIndex+1) that are involved in the 2-opt swap.
-	 */
-	private void twoOptSwap(List<RGVertex> checkpointVertexRoute,
-			int startIndex, int endIndex) {
+		/*
+		 * The weight of the optimal checkpoint route.
+		 */
+		double optimalWeight = calculateTotalCheckpointVertexRouteWeight(optimalCheckpointRoute);
 
 		/*
-		 * Performs a 2-opt swap by reversing the order of the
-		 * checkpointVertexRoute list between indices startIndex and endIndex
-		 * inclusive by swapping the elements at indices startIndex and
-		 * endIndex, the elements at startIndex + 1 and endIndex  1, and so on
-		 * until all the required elements have been swapped.
+		 * The percentage by which twoOptWeight is less than optimalWeight is
+		 * returned.
 		 */
-		for (int i = 0; i < (endIndex - startIndex + 1) / 2; i++) {
-			Collections.swap(checkpointVertexRoute, startIndex + i, endIndex
-					- i);
-		}
+		return 100 * (twoOptWeight - optimalWeight) / optimalWeight;
 	}
 
-	/*
-	 * Inherited and overridden from the Player class (polymorphism). It is
-	 * called every game cycle. It uses the cellRoute list and and the
-	 * currentCellIndex variable to determine the next cell to which the AI
-	 * player must move and then attempts to change direction if needed. Updates
-	 * currentCellIndex once it moves to the next cell.
-	 */
-	@Override
-	public void update() {
-		Cell nextRouteCell = null;
+	public double calculatePercentageDifferenceBetweenImprovedAndOptimal(
+			RGVertex startVertex, RGVertex endVertex) {
+		int startCheckpointIndex = startVertex.getCheckpointIndex();
+		int endCheckpointIndex = endVertex.getCheckpointIndex();
 
 		/*
-		 * Once currentCellIndex = cellRoute.size() - 1, the AIPlayer object has
-		 * reached the final Cell object so no more changes of directions are
-		 * needed.
+		 * The weight of the checkpoint route generated using the greedy
+		 * algorithm and improved by a RouteImprover object.
 		 */
-		if (currentCellIndex < cellRoute.size() - 1) {
-			Cell currentRouteCell = cellRoute.get(currentCellIndex);
-			nextRouteCell = cellRoute.get(currentCellIndex + 1);
-
-			/*
-			 * If currentRouteCell = nextRouteCell, then that means calling
-			 * getDirectionToNeighbouringCell will result in an error (as a Cell
-			 * object does not neighbour itself).
-			 */
-			if (currentRouteCell != nextRouteCell) {
+		double improvedWeight = calculateTotalCheckpointVertexRouteWeight(new RouteImprover(
+				generateGreedyCheckpointVertexRoute(startCheckpointIndex,
+						endCheckpointIndex)).improve());
 
-				/*
-				 * The target direction required to move from currentCell to
-				 * nextRouteCell is retrieved and the inherited changeDirection
-				 * method is called to change the AIPlayer object's direction to
-				 * this target direction if required.
-				 */
-				Direction targetDirection = currentRouteCell
-						.getDirectionToNeighbouringCell(nextRouteCell);
-				if (targetDirection != currentDirection) {
-					changeDirection(targetDirection);
-				}
-			}
-		}
 		/*
-		 * Calls the superclass method (which handles the moving and queuing of
-		 * directions).
+		 * The weight of the optimal checkpoint route.
 		 */
-		super.update();
+		double optimalWeight = calculateTotalCheckpointVertexRouteWeight(generateOptimalCheckpointVertexRoute(
+				startCheckpointIndex, endCheckpointIndex));
 
 		/*
-		 * Updates currentCellIndex once the AIPlayer has successfully moved to
-		 * the next Cell object in the route.
+		 * The percentage by which improvedWeight is greater than optimalWeight
+		 * is returned.
 		 */
-		if (currentCell == nextRouteCell) {
-			currentCellIndex++;
-		}
+		return 100 * (improvedWeight - optimalWeight) / optimalWeight;
 	}
 
-	/*
-	 * Tests.
-	 */
-
-	private List<RGVertex> generateOptimalCheckpointVertexRoute(
+	public double calculatePercentageDifferenceBetweenOptimalAndLowerBound(
 			RGVertex startVertex, RGVertex endVertex) {
+		int startCheckpointIndex = startVertex.getCheckpointIndex();
+		int endCheckpointIndex = endVertex.getCheckpointIndex();
 
 		/*
-		 * The list of all the checkpoint RGVertex objects in the reduced graph.
+		 * The weight of the optimal checkpoint route, and the lower bound on
+		 * it found using the weight of the route that the AI is following.
 		 */
-		List<RGVertex> checkpointVertices = new ArrayList<RGVertex>(
-				reducedGraph.getCheckpointVertices());
+		double optimalWeight = calculateTotalCheckpointVertexRouteWeight(generateOptimalCheckpointVertexRoute(
+				startCheckpointIndex, endCheckpointIndex));
+		double lowerBound = calculateCheckpointVertexRouteLowerBound(
+				startCheckpointIndex, endCheckpointIndex,
+				calculateTotalCheckpointVertexRouteWeight(currentPlan.checkpointRoute));
 
 		/*
-		 * Remove the start and end RGVertex objects as these should not change
-		 * position in the permutations.
+		 * The percentage by which lowerBound is less than optimalWeight is
+		 * returned. This will be negative if lowerBound is greater than
+		 * optimalWeight, which would mean that it is not actually a lower
+		 * bound.
 		 */
-		checkpointVertices.remove(startVertex);
-		checkpointVertices.remove(endVertex);
+		return 100 * (optimalWeight - lowerBound) / optimalWeight;
+	}
 
+	public double calculatePercentageDifferenceBetweenTwoOptAndImproved(
+			RGVertex startVertex, RGVertex endVertex) {
 		/*
-		 * Iterate over all the possible permutations of the remaining
-		 * checkpoint RGVertex objects and find the one resulting in a route
-		 * with the minimum total weight.
+		 * The greedy checkpoint route.
 		 */
-		double minWeight = Double.MAX_VALUE;
-		List<RGVertex> minPerm = null;
-		for (List<RGVertex> perm : Collections2
-				.permutations(checkpointVertices)) {
-			/*
-			 * The weight is calculated taking into account the startVertex and
-			 * endVertex.
-			 */
-			double weight = calculateTotalCheckpointVertexRouteWeight(perm,
-					startVertex, endVertex);
-			if (weight < minWeight) {
-				minPerm = perm;
-				minWeight = weight;
-			}
-		}
+		int[] greedyCheckpointRoute = generateGreedyCheckpointVertexRoute(
+				startVertex.getCheckpointIndex(),
+				endVertex.getCheckpointIndex());
 
 		/*
-		 * The optimal checkpoint route list is returned.
+		 * The weights of the greedy checkpoint route after the twoOpt method
+		 * has been applied to it and after it has been improved by a
+		 * RouteImprover object.
 		 */
-		List<RGVertex> route = new ArrayList<RGVertex>();
-		route.add(startVertex);
-		route.addAll(minPerm);
-		route.add(endVertex);
-		return route;
-	}
+		double twoOptWeight = calculateTotalCheckpointVertexRouteWeight(twoOpt(greedyCheckpointRoute));
+		double improvedWeight = calculateTotalCheckpointVertexRouteWeight(new RouteImprover(
+				greedyCheckpointRoute).improve());
 
-	private double calculatePercentageDifferenceBetweenTwoOptAndOptimal(
-			RGVertex startVertex, RGVertex endVertex) {
 		/*
-		 * The greedy checkpoint route list.
+		 * The percentage by which improvedWeight is less than twoOptWeight is
+		 * returned. This will be negative if improvedWeight is greater than
+		 * twoOptWeight.
 		 */
-		List<RGVertex> greedyCheckpointVertexRoute = generateGreedyCheckpointVertexRoute(
-				startVertex, endVertex);
+		return 100 * (twoOptWeight - improvedWeight) / twoOptWeight;
+	}
 
+	public double calculatePercentageDifferenceBetweenImprovedAndAnnealed(
+			RGVertex startVertex, RGVertex endVertex, long seed) {
 		/*
-		 * The checkpoint route list after the twoOpt method has been applied to
-		 * the above route.
+		 * The weights of the greedy checkpoint route after it has been
+		 * improved by a RouteImprover object and of the route found by the
+		 * parallel simulated annealing solver.
 		 */
-		List<RGVertex> twoOptCheckpointVertexRoute = twoOpt(greedyCheckpointVertexRoute);
+		double improvedWeight = calculateTotalCheckpointVertexRouteWeight(new RouteImprover(
+				generateGreedyCheckpointVertexRoute(
+						startVertex.getCheckpointIndex(),
+						endVertex.getCheckpointIndex())).improve());
+		double annealedWeight = calculateTotalCheckpointVertexRouteWeight(generateAnnealedCheckpointVertexRoute(
+				startVertex.getCheckpointIndex(),
+				endVertex.getCheckpointIndex(), seed));
 
 		/*
-		 * The best possible checkpoint route computed using brute force.
+		 * The percentage by which annealedWeight is less than improvedWeight
+		 * is returned. This will be negative if annealedWeight is greater than
+		 * improvedWeight.
 		 */
-		List<RGVertex> optimalCheckpointVertexRoute = generateOptimalCheckpointVertexRoute(
-				startVertex, endVertex);
+		return 100 * (improvedWeight - annealedWeight) / improvedWeight;
+	}
 
+	public boolean isAnnealedCheckpointVertexRouteDeterministic(
+			RGVertex startVertex, RGVertex endVertex, long seed) {
 		/*
-		 * The weight of the checkpoint route generated using the greedy
-		 * algorithm and 2-opt algorithm.
+		 * Running the solver twice with the same seed should give exactly the
+		 * same route, however the chains happen to be scheduled.
 		 */
-		double twoOptWeight = calculateTotalCheckpointVertexRouteWeight(twoOptCheckpointVertexRoute);
+		return Arrays.equals(generateAnnealedCheckpointVertexRoute(
+				startVertex.getCheckpointIndex(),
+				endVertex.getCheckpointIndex(), seed),
+				generateAnnealedCheckpointVertexRoute(
+						startVertex.getCheckpointIndex(),
+						endVertex.getCheckpointIndex(), seed));
+	}
 
+	public double calculatePercentageDifferenceBetweenImprovedAndSpatial(
+			RGVertex startVertex, RGVertex endVertex) {
 		/*
-		 * The weight of the optimal checkpoint route.
+		 * The weights of the greedy checkpoint route and of the route found by
+		 * a SpatialRoutePlanner object (which is what would be used if the maze
+		 * were too big for a distance matrix), each after it has been improved by a RouteImprover
+		 * object.
 		 */
-		double optimalWeight = calculateTotalCheckpointVertexRouteWeight(optimalCheckpointVertexRoute);
+		double improvedWeight = calculateTotalCheckpointVertexRouteWeight(new RouteImprover(
+				generateGreedyCheckpointVertexRoute(
+						startVertex.getCheckpointIndex(),
+						endVertex.getCheckpointIndex())).improve());
+		double spatialWeight = calculateTotalCheckpointVertexRouteWeight(new RouteImprover(
+				new SpatialRoutePlanner(reducedGraph)
+						.generateCheckpointVertexRoute(
+								startVertex.getCheckpointIndex(),
+								endVertex.getCheckpointIndex())).improve());
 
 		/*
-		 * The percentage by which twoOptWeight is less than optimalWeight is
-		 * returned.
+		 * The percentage by which spatialWeight is greater than
+		 * improvedWeight is returned. This will be negative if spatialWeight
+		 * is less than improvedWeight.
 		 */
-		return 100 * (twoOptWeight - optimalWeight) / optimalWeight;
+		return 100 * (spatialWeight - improvedWeight) / improvedWeight;
 	}
 
 	public double calculatePercentageDropInWeightAfterTwoOpt(
 			RGVertex startVertex, RGVertex endVertex) {
 		/*
-		 * The greedy checkpoint route list.
+		 * The greedy checkpoint route.
 		 */
-		List<RGVertex> greedyCheckpointVertexRoute = generateGreedyCheckpointVertexRoute(
-				startVertex, endVertex);
+		int[] greedyCheckpointRoute = generateGreedyCheckpointVertexRoute(
+				startVertex.getCheckpointIndex(),
+				endVertex.getCheckpointIndex());
 
 		/*
-		 * The checkpoint route list after the twoOpt method has been applied to
-		 * the above route.
+		 * The checkpoint route after the twoOpt method has been applied to the
+		 * above route.
 		 */
-		List<RGVertex> twoOptCheckpointVertexRoute = twoOpt(greedyCheckpointVertexRoute);
+		int[] twoOptCheckpointRoute = twoOpt(greedyCheckpointRoute);
 
 		/*
-		 * The weight of the greedy checkpoint route list before the twoOpt
-		 * method was applied.
+		 * The weight of the greedy checkpoint route before the twoOpt method
+		 * was applied.
 		 */
-		double beforeWeight = calculateTotalCheckpointVertexRouteWeight(greedyCheckpointVertexRoute);
+		double beforeWeight = calculateTotalCheckpointVertexRouteWeight(greedyCheckpointRoute);
 
 		/*
-		 * The weight of the greedy checkpoint route list after the twoOpt
-		 * method was applied.
+		 * The weight of the greedy checkpoint route after the twoOpt method was
+		 * applied.
 		 */
-		double afterWeight = calculateTotalCheckpointVertexRouteWeight(twoOptCheckpointVertexRoute);
+		double afterWeight = calculateTotalCheckpointVertexRouteWeight(twoOptCheckpointRoute);
 
 		/*
 		 * The percentage by which afterWeight is less than beforeWeight is
@@ -1255,140 +3093,178 @@ public class AIPlayer extends Player {
 		return 100 * (beforeWeight - afterWeight) / beforeWeight;
 	}
 
-	public boolean isMergeSortFunctional() {
+	public boolean isCheckpointPairHeapFunctional() {
 
 		/*
-		 * This list contains all the RGPath objects that need to be sorted in
-		 * the generateGreedyCheckpointVertexRoute method.
+		 * This heap contains all the encoded checkpoint pairs, as none of the
+		 * checkpoint indices are excluded.
 		 */
-		List<RGPath> paths = new ArrayList<RGPath>(
-				shortestPathsBetweenCheckpointVertices.values());
-
-		mergeSort(paths, 0, paths.size());
+		int numCheckpoints = checkpointVertices.size();
+		CheckpointPairHeap pairHeap = new CheckpointPairHeap(-1, -1);
 
 		/*
-		 * Iterate over the paths list, checking if it is sorted in ascending
-		 * order of weight after the mergeSort method has been applied.
+		 * Take every pair out of the heap, checking that they come out in
+		 * ascending order of weight and that every pair comes out exactly
+		 * once.
 		 */
-		for (int i = 0; i < paths.size() - 1; i++) {
+		boolean[] seen = new boolean[numCheckpoints * numCheckpoints];
+		int numPairs = 0;
+		double previousWeight = Double.NEGATIVE_INFINITY;
+		while (!pairHeap.isEmpty()) {
+			int pair = pairHeap.poll();
+			double weight = getShortestPathWeightBetweenCheckpoints(pair
+					/ numCheckpoints, pair % numCheckpoints);
 
 			/*
-			 * If the next RGPath object in the list has a lower weight than the
-			 * current one, then the list is not sorted in ascending order of
-			 * weight, so return false.
+			 * If this pair has a lower weight than the previous one, or has
+			 * already come out of the heap, or is not a valid pair, then the
+			 * heap is not working, so return false.
 			 */
-			if (paths.get(i).getTotalWeight() > paths.get(i + 1)
-					.getTotalWeight()) {
+			if (weight < previousWeight || seen[pair]
+					|| pair / numCheckpoints >= pair % numCheckpoints) {
 				return false;
 			}
+			seen[pair] = true;
+			previousWeight = weight;
+			numPairs++;
 		}
 
 		/*
-		 * If the program reaches here, then the list is in ascending order of
-		 * weight, so return true.
+		 * If the program reaches here, then the pairs came out in ascending
+		 * order of weight, so return true if all of them came out.
 		 */
-		return true;
+		return numPairs == numCheckpoints * (numCheckpoints - 1) / 2;
 	}
 
-	private List<RGVertex> generateRandomCheckpointVertexRoute(
-			RGVertex startVertex, RGVertex endVertex) {
+	public boolean isStepRunRouteValid() {
+		RoutePlan plan = currentPlan;
+		int[] checkpointRoute = plan.checkpointRoute;
+		byte[] stepRuns = plan.stepRuns;
+
 		/*
-		 * If startVertex and endVertex dont represent checkpoints, then the
-		 * algorithm wont work as the ShortestPathsBetweenCheckpointVertices
-		 * hash table would not have keys that include the StartVertex and
-		 * EndVertex. This should not happen and must indicate a logical error
-		 * elsewhere in the code, and a try-catch block would not be useful as
-		 * the issue cannot be fixed without changing the code. Throwing a
-		 * runtime exception here would make debugging and tracing the error
-		 * easier.
+		 * Follow the runs from the start checkpoint, one step at a time. Every
+		 * run must have at least one step, and every step must move into a
+		 * neighbouring Cell object (getNeighbouringCell returns null if there
+		 * is a wall in the way).
 		 */
-		if (!startVertex.getSuperCell().isCheckpoint()
-				|| !endVertex.getSuperCell().isCheckpoint()) {
-			throw new RuntimeException();
-		}
+		Cell cell = checkpointVertices.get(checkpointRoute[0]).getSuperCell();
+		int numSteps = 0;
+		int position = 0;
+		for (int run = 0; run < stepRuns.length / 2; run++) {
+			if ((stepRuns[2 * run + 1] & 0xFF) == 0) {
+				return false;
+			}
+			for (int step = 0; step < (stepRuns[2 * run + 1] & 0xFF); step++) {
 
-		List<RGVertex> checkpointVertices = reducedGraph
-				.getCheckpointVertices();
-		List<RGVertex> checkpointVertexRoute = new ArrayList<RGVertex>(
-				checkpointVertices);
+				/*
+				 * Every checkpoint reached after numSteps steps must be at
+				 * the Cell object that the AI is at then.
+				 */
+				while (position < checkpointRoute.length
+						&& plan.checkpointStepIndices[position] == numSteps) {
+					if (checkpointVertices.get(checkpointRoute[position])
+							.getSuperCell() != cell) {
+						return false;
+					}
+					position++;
+				}
+				cell = cell.getNeighbouringCell(DIRECTIONS[stepRuns[2 * run]]);
+				if (cell == null) {
+					return false;
+				}
+				numSteps++;
+			}
+		}
+		while (position < checkpointRoute.length
+				&& plan.checkpointStepIndices[position] == numSteps) {
+			if (checkpointVertices.get(checkpointRoute[position])
+					.getSuperCell() != cell) {
+				return false;
+			}
+			position++;
+		}
 
 		/*
-		 * Randomly shuffle the checkpointVertexRoute list to generate a
-		 * randomly ordered checkpoint route.
+		 * If the program reaches here, then the route is made of valid steps,
+		 * so return true if it reaches every checkpoint in order, has the
+		 * number of steps that it says it has, and finishes at the end
+		 * checkpoint.
 		 */
-		Collections.shuffle(checkpointVertexRoute,
-				Application.randomNumberGenerator);
+		return position == checkpointRoute.length && numSteps == plan.numSteps
+				&& cell == checkpointVertices.get(
+						checkpointRoute[checkpointRoute.length - 1])
+						.getSuperCell();
+	}
+
+	/*
+	 * Returns the average number of steps in each run of the route, which is
+	 * how many Cell references each pair of bytes in stepRuns replaces.
+	 */
+	public double calculateAverageStepsPerRun() {
+		return 2.0 * currentPlan.numSteps / currentPlan.stepRuns.length;
+	}
 
+	private int[] generateRandomCheckpointVertexRoute(
+			int startCheckpointIndex, int endCheckpointIndex) {
 		/*
-		 * Ensure that startVertex is the first element of the
-		 * checkpointVertexRoute list and that endVertex is the last element.
+		 * If the start and end RGVertex objects dont represent checkpoints,
+		 * then the algorithm wont work as the
+		 * shortestPathWeightsBetweenCheckpoints array would not have entries
+		 * for them. This should not happen and must indicate a logical error
+		 * elsewhere in the code, and a try-catch block would not be useful as
+		 * the issue cannot be fixed without changing the code. Throwing a
+		 * runtime exception here would make debugging and tracing the error
+		 * easier.
 		 */
-		Collections.swap(checkpointVertexRoute, 0,
-				checkpointVertexRoute.indexOf(startVertex));
-		Collections.swap(checkpointVertexRoute,
-				checkpointVertexRoute.size() - 1,
-				checkpointVertexRoute.indexOf(endVertex));
-
-		return checkpointVertexRoute;
-	}
+		if (startCheckpointIndex < 0 || endCheckpointIndex < 0) {
+			throw new RuntimeException();
+		}
 
-	private double calculateTotalCheckpointVertexRouteWeight(
-			List<RGVertex> checkpointVertexRouteExcludingEndpoints,
-			RGVertex startVertex, RGVertex endVertex) {
-		double totalWeight = 0;
+		int[] checkpointRoute = new int[checkpointVertices.size()];
+		for (int i = 0; i < checkpointRoute.length; i++) {
+			checkpointRoute[i] = i;
+		}
 
 		/*
-		 * Iterates over the checkpoint RGVertex objects in the
-		 * checkpointVertexRoute list, adding the shortest path weight between
-		 * each pair of consecutive checkpoint RGVertex objects in the list to
-		 * the totalWeight variable.
+		 * Randomly shuffle the checkpointRoute array (using the Fisher-Yates
+		 * shuffle) to generate a randomly ordered checkpoint route.
 		 */
-
-		for (int i = 0; i < checkpointVertexRouteExcludingEndpoints.size() - 1; i++) {
-			RGVertex currentVertex = checkpointVertexRouteExcludingEndpoints
-					.get(i);
-			RGVertex nextVertex = checkpointVertexRouteExcludingEndpoints
-					.get(i + 1);
-			totalWeight += getShortestPathWeightBetweenCheckpointVertices(
-					currentVertex, nextVertex);
+		for (int i = checkpointRoute.length - 1; i > 0; i--) {
+			swap(checkpointRoute, i,
+					Application.randomNumberGenerator.nextInt(i + 1));
 		}
 
 		/*
-		 * Adds the shortest path weight between startVertex and the second
-		 * RGVertex object in the checkpoint route to totalWeight. Also adds the
-		 * shortest path weight between endVertex and the second-last RGVertex
-		 * object in the checkpoint route to totalWeight
+		 * Ensure that the start checkpoint is the first element of the
+		 * checkpointRoute array and that the end checkpoint is the last
+		 * element.
 		 */
-		return totalWeight
-				+ getShortestPathWeightBetweenCheckpointVertices(
-						checkpointVertexRouteExcludingEndpoints.get(0),
-						startVertex)
-				+ getShortestPathWeightBetweenCheckpointVertices(
-						checkpointVertexRouteExcludingEndpoints.get(checkpointVertexRouteExcludingEndpoints
-								.size() - 1), endVertex);
+		swap(checkpointRoute, 0, indexOf(checkpointRoute, startCheckpointIndex));
+		swap(checkpointRoute, checkpointRoute.length - 1,
+				indexOf(checkpointRoute, endCheckpointIndex));
+
+		return checkpointRoute;
 	}
 
-	private double calculateTotalCheckpointVertexRouteWeight(
-			List<RGVertex> checkpointVertexRoute) {
-		double totalWeight = 0;
+	private static void swap(int[] array, int index1, int index2) {
+		int temp = array[index1];
+		array[index1] = array[index2];
+		array[index2] = temp;
+	}
 
-		/*
-		 * Iterates over the checkpoint RGVertex objects in the
-		 * checkpointVertexRoute list, adding the shortest path weight between
-		 * each pair of consecutive checkpoint RGVertex objects in the list to
-		 * the totalWeight variable.
-		 */
-		for (int i = 0; i < checkpointVertexRoute.size() - 1; i++) {
-			RGVertex currentVertex = checkpointVertexRoute.get(i);
-			RGVertex nextVertex = checkpointVertexRoute.get(i + 1);
-			totalWeight += getShortestPathWeightBetweenCheckpointVertices(
-					currentVertex, nextVertex);
+	private static int indexOf(int[] array, int value) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i] == value) {
+				return i;
+			}
 		}
-		return totalWeight;
+		return -1;
 	}
 
 	public double calculatePercentageDifferenceBetweenRandomWeightAndGreedyWeight(
 			RGVertex startVertex, RGVertex endVertex) {
+		int startCheckpointIndex = startVertex.getCheckpointIndex();
+		int endCheckpointIndex = endVertex.getCheckpointIndex();
 
 		/*
 		 * 100 randomly generated routes is a large enough sample size for the
@@ -1404,7 +3280,7 @@ public class AIPlayer extends Player {
 		 */
 		for (int i = 0; i < numRandomRoutes; i++) {
 			sumOfTotalWeights += calculateTotalCheckpointVertexRouteWeight(generateRandomCheckpointVertexRoute(
-					startVertex, endVertex));
+					startCheckpointIndex, endCheckpointIndex));
 		}
 
 		/*
@@ -1419,7 +3295,7 @@ public class AIPlayer extends Player {
 		 * algorithm.
 		 */
 		double greedyWeight = calculateTotalCheckpointVertexRouteWeight(generateGreedyCheckpointVertexRoute(
-				startVertex, endVertex));
+				startCheckpointIndex, endCheckpointIndex));
 
 		/*
 		 * The percentage by which greedyWeight is less than averageRandomWeight
@@ -1431,119 +3307,108 @@ public class AIPlayer extends Player {
 
 	public boolean isGreedyCheckpointVertexRouteValid(RGVertex startVertex,
 			RGVertex endVertex) {
-		/*
-		 * The list returned by the generateGreedyCheckpointVertexRoute method.
-		 */
-		List<RGVertex> greedyCheckpointVertexRoute = generateGreedyCheckpointVertexRoute(
-				startVertex, endVertex);
+		int startCheckpointIndex = startVertex.getCheckpointIndex();
+		int endCheckpointIndex = endVertex.getCheckpointIndex();
 
 		/*
-		 * The list containing all of the checkpoint RGVertex objects in the
-		 * reduced graph.
+		 * The array returned by the generateGreedyCheckpointVertexRoute method.
 		 */
-		List<RGVertex> checkpointVertices = reducedGraph
-				.getCheckpointVertices();
+		int[] greedyCheckpointRoute = generateGreedyCheckpointVertexRoute(
+				startCheckpointIndex, endCheckpointIndex);
 
 		/*
-		 * If the first and last RGVertex objects of the checkpoint route are
-		 * not startVertex and endVertex respectively, then the checkpoint route
-		 * is invalid.
+		 * If the first and last checkpoints of the checkpoint route are not
+		 * the start and end checkpoints respectively, then the checkpoint
+		 * route is invalid.
 		 */
-		if (!(greedyCheckpointVertexRoute.get(0) == startVertex && greedyCheckpointVertexRoute
-				.get(greedyCheckpointVertexRoute.size() - 1) == endVertex)) {
+		if (!(greedyCheckpointRoute[0] == startCheckpointIndex && greedyCheckpointRoute[greedyCheckpointRoute.length - 1] == endCheckpointIndex)) {
 			return false;
 		}
 
 		/*
-		 * This set is to store all the RGVertex objects found in the
-		 * greedyCheckpointVertexRoute list as we iterate over it.
+		 * This array is to record which checkpoint indices have been found in
+		 * the greedyCheckpointRoute array as we iterate over it.
 		 */
-		Set<RGVertex> checkpointVerticesInGreedyCheckpointVertexRoute = new HashSet<RGVertex>();
-		for (RGVertex rgVertex : greedyCheckpointVertexRoute) {
+		boolean[] checkpointsInGreedyCheckpointRoute = new boolean[checkpointVertices
+				.size()];
+		int numCheckpointsInGreedyCheckpointRoute = 0;
+		for (int checkpointIndex : greedyCheckpointRoute) {
 			/*
-			 * If rgVertex is not in the checkpointVertices list, then
-			 * greedyCheckpointVertexRoute contains RGVertex objects that are
-			 * not checkpoint RGVertex objects, so it is an invalid checkpoint
-			 * route.
+			 * If checkpointIndex is not a valid checkpoint index, then
+			 * greedyCheckpointRoute contains entries that are not checkpoints,
+			 * so it is an invalid checkpoint route.
 			 */
-			if (!checkpointVertices.contains(rgVertex)) {
+			if (checkpointIndex < 0
+					|| checkpointIndex >= checkpointVertices.size()) {
 				return false;
 			}
 			/*
-			 * If we have already come across rgVertex (i.e. if it is already in
-			 * the checkpointVerticesInGreedyCheckpointVertexRoute set), then
-			 * the checkpoint route is invalid as it has duplicate checkpoint
-			 * RGVertex objects.
+			 * If we have already come across checkpointIndex, then the
+			 * checkpoint route is invalid as it has duplicate checkpoints.
 			 */
-			if (checkpointVerticesInGreedyCheckpointVertexRoute
-					.contains(rgVertex)) {
+			if (checkpointsInGreedyCheckpointRoute[checkpointIndex]) {
 				return false;
 			}
 
 			/*
-			 * We add RGVertex objects that we come across to this set.
+			 * We record checkpoint indices that we come across.
 			 */
-			checkpointVerticesInGreedyCheckpointVertexRoute.add(rgVertex);
+			checkpointsInGreedyCheckpointRoute[checkpointIndex] = true;
+			numCheckpointsInGreedyCheckpointRoute++;
 		}
 
 		/*
-		 * After this loop, checkpointVerticesInGreedyCheckpointVertexRoute will
-		 * only contain RGVertex objects that are in both the checkpointVertices
-		 * list and the greedyCheckpointVertexRoute list, with no duplicates. If
-		 * the size of this set is equal to the size of the checkpointVertices
-		 * list, then that means that the checkpoint route contains all of the
-		 * checkpoint RGVertex objects in the reduced graph and contains each of
-		 * them only once and so the checkpoint route is valid. Otherwise, it is
-		 * false.
+		 * After this loop, numCheckpointsInGreedyCheckpointRoute will be the
+		 * number of distinct checkpoints in the greedyCheckpointRoute array. If
+		 * this is equal to the number of checkpoints, then that means that the
+		 * checkpoint route contains all of the checkpoints in the reduced
+		 * graph and contains each of them only once and so the checkpoint
+		 * route is valid. Otherwise, it is false.
 		 */
-		return checkpointVertices.size() == checkpointVerticesInGreedyCheckpointVertexRoute
-				.size();
+		return checkpointVertices.size() == numCheckpointsInGreedyCheckpointRoute;
 	}
 
 	private void printShortestPaths() {
 		/*
-		 * The index of each RGVertex object in the rgVertices list will be its
+		 * Iterate over all the pairs of checkpoints, reconstruct the shortest
+		 * path between them from the predecessor trees and print them in the
+		 * appropriate format. The vertex index of each RGVertex object is its
 		 * unique ID.
 		 */
-		List<RGVertex> rgVertices = new ArrayList<RGVertex>(
-				reducedGraph.getVertices());
+		for (int i = 0; i < checkpointVertices.size(); i++) {
+			for (int j = i + 1; j < checkpointVertices.size(); j++) {
+				RGPath path = getShortestPathBetweenCheckpoints(i, j);
+				StringBuilder shortestPathStringBuilder = new StringBuilder();
 
-		/*
-		 * Iterate over all the shortest paths in the
-		 * shortestPathsBetweenCheckpointVertices hash table and print them in
-		 * the appropriate format.
-		 */
-		for (Entry<CheckpointVertexPair, RGPath> entry : shortestPathsBetweenCheckpointVertices
-				.entrySet()) {
-			StringBuilder shortestPathStringBuilder = new StringBuilder();
+				/*
+				 * Append the IDs of each of the pair of checkpoint RGVertex
+				 * objects to the string.
+				 */
+				shortestPathStringBuilder.append("(");
+				shortestPathStringBuilder.append(path.getVertex1()
+						.getVertexIndex());
+				shortestPathStringBuilder.append(",");
+				shortestPathStringBuilder.append(path.getVertex2()
+						.getVertexIndex());
+				shortestPathStringBuilder.append("): ");
 
-			/*
-			 * Append the IDs of each of the pair of checkpoint RGVertex objects
-			 * to the string.
-			 */
-			shortestPathStringBuilder.append("(");
-			shortestPathStringBuilder.append(rgVertices.indexOf(entry.getKey()
-					.getCheckpointVertex1()));
-			shortestPathStringBuilder.append(",");
-			shortestPathStringBuilder.append(rgVertices.indexOf(entry.getKey()
-					.getCheckpointVertex2()));
-			shortestPathStringBuilder.append("): ");
+				/*
+				 * Iterate over the RGVertex objects in the RGPath object
+				 * representing the shortest path between the pair of
+				 * checkpoint RGVertex objects and append their IDs to the
+				 * string.
+				 */
+				for (RGVertex pathVertex : path.getPathVertices()) {
+					shortestPathStringBuilder.append(pathVertex
+							.getVertexIndex());
+					shortestPathStringBuilder.append(", ");
+				}
 
-			/*
-			 * Iterate over the RGVertex objects in the RGPath object
-			 * representing the shortest path between the pair of checkpoint
-			 * RGVertex objects and append their IDs to the string.
-			 */
-			for (RGVertex pathVertex : entry.getValue().getPathVertices()) {
-				shortestPathStringBuilder
-						.append(rgVertices.indexOf(pathVertex));
-				shortestPathStringBuilder.append(", ");
+				/*
+				 * Output the shortest path string.
+				 */
+				System.out.println(shortestPathStringBuilder.toString());
 			}
-
-			/*
-			 * Output the shortest path string.
-			 */
-			System.out.println(shortestPathStringBuilder.toString());
 		}
 	}
 
@@ -1554,7 +3419,7 @@ public class AIPlayer extends Player {
 		 * manually draw the reduced graph without being influenced by the
 		 * labels).
 		 */
-		if (currentCellIndex >= 10) {
+		if (currentStepIndex >= 10) {
 			/*
 			 * The index of each RGVertex object in the rgVertices list will be
 			 * its unique ID.
@@ -1626,8 +3491,15 @@ public class AIPlayer extends Player {
 	}
 
 	private void printCellRoute() {
-		for (Cell cell : cellRoute) {
-			System.out.print(cell.testID + ", ");
+		Cell cell = checkpointVertices.get(currentPlan.checkpointRoute[0])
+				.getSuperCell();
+		System.out.print(cell.testID + ", ");
+		byte[] stepRuns = currentPlan.stepRuns;
+		for (int run = 0; run < stepRuns.length / 2; run++) {
+			for (int step = 0; step < (stepRuns[2 * run + 1] & 0xFF); step++) {
+				cell = cell.getNeighbouringCell(DIRECTIONS[stepRuns[2 * run]]);
+				System.out.print(cell.testID + ", ");
+			}
 		}
 	}
 
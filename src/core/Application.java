@@ -1,8 +1,20 @@
 package core;
 
+import java.awt.Canvas;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.Toolkit;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.Random;
 
@@ -26,12 +38,16 @@ public class Application {
 	 * Constructor. gameHz dictates the number of game cycles per second.
 	 * screenHeightFraction dictates the proportion of the screen's height taken
 	 * up by the window. aspectRatio determines the ratio between the width of
-	 * the window and the height of the window. randomSeed is used for rng.
+	 * the window and the height of the window. activeRendering and
+	 * maxFramesPerSecond determine how the screen is rendered (see the
+	 * ScreenDisplayer class). randomSeed is used for rng.
 	 */
 	public Application(double screenHeightFraction, double aspectRatio,
-			int gameHz, long randomSeed) {
+			int gameHz, boolean activeRendering, int maxFramesPerSecond,
+			long randomSeed) {
 		randomNumberGenerator = new Random(randomSeed);
-		ScreenDisplayer screenDisplayer = new ScreenDisplayer(gameHz);
+		final ScreenDisplayer screenDisplayer = new ScreenDisplayer(gameHz,
+				activeRendering, maxFramesPerSecond);
 
 		/*
 		 * The window upon which screenDisplayer is displayed.
@@ -55,6 +71,17 @@ public class Application {
 		frame.pack();
 		frame.setSize(windowWidth, windowHeight);
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+
+		/*
+		 * Stops the game loop cleanly when the window is closed, before the
+		 * program exits.
+		 */
+		frame.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent windowEvent) {
+				screenDisplayer.stop();
+			}
+		});
 		frame.setLocationRelativeTo(null);
 		frame.setResizable(false);
 		// frame.setFocusable(true);
@@ -76,7 +103,8 @@ public class Application {
 	 * square (because the mazes will be square for simplicity, although they
 	 * can easily be rectangular) and takes up 90% of the screen height (so that
 	 * the window is large and the game is clear). The gameHz parameter is 60
-	 * (as most monitors only display 60 frames per second) and the random seed
+	 * (as most monitors only display 60 frames per second), the screen is
+	 * rendered actively at up to 120 frames per second, and the random seed
 	 * is the current time (so that it is different every time the user runs the
 	 * game, giving different mazes every time). Named constants have been used
 	 * for clarity.
@@ -84,7 +112,8 @@ public class Application {
 	public static void main(String[] args) {
 		new Application(GameConstants.WINDOW_SCREEN_HEIGHT_FRACTION,
 				GameConstants.WINDOW_ASPECT_RATIO, GameConstants.GAME_HZ,
-				System.currentTimeMillis());
+				GameConstants.ACTIVE_RENDERING,
+				GameConstants.MAX_FRAMES_PER_SECOND, System.currentTimeMillis());
 	}
 
 	/*
@@ -99,14 +128,6 @@ public class Application {
 		int numCellsWide = 5 + randomNumberGenerator.nextInt(100);
 		int numCellsHigh = 5 + randomNumberGenerator.nextInt(100);
 
-		/*
-		 * Randomly select the maze generation algorithm used to generate the
-		 * maze to ensure that both algorithms work properly and that the test
-		 * results are not biased.
-		 */
-		MazeType mazeType = randomNumberGenerator.nextBoolean() ? MazeType.KRUSKAL
-				: MazeType.DFS;
-
 		/*
 		 * Randomly select the number of checkpoints in the maze to ensure that
 		 * the test results are not biased. The upper limit is the square root
@@ -116,6 +137,39 @@ public class Application {
 		int numCheckpointsExcludingEndpoints = randomNumberGenerator
 				.nextInt((int) (Math.sqrt(numCellsWide * numCellsHigh - 2))) + 2;
 
+		return generateRandomMaze(deadEndProbability, numCellsWide,
+				numCellsHigh, numCheckpointsExcludingEndpoints);
+	}
+
+	public static Maze generateRandomMaze(double deadEndProbability,
+			int numCheckpointsExcludingEndpoints) {
+		/*
+		 * Randomly set the maze dimensions to ensure that the test results are
+		 * not biased, making sure that there are enough Cell objects for all
+		 * the checkpoints.
+		 */
+		int minNumCellsPerSide = Math.max(5,
+				(int) Math.ceil(Math.sqrt(numCheckpointsExcludingEndpoints + 2)));
+		int numCellsWide = minNumCellsPerSide
+				+ randomNumberGenerator.nextInt(100);
+		int numCellsHigh = minNumCellsPerSide
+				+ randomNumberGenerator.nextInt(100);
+
+		return generateRandomMaze(deadEndProbability, numCellsWide,
+				numCellsHigh, numCheckpointsExcludingEndpoints);
+	}
+
+	private static Maze generateRandomMaze(double deadEndProbability,
+			int numCellsWide, int numCellsHigh,
+			int numCheckpointsExcludingEndpoints) {
+		/*
+		 * Randomly select the maze generation algorithm used to generate the
+		 * maze to ensure that both algorithms work properly and that the test
+		 * results are not biased.
+		 */
+		MazeType mazeType = randomNumberGenerator.nextBoolean() ? MazeType.KRUSKAL
+				: MazeType.DFS;
+
 		/*
 		 * Generate a random distribution for the surfaceRatios map to ensure
 		 * that the test results are not biased.
@@ -322,7 +376,7 @@ public class Application {
 						+ numCasesWithInvalidRoutes + " / " + numTests);
 	}
 
-	public static void mergeSortTest() {
+	public static void checkpointPairHeapTest() {
 		randomNumberGenerator = new Random(System.currentTimeMillis());
 		/*
 		 * 1000 is a large enough sample size to be confident that the test
@@ -331,14 +385,15 @@ public class Application {
 		int numTests = 1000;
 
 		/*
-		 * Keeps track of the number of cases where the mergeSort method failed.
+		 * Keeps track of the number of cases where the CheckpointPairHeap
+		 * class failed.
 		 */
-		int numCasesWhereMergeSortFailed = 0;
+		int numCasesWhereHeapFailed = 0;
 
 		/*
 		 * This loop generates a number of cases equal to numTests and checks if
-		 * the mergeSort method fails, incrementing the above variable if it
-		 * does.
+		 * the CheckpointPairHeap class fails, incrementing the above variable
+		 * if it does.
 		 */
 		for (int i = 0; i < numTests; i++) {
 			/*
@@ -369,12 +424,12 @@ public class Application {
 							.getNumCheckpoints(), reducedGraph);
 
 			/*
-			 * Calls the isMergeSortFunctional method of aiPlayer to check if
-			 * the mergeSort method fails, and increments
-			 * numCasesWhereMergeSortFailed if it does.
+			 * Calls the isCheckpointPairHeapFunctional method of aiPlayer to
+			 * check if the CheckpointPairHeap class fails, and increments
+			 * numCasesWhereHeapFailed if it does.
 			 */
-			if (!aiPlayer.isMergeSortFunctional()) {
-				numCasesWhereMergeSortFailed++;
+			if (!aiPlayer.isCheckpointPairHeapFunctional()) {
+				numCasesWhereHeapFailed++;
 			}
 		}
 
@@ -382,8 +437,8 @@ public class Application {
 		 * Output the results of the test.
 		 */
 		System.out
-				.println("Number of cases where the mergeSort method failed: "
-						+ numCasesWhereMergeSortFailed + " / " + numTests);
+				.println("Number of cases where the CheckpointPairHeap class failed: "
+						+ numCasesWhereHeapFailed + " / " + numTests);
 
 	}
 
@@ -603,4 +658,1743 @@ public class Application {
 						+ averagePercentageDropInWeightAfterTwoOpt);
 	}
 
+	public static void twoOptVsOptimalCheckpointVertexRouteTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		/*
+		 * Each test case solves the route exactly with up to
+		 * MAX_OPTIMAL_ROUTE_CHECKPOINTS checkpoints, so fewer test cases are
+		 * used than in the other tests, but 100 is still a large enough sample
+		 * size to be confident that the test results are reliable and valid.
+		 */
+		int numTests = 100;
+
+		/*
+		 * Keeps track of the number of cases where the twoOpt weight (i.e. the
+		 * weight of the checkpoint route generated by the greedy algorithm and
+		 * improved by the 2-opt algorithm) was less than the optimal weight,
+		 * which would mean that the optimal route is not actually optimal.
+		 */
+		int numCasesWhereTwoOptWeightLessThanOptimalWeight = 0;
+
+		/*
+		 * Keeps track of the number of cases where the 2-opt algorithm found
+		 * an optimal route.
+		 */
+		int numCasesWhereTwoOptRouteOptimal = 0;
+
+		/*
+		 * Keeps track of the sum of the percentage differences between the
+		 * twoOpt weights and the optimal weights.
+		 */
+		double sumOfPercentageDifferencesBetweenTwoOptAndOptimal = 0;
+
+		/*
+		 * Keeps track of the sum of the percentage differences between the
+		 * improved weights (i.e. the weights of the checkpoint routes
+		 * generated by the greedy algorithm and improved by the local search
+		 * that the AIPlayer class actually uses) and the optimal weights.
+		 */
+		double sumOfPercentageDifferencesBetweenImprovedAndOptimal = 0;
+
+		/*
+		 * This loop generates a number of cases equal to numTests and finds the
+		 * percentage difference between the twoOpt weight and optimal weight,
+		 * adding it to the sumOfPercentageDifferencesBetweenTwoOptAndOptimal
+		 * variable.
+		 */
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * Randomly set the dead-end probability to ensure that the test
+			 * results are not biased.
+			 */
+			double deadEndProbability = randomNumberGenerator.nextDouble();
+
+			/*
+			 * Randomly set the number of checkpoints between half of the
+			 * maximum and the maximum for which the optimal route can be
+			 * found, so that the tests run at realistic checkpoint counts (the
+			 * largest level has 30 checkpoints).
+			 */
+			int numCheckpointsExcludingEndpoints = GameConstants.MAX_OPTIMAL_ROUTE_CHECKPOINTS
+					/ 2
+					+ randomNumberGenerator
+							.nextInt(GameConstants.MAX_OPTIMAL_ROUTE_CHECKPOINTS / 2 - 1);
+
+			/*
+			 * Generate a random maze with this dead-end probability and number
+			 * of checkpoints to ensure that the test results are not biased.
+			 */
+			Maze maze = generateRandomMaze(deadEndProbability,
+					numCheckpointsExcludingEndpoints);
+			ReducedGraph reducedGraph = new ReducedGraph(maze.getStartCell());
+
+			/*
+			 * Generate an AIPlayer with default parameters.
+			 */
+			AIPlayer aiPlayer = new AIPlayer(
+					maze.getEndCell(),
+					maze.getStartCell(),
+					maze.getCellSideLength()
+							* GameConstants.AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.PLAYER_TOLERANCE_CONSTANT,
+					GameConstants.PLAYER2_COLOR,
+					GameConstants.PLAYER2_DEFAULT_NAME,
+					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS, maze
+							.getNumCheckpoints(), reducedGraph);
+
+			/*
+			 * Calls the calculatePercentageDifferenceBetweenTwoOptAndOptimal
+			 * method of aiPlayer to find the percentage difference between the
+			 * twoOpt weight and the optimal weight.
+			 */
+			double percentageDifferenceBetweenTwoOptAndOptimal = aiPlayer
+					.calculatePercentageDifferenceBetweenTwoOptAndOptimal(
+							reducedGraph.getVertex(maze.getEndCell()),
+							reducedGraph.getVertex(maze.getStartCell()));
+
+			/*
+			 * A small tolerance is used because the two weights are sums of
+			 * the same doubles added in different orders.
+			 */
+			if (percentageDifferenceBetweenTwoOptAndOptimal < -1e-9) {
+				numCasesWhereTwoOptWeightLessThanOptimalWeight++;
+			} else if (percentageDifferenceBetweenTwoOptAndOptimal < 1e-9) {
+				numCasesWhereTwoOptRouteOptimal++;
+			}
+
+			/*
+			 * We add the difference to the
+			 * sumOfPercentageDifferencesBetweenTwoOptAndOptimal variable so
+			 * that we can find the average at the end of the for loop.
+			 */
+			sumOfPercentageDifferencesBetweenTwoOptAndOptimal += percentageDifferenceBetweenTwoOptAndOptimal;
+			sumOfPercentageDifferencesBetweenImprovedAndOptimal += aiPlayer
+					.calculatePercentageDifferenceBetweenImprovedAndOptimal(
+							reducedGraph.getVertex(maze.getEndCell()),
+							reducedGraph.getVertex(maze.getStartCell()));
+		}
+
+		/*
+		 * The average percentage difference between the twoOpt weight and the
+		 * optimal weight is found by dividing the sum of all the percentage
+		 * differences by the number of test cases.
+		 */
+		double averagePercentageDifferenceBetweenTwoOptAndOptimal = sumOfPercentageDifferencesBetweenTwoOptAndOptimal
+				/ numTests;
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out
+				.println("Number of cases where the twoOpt weight was less than the optimal weight: "
+						+ numCasesWhereTwoOptWeightLessThanOptimalWeight
+						+ " / " + numTests);
+		System.out
+				.println("Number of cases where the twoOpt route was optimal: "
+						+ numCasesWhereTwoOptRouteOptimal + " / " + numTests);
+		System.out
+				.println("Average percentage difference between the twoOpt weight and optimal weight: "
+						+ averagePercentageDifferenceBetweenTwoOptAndOptimal);
+		System.out
+				.println("Average percentage difference between the improved weight and optimal weight: "
+						+ sumOfPercentageDifferencesBetweenImprovedAndOptimal
+						/ numTests);
+	}
+
+	public static void twoOptVsImprovedCheckpointVertexRouteTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		/*
+		 * Each test case has hundreds of checkpoints, so fewer test cases are
+		 * used than in the other tests, but 20 is still a large enough sample
+		 * size to be confident that the test results are reliable and valid.
+		 */
+		int numTests = 20;
+
+		/*
+		 * Keeps track of the number of cases where the improved weight was
+		 * greater than the twoOpt weight.
+		 */
+		int numCasesWhereImprovedWeightGreaterThanTwoOptWeight = 0;
+
+		/*
+		 * Keeps track of the sum of the percentage differences between the
+		 * twoOpt weights and the improved weights.
+		 */
+		double sumOfPercentageDifferencesBetweenTwoOptAndImproved = 0;
+
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * Randomly set the dead-end probability to ensure that the test
+			 * results are not biased.
+			 */
+			double deadEndProbability = randomNumberGenerator.nextDouble();
+
+			/*
+			 * Randomly set the number of checkpoints to be in the hundreds,
+			 * which is where the twoOpt method becomes slow.
+			 */
+			int numCheckpointsExcludingEndpoints = 200 + randomNumberGenerator
+					.nextInt(400);
+
+			/*
+			 * Generate a random maze with this dead-end probability and number
+			 * of checkpoints to ensure that the test results are not biased.
+			 */
+			Maze maze = generateRandomMaze(deadEndProbability,
+					numCheckpointsExcludingEndpoints);
+			ReducedGraph reducedGraph = new ReducedGraph(maze.getStartCell());
+
+			/*
+			 * Generate an AIPlayer with default parameters.
+			 */
+			AIPlayer aiPlayer = new AIPlayer(
+					maze.getEndCell(),
+					maze.getStartCell(),
+					maze.getCellSideLength()
+							* GameConstants.AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.PLAYER_TOLERANCE_CONSTANT,
+					GameConstants.PLAYER2_COLOR,
+					GameConstants.PLAYER2_DEFAULT_NAME,
+					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS, maze
+							.getNumCheckpoints(), reducedGraph);
+
+			/*
+			 * Calls the calculatePercentageDifferenceBetweenTwoOptAndImproved
+			 * method of aiPlayer to find the percentage difference between the
+			 * twoOpt weight and the improved weight.
+			 */
+			double percentageDifferenceBetweenTwoOptAndImproved = aiPlayer
+					.calculatePercentageDifferenceBetweenTwoOptAndImproved(
+							reducedGraph.getVertex(maze.getEndCell()),
+							reducedGraph.getVertex(maze.getStartCell()));
+			if (percentageDifferenceBetweenTwoOptAndImproved < 0) {
+				numCasesWhereImprovedWeightGreaterThanTwoOptWeight++;
+			}
+			sumOfPercentageDifferencesBetweenTwoOptAndImproved += percentageDifferenceBetweenTwoOptAndImproved;
+		}
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out
+				.println("Number of cases where the improved weight was greater than the twoOpt weight: "
+						+ numCasesWhereImprovedWeightGreaterThanTwoOptWeight
+						+ " / " + numTests);
+		System.out
+				.println("Average percentage difference between the twoOpt weight and improved weight: "
+						+ sumOfPercentageDifferencesBetweenTwoOptAndImproved
+						/ numTests);
+	}
+
+	public static void improvedVsAnnealedCheckpointVertexRouteTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		/*
+		 * Each test case has hundreds of checkpoints, so fewer test cases are
+		 * used than in the other tests, but 20 is still a large enough sample
+		 * size to be confident that the test results are reliable and valid.
+		 */
+		int numTests = 20;
+
+		/*
+		 * Keeps track of the number of cases where the annealed weight was
+		 * greater than the improved weight.
+		 */
+		int numCasesWhereAnnealedWeightGreaterThanImprovedWeight = 0;
+
+		/*
+		 * Keeps track of the number of cases where running the annealing
+		 * solver twice with the same seed gave different routes.
+		 */
+		int numCasesWhereAnnealingWasNotDeterministic = 0;
+
+		/*
+		 * Keeps track of the sum of the percentage differences between the
+		 * improved weights and the annealed weights.
+		 */
+		double sumOfPercentageDifferencesBetweenImprovedAndAnnealed = 0;
+
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * Randomly set the dead-end probability to ensure that the test
+			 * results are not biased.
+			 */
+			double deadEndProbability = randomNumberGenerator.nextDouble();
+
+			/*
+			 * Randomly set the number of checkpoints to be in the hundreds,
+			 * which is what the annealing solver is meant for.
+			 */
+			int numCheckpointsExcludingEndpoints = 200 + randomNumberGenerator
+					.nextInt(400);
+
+			/*
+			 * Generate a random maze with this dead-end probability and number
+			 * of checkpoints to ensure that the test results are not biased.
+			 */
+			Maze maze = generateRandomMaze(deadEndProbability,
+					numCheckpointsExcludingEndpoints);
+			ReducedGraph reducedGraph = new ReducedGraph(maze.getStartCell());
+
+			/*
+			 * Generate an AIPlayer with default parameters.
+			 */
+			AIPlayer aiPlayer = new AIPlayer(
+					maze.getEndCell(),
+					maze.getStartCell(),
+					maze.getCellSideLength()
+							* GameConstants.AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.PLAYER_TOLERANCE_CONSTANT,
+					GameConstants.PLAYER2_COLOR,
+					GameConstants.PLAYER2_DEFAULT_NAME,
+					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS, maze
+							.getNumCheckpoints(), reducedGraph);
+
+			/*
+			 * Calls the
+			 * calculatePercentageDifferenceBetweenImprovedAndAnnealed method
+			 * of aiPlayer to find the percentage difference between the
+			 * improved weight and the annealed weight, using a random seed.
+			 */
+			long seed = randomNumberGenerator.nextLong();
+			double percentageDifferenceBetweenImprovedAndAnnealed = aiPlayer
+					.calculatePercentageDifferenceBetweenImprovedAndAnnealed(
+							reducedGraph.getVertex(maze.getEndCell()),
+							reducedGraph.getVertex(maze.getStartCell()), seed);
+			if (percentageDifferenceBetweenImprovedAndAnnealed < 0) {
+				numCasesWhereAnnealedWeightGreaterThanImprovedWeight++;
+			}
+			sumOfPercentageDifferencesBetweenImprovedAndAnnealed += percentageDifferenceBetweenImprovedAndAnnealed;
+			if (!aiPlayer.isAnnealedCheckpointVertexRouteDeterministic(
+					reducedGraph.getVertex(maze.getEndCell()),
+					reducedGraph.getVertex(maze.getStartCell()), seed)) {
+				numCasesWhereAnnealingWasNotDeterministic++;
+			}
+		}
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out
+				.println("Number of cases where the annealed weight was greater than the improved weight: "
+						+ numCasesWhereAnnealedWeightGreaterThanImprovedWeight
+						+ " / " + numTests);
+		System.out
+				.println("Number of cases where the annealed route was not deterministic: "
+						+ numCasesWhereAnnealingWasNotDeterministic
+						+ " / " + numTests);
+		System.out
+				.println("Average percentage difference between the improved weight and annealed weight: "
+						+ sumOfPercentageDifferencesBetweenImprovedAndAnnealed
+						/ numTests);
+	}
+
+	public static void lowerBoundVsOptimalCheckpointVertexRouteTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		/*
+		 * Each test case solves the route exactly with up to
+		 * MAX_OPTIMAL_ROUTE_CHECKPOINTS checkpoints, so fewer test cases are
+		 * used than in the other tests, but 100 is still a large enough sample
+		 * size to be confident that the test results are reliable and valid.
+		 */
+		int numTests = 100;
+
+		/*
+		 * Keeps track of the number of cases where the lower bound was
+		 * greater than the optimal weight, which would mean that it is not
+		 * actually a lower bound.
+		 */
+		int numCasesWhereLowerBoundGreaterThanOptimalWeight = 0;
+
+		/*
+		 * Keeps track of the sum of the percentage differences between the
+		 * optimal weights and the lower bounds.
+		 */
+		double sumOfPercentageDifferencesBetweenOptimalAndLowerBound = 0;
+
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * Randomly set the dead-end probability to ensure that the test
+			 * results are not biased.
+			 */
+			double deadEndProbability = randomNumberGenerator.nextDouble();
+
+			/*
+			 * Randomly set the number of checkpoints between half of the
+			 * maximum and the maximum for which the optimal route can be
+			 * found.
+			 */
+			int numCheckpointsExcludingEndpoints = GameConstants.MAX_OPTIMAL_ROUTE_CHECKPOINTS
+					/ 2
+					+ randomNumberGenerator
+							.nextInt(GameConstants.MAX_OPTIMAL_ROUTE_CHECKPOINTS / 2 - 1);
+
+			/*
+			 * Generate a random maze with this dead-end probability and number
+			 * of checkpoints to ensure that the test results are not biased.
+			 */
+			Maze maze = generateRandomMaze(deadEndProbability,
+					numCheckpointsExcludingEndpoints);
+			ReducedGraph reducedGraph = new ReducedGraph(maze.getStartCell());
+
+			/*
+			 * Generate an AIPlayer with default parameters.
+			 */
+			AIPlayer aiPlayer = new AIPlayer(
+					maze.getEndCell(),
+					maze.getStartCell(),
+					maze.getCellSideLength()
+							* GameConstants.AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.PLAYER_TOLERANCE_CONSTANT,
+					GameConstants.PLAYER2_COLOR,
+					GameConstants.PLAYER2_DEFAULT_NAME,
+					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS, maze
+							.getNumCheckpoints(), reducedGraph);
+
+			/*
+			 * Calls the
+			 * calculatePercentageDifferenceBetweenOptimalAndLowerBound method
+			 * of aiPlayer to find the percentage difference between the
+			 * optimal weight and the lower bound. A small tolerance is used
+			 * because the two are sums of the same doubles added in different
+			 * orders.
+			 */
+			double percentageDifferenceBetweenOptimalAndLowerBound = aiPlayer
+					.calculatePercentageDifferenceBetweenOptimalAndLowerBound(
+							reducedGraph.getVertex(maze.getEndCell()),
+							reducedGraph.getVertex(maze.getStartCell()));
+			if (percentageDifferenceBetweenOptimalAndLowerBound < -1e-9) {
+				numCasesWhereLowerBoundGreaterThanOptimalWeight++;
+			}
+			sumOfPercentageDifferencesBetweenOptimalAndLowerBound += percentageDifferenceBetweenOptimalAndLowerBound;
+		}
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out
+				.println("Number of cases where the lower bound was greater than the optimal weight: "
+						+ numCasesWhereLowerBoundGreaterThanOptimalWeight
+						+ " / " + numTests);
+		System.out
+				.println("Average percentage difference between the optimal weight and lower bound: "
+						+ sumOfPercentageDifferencesBetweenOptimalAndLowerBound
+						/ numTests);
+	}
+
+	public static void routeOptimalityGapTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		/*
+		 * Each test case has up to thousands of checkpoints, so fewer test
+		 * cases are used than in the other tests, but 20 is still a large
+		 * enough sample size to be confident that the test results are
+		 * reliable and valid.
+		 */
+		int numTests = 20;
+
+		/*
+		 * Keeps track of the sum of the optimality gaps of the routes that the
+		 * AI players plan, and the total time taken to find them.
+		 */
+		double sumOfOptimalityGaps = 0;
+		long totalOptimalityGapTimeNanos = 0;
+
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * Randomly set the dead-end probability to ensure that the test
+			 * results are not biased.
+			 */
+			double deadEndProbability = randomNumberGenerator.nextDouble();
+
+			/*
+			 * Randomly set the number of checkpoints to be in the hundreds or
+			 * thousands, far beyond where the optimal route can be found.
+			 */
+			int numCheckpointsExcludingEndpoints = 200 + randomNumberGenerator
+					.nextInt(1800);
+
+			/*
+			 * Generate a random maze with this dead-end probability and number
+			 * of checkpoints to ensure that the test results are not biased.
+			 */
+			Maze maze = generateRandomMaze(deadEndProbability,
+					numCheckpointsExcludingEndpoints);
+			ReducedGraph reducedGraph = new ReducedGraph(maze.getStartCell());
+
+			/*
+			 * Generate an AIPlayer with default parameters.
+			 */
+			AIPlayer aiPlayer = new AIPlayer(
+					maze.getEndCell(),
+					maze.getStartCell(),
+					maze.getCellSideLength()
+							* GameConstants.AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.PLAYER_TOLERANCE_CONSTANT,
+					GameConstants.PLAYER2_COLOR,
+					GameConstants.PLAYER2_DEFAULT_NAME,
+					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS, maze
+							.getNumCheckpoints(), reducedGraph);
+
+			/*
+			 * Calls the calculateRouteOptimalityGap method of aiPlayer to find
+			 * how far at most its route is from optimal.
+			 */
+			long startTime = System.nanoTime();
+			sumOfOptimalityGaps += aiPlayer.calculateRouteOptimalityGap();
+			totalOptimalityGapTimeNanos += System.nanoTime() - startTime;
+		}
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out.println("Average optimality gap of the planned routes: "
+				+ sumOfOptimalityGaps / numTests);
+		System.out.println("Average time taken to find the optimality gap (ms): "
+				+ totalOptimalityGapTimeNanos / 1000000.0 / numTests);
+	}
+
+	public static void stepRunRouteTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		/*
+		 * 100 test cases is a large enough sample size to be confident that
+		 * the test results are reliable and valid.
+		 */
+		int numTests = 100;
+
+		/*
+		 * Keeps track of the number of routes that were valid and the sum of
+		 * the average number of steps in each run of the routes.
+		 */
+		int numValidRoutes = 0;
+		double sumOfAverageStepsPerRun = 0;
+
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * Randomly set the dead-end probability to ensure that the test
+			 * results are not biased.
+			 */
+			double deadEndProbability = randomNumberGenerator.nextDouble();
+
+			/*
+			 * Randomly set the number of checkpoints to be from 2 to 101.
+			 */
+			int numCheckpointsExcludingEndpoints = randomNumberGenerator
+					.nextInt(100) + 2;
+
+			/*
+			 * Generate a random maze with this dead-end probability and number
+			 * of checkpoints to ensure that the test results are not biased.
+			 */
+			Maze maze = generateRandomMaze(deadEndProbability,
+					numCheckpointsExcludingEndpoints);
+			ReducedGraph reducedGraph = new ReducedGraph(maze.getStartCell());
+
+			/*
+			 * Generate an AIPlayer with default parameters.
+			 */
+			AIPlayer aiPlayer = new AIPlayer(
+					maze.getEndCell(),
+					maze.getStartCell(),
+					maze.getCellSideLength()
+							* GameConstants.AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.PLAYER_TOLERANCE_CONSTANT,
+					GameConstants.PLAYER2_COLOR,
+					GameConstants.PLAYER2_DEFAULT_NAME,
+					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS, maze
+							.getNumCheckpoints(), reducedGraph);
+
+			/*
+			 * Calls the isStepRunRouteValid method of aiPlayer to check that
+			 * following its route step by step reaches every checkpoint.
+			 */
+			if (aiPlayer.isStepRunRouteValid()) {
+				numValidRoutes++;
+			}
+			sumOfAverageStepsPerRun += aiPlayer.calculateAverageStepsPerRun();
+		}
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out.println("Number of valid routes: " + numValidRoutes + "/"
+				+ numTests);
+		System.out.println("Average number of steps in each run: "
+				+ sumOfAverageStepsPerRun / numTests);
+	}
+
+	public static void sharedMazePlanTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		/*
+		 * Each test case has hundreds of checkpoints, so fewer test cases are
+		 * used than in the other tests, but 20 is still a large enough sample
+		 * size to be confident that the test results are reliable and valid.
+		 */
+		int numTests = 20;
+
+		/*
+		 * Keeps track of the number of valid routes planned by AIPlayer objects
+		 * sharing a MazePlan object, the total time taken to build the
+		 * MazePlan objects and the total time taken to construct the AIPlayer
+		 * objects that share them.
+		 */
+		int numValidRoutes = 0;
+		long totalMazePlanTimeNanos = 0;
+		long totalAIPlayerTimeNanos = 0;
+
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * Randomly set the dead-end probability to ensure that the test
+			 * results are not biased.
+			 */
+			double deadEndProbability = randomNumberGenerator.nextDouble();
+
+			/*
+			 * Randomly set the number of checkpoints to be in the hundreds.
+			 */
+			int numCheckpointsExcludingEndpoints = 200 + randomNumberGenerator
+					.nextInt(400);
+
+			/*
+			 * Generate a random maze with this dead-end probability and number
+			 * of checkpoints to ensure that the test results are not biased.
+			 */
+			Maze maze = generateRandomMaze(deadEndProbability,
+					numCheckpointsExcludingEndpoints);
+			long startTime = System.nanoTime();
+			MazePlan mazePlan = new MazePlan(new ReducedGraph(
+					maze.getStartCell()));
+			totalMazePlanTimeNanos += System.nanoTime() - startTime;
+
+			/*
+			 * Generate two AIPlayer objects with default parameters that share
+			 * mazePlan, one going each way between the endpoints of the maze.
+			 */
+			startTime = System.nanoTime();
+			AIPlayer aiPlayer1 = new AIPlayer(
+					maze.getEndCell(),
+					maze.getStartCell(),
+					maze.getCellSideLength()
+							* GameConstants.AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.PLAYER_TOLERANCE_CONSTANT,
+					GameConstants.PLAYER2_COLOR,
+					GameConstants.PLAYER2_DEFAULT_NAME,
+					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS, maze
+							.getNumCheckpoints(), mazePlan, false);
+			AIPlayer aiPlayer2 = new AIPlayer(
+					maze.getStartCell(),
+					maze.getEndCell(),
+					maze.getCellSideLength()
+							* GameConstants.AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.PLAYER_TOLERANCE_CONSTANT,
+					GameConstants.PLAYER1_COLOR,
+					GameConstants.PLAYER1_DEFAULT_NAME,
+					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS, maze
+							.getNumCheckpoints(), mazePlan, false);
+			totalAIPlayerTimeNanos += System.nanoTime() - startTime;
+
+			/*
+			 * Calls the isStepRunRouteValid method of both AIPlayer objects to
+			 * check that sharing mazePlan gives each of them a valid route.
+			 */
+			if (aiPlayer1.isStepRunRouteValid()) {
+				numValidRoutes++;
+			}
+			if (aiPlayer2.isStepRunRouteValid()) {
+				numValidRoutes++;
+			}
+		}
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out.println("Number of valid routes: " + numValidRoutes + "/"
+				+ 2 * numTests);
+		System.out.println("Average time taken to build a MazePlan (ms): "
+				+ totalMazePlanTimeNanos / 1000000.0 / numTests);
+		System.out.println("Average time taken to construct an AIPlayer sharing it (ms): "
+				+ totalAIPlayerTimeNanos / 1000000.0 / (2 * numTests));
+	}
+
+	public static void planCacheTest() {
+		Random testRandomNumberGenerator = new Random(System.currentTimeMillis());
+		/*
+		 * Each test case has hundreds of checkpoints, so fewer test cases are
+		 * used than in the other tests, but 20 is still a large enough sample
+		 * size to be confident that the test results are reliable and valid.
+		 */
+		int numTests = 20;
+
+		/*
+		 * The routes are kept in memory only if they are small enough, so the
+		 * cache is made to hold about one route in memory and spill the rest
+		 * to a temporary directory, so that both are tested.
+		 */
+		File diskDirectory;
+		try {
+			diskDirectory = Files.createTempDirectory("plancache").toFile();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		PlanCache planCache = new PlanCache(20000, diskDirectory, numTests);
+
+		/*
+		 * Keeps track of the number of times that the same seed gave the same
+		 * key, that the cached route was the same as the route planned again,
+		 * and that every cached route could be got back at the end, and the
+		 * total times taken to plan an AIPlayer object and to make one from a
+		 * cached route.
+		 */
+		int numMatchingKeys = 0;
+		int numMatchingRoutes = 0;
+		int numRoutesFound = 0;
+		long totalPlanningTimeNanos = 0;
+		long totalCachedTimeNanos = 0;
+		String[] keys = new String[numTests];
+		byte[][] finishedRoutes = new byte[numTests][];
+
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * Randomly set the dead-end probability, number of checkpoints and
+			 * seed to ensure that the test results are not biased.
+			 */
+			double deadEndProbability = testRandomNumberGenerator.nextDouble();
+			int numCheckpointsExcludingEndpoints = 200 + testRandomNumberGenerator
+					.nextInt(400);
+			long seed = testRandomNumberGenerator.nextLong();
+
+			/*
+			 * Generate the same random maze twice from the same seed.
+			 */
+			randomNumberGenerator = new Random(seed);
+			Maze maze1 = generateRandomMaze(deadEndProbability,
+					numCheckpointsExcludingEndpoints);
+			randomNumberGenerator = new Random(seed);
+			Maze maze2 = generateRandomMaze(deadEndProbability,
+					numCheckpointsExcludingEndpoints);
+			String key1 = PlanCache.getKey(maze1, maze1.getEndCell(),
+					maze1.getStartCell());
+			String key2 = PlanCache.getKey(maze2, maze2.getEndCell(),
+					maze2.getStartCell());
+			if (key1.equals(key2)) {
+				numMatchingKeys++;
+			}
+
+			/*
+			 * Plan an AIPlayer object with default parameters in the first
+			 * maze and store its finished route.
+			 */
+			long startTime = System.nanoTime();
+			AIPlayer aiPlayer = new AIPlayer(
+					maze1.getEndCell(),
+					maze1.getStartCell(),
+					maze1.getCellSideLength()
+							* GameConstants.AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.PLAYER_TOLERANCE_CONSTANT,
+					GameConstants.PLAYER2_COLOR,
+					GameConstants.PLAYER2_DEFAULT_NAME,
+					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS, maze1
+							.getNumCheckpoints(), new ReducedGraph(maze1
+							.getStartCell()));
+			byte[] finishedRoute = aiPlayer.getFinishedRoute().join();
+			totalPlanningTimeNanos += System.nanoTime() - startTime;
+			planCache.put(key1, finishedRoute);
+			keys[i] = key1;
+			finishedRoutes[i] = finishedRoute;
+
+			/*
+			 * Make an AIPlayer object in the second maze from the cached
+			 * route, which should be the same as the route found by planning
+			 * it again.
+			 */
+			startTime = System.nanoTime();
+			AIPlayer cachedAIPlayer = new AIPlayer(
+					maze2.getEndCell(),
+					maze2.getStartCell(),
+					maze2.getCellSideLength()
+							* GameConstants.AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.PLAYER_TOLERANCE_CONSTANT,
+					GameConstants.PLAYER2_COLOR,
+					GameConstants.PLAYER2_DEFAULT_NAME,
+					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS, maze2
+							.getNumCheckpoints(), planCache.get(key2));
+			totalCachedTimeNanos += System.nanoTime() - startTime;
+			AIPlayer replannedAIPlayer = new AIPlayer(
+					maze2.getEndCell(),
+					maze2.getStartCell(),
+					maze2.getCellSideLength()
+							* GameConstants.AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.PLAYER_TOLERANCE_CONSTANT,
+					GameConstants.PLAYER2_COLOR,
+					GameConstants.PLAYER2_DEFAULT_NAME,
+					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS, maze2
+							.getNumCheckpoints(), new ReducedGraph(maze2
+							.getStartCell()));
+			if (Arrays.equals(cachedAIPlayer.getFinishedRoute().join(),
+					replannedAIPlayer.getFinishedRoute().join())) {
+				numMatchingRoutes++;
+			}
+		}
+
+		/*
+		 * Every route should still be in the cache, either in memory or on
+		 * disk.
+		 */
+		for (int i = 0; i < numTests; i++) {
+			if (Arrays.equals(planCache.get(keys[i]), finishedRoutes[i])) {
+				numRoutesFound++;
+			}
+		}
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out.println("Number of mazes with the same key from the same seed: "
+				+ numMatchingKeys + "/" + numTests);
+		System.out.println("Number of cached routes the same as the replanned route: "
+				+ numMatchingRoutes + "/" + numTests);
+		System.out.println("Number of routes found in the cache at the end: "
+				+ numRoutesFound + "/" + numTests);
+		System.out.println("Average time taken to plan an AIPlayer (ms): "
+				+ totalPlanningTimeNanos / 1000000.0 / numTests);
+		System.out.println("Average time taken to make an AIPlayer from a cached route (ms): "
+				+ totalCachedTimeNanos / 1000000.0 / numTests);
+	}
+
+	public static void improvedVsSpatialCheckpointVertexRouteTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		/*
+		 * Each test case has up to thousands of checkpoints, so fewer test
+		 * cases are used than in the other tests, but 20 is still a large
+		 * enough sample size to be confident that the test results are
+		 * reliable and valid.
+		 */
+		int numTests = 20;
+
+		/*
+		 * Keeps track of the sum of the percentage differences between the
+		 * improved weights and the weights of the routes found by the
+		 * SpatialRoutePlanner class, and of the largest difference.
+		 */
+		double sumOfPercentageDifferencesBetweenImprovedAndSpatial = 0;
+		double maxPercentageDifferenceBetweenImprovedAndSpatial = Double.NEGATIVE_INFINITY;
+
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * Randomly set the dead-end probability to ensure that the test
+			 * results are not biased.
+			 */
+			double deadEndProbability = randomNumberGenerator.nextDouble();
+
+			/*
+			 * Randomly set the number of checkpoints to be in the hundreds or
+			 * thousands, but below GameConstants.MAX_DISTANCE_MATRIX_CHECKPOINTS
+			 * so that the AIPlayer object still finds the shortest path
+			 * weights between every pair of checkpoints to compare against.
+			 */
+			int numCheckpointsExcludingEndpoints = 500 + randomNumberGenerator
+					.nextInt(1500);
+
+			/*
+			 * Generate a random maze with this dead-end probability and number
+			 * of checkpoints to ensure that the test results are not biased.
+			 */
+			Maze maze = generateRandomMaze(deadEndProbability,
+					numCheckpointsExcludingEndpoints);
+			ReducedGraph reducedGraph = new ReducedGraph(maze.getStartCell());
+
+			/*
+			 * Generate an AIPlayer with default parameters.
+			 */
+			AIPlayer aiPlayer = new AIPlayer(
+					maze.getEndCell(),
+					maze.getStartCell(),
+					maze.getCellSideLength()
+							* GameConstants.AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.PLAYER_TOLERANCE_CONSTANT,
+					GameConstants.PLAYER2_COLOR,
+					GameConstants.PLAYER2_DEFAULT_NAME,
+					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS, maze
+							.getNumCheckpoints(), reducedGraph);
+
+			/*
+			 * Calls the
+			 * calculatePercentageDifferenceBetweenImprovedAndSpatial method of
+			 * aiPlayer to find the percentage difference between the improved
+			 * weight and the spatial weight.
+			 */
+			double percentageDifferenceBetweenImprovedAndSpatial = aiPlayer
+					.calculatePercentageDifferenceBetweenImprovedAndSpatial(
+							reducedGraph.getVertex(maze.getEndCell()),
+							reducedGraph.getVertex(maze.getStartCell()));
+			sumOfPercentageDifferencesBetweenImprovedAndSpatial += percentageDifferenceBetweenImprovedAndSpatial;
+			maxPercentageDifferenceBetweenImprovedAndSpatial = Math.max(
+					maxPercentageDifferenceBetweenImprovedAndSpatial,
+					percentageDifferenceBetweenImprovedAndSpatial);
+		}
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out
+				.println("Average percentage difference between the improved weight and spatial weight: "
+						+ sumOfPercentageDifferencesBetweenImprovedAndSpatial
+						/ numTests);
+		System.out
+				.println("Maximum percentage difference between the improved weight and spatial weight: "
+						+ maxPercentageDifferenceBetweenImprovedAndSpatial);
+	}
+
+	public static void staticMazeLayerTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		/*
+		 * 20 test cases is enough here as every maze is rendered many times.
+		 */
+		int numTests = 20;
+		int numFramesPerTest = 20;
+
+		/*
+		 * Keeps track of the number of mazes that looked exactly the same
+		 * whether they were rendered cell by cell or from the static layer, and
+		 * the total time taken to render the frames each way.
+		 */
+		int numIdenticalRenders = 0;
+		long totalCellByCellNanos = 0;
+		long totalStaticLayerNanos = 0;
+
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * Randomly set the maze dimensions and the number of checkpoints
+			 * to ensure that the test results are not biased. Unlike the
+			 * logical tests, the cells are given a realistic size, as this is
+			 * a test of rendering.
+			 */
+			int numCellsWide = 5 + randomNumberGenerator.nextInt(100);
+			int numCellsHigh = 5 + randomNumberGenerator.nextInt(100);
+			double cellSideLength = 20;
+			double margin = 20;
+			EnumMap<Surface, Double> surfaceRatios = new EnumMap<Surface, Double>(
+					Surface.class) {
+				{
+					put(Surface.SLOW, randomNumberGenerator.nextDouble());
+					put(Surface.NORMAL, randomNumberGenerator.nextDouble());
+					put(Surface.FAST, randomNumberGenerator.nextDouble());
+				}
+			};
+			Maze maze = new Maze(numCellsWide, numCellsHigh, margin, margin,
+					cellSideLength, randomNumberGenerator.nextDouble(),
+					GameConstants.WALL_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.CHECKPOINT_PROPORTION_OF_CELL_DIMENSIONS,
+					randomNumberGenerator.nextInt(numCellsWide), surfaceRatios,
+					GameConstants.CHECKPOINT_COLOR, GameConstants.WALL_COLOR,
+					GameConstants.GROUND_COLOR,
+					randomNumberGenerator.nextBoolean() ? MazeType.KRUSKAL
+							: MazeType.DFS);
+
+			/*
+			 * A player is made to have reached about half of the checkpoints,
+			 * so that the progress of the checkpoints is rendered as well.
+			 */
+			Player player = new HumanPlayer(maze.getStartCell(),
+					maze.getEndCell(), 0, 0, GameConstants.PLAYER1_COLOR,
+					GameConstants.PLAYER1_DEFAULT_NAME,
+					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS,
+					maze.getNumCheckpoints(), KeyEvent.VK_UP, KeyEvent.VK_DOWN,
+					KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT);
+			for (Cell[] column : maze.getCells()) {
+				for (Cell cell : column) {
+					if (cell.isCheckpoint()
+							&& randomNumberGenerator.nextBoolean()) {
+						cell.addEncounteredPlayer(player);
+					}
+				}
+			}
+
+			int imageWidth = (int) (maze.getWidth() + 2 * margin);
+			int imageHeight = (int) (maze.getHeight() + 2 * margin);
+			BufferedImage cellByCellImage = new BufferedImage(imageWidth,
+					imageHeight, BufferedImage.TYPE_INT_RGB);
+			BufferedImage staticLayerImage = new BufferedImage(imageWidth,
+					imageHeight, BufferedImage.TYPE_INT_RGB);
+			Graphics2D cellByCellGraphics = cellByCellImage.createGraphics();
+			Graphics2D staticLayerGraphics = staticLayerImage.createGraphics();
+			cellByCellGraphics.setRenderingHint(
+					RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+			staticLayerGraphics.setRenderingHint(
+					RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+			maze.renderStaticLayer(staticLayerGraphics.getDeviceConfiguration());
+
+			/*
+			 * Each frame is rendered the way the GameScreen class renders it:
+			 * the screen is filled with the wall colour and then the maze is
+			 * rendered on top.
+			 */
+			long startTime = System.nanoTime();
+			for (int frame = 0; frame < numFramesPerTest; frame++) {
+				cellByCellGraphics.setColor(GameConstants.WALL_COLOR);
+				cellByCellGraphics.fillRect(0, 0, imageWidth, imageHeight);
+				maze.renderCells(cellByCellGraphics);
+				for (Cell[] column : maze.getCells()) {
+					for (Cell cell : column) {
+						cell.renderCheckpointProgress(cellByCellGraphics);
+					}
+				}
+			}
+			totalCellByCellNanos += System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			for (int frame = 0; frame < numFramesPerTest; frame++) {
+				staticLayerGraphics.setColor(GameConstants.WALL_COLOR);
+				staticLayerGraphics.fillRect(0, 0, imageWidth, imageHeight);
+				maze.render(staticLayerGraphics);
+			}
+			totalStaticLayerNanos += System.nanoTime() - startTime;
+
+			cellByCellGraphics.dispose();
+			staticLayerGraphics.dispose();
+			if (Arrays.equals(
+					cellByCellImage.getRGB(0, 0, imageWidth, imageHeight, null,
+							0, imageWidth),
+					staticLayerImage.getRGB(0, 0, imageWidth, imageHeight, null,
+							0, imageWidth))) {
+				numIdenticalRenders++;
+			}
+		}
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out.println("Number of identical renders: "
+				+ numIdenticalRenders + "/" + numTests);
+		System.out.println("Average time per frame rendering cell by cell: "
+				+ totalCellByCellNanos / (numTests * numFramesPerTest * 1000000.0)
+				+ "ms");
+		System.out.println("Average time per frame rendering the static layer: "
+				+ totalStaticLayerNanos
+				/ (numTests * numFramesPerTest * 1000000.0) + "ms");
+	}
+
+	public static void mazeCullingTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		/*
+		 * The mazes get bigger and bigger, but the viewport stays the same size,
+		 * so the time taken to render only the visible cells should stay about
+		 * the same while the time taken to render every cell grows with the
+		 * size of the maze.
+		 */
+		int[] numCellsPerSideOfTests = { 50, 200, 600 };
+		int numFramesPerTest = 20;
+		int viewportSideLength = 800;
+		double cellSideLength = 20;
+
+		for (int numCellsPerSide : numCellsPerSideOfTests) {
+			EnumMap<Surface, Double> surfaceRatios = new EnumMap<Surface, Double>(
+					Surface.class) {
+				{
+					put(Surface.SLOW, randomNumberGenerator.nextDouble());
+					put(Surface.NORMAL, randomNumberGenerator.nextDouble());
+					put(Surface.FAST, randomNumberGenerator.nextDouble());
+				}
+			};
+			Maze maze = new Maze(numCellsPerSide, numCellsPerSide, 0, 0,
+					cellSideLength, randomNumberGenerator.nextDouble(),
+					GameConstants.WALL_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.CHECKPOINT_PROPORTION_OF_CELL_DIMENSIONS,
+					numCellsPerSide, surfaceRatios,
+					GameConstants.CHECKPOINT_COLOR, GameConstants.WALL_COLOR,
+					GameConstants.GROUND_COLOR,
+					randomNumberGenerator.nextBoolean() ? MazeType.KRUSKAL
+							: MazeType.DFS);
+
+			/*
+			 * A player is made to have reached about half of the checkpoints,
+			 * so that the progress of the checkpoints is rendered as well.
+			 */
+			Player player = new HumanPlayer(maze.getStartCell(),
+					maze.getEndCell(), 0, 0, GameConstants.PLAYER1_COLOR,
+					GameConstants.PLAYER1_DEFAULT_NAME,
+					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS,
+					maze.getNumCheckpoints(), KeyEvent.VK_UP, KeyEvent.VK_DOWN,
+					KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT);
+			for (Cell[] column : maze.getCells()) {
+				for (Cell cell : column) {
+					if (cell.isCheckpoint()
+							&& randomNumberGenerator.nextBoolean()) {
+						cell.addEncounteredPlayer(player);
+					}
+				}
+			}
+
+			/*
+			 * Keeps track of the number of frames that looked exactly the same
+			 * whether every cell or only the visible cells were rendered, and
+			 * the total time taken to render the frames each way.
+			 */
+			int numIdenticalRenders = 0;
+			long totalAllCellsNanos = 0;
+			long totalVisibleCellsNanos = 0;
+
+			BufferedImage allCellsImage = new BufferedImage(
+					viewportSideLength, viewportSideLength,
+					BufferedImage.TYPE_INT_RGB);
+			BufferedImage visibleCellsImage = new BufferedImage(
+					viewportSideLength, viewportSideLength,
+					BufferedImage.TYPE_INT_RGB);
+			int maxViewportPosition = (int) Math.max(1, maze.getWidth()
+					- viewportSideLength);
+
+			for (int frame = 0; frame < numFramesPerTest; frame++) {
+				/*
+				 * Each frame is rendered the way the GameScreen class renders
+				 * it: the viewport is at a random position in the maze, and
+				 * the graphics object is clipped to the screen and moved so
+				 * that the viewport is at the top left of the screen.
+				 */
+				int viewportX = randomNumberGenerator
+						.nextInt(maxViewportPosition);
+				int viewportY = randomNumberGenerator
+						.nextInt(maxViewportPosition);
+
+				Graphics2D allCellsGraphics = allCellsImage.createGraphics();
+				allCellsGraphics.setRenderingHint(
+						RenderingHints.KEY_ANTIALIASING,
+						RenderingHints.VALUE_ANTIALIAS_ON);
+				allCellsGraphics.setColor(GameConstants.WALL_COLOR);
+				allCellsGraphics.fillRect(0, 0, viewportSideLength,
+						viewportSideLength);
+				allCellsGraphics.clipRect(0, 0, viewportSideLength,
+						viewportSideLength);
+				allCellsGraphics.translate(-viewportX, -viewportY);
+				long startTime = System.nanoTime();
+				maze.renderCells(allCellsGraphics);
+				for (Cell[] column : maze.getCells()) {
+					for (Cell cell : column) {
+						cell.renderCheckpointProgress(allCellsGraphics);
+					}
+				}
+				totalAllCellsNanos += System.nanoTime() - startTime;
+				allCellsGraphics.dispose();
+
+				Graphics2D visibleCellsGraphics = visibleCellsImage
+						.createGraphics();
+				visibleCellsGraphics.setRenderingHint(
+						RenderingHints.KEY_ANTIALIASING,
+						RenderingHints.VALUE_ANTIALIAS_ON);
+				visibleCellsGraphics.setColor(GameConstants.WALL_COLOR);
+				visibleCellsGraphics.fillRect(0, 0, viewportSideLength,
+						viewportSideLength);
+				visibleCellsGraphics.clipRect(0, 0, viewportSideLength,
+						viewportSideLength);
+				visibleCellsGraphics.translate(-viewportX, -viewportY);
+				startTime = System.nanoTime();
+				maze.renderVisibleCells(visibleCellsGraphics);
+				totalVisibleCellsNanos += System.nanoTime() - startTime;
+				visibleCellsGraphics.dispose();
+
+				if (Arrays.equals(allCellsImage.getRGB(0, 0,
+						viewportSideLength, viewportSideLength, null, 0,
+						viewportSideLength), visibleCellsImage.getRGB(0, 0,
+						viewportSideLength, viewportSideLength, null, 0,
+						viewportSideLength))) {
+					numIdenticalRenders++;
+				}
+			}
+
+			/*
+			 * Output the results of the test.
+			 */
+			System.out.println(numCellsPerSide + "x" + numCellsPerSide
+					+ " maze:");
+			System.out.println("Number of identical renders: "
+					+ numIdenticalRenders + "/" + numFramesPerTest);
+			System.out.println("Average time per frame rendering every cell: "
+					+ totalAllCellsNanos / (numFramesPerTest * 1000000.0)
+					+ "ms");
+			System.out
+					.println("Average time per frame rendering the visible cells: "
+							+ totalVisibleCellsNanos
+							/ (numFramesPerTest * 1000000.0) + "ms");
+		}
+	}
+
+	public static void wallMeshTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		int numTests = 20;
+		int numFramesPerTest = 20;
+
+		/*
+		 * Keeps track of the total number of draw calls and the total time
+		 * taken to draw the walls cell by cell and with the wall mesh, and the
+		 * number of pixels that ended up different.
+		 */
+		long totalCellByCellDrawCalls = 0;
+		long totalWallMeshDrawCalls = 0;
+		long totalCellByCellNanos = 0;
+		long totalWallMeshNanos = 0;
+		long totalDifferentPixels = 0;
+		long totalPixels = 0;
+
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * Randomly set the maze dimensions to ensure that the test results
+			 * are not biased. The cells are given a realistic size, as this is
+			 * a test of rendering.
+			 */
+			int numCellsWide = 5 + randomNumberGenerator.nextInt(100);
+			int numCellsHigh = 5 + randomNumberGenerator.nextInt(100);
+			double cellSideLength = 20;
+			double margin = 20;
+			EnumMap<Surface, Double> surfaceRatios = new EnumMap<Surface, Double>(
+					Surface.class) {
+				{
+					put(Surface.SLOW, randomNumberGenerator.nextDouble());
+					put(Surface.NORMAL, randomNumberGenerator.nextDouble());
+					put(Surface.FAST, randomNumberGenerator.nextDouble());
+				}
+			};
+			Maze maze = new Maze(numCellsWide, numCellsHigh, margin, margin,
+					cellSideLength, randomNumberGenerator.nextDouble(),
+					GameConstants.WALL_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.CHECKPOINT_PROPORTION_OF_CELL_DIMENSIONS,
+					randomNumberGenerator.nextInt(numCellsWide), surfaceRatios,
+					GameConstants.CHECKPOINT_COLOR, GameConstants.WALL_COLOR,
+					GameConstants.GROUND_COLOR,
+					randomNumberGenerator.nextBoolean() ? MazeType.KRUSKAL
+							: MazeType.DFS);
+			WallMesh wallMesh = maze.getWallMesh();
+
+			int imageWidth = (int) (maze.getWidth() + 2 * margin);
+			int imageHeight = (int) (maze.getHeight() + 2 * margin);
+			BufferedImage cellByCellImage = new BufferedImage(imageWidth,
+					imageHeight, BufferedImage.TYPE_INT_RGB);
+			BufferedImage wallMeshImage = new BufferedImage(imageWidth,
+					imageHeight, BufferedImage.TYPE_INT_RGB);
+			Graphics2D cellByCellGraphics = cellByCellImage.createGraphics();
+			Graphics2D wallMeshGraphics = wallMeshImage.createGraphics();
+			cellByCellGraphics.setRenderingHint(
+					RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+			wallMeshGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+
+			/*
+			 * Every wall is drawn twice cell by cell, once from each side.
+			 */
+			totalCellByCellDrawCalls += 2 * wallMesh.getNumWalls();
+			totalWallMeshDrawCalls += wallMesh.getNumChunks();
+
+			/*
+			 * Only the walls are drawn each frame, on top of the ground.
+			 */
+			long startTime = System.nanoTime();
+			for (int frame = 0; frame < numFramesPerTest; frame++) {
+				cellByCellGraphics.setColor(GameConstants.GROUND_COLOR);
+				cellByCellGraphics.fillRect(0, 0, imageWidth, imageHeight);
+				for (Cell[] column : maze.getCells()) {
+					for (Cell cell : column) {
+						cell.renderWalls(cellByCellGraphics);
+					}
+				}
+			}
+			totalCellByCellNanos += System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			for (int frame = 0; frame < numFramesPerTest; frame++) {
+				wallMeshGraphics.setColor(GameConstants.GROUND_COLOR);
+				wallMeshGraphics.fillRect(0, 0, imageWidth, imageHeight);
+				wallMesh.render(wallMeshGraphics);
+			}
+			totalWallMeshNanos += System.nanoTime() - startTime;
+
+			/*
+			 * Cell by cell, the antialiased edges of every wall are blended in
+			 * twice, which makes them slightly darker than when the wall mesh
+			 * draws them once. To check that the walls are in the same places,
+			 * the walls are drawn once more each way without antialiasing.
+			 */
+			cellByCellGraphics.setRenderingHint(
+					RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_OFF);
+			wallMeshGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_OFF);
+			cellByCellGraphics.setColor(GameConstants.GROUND_COLOR);
+			cellByCellGraphics.fillRect(0, 0, imageWidth, imageHeight);
+			for (Cell[] column : maze.getCells()) {
+				for (Cell cell : column) {
+					cell.renderWalls(cellByCellGraphics);
+				}
+			}
+			wallMeshGraphics.setColor(GameConstants.GROUND_COLOR);
+			wallMeshGraphics.fillRect(0, 0, imageWidth, imageHeight);
+			wallMesh.render(wallMeshGraphics);
+
+			cellByCellGraphics.dispose();
+			wallMeshGraphics.dispose();
+			int[] cellByCellPixels = cellByCellImage.getRGB(0, 0, imageWidth,
+					imageHeight, null, 0, imageWidth);
+			int[] wallMeshPixels = wallMeshImage.getRGB(0, 0, imageWidth,
+					imageHeight, null, 0, imageWidth);
+			for (int j = 0; j < cellByCellPixels.length; j++) {
+				if (cellByCellPixels[j] != wallMeshPixels[j]) {
+					totalDifferentPixels++;
+				}
+			}
+			totalPixels += cellByCellPixels.length;
+		}
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out.println("Average number of draw calls cell by cell: "
+				+ (double) totalCellByCellDrawCalls / numTests);
+		System.out.println("Average number of draw calls with the wall mesh: "
+				+ (double) totalWallMeshDrawCalls / numTests);
+		System.out.println("Average time per frame drawing cell by cell: "
+				+ totalCellByCellNanos / (numTests * numFramesPerTest * 1000000.0)
+				+ "ms");
+		System.out.println("Average time per frame drawing the wall mesh: "
+				+ totalWallMeshNanos / (numTests * numFramesPerTest * 1000000.0)
+				+ "ms");
+		System.out.println("Percentage of pixels that differ: " + 100.0
+				* totalDifferentPixels / totalPixels + "%");
+	}
+
+	public static void mazeRasterTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		int numTests = 20;
+		int pixelsPerCell = 10;
+
+		/*
+		 * First, mazes are rendered pixel by pixel with cells big enough for
+		 * the walls to be seen, to check that every Cell object looks right:
+		 * the pixel in its centre is the same colour as when the maze is drawn
+		 * as shapes (i.e. the colour of its surface or of the checkpoint
+		 * indicator), and the pixels either side of each of its walls are the
+		 * wall colour.
+		 */
+		int numCorrectCells = 0;
+		int numCells = 0;
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * Randomly set the maze dimensions to ensure that the test results
+			 * are not biased. Unlike the logical tests, the walls and
+			 * checkpoint indicators are given their real sizes, as this is a
+			 * test of rendering.
+			 */
+			int numCellsWide = 5 + randomNumberGenerator.nextInt(100);
+			int numCellsHigh = 5 + randomNumberGenerator.nextInt(100);
+			EnumMap<Surface, Double> surfaceRatios = new EnumMap<Surface, Double>(
+					Surface.class) {
+				{
+					put(Surface.SLOW, randomNumberGenerator.nextDouble());
+					put(Surface.NORMAL, randomNumberGenerator.nextDouble());
+					put(Surface.FAST, randomNumberGenerator.nextDouble());
+				}
+			};
+			Maze maze = new Maze(numCellsWide, numCellsHigh, 0, 0,
+					pixelsPerCell, randomNumberGenerator.nextDouble(),
+					GameConstants.WALL_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.CHECKPOINT_PROPORTION_OF_CELL_DIMENSIONS,
+					randomNumberGenerator.nextInt(numCellsWide), surfaceRatios,
+					GameConstants.CHECKPOINT_COLOR, GameConstants.WALL_COLOR,
+					GameConstants.GROUND_COLOR,
+					randomNumberGenerator.nextBoolean() ? MazeType.KRUSKAL
+							: MazeType.DFS);
+			Cell[][] cells = maze.getCells();
+			BufferedImage image = maze.renderOverview(cells.length
+					* pixelsPerCell, cells[0].length * pixelsPerCell);
+			BufferedImage shapesImage = new BufferedImage(image.getWidth(),
+					image.getHeight(), BufferedImage.TYPE_INT_RGB);
+			Graphics2D shapesGraphics = shapesImage.createGraphics();
+			maze.renderCells(shapesGraphics);
+			shapesGraphics.dispose();
+			for (int column = 0; column < cells.length; column++) {
+				for (int row = 0; row < cells[column].length; row++) {
+					Cell cell = cells[column][row];
+					int centreX = column * pixelsPerCell + pixelsPerCell / 2;
+					int centreY = row * pixelsPerCell + pixelsPerCell / 2;
+					boolean correct = image.getRGB(centreX, centreY) == shapesImage
+							.getRGB(centreX, centreY);
+					Cell rightCell = cell.getNeighbouringCell(Direction.RIGHT);
+					if (rightCell != null && !cell.isAdjacentTo(rightCell)) {
+						int wallX = (column + 1) * pixelsPerCell;
+						correct &= image.getRGB(wallX - 1, centreY) == GameConstants.WALL_COLOR
+								.getRGB()
+								&& image.getRGB(wallX, centreY) == GameConstants.WALL_COLOR
+										.getRGB();
+					}
+					Cell downCell = cell.getNeighbouringCell(Direction.DOWN);
+					if (downCell != null && !cell.isAdjacentTo(downCell)) {
+						int wallY = (row + 1) * pixelsPerCell;
+						correct &= image.getRGB(centreX, wallY - 1) == GameConstants.WALL_COLOR
+								.getRGB()
+								&& image.getRGB(centreX, wallY) == GameConstants.WALL_COLOR
+										.getRGB();
+					}
+					if (correct) {
+						numCorrectCells++;
+					}
+					numCells++;
+				}
+			}
+		}
+
+		/*
+		 * Then, the overview of a 4000x4000 maze is timed, both scaled down to
+		 * 1000x1000 pixels and at about a pixel per cell. Generating a maze
+		 * with 16 million Cell objects would take far more memory than the
+		 * game has, so the cell masks are made up directly, with random walls
+		 * (each shared between the two cells either side of it), surfaces and
+		 * checkpoints.
+		 */
+		int numCellsPerSide = 4000;
+		byte[] cellMasks = new byte[numCellsPerSide * numCellsPerSide];
+		int numSurfaces = Surface.values().length;
+		for (int row = 0; row < numCellsPerSide; row++) {
+			for (int column = 0; column < numCellsPerSide; column++) {
+				int index = row * numCellsPerSide + column;
+				cellMasks[index] |= randomNumberGenerator.nextInt(numSurfaces) << MazeRaster.SURFACE_SHIFT;
+				if (randomNumberGenerator.nextInt(1000) == 0) {
+					cellMasks[index] |= MazeRaster.CHECKPOINT_BIT;
+				}
+				if (column > 0 && randomNumberGenerator.nextBoolean()) {
+					cellMasks[index] |= 1 << Direction.LEFT.ordinal();
+					cellMasks[index - 1] |= 1 << Direction.RIGHT.ordinal();
+				}
+				if (row > 0 && randomNumberGenerator.nextBoolean()) {
+					cellMasks[index] |= 1 << Direction.UP.ordinal();
+					cellMasks[index - numCellsPerSide] |= 1 << Direction.DOWN
+							.ordinal();
+				}
+			}
+		}
+		MazeRaster raster = new MazeRaster(numCellsPerSide, numCellsPerSide,
+				cellMasks, GameConstants.WALL_PROPORTION_OF_CELL_DIMENSIONS,
+				GameConstants.CHECKPOINT_PROPORTION_OF_CELL_DIMENSIONS,
+				GameConstants.GROUND_COLOR, GameConstants.WALL_COLOR,
+				GameConstants.CHECKPOINT_COLOR);
+
+		/*
+		 * Each overview is rendered a few times first so that the timings
+		 * are not skewed by the code being compiled while it runs.
+		 */
+		int numWarmUpRenders = 5;
+		int numTimedRenders = 20;
+		int[] overviewSideLengths = { 1000, numCellsPerSide };
+		long[] totalOverviewNanos = new long[overviewSideLengths.length];
+		for (int i = 0; i < overviewSideLengths.length; i++) {
+			for (int j = 0; j < numWarmUpRenders + numTimedRenders; j++) {
+				long startTime = System.nanoTime();
+				raster.renderOverview(overviewSideLengths[i],
+						overviewSideLengths[i]);
+				if (j >= numWarmUpRenders) {
+					totalOverviewNanos[i] += System.nanoTime() - startTime;
+				}
+			}
+		}
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out.println("Number of cells rendered correctly: "
+				+ numCorrectCells + "/" + numCells);
+		for (int i = 0; i < overviewSideLengths.length; i++) {
+			System.out.println("Average time to render a "
+					+ overviewSideLengths[i] + "x" + overviewSideLengths[i]
+					+ " overview of a " + numCellsPerSide + "x"
+					+ numCellsPerSide + " maze: " + totalOverviewNanos[i]
+					/ (numTimedRenders * 1000000.0) + "ms");
+		}
+	}
+
+	public static void spriteCacheTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		int numTests = 20;
+		int numDrawsPerTest = 1000;
+
+		/*
+		 * Keeps track of the total time taken to draw the players and
+		 * checkpoints with shapes and from sprites, and the biggest difference
+		 * in any colour component of any pixel between the two (the sprites are
+		 * blended onto the screen in one go rather than shape by shape, so a
+		 * difference of one or two is expected from rounding).
+		 */
+		long totalShapesNanos = 0;
+		long totalSpritesNanos = 0;
+		int maxComponentDifference = 0;
+
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * Randomly set the cell size, the position of the cell and the
+			 * colours of the players to ensure that the test results are not
+			 * biased.
+			 */
+			double cellSideLength = 10 + randomNumberGenerator.nextInt(50);
+			double cellX = randomNumberGenerator.nextDouble() * 10;
+			double cellY = randomNumberGenerator.nextDouble() * 10;
+			Cell cell = new Cell(cellX, cellY, cellSideLength, Surface.NORMAL,
+					GameConstants.WALL_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.WALL_COLOR,
+					GameConstants.CHECKPOINT_PROPORTION_OF_CELL_DIMENSIONS,
+					GameConstants.CHECKPOINT_COLOR);
+			cell.setCheckpoint();
+			Player[] players = new Player[1 + randomNumberGenerator.nextInt(2)];
+			for (int j = 0; j < players.length; j++) {
+				players[j] = new HumanPlayer(cell, cell, 0, 0, new Color(
+						randomNumberGenerator.nextInt(0x1000000)),
+						GameConstants.PLAYER1_DEFAULT_NAME,
+						GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS, 1,
+						KeyEvent.VK_UP, KeyEvent.VK_DOWN, KeyEvent.VK_LEFT,
+						KeyEvent.VK_RIGHT);
+			}
+
+			int imageSideLength = (int) cellSideLength + 20;
+			BufferedImage shapesImage = new BufferedImage(imageSideLength,
+					imageSideLength, BufferedImage.TYPE_INT_RGB);
+			BufferedImage spritesImage = new BufferedImage(imageSideLength,
+					imageSideLength, BufferedImage.TYPE_INT_RGB);
+			Graphics2D shapesGraphics = shapesImage.createGraphics();
+			Graphics2D spritesGraphics = spritesImage.createGraphics();
+			shapesGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+			spritesGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+
+			/*
+			 * The checkpoint progress and the players are drawn the way they
+			 * were drawn before there were sprites, with fillArc, fillOval and
+			 * drawOval.
+			 */
+			int checkpointX = (int) (cellX + cellSideLength
+					* (1 - GameConstants.CHECKPOINT_PROPORTION_OF_CELL_DIMENSIONS) / 2);
+			int checkpointY = (int) (cellY + cellSideLength
+					* (1 - GameConstants.CHECKPOINT_PROPORTION_OF_CELL_DIMENSIONS) / 2);
+			int checkpointDiameter = (int) (cellSideLength * GameConstants.CHECKPOINT_PROPORTION_OF_CELL_DIMENSIONS);
+			int playerX = (int) (cellX + cellSideLength
+					* (1 - GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS) / 2);
+			int playerY = (int) (cellY + cellSideLength
+					* (1 - GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS) / 2);
+			int playerDiameter = (int) (cellSideLength * GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS);
+			long startTime = System.nanoTime();
+			for (int draw = 0; draw < numDrawsPerTest; draw++) {
+				shapesGraphics.setColor(GameConstants.GROUND_COLOR);
+				shapesGraphics.fillRect(0, 0, imageSideLength, imageSideLength);
+				double arcAngle = 360 / (players.length + 1);
+				for (int j = 0; j < players.length; j++) {
+					shapesGraphics.setColor(players[j].getColor());
+					shapesGraphics.fillArc(checkpointX, checkpointY,
+							checkpointDiameter, checkpointDiameter,
+							(int) (j * arcAngle), (int) arcAngle);
+				}
+				shapesGraphics.setColor(Color.BLACK);
+				shapesGraphics.drawOval(checkpointX, checkpointY,
+						checkpointDiameter, checkpointDiameter);
+				for (Player player : players) {
+					shapesGraphics.setColor(player.getColor());
+					shapesGraphics.fillOval(playerX, playerY, playerDiameter,
+							playerDiameter);
+					shapesGraphics.setColor(Color.BLACK);
+					shapesGraphics.drawOval(playerX, playerY, playerDiameter,
+							playerDiameter);
+				}
+			}
+			totalShapesNanos += System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			for (int draw = 0; draw < numDrawsPerTest; draw++) {
+				spritesGraphics.setColor(GameConstants.GROUND_COLOR);
+				spritesGraphics
+						.fillRect(0, 0, imageSideLength, imageSideLength);
+				cell.renderCheckpointProgress(spritesGraphics);
+				for (Player player : players) {
+					player.render(spritesGraphics);
+				}
+			}
+			totalSpritesNanos += System.nanoTime() - startTime;
+
+			shapesGraphics.dispose();
+			spritesGraphics.dispose();
+			int[] shapesPixels = shapesImage.getRGB(0, 0, imageSideLength,
+					imageSideLength, null, 0, imageSideLength);
+			int[] spritesPixels = spritesImage.getRGB(0, 0, imageSideLength,
+					imageSideLength, null, 0, imageSideLength);
+			for (int j = 0; j < shapesPixels.length; j++) {
+				for (int shift = 0; shift < 24; shift += 8) {
+					maxComponentDifference = Math.max(maxComponentDifference,
+							Math.abs(((shapesPixels[j] >> shift) & 0xFF)
+									- ((spritesPixels[j] >> shift) & 0xFF)));
+				}
+			}
+		}
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out.println("Biggest difference in a colour component: "
+				+ maxComponentDifference);
+		System.out.println("Average time per frame drawing shapes: "
+				+ totalShapesNanos / (numTests * numDrawsPerTest * 1000000.0)
+				+ "ms");
+		System.out.println("Average time per frame drawing sprites: "
+				+ totalSpritesNanos / (numTests * numDrawsPerTest * 1000000.0)
+				+ "ms");
+	}
+
+	public static void inputQueueTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		int numTests = 20;
+		int numKeyPressesPerTest = 1000000;
+
+		/*
+		 * Keeps track of the number of tests in which every key press came out
+		 * of the queue in the order it went in, with the time it went in, and
+		 * the total time taken to pass the key presses from one thread to the
+		 * other.
+		 */
+		int numCorrectTests = 0;
+		long totalNanos = 0;
+
+		/*
+		 * A few different KeyEvent objects are passed round, so that the order
+		 * they come out of the queue in can be checked.
+		 */
+		Component source = new Canvas();
+		final KeyEvent[] keyEvents = new KeyEvent[97];
+		for (int i = 0; i < keyEvents.length; i++) {
+			keyEvents[i] = new KeyEvent(source, KeyEvent.KEY_PRESSED, 0, 0,
+					KeyEvent.VK_A + i % 26, KeyEvent.CHAR_UNDEFINED);
+		}
+
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * Randomly set the capacity of the queue to ensure that the test
+			 * results are not biased. Small capacities mean that the queue is
+			 * often full, so the producer has to keep trying.
+			 */
+			final InputQueue inputQueue = new InputQueue(
+					1 << randomNumberGenerator.nextInt(8));
+			final int numKeyPresses = numKeyPressesPerTest;
+
+			/*
+			 * The producer thread adds the key presses with the times 0, 1, 2,
+			 * and so on, trying again whenever the queue is full, while this
+			 * thread takes them.
+			 */
+			Thread producer = new Thread() {
+				public void run() {
+					for (int j = 0; j < numKeyPresses; j++) {
+						while (!inputQueue.offer(keyEvents[j % keyEvents.length],
+								j)) {
+							Thread.yield();
+						}
+					}
+				}
+			};
+			long startTime = System.nanoTime();
+			producer.start();
+			boolean correct = true;
+			int numTaken = 0;
+			while (numTaken < numKeyPresses) {
+				KeyEvent keyEvent = inputQueue.poll();
+				if (keyEvent == null) {
+					Thread.yield();
+					continue;
+				}
+				if (keyEvent != keyEvents[numTaken % keyEvents.length]
+						|| inputQueue.getLastPolledAddTime() != numTaken) {
+					correct = false;
+				}
+				numTaken++;
+			}
+			totalNanos += System.nanoTime() - startTime;
+			try {
+				producer.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+			if (correct && inputQueue.poll() == null) {
+				numCorrectTests++;
+			}
+		}
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out.println("Number of tests passed: " + numCorrectTests + "/"
+				+ numTests);
+		System.out.println("Average time per key press: " + totalNanos
+				/ ((double) numTests * numKeyPressesPerTest) + "ns");
+	}
+
+	public static void latencyHistogramTest() {
+		randomNumberGenerator = new Random(System.currentTimeMillis());
+		int numTests = 20;
+		int numTimesPerTest = 100000;
+		double[] percentiles = { 50, 90, 99, 99.9, 100 };
+
+		/*
+		 * Keeps track of the number of percentiles worked out from a histogram
+		 * that were within the width of a bucket (1/16 of the value) of the
+		 * exact percentile, the biggest relative error of any of them, the
+		 * number of tests in which the exact maximum was kept, and the total
+		 * time taken to record the times.
+		 */
+		int numCorrectPercentiles = 0;
+		int numCorrectMaximums = 0;
+		double maxRelativeError = 0;
+		long totalRecordNanos = 0;
+
+		for (int i = 0; i < numTests; i++) {
+			/*
+			 * The times are random, with a long tail like real update and
+			 * render times (most are around a millisecond, but a few are much
+			 * longer), and a random scale to ensure that the test results are
+			 * not biased.
+			 */
+			double scale = 1000 + randomNumberGenerator.nextInt(10000000);
+			long[] times = new long[numTimesPerTest];
+			for (int j = 0; j < numTimesPerTest; j++) {
+				times[j] = (long) (scale * Math.exp(randomNumberGenerator
+						.nextGaussian()));
+			}
+			LatencyHistogram histogram = new LatencyHistogram();
+			long startTime = System.nanoTime();
+			for (int j = 0; j < numTimesPerTest; j++) {
+				histogram.record(times[j]);
+			}
+			totalRecordNanos += System.nanoTime() - startTime;
+
+			long[] counts = new long[LatencyHistogram.NUM_BUCKETS];
+			histogram.copyCounts(counts);
+			Arrays.sort(times);
+			for (double percentile : percentiles) {
+				long exactValue = times[(int) Math.max(0,
+						Math.ceil(percentile / 100 * numTimesPerTest) - 1)];
+				long value = LatencyHistogram.getValueAtPercentile(counts,
+						percentile);
+				double relativeError = Math.abs(value - exactValue)
+						/ (double) exactValue;
+				maxRelativeError = Math.max(maxRelativeError, relativeError);
+				if (value >= exactValue && relativeError <= 1.0 / 16) {
+					numCorrectPercentiles++;
+				}
+			}
+			if (histogram.getAndResetMax() == times[numTimesPerTest - 1]) {
+				numCorrectMaximums++;
+			}
+		}
+
+		/*
+		 * Output the results of the test.
+		 */
+		System.out.println("Number of percentiles correct: "
+				+ numCorrectPercentiles + "/" + numTests * percentiles.length);
+		System.out.println("Biggest relative error: " + maxRelativeError);
+		System.out.println("Number of maximums correct: " + numCorrectMaximums
+				+ "/" + numTests);
+		System.out.println("Average time per time recorded: "
+				+ totalRecordNanos / ((double) numTests * numTimesPerTest)
+				+ "ns");
+	}
+
 }
@@ -0,0 +1,77 @@
+package core;
+
+public class Camera {
+	/*
+	 * This class is used to decide which part of the maze is shown on the
+	 * screen, so that mazes that are too big to fit on the screen at a
+	 * readable cell size can still be played. The part of the maze shown is
+	 * called the viewport, and is the same size as the screen. The viewport
+	 * is kept centred on a target (i.e. the human player), except that it
+	 * never goes more than margin pixels past the edges of the maze. If the
+	 * maze is narrower or shorter than the screen, it is centred on the
+	 * screen in that direction instead.
+	 *
+	 * Camera objects are immutable, so that the game loop and render loop
+	 * threads can both use the same one.
+	 */
+
+	/*
+	 * The width and height of the viewport in pixels.
+	 */
+	private final int viewportWidth, viewportHeight;
+
+	/*
+	 * The pixel coordinates of the left and top edges of the viewport when it
+	 * is as far left and as far up as it can go, and when it is as far right
+	 * and as far down as it can go. The minimum and maximum are the same if
+	 * the maze fits on the screen in that direction.
+	 */
+	private final int minViewportX, maxViewportX;
+	private final int minViewportY, maxViewportY;
+
+	/*
+	 * Constructor.
+	 */
+	public Camera(int viewportWidth, int viewportHeight, Maze maze,
+			double margin) {
+		this.viewportWidth = viewportWidth;
+		this.viewportHeight = viewportHeight;
+		if (maze.getWidth() + 2 * margin <= viewportWidth) {
+			minViewportX = maxViewportX = (int) Math.round(maze.getCentreX()
+					- viewportWidth / 2.0);
+		} else {
+			minViewportX = (int) Math.floor(maze.getX() - margin);
+			maxViewportX = (int) Math.ceil(maze.getX() + maze.getWidth()
+					+ margin - viewportWidth);
+		}
+		if (maze.getHeight() + 2 * margin <= viewportHeight) {
+			minViewportY = maxViewportY = (int) Math.round(maze.getCentreY()
+					- viewportHeight / 2.0);
+		} else {
+			minViewportY = (int) Math.floor(maze.getY() - margin);
+			maxViewportY = (int) Math.ceil(maze.getY() + maze.getHeight()
+					+ margin - viewportHeight);
+		}
+	}
+
+	/*
+	 * Returns the pixel x-coordinate of the left edge of the viewport when it
+	 * is centred on targetX (as far as it can be). It is rounded to a whole
+	 * pixel so that everything is drawn at the same pixels relative to each
+	 * other wherever the viewport is.
+	 */
+	public int getViewportX(double targetX) {
+		return Math.max(minViewportX, Math.min(maxViewportX,
+				(int) Math.round(targetX - viewportWidth / 2.0)));
+	}
+
+	/*
+	 * Returns the pixel y-coordinate of the top edge of the viewport when it
+	 * is centred on targetY (as far as it can be).
+	 */
+	public int getViewportY(double targetY) {
+		return Math.max(minViewportY, Math.min(maxViewportY,
+				(int) Math.round(targetY - viewportHeight / 2.0)));
+	}
+
+}
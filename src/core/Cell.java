@@ -5,10 +5,12 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Stroke;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 public class Cell extends Entity {
@@ -74,6 +76,16 @@ public class Cell extends Entity {
 	 */
 	private List<Player> encounteredPlayers;
 
+	/*
+	 * The sprite showing which players have reached this Cell object (see
+	 * the SpriteCache class), or null if no players have reached it. Used if
+	 * this Cell object is a checkpoint. It is fetched again whenever a player
+	 * is added to the encounteredPlayers list, which happens on the game loop
+	 * thread, and it is volatile as it is read on the thread rendering the
+	 * game. Used for rendering purposes only.
+	 */
+	private volatile BufferedImage checkpointProgressSprite;
+
 	/*
 	 * The Surface of this Cell object. Changes the speed of Player objects that
 	 * move over this cell according to the speedMultiplier value of the Surface
@@ -127,6 +139,7 @@ public class Cell extends Entity {
 		neighbourings = new ArrayList<Neighbouring>();
 		adjacentCells = new ArrayList<Cell>();
 		isCheckpoint = false;
+		checkpointProgressSprite = null;
 		this.surface = surface;
 		this.wallProportionOfCellDimensions = wallProportionOfCellDimensions;
 		this.checkpointProportionOfCellDimensions = checkpointProportionOfCellDimensions;
@@ -157,11 +170,15 @@ public class Cell extends Entity {
 
 	/*
 	 * Adds the encounteredPlayer parameter to the encounteredPlayers list if it
-	 * is not already in it. If it is, returns false, otherwise returns true.
+	 * is not already in it, and fetches the sprite for the new list. If it is,
+	 * returns false, otherwise returns true.
 	 */
 	public boolean addEncounteredPlayer(Player encounteredplayer) {
 		if (!encounteredPlayers.contains(encounteredplayer)) {
 			encounteredPlayers.add(encounteredplayer);
+			checkpointProgressSprite = SpriteCache.getCheckpointSprite(
+					encounteredPlayers,
+					(int) (width * checkpointProportionOfCellDimensions));
 			return true;
 		}
 		return false;
@@ -244,9 +261,10 @@ public class Cell extends Entity {
 	/*
 	 * Returns a random neighbouring Cell object that is not adjacent to this
 	 * Cell object (i.e. a random Cell object that is not in the adjacentCells
-	 * list but is in a Neighbouring object in the neighbourings list)
+	 * list but is in a Neighbouring object in the neighbourings list), chosen
+	 * with the given random number generator.
 	 */
-	public Cell getRandomNeighbouringNonAdjacentCell() {
+	public Cell getRandomNeighbouringNonAdjacentCell(Random random) {
 
 		/*
 		 * A list is created to store all the neighbouring Cell objects not
@@ -270,8 +288,7 @@ public class Cell extends Entity {
 		 * The Cell object in a random index of the neighbouringNonAdjacentCells
 		 * list is then returned.
 		 */
-		int randIndex = Application.randomNumberGenerator
-				.nextInt(neighbouringNonAdjacentCells.size());
+		int randIndex = random.nextInt(neighbouringNonAdjacentCells.size());
 		return neighbouringNonAdjacentCells.get(randIndex);
 	}
 
@@ -345,7 +362,10 @@ public class Cell extends Entity {
 
 	/*
 	 * Renders the base cell, the surface, and the checkpoint indicator if the
-	 * cell is a checkpoint.
+	 * cell is a checkpoint. Nothing drawn here changes during a round, so the
+	 * Maze class only calls this once per round, when it draws its static
+	 * layer (see the Maze class). The sectors showing which players have
+	 * reached the checkpoint are drawn by renderCheckpointProgress instead.
 	 */
 	@Override
 	public void render(Graphics graphics) {
@@ -379,27 +399,6 @@ public class Cell extends Entity {
 					(int) (width * checkpointProportionOfCellDimensions),
 					(int) (height * checkpointProportionOfCellDimensions));
 
-			/*
-			 * For each Player object that is in the encounteredPlayers list, an
-			 * equally-sized sector of the checkpoint indicator circle is filled
-			 * with the same colour as the respective Player object.
-			 */
-			int numPlayersEncountered = encounteredPlayers.size();
-			double startAngle = 0;
-			double arcAngle = 360 / (numPlayersEncountered + 1);
-			for (Player player : encounteredPlayers) {
-				graphics.setColor(player.getColor());
-				graphics.fillArc((int) (x + width
-						* (1 - checkpointProportionOfCellDimensions) / 2),
-						(int) (y + height
-								* (1 - checkpointProportionOfCellDimensions)
-								/ 2),
-						(int) (width * checkpointProportionOfCellDimensions),
-						(int) (height * checkpointProportionOfCellDimensions),
-						(int) startAngle, (int) arcAngle);
-				startAngle += arcAngle;
-			}
-
 			/*
 			 * Draws the black outline of the checkpoint indicator.
 			 */
@@ -415,6 +414,41 @@ public class Cell extends Entity {
 		graphics.setColor(lastColor);
 	}
 
+	/*
+	 * Renders the parts of the checkpoint indicator that change during a
+	 * round, on top of the base checkpoint indicator circle drawn by the
+	 * render method. Does nothing if the Cell object is not a checkpoint or no
+	 * players have reached it yet, which is the case for most checkpoints for
+	 * most of a round.
+	 */
+	public void renderCheckpointProgress(Graphics graphics) {
+		renderCheckpointProgress(graphics, checkpointProgressSprite);
+	}
+
+	/*
+	 * The same as above, but with sprite as the sprite of the checkpoint
+	 * progress (see the checkpointProgressSprite attribute), which can be one
+	 * that was fetched earlier with the getCheckpointProgressSprite method, so
+	 * that the checkpoint can be rendered as it was at that time.
+	 */
+	public void renderCheckpointProgress(Graphics graphics,
+			BufferedImage sprite) {
+		/*
+		 * For each Player object that is in the encounteredPlayers list, an
+		 * equally-sized sector of the checkpoint indicator circle is filled
+		 * with the same colour as the respective Player object, and the black
+		 * outline is drawn over the sectors. These are all drawn from one
+		 * sprite, so the encounteredPlayers list is not read here at all.
+		 */
+		if (sprite != null) {
+			graphics.drawImage(sprite, (int) (x + width
+					* (1 - checkpointProportionOfCellDimensions) / 2)
+					- SpriteCache.SPRITE_PADDING, (int) (y + height
+					* (1 - checkpointProportionOfCellDimensions) / 2)
+					- SpriteCache.SPRITE_PADDING, null);
+		}
+	}
+
 	public void renderWalls(Graphics graphics) {
 
 		/*
@@ -519,6 +553,14 @@ public class Cell extends Entity {
 		return isCheckpoint;
 	}
 
+	public Surface getSurface() {
+		return surface;
+	}
+
+	public BufferedImage getCheckpointProgressSprite() {
+		return checkpointProgressSprite;
+	}
+
 	public List<Cell> getAdjacentCells() {
 		/*
 		 * An unmodifiable version is returned so that the list cannot be
@@ -1,6 +1,7 @@
 package core;
 
 import java.awt.Graphics;
+import java.awt.Rectangle;
 
 public abstract class Entity {
 	/*
@@ -63,6 +64,21 @@ public abstract class Entity {
 		return y + height / 2;
 	}
 
+	/*
+	 * Returns the smallest rectangle of whole pixels that the render method
+	 * can draw into, with an extra pixel on every side for antialiasing and
+	 * outlines. Used to work out which part of the screen needs to be
+	 * rendered again when the entity changes. The coordinates are rounded
+	 * down rather than towards zero, as the entity can be to the left of or
+	 * above the screen when the camera has moved (see the Camera class).
+	 */
+	public Rectangle getBounds() {
+		int left = (int) Math.floor(x) - 1;
+		int top = (int) Math.floor(y) - 1;
+		return new Rectangle(left, top, (int) Math.ceil(x + width) + 2
+				- left, (int) Math.ceil(y + height) + 2 - top);
+	}
+
 	/*
 	 * Getters and setters.
 	 */
@@ -22,6 +22,62 @@ public class GameConstants {
 	public static final double WINDOW_ASPECT_RATIO = 1;
 	public static final int GAME_HZ = 60;
 
+	/*
+	 * Whether the screen is rendered actively on its own thread rather than
+	 * by Swing (see the ScreenDisplayer class), how many buffers are used to
+	 * do so, and the most frames rendered per second, where 0 means that
+	 * there is no limit. The number of frames per second does not affect the
+	 * speed of the game, which is set by GAME_HZ.
+	 */
+	public static final boolean ACTIVE_RENDERING = true;
+	public static final int NUM_RENDER_BUFFERS = 3;
+	public static final int MAX_FRAMES_PER_SECOND = 120;
+
+	/*
+	 * The smallest side length in pixels that a cell in the maze is shown at.
+	 * If a maze does not fit on the screen at this size, the screen follows
+	 * the human player around the maze instead (see the Camera class).
+	 */
+	public static final int MIN_CELL_SIDE_LENGTH = 20;
+
+	/*
+	 * The most pixels that the static layer image of a maze can have (see the
+	 * Maze class). Bigger mazes are rendered one visible cell at a time.
+	 */
+	public static final long MAX_STATIC_LAYER_PIXELS = 4096 * 4096;
+
+	/*
+	 * The number of cells along each side of the square chunks that the walls
+	 * of a maze are split into (see the WallMesh class).
+	 */
+	public static final int WALL_MESH_CHUNK_SIDE_CELLS = 64;
+
+	/*
+	 * Cells with sides shorter than MIN_VECTOR_CELL_SIDE_LENGTH pixels are
+	 * rendered pixel by pixel rather than as shapes, and their walls are only
+	 * drawn if their sides are at least MIN_DETAILED_RASTER_CELL_SIDE_LENGTH
+	 * pixels long (see the MazeRaster class).
+	 */
+	public static final double MIN_VECTOR_CELL_SIDE_LENGTH = 4;
+	public static final double MIN_DETAILED_RASTER_CELL_SIDE_LENGTH = 2;
+
+	/*
+	 * How the game loop and render loop are paced (see the ScreenDisplayer
+	 * class): how many nanoseconds before each game cycle or frame the thread
+	 * stops sleeping and spins instead, the most game cycles run in a row to
+	 * catch up after the game falls behind, and how long to wait for the
+	 * loops to stop when the window is closed.
+	 */
+	public static final long LOOP_SPIN_NANOS = 1000000;
+	public static final int MAX_CATCH_UP_GAME_CYCLES = 5;
+	public static final long LOOP_SHUTDOWN_TIMEOUT_MILLIS = 1000;
+
+	/*
+	 * The most key presses that can be waiting to be handled at the start of
+	 * the next game cycle (see the InputQueue class). Must be a power of two.
+	 */
+	public static final int INPUT_QUEUE_CAPACITY = 64;
+
 	/*
 	 * Distinct colours for different game objects and surfaces.
 	 */
@@ -60,6 +116,123 @@ public class GameConstants {
 	public static final double PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS = 0.05;
 	public static final double AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS = 0.04;
 
+	/*
+	 * The number of game cycles per second that the base velocities above are
+	 * for. If GAME_HZ is different (e.g. lower, so that each second of the
+	 * game takes less time to update), the base velocities are scaled so that
+	 * the players move at the same speed.
+	 */
+	public static final int BASE_VELOCITY_GAME_HZ = 60;
+
+	/*
+	 * The largest number of checkpoints (including the endpoints) for which the
+	 * exact Held-Karp route solver in the AIPlayer class can be used. Its table
+	 * has 2^(k-2)(k-2) doubles, which is about 170MB at 22 checkpoints.
+	 */
+	public static final int MAX_OPTIMAL_ROUTE_CHECKPOINTS = 22;
+
+	/*
+	 * The number of nearest checkpoints that the local search in the AIPlayer
+	 * class tries to connect each checkpoint to.
+	 */
+	public static final int NUM_ROUTE_NEIGHBOURS = 16;
+
+	/*
+	 * The most checkpoints in a route for the local search in the AIPlayer
+	 * class to also run the slower 2-opt heuristic on it and keep whichever
+	 * route is better, which takes about a second at 1000 checkpoints.
+	 */
+	public static final int MAX_TWO_OPT_BASELINE_CHECKPOINTS = 1000;
+
+	/*
+	 * The largest number of checkpoints for which the AIPlayer class finds the
+	 * shortest paths between every pair of checkpoints, and the largest
+	 * number of checkpoints times the number of vertices in the reduced graph
+	 * for which it does so (the MazePlan class runs a Dijkstra search over the
+	 * whole reduced graph from each checkpoint and keeps an int for every
+	 * vertex from each one, so this limits both its time and its memory, to
+	 * 256MB of predecessor trees). With more, it uses a SpatialRoutePlanner
+	 * object, which only finds the shortest paths between nearby checkpoints.
+	 */
+	public static final int MAX_DISTANCE_MATRIX_CHECKPOINTS = 3000;
+	public static final long MAX_DISTANCE_MATRIX_VERTEX_ENTRIES = 1L << 26;
+
+	/*
+	 * How long the background route planner of an AIPlayer object keeps
+	 * improving its route for after the round starts.
+	 */
+	public static final long AI_PLANNING_TIME_BUDGET_MILLIS = 3000;
+
+	/*
+	 * How long the round waits for an AIPlayer object to be planned before it
+	 * starts anyway. If the AI is not ready by then, it joins the round as soon
+	 * as it is.
+	 */
+	public static final long AI_LOADING_TIME_BUDGET_MILLIS = 5000;
+
+	/*
+	 * The most bytes of AI routes that the PlanCache object of the GameScreen
+	 * class keeps in memory, the directory it writes routes to when they no
+	 * longer fit (or null to only keep them in memory), and the most routes it
+	 * keeps in that directory.
+	 */
+	public static final long PLAN_CACHE_MAX_BYTES = 32 * 1024 * 1024;
+	public static final String PLAN_CACHE_DIRECTORY = null;
+	public static final int PLAN_CACHE_MAX_DISK_ENTRIES = 64;
+
+	/*
+	 * The number of slots in the cache of shortest path weights of the
+	 * SpatialRoutePlanner class for each checkpoint, and the most slots it
+	 * can have whatever the number of checkpoints (each slot takes 16 bytes).
+	 */
+	public static final int SPATIAL_CACHE_SLOTS_PER_CHECKPOINT = 64;
+	public static final int MAX_SPATIAL_CACHE_SLOTS = 1 << 21;
+
+	/*
+	 * How far the local search of the SpatialRoutePlanner class looks for
+	 * the shortest path between two checkpoints, as a multiple of the weight
+	 * from either of them to the furthest of its nearest checkpoints. Pairs
+	 * further apart than that are treated as too far apart to be joined.
+	 */
+	public static final double SPATIAL_SEARCH_WINDOW = 4;
+
+	/*
+	 * The settings for the parallel simulated annealing route solver in the
+	 * AIPlayer class. Each epoch, every chain tries
+	 * NUM_ANNEALING_MOVES_PER_CHECKPOINT moves for each checkpoint. The
+	 * temperature starts at ANNEALING_INITIAL_TEMPERATURE_PROPORTION of the
+	 * average weight of a route edge and falls to
+	 * ANNEALING_FINAL_TEMPERATURE_RATIO of that by the end.
+	 */
+	public static final int NUM_ANNEALING_CHAINS = 4;
+	public static final int NUM_ANNEALING_EPOCHS = 100;
+	public static final int NUM_ANNEALING_MOVES_PER_CHECKPOINT = 50;
+	public static final double ANNEALING_INITIAL_TEMPERATURE_PROPORTION = 0.1;
+	public static final double ANNEALING_FINAL_TEMPERATURE_RATIO = 0.01;
+
+	/*
+	 * Whether the route planner thread of an AIPlayer object anneals the
+	 * route (rather than using double-bridge moves) once it is a local
+	 * optimum, the fewest checkpoints left in the route for it to do so, and
+	 * the most time each round of annealing takes. Annealing is only used
+	 * with a distance matrix (see MAX_DISTANCE_MATRIX_CHECKPOINTS). It is
+	 * off by default, as with only AI_PLANNING_TIME_BUDGET_MILLIS
+	 * milliseconds to run in, the double-bridge moves found routes that
+	 * were as good or better on a computer with few processors.
+	 */
+	public static final boolean USE_ANNEALING = false;
+	public static final int MIN_ANNEALING_CHECKPOINTS = 200;
+	public static final long ANNEALING_ROUND_MILLIS = 500;
+
+	/*
+	 * The most iterations of subgradient ascent used to find the lower bound
+	 * on the weight of a route in the AIPlayer class, and how many
+	 * iterations without the bound improving are allowed before the step
+	 * size is halved.
+	 */
+	public static final int MAX_LOWER_BOUND_ITERATIONS = 300;
+	public static final int LOWER_BOUND_PATIENCE = 10;
+
 	public static final double PLAYER_TOLERANCE_CONSTANT = 0.03;
 	public static final double PLAYER_PROPORTION_OF_CELL_DIMENSIONS = 7d / 8d;
 	
@@ -103,4 +276,17 @@ public class GameConstants {
 	}
 
 	public static final Color GAME_OVERLAY_COLOR = new Color(0, 0, 0, 0.7f);
+
+	/*
+	 * The performance overlay (see the PerformanceOverlay class): the key
+	 * that shows and hides it, how often the figures on it are worked out
+	 * again, and how it looks.
+	 */
+	public static final int PERFORMANCE_OVERLAY_KEY = KeyEvent.VK_F3;
+	public static final long PERFORMANCE_OVERLAY_REFRESH_MILLIS = 500;
+	public static final Color PERFORMANCE_OVERLAY_COLOR = new Color(0, 0, 0,
+			0.7f);
+	public static final Color PERFORMANCE_OVERLAY_TEXT_COLOR = Color.WHITE;
+	public static final Font PERFORMANCE_OVERLAY_FONT = new Font(
+			Font.MONOSPACED, Font.PLAIN, 12);
 }
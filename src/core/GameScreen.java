@@ -4,10 +4,21 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.io.File;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class GameScreen implements Screen {
 	/*
@@ -46,6 +57,13 @@ public class GameScreen implements Screen {
 	 */
 	private Level currentLevel;
 
+	/*
+	 * The seed of the random number generator that the maze for the current
+	 * level was generated from, so that the same maze can be generated again
+	 * if the level is replayed.
+	 */
+	private long mazeSeed;
+
 	/*
 	 * The maze generated for the current level. This is composition as the
 	 * GameScreen class has a HAS-A relationship with the Maze class and the
@@ -53,6 +71,17 @@ public class GameScreen implements Screen {
 	 */
 	private Maze maze;
 
+	/*
+	 * The camera deciding which part of maze is shown on the screen, and the
+	 * position of its viewport as of the last game cycle, which is used to
+	 * tell when the whole screen has changed because the viewport has moved.
+	 * This is composition as the GameScreen class has a HAS-A relationship
+	 * with the Camera class and the camera object will be destroyed if the
+	 * GameScreen object is destroyed.
+	 */
+	private Camera camera;
+	private int viewportX, viewportY;
+
 	/*
 	 * The Player objects that will be moving through the maze for the current
 	 * level. The List interface is used rather than a concrete class such as
@@ -73,6 +102,59 @@ public class GameScreen implements Screen {
 	 */
 	private Player winner;
 
+	/*
+	 * The finished routes of the AIPlayer objects planned so far, so that an
+	 * AIPlayer object does not have to be planned again when a maze is
+	 * replayed. It is static so that it is kept when the user goes back to the
+	 * main menu and a new GameScreen object is created. This is composition
+	 * as the GameScreen class has a HAS-A relationship with the PlanCache
+	 * class and the PLAN_CACHE object will be destroyed if the GameScreen
+	 * class is unloaded.
+	 */
+	private static final PlanCache PLAN_CACHE = new PlanCache(
+			GameConstants.PLAN_CACHE_MAX_BYTES,
+			GameConstants.PLAN_CACHE_DIRECTORY == null ? null : new File(
+					GameConstants.PLAN_CACHE_DIRECTORY),
+			GameConstants.PLAN_CACHE_MAX_DISK_ENTRIES);
+
+	/*
+	 * The AIPlayer object for the current level while it is still being
+	 * planned on another thread, or null if there is none being planned (see
+	 * the startAIPlanning method). This is composition as the
+	 * GameScreen class has a HAS-A relationship with the CompletableFuture
+	 * class and the aiPlayerFuture object will be destroyed if the GameScreen
+	 * object is destroyed.
+	 */
+	private CompletableFuture<AIPlayer> aiPlayerFuture;
+
+	/*
+	 * How far the planning of aiPlayerFuture has got, which is shown on the
+	 * loading overlay. This is composition as the GameScreen class has a
+	 * HAS-A relationship with the PlanningProgress class and the
+	 * aiPlanningProgress object will be destroyed if the GameScreen object is
+	 * destroyed.
+	 */
+	private PlanningProgress aiPlanningProgress;
+
+	/*
+	 * The time in nanoseconds that the maze for the current level took to
+	 * generate, which is shown on the performance overlay.
+	 */
+	private long mazeGenerationNanos;
+
+	/*
+	 * Whether the round has started, which is once the AIPlayer object has
+	 * been planned or the time given to plan it has run out, whichever comes
+	 * first. Until then, the players do not move.
+	 */
+	private boolean roundStarted;
+
+	/*
+	 * The time (in System.nanoTime units) at which the round starts even if
+	 * the AIPlayer object has not been planned yet.
+	 */
+	private long roundStartDeadline;
+
 	/*
 	 * Whether the level has been finished by a player.
 	 */
@@ -83,6 +165,55 @@ public class GameScreen implements Screen {
 	 */
 	private boolean paused;
 
+	/*
+	 * The regions of the screen that have changed since the getDirtyRegions
+	 * method was last called (see the Screen interface), which are where
+	 * players were before and after they moved and the checkpoints they
+	 * reached. The ArrayList implementation is used because it is efficient
+	 * with respect to memory and iteration time complexity.
+	 */
+	private List<Rectangle> dirtyRegions;
+
+	/*
+	 * Whether the whole screen has changed since the getDirtyRegions method
+	 * was last called (e.g. because an overlay has appeared or disappeared).
+	 * An AtomicBoolean is used as it is checked and cleared in one step, so
+	 * that no change is missed.
+	 */
+	private final AtomicBoolean fullyDirty;
+
+	/*
+	 * Whether the regions above (and the position of the viewport, which
+	 * they depend on) are worked out at all. They are only needed when the
+	 * screen is rendered by Swing, as the render loop used for active
+	 * rendering renders every frame in full (see the isRenderedActively
+	 * method of the ScreenDisplayer class).
+	 */
+	private final boolean tracksDirtyRegions;
+
+	/*
+	 * The snapshots of everything that the render method needs (see the
+	 * GameSnapshot class). The game loop thread fills one in at the end of
+	 * every game cycle and publishes it, and the render method only ever
+	 * reads the latest published one, so it never sees the game part of the
+	 * way through a game cycle and never reads anything that the game loop
+	 * thread is changing. This is composition as the GameScreen class has a
+	 * HAS-A relationship with the TripleBuffer class and the snapshots
+	 * object will be destroyed if the GameScreen object is destroyed.
+	 */
+	private final TripleBuffer<GameSnapshot> snapshots;
+
+	/*
+	 * The overlay showing how the game is performing, and whether it is
+	 * shown (which is flipped by pressing
+	 * GameConstants.PERFORMANCE_OVERLAY_KEY). This is composition as the
+	 * GameScreen class has a HAS-A relationship with the PerformanceOverlay
+	 * class and the performanceOverlay object will be destroyed if the
+	 * GameScreen object is destroyed.
+	 */
+	private final PerformanceOverlay performanceOverlay;
+	private boolean performanceOverlayShown;
+
 	/*
 	 * Constructor.
 	 */
@@ -91,17 +222,196 @@ public class GameScreen implements Screen {
 		this.screenDisplayer = screenDisplayer;
 		this.gameMode = gameMode;
 		paused = false;
+		dirtyRegions = new ArrayList<Rectangle>();
+		fullyDirty = new AtomicBoolean(true);
+		tracksDirtyRegions = !screenDisplayer.isRenderedActively();
+		snapshots = new TripleBuffer<GameSnapshot>(new GameSnapshot(),
+				new GameSnapshot(), new GameSnapshot());
+		performanceOverlay = new PerformanceOverlay(
+				screenDisplayer.getLoopMetrics());
+		performanceOverlayShown = false;
 		setUpLevel(level);
+		publishSnapshot();
+	}
+
+	/*
+	 * This class is used to store everything that the render method needs to
+	 * know about the game at the end of a game cycle: the maze and camera,
+	 * where each player was at the start and end of the cycle, the progress
+	 * of each checkpoint, and which overlay to show. Three GameSnapshot
+	 * objects are reused over and over (see the snapshots attribute), so
+	 * filling one in does not create any objects except when a level starts
+	 * (when the arrays may need to be bigger). A GameSnapshot object is not
+	 * changed while it is being read.
+	 */
+	private static class GameSnapshot {
+		private Maze maze;
+		private Camera camera;
+
+		/*
+		 * The Player objects (which are only used for things that do not
+		 * change, such as their sizes and sprites), and their pixel
+		 * coordinates at the start and end of the game cycle. Only the first
+		 * numPlayers elements of each array are used.
+		 */
+		private int numPlayers;
+		private Player[] players = new Player[0];
+		private double[] previousXs = new double[0];
+		private double[] previousYs = new double[0];
+		private double[] xs = new double[0];
+		private double[] ys = new double[0];
+
+		/*
+		 * The sprites of the progress of the checkpoints of maze (see the
+		 * getCheckpointProgressSprites method of the Maze class).
+		 */
+		private BufferedImage[] checkpointProgressSprites;
+
+		/*
+		 * What the overlays need to show.
+		 */
+		private boolean roundStarted;
+		private boolean roundOver;
+		private boolean paused;
+		private Player winner;
+		private Level currentLevel;
+		private PlanningStage planningStage;
+		private double planningStageProgress;
+		private long roundStartDeadline;
+
+		/*
+		 * What the performance overlay needs to show.
+		 */
+		private boolean performanceOverlayShown;
+		private long mazeGenerationNanos;
+		private PlanningProgress planningProgress;
+
+		/*
+		 * Makes sure that the player arrays have at least numPlayers
+		 * elements.
+		 */
+		private void ensurePlayerCapacity(int numPlayers) {
+			if (players.length < numPlayers) {
+				players = new Player[numPlayers];
+				previousXs = new double[numPlayers];
+				previousYs = new double[numPlayers];
+				xs = new double[numPlayers];
+				ys = new double[numPlayers];
+			}
+		}
+
+		/*
+		 * Returns the pixel x-coordinate that the camera should be centred
+		 * on, which is the centre of the human player (or halfway between the
+		 * human players if there are two) where it is rendered for the given
+		 * interpolation (see the render method of the Player class).
+		 */
+		private double getCameraTargetX(double interpolation) {
+			double sumOfCentreXs = 0;
+			int numHumanPlayers = 0;
+			for (int i = 0; i < numPlayers; i++) {
+				if (players[i] instanceof HumanPlayer) {
+					sumOfCentreXs += previousXs[i] + (xs[i] - previousXs[i])
+							* interpolation + players[i].getWidth() / 2;
+					numHumanPlayers++;
+				}
+			}
+			return numHumanPlayers == 0 ? maze.getCentreX() : sumOfCentreXs
+					/ numHumanPlayers;
+		}
+
+		/*
+		 * Returns the pixel y-coordinate that the camera should be centred
+		 * on, in the same way.
+		 */
+		private double getCameraTargetY(double interpolation) {
+			double sumOfCentreYs = 0;
+			int numHumanPlayers = 0;
+			for (int i = 0; i < numPlayers; i++) {
+				if (players[i] instanceof HumanPlayer) {
+					sumOfCentreYs += previousYs[i] + (ys[i] - previousYs[i])
+							* interpolation + players[i].getHeight() / 2;
+					numHumanPlayers++;
+				}
+			}
+			return numHumanPlayers == 0 ? maze.getCentreY() : sumOfCentreYs
+					/ numHumanPlayers;
+		}
+	}
+
+	/*
+	 * Fills in a GameSnapshot object with the current state of the game and
+	 * publishes it for the render method. If the camera has moved to follow
+	 * the human player, then everything on the screen has moved, so the whole
+	 * screen is marked as changed.
+	 */
+	private void publishSnapshot() {
+		GameSnapshot snapshot = snapshots.getWriteBuffer();
+		snapshot.maze = maze;
+		snapshot.camera = camera;
+		List<Player> currentPlayers = players;
+		int numPlayers = currentPlayers == null ? 0 : currentPlayers.size();
+		snapshot.ensurePlayerCapacity(numPlayers);
+		snapshot.numPlayers = numPlayers;
+		for (int i = 0; i < numPlayers; i++) {
+			Player player = currentPlayers.get(i);
+			snapshot.players[i] = player;
+			snapshot.previousXs[i] = player.getPreviousX();
+			snapshot.previousYs[i] = player.getPreviousY();
+			snapshot.xs[i] = player.getX();
+			snapshot.ys[i] = player.getY();
+		}
+		snapshot.checkpointProgressSprites = maze
+				.getCheckpointProgressSprites(snapshot.checkpointProgressSprites);
+		snapshot.roundStarted = roundStarted;
+		snapshot.roundOver = roundOver;
+		snapshot.paused = paused;
+		snapshot.winner = winner;
+		snapshot.currentLevel = currentLevel;
+		PlanningProgress progress = aiPlanningProgress;
+		if (progress != null) {
+			snapshot.planningStage = progress.getStage();
+			snapshot.planningStageProgress = progress.getStageProgress();
+		}
+		snapshot.roundStartDeadline = roundStartDeadline;
+		snapshot.performanceOverlayShown = performanceOverlayShown;
+		snapshot.mazeGenerationNanos = mazeGenerationNanos;
+		snapshot.planningProgress = progress;
+
+		if (tracksDirtyRegions) {
+			int newViewportX = camera.getViewportX(snapshot
+					.getCameraTargetX(1));
+			int newViewportY = camera.getViewportY(snapshot
+					.getCameraTargetY(1));
+			if (newViewportX != viewportX || newViewportY != viewportY) {
+				viewportX = newViewportX;
+				viewportY = newViewportY;
+				fullyDirty.set(true);
+			}
+		}
+		snapshots.publish();
 	}
 
 	/*
 	 * Initialises or, if already initialised, resets the class variables
 	 * currentLevel, maze, players, winner, roundOver given the attributes of
-	 * the level parameter and gameMode.
+	 * the level parameter and gameMode, with a new random maze.
 	 */
 	protected void setUpLevel(Level level) {
+		setUpLevel(level, Application.randomNumberGenerator.nextLong());
+	}
+
+	/*
+	 * The same as above, but the maze is generated from the given seed, so
+	 * the same seed always gives the same maze.
+	 */
+	protected void setUpLevel(Level level, long mazeSeed) {
+		cancelAIPlanning();
+		this.mazeSeed = mazeSeed;
 		currentLevel = level;
 		winner = null;
+		roundStartDeadline = System.nanoTime()
+				+ GameConstants.AI_LOADING_TIME_BUDGET_MILLIS * 1000000L;
 
 		/*
 		 * players must be made null before roundOver is set to false so that
@@ -117,8 +427,16 @@ public class GameScreen implements Screen {
 		 */
 		int numCellsWide = level.getNumCellsWide();
 		int numCellsHigh = level.getNumCellsHigh();
-		double cellSideLength = Math.min(screenDisplayer.getHeight()
-				/ numCellsHigh, screenDisplayer.getWidth() / numCellsWide);
+
+		/*
+		 * The cells are made as big as they can be while the whole maze still
+		 * fits on the screen, but no smaller than
+		 * GameConstants.MIN_CELL_SIDE_LENGTH, in which case the maze is
+		 * bigger than the screen and the camera follows the human player.
+		 */
+		double cellSideLength = Math.max(GameConstants.MIN_CELL_SIDE_LENGTH,
+				Math.min(screenDisplayer.getHeight() / numCellsHigh,
+						screenDisplayer.getWidth() / numCellsWide));
 		double width = numCellsWide * cellSideLength;
 		double height = numCellsHigh * cellSideLength;
 		double x = (screenDisplayer.getWidth() - width) / 2;
@@ -135,13 +453,29 @@ public class GameScreen implements Screen {
 		MazeType mazeType = level.getMazeType();
 
 		/*
-		 * Creates a maze with the above values as arguments.
+		 * Creates a maze with the above values as arguments, timing how long
+		 * it takes to generate. It is given its own random number generator
+		 * made from mazeSeed, rather than reseeding
+		 * Application.randomNumberGenerator, so that the maze only depends on
+		 * the seed and the rest of the game's random choices are not reset
+		 * every time a level is replayed.
 		 */
+		long mazeGenerationStartTime = System.nanoTime();
 		maze = new Maze(numCellsWide, numCellsHigh, x, y, cellSideLength,
 				deadEndProbability, wallProportionOfCellDimensions,
 				checkpointProportionOfCellDimensions,
 				numCheckpointsExcludingEndpoints, surfaceRatios,
-				checkpointColor, wallColor, groundColor, mazeType);
+				checkpointColor, wallColor, groundColor, mazeType, new Random(
+						mazeSeed));
+		mazeGenerationNanos = System.nanoTime() - mazeGenerationStartTime;
+
+		/*
+		 * Draws the parts of the maze that do not change during the round
+		 * now, rather than in the first frame of the round.
+		 */
+		maze.renderStaticLayer(screenDisplayer.getGraphicsConfiguration());
+		camera = new Camera(screenDisplayer.getWidth(),
+				screenDisplayer.getHeight(), maze, cellSideLength / 2);
 
 		/*
 		 * An ArrayList implementation is used because it is efficient with
@@ -149,11 +483,21 @@ public class GameScreen implements Screen {
 		 */
 		players = new ArrayList<Player>();
 
+		/*
+		 * The planning progress of the last level is forgotten, so that it is
+		 * not shown if this level has no AIPlayer object.
+		 */
+		aiPlanningProgress = null;
+
 		int numCheckpoints = maze.getNumCheckpoints();
+		double velocityScale = (double) GameConstants.BASE_VELOCITY_GAME_HZ
+				/ GameConstants.GAME_HZ;
 		double humanPlayerBaseVel = maze.getCellSideLength()
-				* GameConstants.PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS;
+				* GameConstants.PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS
+				* velocityScale;
 		double aiPlayerBaseVel = maze.getCellSideLength()
-				* GameConstants.AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS;
+				* GameConstants.AI_PLAYER_BASE_VELOCITY_PROPORTION_OF_CELL_DIMENSIONS
+				* velocityScale;
 		switch (gameMode) {
 		/*
 		 * If AGAINST_AI is the game mode, then a human player and an AI player
@@ -171,12 +515,7 @@ public class GameScreen implements Screen {
 					numCheckpoints, GameConstants.PLAYER1_UP,
 					GameConstants.PLAYER1_DOWN, GameConstants.PLAYER1_LEFT,
 					GameConstants.PLAYER1_RIGHT));
-			players.add(new AIPlayer(maze.getEndCell(), maze.getStartCell(),
-					aiPlayerBaseVel, GameConstants.PLAYER_TOLERANCE_CONSTANT,
-					GameConstants.PLAYER2_COLOR,
-					GameConstants.PLAYER2_DEFAULT_NAME,
-					GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS,
-					numCheckpoints, new ReducedGraph(maze.getStartCell())));
+			startAIPlanning(aiPlayerBaseVel, numCheckpoints);
 			break;
 
 		/*
@@ -221,6 +560,117 @@ public class GameScreen implements Screen {
 					GameConstants.PLAYER1_RIGHT));
 			break;
 		}
+
+		/*
+		 * If there is no AIPlayer object to wait for, then the round can
+		 * start straight away.
+		 */
+		roundStarted = aiPlayerFuture == null;
+		fullyDirty.set(true);
+	}
+
+	/*
+	 * Starts planning the AIPlayer object for the current level on another
+	 * thread, so that the game loop and the user interface carry on while it
+	 * is planned. The AIPlayer object is added to players by the update method
+	 * once it is ready. If the same route has been planned before (see the
+	 * PlanCache class), the AIPlayer object just follows it, and otherwise
+	 * its finished route is stored in PLAN_CACHE once it has been planned.
+	 */
+	private void startAIPlanning(final double aiPlayerBaseVel,
+			final int numCheckpoints) {
+		final Maze aiMaze = maze;
+		final PlanningProgress progress = new PlanningProgress();
+		aiPlanningProgress = progress;
+		aiPlayerFuture = CompletableFuture.supplyAsync(new Supplier<String>() {
+			@Override
+			public String get() {
+				return PlanCache.getKey(aiMaze, aiMaze.getEndCell(),
+						aiMaze.getStartCell());
+			}
+		}).thenCompose(new Function<String, CompletionStage<AIPlayer>>() {
+			@Override
+			public CompletionStage<AIPlayer> apply(String key) {
+				byte[] finishedRoute = PLAN_CACHE.get(key);
+				if (finishedRoute != null) {
+					progress.setStage(PlanningStage.READY);
+					return CompletableFuture.completedFuture(new AIPlayer(
+							aiMaze.getEndCell(), aiMaze.getStartCell(),
+							aiPlayerBaseVel,
+							GameConstants.PLAYER_TOLERANCE_CONSTANT,
+							GameConstants.PLAYER2_COLOR,
+							GameConstants.PLAYER2_DEFAULT_NAME,
+							GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS,
+							numCheckpoints, finishedRoute));
+				}
+				return planAIPlayer(aiMaze, aiPlayerBaseVel, numCheckpoints,
+						progress, key);
+			}
+		});
+	}
+
+	/*
+	 * Plans a new AIPlayer object for aiMaze as a pipeline of stages (reducing
+	 * the maze, finding the shortest paths between checkpoints, then planning
+	 * the route), each of which runs once the one before it has finished, and
+	 * stores its finished route in PLAN_CACHE with key unless progress has
+	 * been cancelled by then.
+	 */
+	private static CompletableFuture<AIPlayer> planAIPlayer(final Maze aiMaze,
+			final double aiPlayerBaseVel, final int numCheckpoints,
+			final PlanningProgress progress, final String key) {
+		return CompletableFuture.supplyAsync(new Supplier<ReducedGraph>() {
+			@Override
+			public ReducedGraph get() {
+				progress.setStage(PlanningStage.REDUCING_MAZE);
+				return new ReducedGraph(aiMaze.getStartCell());
+			}
+		}).thenApply(new Function<ReducedGraph, MazePlan>() {
+			@Override
+			public MazePlan apply(ReducedGraph reducedGraph) {
+				return new MazePlan(reducedGraph, progress);
+			}
+		}).thenApply(new Function<MazePlan, AIPlayer>() {
+			@Override
+			public AIPlayer apply(MazePlan mazePlan) {
+				AIPlayer aiPlayer = new AIPlayer(aiMaze.getEndCell(),
+						aiMaze.getStartCell(), aiPlayerBaseVel,
+						GameConstants.PLAYER_TOLERANCE_CONSTANT,
+						GameConstants.PLAYER2_COLOR,
+						GameConstants.PLAYER2_DEFAULT_NAME,
+						GameConstants.PLAYER_PROPORTION_OF_CELL_DIMENSIONS,
+						numCheckpoints, mazePlan, true, progress);
+				aiPlayer.getFinishedRoute().thenAccept(new Consumer<byte[]>() {
+					@Override
+					public void accept(byte[] finishedRoute) {
+						/*
+						 * If the level was left before the route planner
+						 * thread used up its time, the route may not be as
+						 * good as it could be, so it is not stored.
+						 */
+						if (!progress.isCancelled()) {
+							PLAN_CACHE.put(key, finishedRoute);
+						}
+					}
+				});
+				return aiPlayer;
+			}
+		});
+	}
+
+	/*
+	 * Stops the planning of the AIPlayer object for the current level, as it
+	 * is no longer needed (the level is being left). This is done even if
+	 * the AIPlayer object has already been added to players, as the route
+	 * planner thread of the AIPlayer object keeps improving its route after
+	 * that. The planning stops at the next point where it reports its
+	 * progress or checks whether it has been cancelled.
+	 */
+	private void cancelAIPlanning() {
+		if (aiPlanningProgress != null) {
+			aiPlanningProgress.cancel();
+		}
+		aiPlayerFuture = null;
 	}
 
 	/*
@@ -229,8 +679,10 @@ public class GameScreen implements Screen {
 	 */
 
 	/*
-	 * Calls the keyPressed method of the HumanPlayer objects in Players. If ESC
-	 * is pressed, flips the paused variable. If the game is paused or if the
+	 * If GameConstants.PERFORMANCE_OVERLAY_KEY is pressed, shows or hides the
+	 * performance overlay, whatever else is happening. Otherwise, calls the
+	 * keyPressed method of the HumanPlayer objects in Players. If ESC is
+	 * pressed, flips the paused variable. If the game is paused or if the
 	 * round is over, executes methods to carry out the actions represented by
 	 * the given options.
 	 */
@@ -238,13 +690,17 @@ public class GameScreen implements Screen {
 	public void keyPressed(KeyEvent keyEvent) {
 		int keyCode = keyEvent.getKeyCode();
 
-		if (!paused && !roundOver) {
+		if (keyCode == GameConstants.PERFORMANCE_OVERLAY_KEY) {
+			performanceOverlayShown = !performanceOverlayShown;
+			fullyDirty.set(true);
+		} else if (!paused && !roundOver) {
 			/*
 			 * The game is being played. Pressing ESC should pause the game.
 			 */
 			if (keyCode == KeyEvent.VK_ESCAPE) {
 				paused = true;
-			} else {
+				fullyDirty.set(true);
+			} else if (roundStarted) {
 				for (Player player : players) {
 					if (player instanceof HumanPlayer) {
 						/*
@@ -269,7 +725,9 @@ public class GameScreen implements Screen {
 				 */
 				if (keyCode == KeyEvent.VK_ESCAPE) {
 					paused = false;
+					fullyDirty.set(true);
 				} else if (keyCode == KeyEvent.VK_Q) {
+					cancelAIPlanning();
 					screenDisplayer.setScreen(new MainMenuScreen(
 							screenDisplayer));
 				}
@@ -297,10 +755,18 @@ public class GameScreen implements Screen {
 						}
 					}
 					break;
+				/*
+				 * Pressing R should replay the level on the same maze, which
+				 * is generated again from the same seed.
+				 */
+				case KeyEvent.VK_R:
+					setUpLevel(currentLevel, mazeSeed);
+					break;
 				/*
 				 * Pressing ESC should return to the main menu.
 				 */
 				case KeyEvent.VK_ESCAPE:
+					cancelAIPlanning();
 					screenDisplayer.setScreen(new MainMenuScreen(
 							screenDisplayer));
 					break;
@@ -310,17 +776,66 @@ public class GameScreen implements Screen {
 	}
 
 	/*
-	 * If the game is not paused and if the round is not over, updates each
-	 * Player objects in players. If a player has finished the round, sets
-	 * roundOver to true and winner to the Player object which finished.
+	 * Adds the AIPlayer object to players once it has been planned and starts
+	 * the round once it has been planned or the time given to plan it has run
+	 * out. If the game is not paused, the round has started and the round is
+	 * not over, updates each Player objects in players. If a player has
+	 * finished the round, sets roundOver to true and winner to the Player
+	 * object which finished.
 	 */
 	@Override
 	public void update() {
 		/*
-		 * If the game is paused or if the round is over, then the game
-		 * variables should not be updated.
+		 * Every player's position before this game cycle is remembered for
+		 * rendering, even if the players do not move in it (e.g. because the
+		 * game is paused), so that they are not rendered moving when they are
+		 * not. If players is pointing to a null reference (see the setUpLevel
+		 * method), then iterating over it would lead to a
+		 * NullPointerException.
 		 */
-		if (!paused && !roundOver) {
+		if (players != null) {
+			for (Player player : players) {
+				player.rememberPosition();
+			}
+		}
+
+		/*
+		 * aiPlayerFuture is only set once the players list of the level has
+		 * been made, and is made null again before players is, so players is
+		 * never null here.
+		 */
+		if (aiPlayerFuture != null && aiPlayerFuture.isDone()) {
+
+			/*
+			 * If the planning failed, join throws the exception, as there is a
+			 * logical error elsewhere in the program.
+			 */
+			AIPlayer aiPlayer = aiPlayerFuture.join();
+			players.add(aiPlayer);
+			aiPlayerFuture = null;
+			if (tracksDirtyRegions) {
+				dirtyRegions.add(aiPlayer.getBounds());
+			}
+		}
+		if (!roundStarted) {
+			if (aiPlayerFuture == null
+					|| System.nanoTime() >= roundStartDeadline) {
+				roundStarted = true;
+			}
+
+			/*
+			 * The loading overlay shows the progress of the planning, which
+			 * changes all the time, and it disappears when the round starts,
+			 * so the whole screen changes either way.
+			 */
+			fullyDirty.set(true);
+		}
+
+		/*
+		 * If the game is paused, if the round has not started or if the round
+		 * is over, then the game variables should not be updated.
+		 */
+		if (!paused && roundStarted && !roundOver) {
 			/*
 			 * If players is pointing to a null reference, then iterating over
 			 * it would lead to a NullPointerException.
@@ -334,7 +849,30 @@ public class GameScreen implements Screen {
 					 * contain different code depending on which class is
 					 * extending the Player class.
 					 */
-					player.update();
+					if (tracksDirtyRegions) {
+						Rectangle boundsBefore = player.getBounds();
+						Cell cellBefore = player.getCurrentCell();
+						player.update();
+
+						/*
+						 * The player needs to be rendered again if it has
+						 * moved, both where it was (to remove it) and where it
+						 * is now. If it has moved into a checkpoint Cell
+						 * object, then the progress of the checkpoint may have
+						 * changed too.
+						 */
+						Rectangle boundsAfter = player.getBounds();
+						if (!boundsAfter.equals(boundsBefore)) {
+							dirtyRegions.add(boundsBefore.union(boundsAfter));
+						}
+						Cell cellAfter = player.getCurrentCell();
+						if (cellAfter != cellBefore
+								&& cellAfter.isCheckpoint()) {
+							dirtyRegions.add(cellAfter.getBounds());
+						}
+					} else {
+						player.update();
+					}
 
 					/*
 					 * If a player has finished, then the round is over and the
@@ -343,22 +881,64 @@ public class GameScreen implements Screen {
 					if (player.finished()) {
 						roundOver = true;
 						winner = player;
+						fullyDirty.set(true);
 						break;
 					}
 				}
 			}
 		}
+
+		/*
+		 * The figures on the performance overlay change, so while it is shown,
+		 * the region it is in is marked as changed. The region is a position
+		 * on the screen, so it is moved to where it is in the maze, like the
+		 * other regions in dirtyRegions.
+		 */
+		if (performanceOverlayShown && tracksDirtyRegions) {
+			Rectangle overlayRegion = new Rectangle(
+					performanceOverlay.getBounds());
+			overlayRegion.translate(viewportX, viewportY);
+			dirtyRegions.add(overlayRegion);
+		}
+		publishSnapshot();
 	}
 
 	/*
-	 * Renders the maze and each Player object in players. If the game is
-	 * paused, displays an overlay with instructions on how to resume the game
+	 * Returns the whole screen if it has all changed (see the fullyDirty
+	 * attribute), and otherwise the regions in dirtyRegions, which is then
+	 * emptied for the next game cycles. The regions in dirtyRegions are
+	 * positions in the maze, so they are moved to where they are on the
+	 * screen, which depends on where the viewport of the camera is.
+	 */
+	@Override
+	public List<Rectangle> getDirtyRegions() {
+		if (fullyDirty.getAndSet(false)) {
+			dirtyRegions.clear();
+			return Collections.singletonList(new Rectangle(0, 0,
+					screenDisplayer.getWidth(), screenDisplayer.getHeight()));
+		}
+		if (dirtyRegions.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<Rectangle> changedRegions = dirtyRegions;
+		dirtyRegions = new ArrayList<Rectangle>();
+		for (Rectangle changedRegion : changedRegions) {
+			changedRegion.translate(-viewportX, -viewportY);
+		}
+		return changedRegions;
+	}
+
+	/*
+	 * Renders the maze and each Player object in players, as they were in the
+	 * latest snapshot published by the game loop thread (see the snapshots
+	 * attribute), so nothing that the game loop thread changes is read here.
+	 * If the game is paused, displays an overlay with instructions on how to resume the game
 	 * or go back to the main menu. If the round has finished, displays an
 	 * overlay showing the outcome of the round (i.e. who won) and instructions
 	 * on what to do next, depending on the game mode.
 	 */
 	@Override
-	public void render(Graphics graphics) {
+	public void render(Graphics graphics, double interpolation) {
 		/*
 		 * The colour and font used in the graphics object before this method is
 		 * called needs to be stored so that it can be restored at the end of
@@ -368,6 +948,8 @@ public class GameScreen implements Screen {
 		Color lastColor = graphics.getColor();
 		Font lastFont = graphics.getFont();
 
+		GameSnapshot snapshot = snapshots.getReadBuffer();
+
 		/*
 		 * Draws the background. The background should be the same colour as
 		 * walls (so that it is clear that players cannot move outside the
@@ -378,24 +960,62 @@ public class GameScreen implements Screen {
 		graphics.fillRect(0, 0, screenDisplayer.getWidth(),
 				screenDisplayer.getHeight());
 
+		/*
+		 * The maze and players are rendered with a copy of the graphics
+		 * object that is moved so that the viewport of the camera is at the
+		 * top left of the screen, and clipped to the screen so that the maze
+		 * only renders the part of itself that can be seen.
+		 */
+		Graphics mazeGraphics = graphics.create();
+		mazeGraphics.clipRect(0, 0, screenDisplayer.getWidth(),
+				screenDisplayer.getHeight());
+		mazeGraphics.translate(
+				-snapshot.camera.getViewportX(snapshot
+						.getCameraTargetX(interpolation)),
+				-snapshot.camera.getViewportY(snapshot
+						.getCameraTargetY(interpolation)));
+
 		/*
 		 * Renders the maze. The maze should be rendered before the players so
 		 * that the players appear above the maze.
 		 */
-		maze.render(graphics);
+		snapshot.maze.render(mazeGraphics, snapshot.checkpointProgressSprites);
+
+		/*
+		 * Renders each player, part of the way between where it was before the
+		 * last game cycle and where it is now.
+		 */
+		for (int i = 0; i < snapshot.numPlayers; i++) {
+			snapshot.players[i].renderAt(mazeGraphics, snapshot.previousXs[i]
+					+ (snapshot.xs[i] - snapshot.previousXs[i]) * interpolation,
+					snapshot.previousYs[i]
+							+ (snapshot.ys[i] - snapshot.previousYs[i])
+							* interpolation);
+		}
+		mazeGraphics.dispose();
 
 		/*
-		 * Renders each player in the players list.
+		 * If the round has not started yet, then the loading overlay should be
+		 * rendered on top of the game, showing the stage that the planning of
+		 * the AIPlayer object is at and how long is left before the round
+		 * starts anyway.
 		 */
-		for (Player player : players) {
-			player.render(graphics);
+		if (!snapshot.roundStarted && !snapshot.paused) {
+			String informationMessage = "Planning AI route: "
+					+ snapshot.planningStage.getDescription() + " ("
+					+ (int) (100 * snapshot.planningStageProgress) + "%)";
+			long secondsLeft = Math.max(0, (snapshot.roundStartDeadline
+					- System.nanoTime() + 999999999L) / 1000000000L);
+			String instructionsMessage = "The round starts in at most "
+					+ secondsLeft + "s";
+			renderOverlay(graphics, informationMessage, instructionsMessage);
 		}
 
 		/*
 		 * If the game is paused, then the pause overlay should be rendered on
 		 * top of the game.
 		 */
-		if (paused) {
+		if (snapshot.paused) {
 			String informationMessage = "PAUSED";
 			String instructionsMessage = "Press: [ESC] to resume; [Q] to exit to main menu";
 			renderOverlay(graphics, informationMessage, instructionsMessage);
@@ -405,7 +1025,7 @@ public class GameScreen implements Screen {
 		 * If the round is over, then the round-over overlay should be rendered
 		 * on top of the game.
 		 */
-		if (roundOver) {
+		if (snapshot.roundOver) {
 			StringBuilder informationMessageBuilder = new StringBuilder();
 			StringBuilder instructionsMessageBuilder = new StringBuilder();
 			switch (gameMode) {
@@ -421,13 +1041,14 @@ public class GameScreen implements Screen {
 				 * should say which level the user lost at and there should be
 				 * an option to quit to the main menu.
 				 */
-				if (winner instanceof AIPlayer) {
+				if (snapshot.winner instanceof AIPlayer) {
 					informationMessageBuilder.append("You lost at level ");
-					informationMessageBuilder.append(currentLevel.toString());
+					informationMessageBuilder.append(snapshot.currentLevel
+							.toString());
 					instructionsMessageBuilder
 							.append("Press: [ESC] to exit to main menu");
 				} else {
-					Level nextLevel = currentLevel.getNextLevel();
+					Level nextLevel = snapshot.currentLevel.getNextLevel();
 					if (nextLevel == null) {
 						/*
 						 * This means that the user has won the last level, so
@@ -447,7 +1068,7 @@ public class GameScreen implements Screen {
 						 * play the next level or quit to the main menu.
 						 */
 						informationMessageBuilder.append("You won level: ");
-						informationMessageBuilder.append(currentLevel
+						informationMessageBuilder.append(snapshot.currentLevel
 								.toString());
 						instructionsMessageBuilder
 								.append("Press: [ENTER] for level ");
@@ -466,7 +1087,7 @@ public class GameScreen implements Screen {
 			case TWO_PLAYER:
 				instructionsMessageBuilder
 						.append("Press: [ESC] to exit to main menu");
-				informationMessageBuilder.append(winner.getName());
+				informationMessageBuilder.append(snapshot.winner.getName());
 				informationMessageBuilder.append(" won!");
 				break;
 
@@ -481,10 +1102,25 @@ public class GameScreen implements Screen {
 						.append("Press: [ESC] to exit to main menu");
 				break;
 			}
+
+			/*
+			 * In every game mode, there should be an option to replay the
+			 * same maze.
+			 */
+			instructionsMessageBuilder.append("; [R] to replay this maze");
 			renderOverlay(graphics, informationMessageBuilder.toString(),
 					instructionsMessageBuilder.toString());
 		}
 
+		/*
+		 * The performance overlay is rendered on top of everything else, so
+		 * that it can be seen whichever other overlay is shown.
+		 */
+		if (snapshot.performanceOverlayShown) {
+			performanceOverlay.render(graphics, snapshot.mazeGenerationNanos,
+					snapshot.planningProgress);
+		}
+
 		graphics.setFont(lastFont);
 		graphics.setColor(lastColor);
 	}
@@ -0,0 +1,127 @@
+package core;
+
+import java.awt.event.KeyEvent;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class InputQueue {
+	/*
+	 * This class is used to pass key events from the thread that listens for
+	 * them (Swing's event dispatch thread) to the game loop thread, which
+	 * handles them at the start of the next game cycle (see the gameLoop
+	 * method of the ScreenDisplayer class). This means that everything in the
+	 * game is only ever changed by the game loop thread, in the same order
+	 * every time, however the two threads happen to be scheduled.
+	 *
+	 * It is a ring buffer (a fixed-size array used as a queue, where the ends
+	 * of the queue wrap around from the end of the array to the start) for
+	 * one producer thread and one consumer thread, so it does not need any
+	 * locks: the producer is the only thread that moves the tail of the queue
+	 * and the consumer is the only thread that moves the head. Each key event
+	 * is stored with the time (in System.nanoTime units) at which it was
+	 * added, so that how long it waited to be handled can be measured.
+	 */
+
+	/*
+	 * The key events in the queue and the times they were added, indexed by
+	 * their position in the queue modulo the capacity (which is a power of
+	 * two, so that the modulo can be done with mask).
+	 */
+	private final KeyEvent[] keyEvents;
+	private final long[] addTimes;
+	private final int mask;
+
+	/*
+	 * The position of the next key event to be taken (moved only by the
+	 * consumer) and of the next key event to be added (moved only by the
+	 * producer). They only ever increase, so the number of key events in the
+	 * queue is tail - head. lazySet is used to move them, which is enough to
+	 * make sure that the other thread sees the key event before it sees the
+	 * position move, and is cheaper than a full volatile write.
+	 */
+	private final AtomicLong head;
+	private final AtomicLong tail;
+
+	/*
+	 * The producer's copy of head, so that it only needs to read head (which
+	 * is being changed by the other thread) when the queue looks full.
+	 */
+	private long cachedHead;
+
+	/*
+	 * The time the last key event taken by the poll method was added. Only
+	 * used by the consumer.
+	 */
+	private long lastPolledAddTime;
+
+	/*
+	 * Constructor. capacity must be a power of two.
+	 */
+	public InputQueue(int capacity) {
+		if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+			throw new RuntimeException("Capacity must be a power of two.");
+		}
+		keyEvents = new KeyEvent[capacity];
+		addTimes = new long[capacity];
+		mask = capacity - 1;
+		head = new AtomicLong(0);
+		tail = new AtomicLong(0);
+		cachedHead = 0;
+	}
+
+	/*
+	 * Adds keyEvent to the tail of the queue with the time addTime, and
+	 * returns true, or returns false without adding it if the queue is full.
+	 * Must only be called by the producer thread.
+	 */
+	public boolean offer(KeyEvent keyEvent, long addTime) {
+		long currentTail = tail.get();
+		if (currentTail - cachedHead == keyEvents.length) {
+			cachedHead = head.get();
+			if (currentTail - cachedHead == keyEvents.length) {
+				return false;
+			}
+		}
+		int index = (int) currentTail & mask;
+		keyEvents[index] = keyEvent;
+		addTimes[index] = addTime;
+		tail.lazySet(currentTail + 1);
+		return true;
+	}
+
+	/*
+	 * Takes the key event at the head of the queue and returns it, or returns
+	 * null if the queue is empty. The time it was added can then be got with
+	 * the getLastPolledAddTime method. Must only be called by the consumer
+	 * thread.
+	 */
+	public KeyEvent poll() {
+		long currentHead = head.get();
+		if (currentHead == tail.get()) {
+			return null;
+		}
+		int index = (int) currentHead & mask;
+		KeyEvent keyEvent = keyEvents[index];
+		lastPolledAddTime = addTimes[index];
+
+		/*
+		 * The reference is cleared so that the queue does not stop the key
+		 * event from being garbage collected.
+		 */
+		keyEvents[index] = null;
+		head.lazySet(currentHead + 1);
+		return keyEvent;
+	}
+
+	/*
+	 * Getters.
+	 */
+
+	public long getLastPolledAddTime() {
+		return lastPolledAddTime;
+	}
+
+	public int getCapacity() {
+		return keyEvents.length;
+	}
+
+}
@@ -0,0 +1,173 @@
+package core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+	/*
+	 * This class is used to count how many times something (e.g. updating the
+	 * game or rendering a frame) took each length of time, so that
+	 * percentiles such as the median (p50) and the 99th percentile (p99) can
+	 * be worked out without keeping every time. It is meant to be recorded
+	 * into hundreds of times a second for the whole time the game runs, so
+	 * recording does not create any objects or take any locks.
+	 *
+	 * The times (in nanoseconds) are counted in buckets. Times below
+	 * 2 * NUM_SUB_BUCKETS nanoseconds have a bucket each, and each power of
+	 * two above that is split into NUM_SUB_BUCKETS equal buckets, so a bucket
+	 * is never wider than 1 / NUM_SUB_BUCKETS of the times in it (about 6%)
+	 * however long they are, while only a few hundred buckets cover
+	 * everything from a nanosecond to several minutes. Longer times go in the
+	 * last bucket.
+	 *
+	 * Only one thread should record into a LatencyHistogram object, but any
+	 * thread can read it while it is being recorded into. Readers copy the
+	 * counts (see the copyCounts method) and work out percentiles from the
+	 * copy, and can subtract an earlier copy to get the percentiles of just
+	 * the times recorded since then, so recording never has to be stopped or
+	 * the counts reset.
+	 */
+
+	/*
+	 * The number of buckets each power of two is split into (a power of two
+	 * itself, so that a bucket can be found with shifts), and the largest
+	 * power of two that has buckets of its own.
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int NUM_SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+
+	/*
+	 * The number of buckets.
+	 */
+	public static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2)
+			* NUM_SUB_BUCKETS;
+
+	/*
+	 * The number of times recorded in each bucket. An AtomicLongArray is used
+	 * so that readers on other threads see each count as it was last
+	 * written. As there is only one recording thread, each count is
+	 * increased with a plain read and a lazySet rather than a slower atomic
+	 * increment.
+	 */
+	private final AtomicLongArray counts;
+
+	/*
+	 * The longest time recorded since the getAndResetMax method was last
+	 * called. Unlike the buckets, it is exact.
+	 */
+	private final AtomicLong max;
+
+	/*
+	 * Constructor.
+	 */
+	public LatencyHistogram() {
+		counts = new AtomicLongArray(NUM_BUCKETS);
+		max = new AtomicLong(0);
+	}
+
+	/*
+	 * Records that something took nanos nanoseconds. Must only be called by
+	 * one thread.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		int index = getBucketIndex(nanos);
+		counts.lazySet(index, counts.get(index) + 1);
+
+		/*
+		 * The reader may reset max at the same time, so it is only raised by
+		 * compareAndSet, which fails (and is tried again) if it has changed
+		 * since it was read.
+		 */
+		long currentMax = max.get();
+		while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+			currentMax = max.get();
+		}
+	}
+
+	/*
+	 * Returns the longest time recorded since this method was last called (or
+	 * since the LatencyHistogram object was made), or 0 if there were none.
+	 */
+	public long getAndResetMax() {
+		return max.getAndSet(0);
+	}
+
+	/*
+	 * Copies the count of each bucket into destination, which must have
+	 * NUM_BUCKETS elements, so that it can be read without the counts changing
+	 * part of the way through.
+	 */
+	public void copyCounts(long[] destination) {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			destination[i] = counts.get(i);
+		}
+	}
+
+	/*
+	 * Returns the index of the bucket that a time of nanos nanoseconds is
+	 * counted in.
+	 */
+	private static int getBucketIndex(long nanos) {
+		if (nanos < 2 * NUM_SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent > MAX_EXPONENT) {
+			return NUM_BUCKETS - 1;
+		}
+		int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * NUM_SUB_BUCKETS
+				+ (int) ((nanos >> shift) & (NUM_SUB_BUCKETS - 1));
+	}
+
+	/*
+	 * Returns the longest time, in nanoseconds, that is counted in the bucket
+	 * with the given index.
+	 */
+	public static long getBucketUpperBound(int index) {
+		if (index < 2 * NUM_SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / NUM_SUB_BUCKETS - 1;
+		long lowerBound = (long) (NUM_SUB_BUCKETS + index % NUM_SUB_BUCKETS) << shift;
+		return lowerBound + (1L << shift) - 1;
+	}
+
+	/*
+	 * Returns the time, in nanoseconds, that the given percentile (from 0 to
+	 * 100) of the times counted in bucketCounts (e.g. a copy made by the
+	 * copyCounts method) took at most, to within the width of a bucket, or 0
+	 * if there are none. This goes through every bucket, so it should be
+	 * called a few times a second at most.
+	 */
+	public static long getValueAtPercentile(long[] bucketCounts,
+			double percentile) {
+		long totalCount = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			totalCount += bucketCounts[i];
+		}
+		if (totalCount == 0) {
+			return 0;
+		}
+
+		/*
+		 * The rank of the time wanted, counting from 1, is rounded up so that
+		 * e.g. the p99 of 100 times is the 99th and not the 98th.
+		 */
+		long rank = Math.max(1,
+				(long) Math.ceil(percentile / 100 * totalCount));
+		long countSoFar = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			countSoFar += bucketCounts[i];
+			if (countSoFar >= rank) {
+				return getBucketUpperBound(i);
+			}
+		}
+		return getBucketUpperBound(NUM_BUCKETS - 1);
+	}
+
+}
@@ -0,0 +1,251 @@
+package core;
+
+public class LoopMetrics {
+	/*
+	 * This class is used to measure how well the game loop and render loop of
+	 * a ScreenDisplayer object are keeping to their schedules and where their
+	 * time goes. For game cycles, it records how late each one started
+	 * compared with when it was meant to (the mean and standard deviation of
+	 * which are the tick jitter), how many were skipped because the game fell
+	 * too far behind, and how long updating took. For frames, it records how
+	 * long rendering took and how many frames were skipped. For key presses,
+	 * it records how long each one waited between being pressed and being
+	 * handled at the start of a game cycle (the input latency), and how many
+	 * were dropped because too many were waiting. It also keeps histograms of
+	 * how long each game cycle took to update and each frame took to render,
+	 * for the percentiles shown by the PerformanceOverlay class.
+	 *
+	 * The game loop and render loop run on different threads and the metrics
+	 * may be read on another, so all the public methods are synchronized.
+	 * They are only called a few hundred times a second, so this costs very
+	 * little. The histograms do not need locking (see the LatencyHistogram
+	 * class), so the recordUpdate method is not synchronized.
+	 */
+
+	/*
+	 * The time (in System.nanoTime units) at which the metrics started being
+	 * recorded, so that the time spent updating and rendering can be given as
+	 * a fraction of the total time.
+	 */
+	private long startTime;
+
+	/*
+	 * The number of game cycles run, the number of times the game loop woke
+	 * up to run them, the sum, sum of squares and maximum of how late (in
+	 * nanoseconds) it woke up, the number of game cycles skipped, and the
+	 * total time spent updating.
+	 */
+	private long numGameCycles;
+	private long numGameLoopWakeUps;
+	private double sumLatenessNanos;
+	private double sumSquaredLatenessNanos;
+	private long maxLatenessNanos;
+	private long numMissedGameCycles;
+	private long totalUpdateNanos;
+
+	/*
+	 * The number of frames rendered, the total and maximum time spent
+	 * rendering them, and the number of frames skipped.
+	 */
+	private long numFrames;
+	private long totalRenderNanos;
+	private long maxRenderNanos;
+	private long numMissedFrames;
+
+	/*
+	 * The number of key presses handled, the total and maximum time (in
+	 * nanoseconds) they waited to be handled, and the number dropped.
+	 */
+	private long numInputEvents;
+	private long totalInputLatencyNanos;
+	private long maxInputLatencyNanos;
+	private long numDroppedInputEvents;
+
+	/*
+	 * How long each game cycle took to update and each frame took to render.
+	 * They are not cleared by the reset method, as they are read by taking
+	 * the difference between copies of them (see the LatencyHistogram class).
+	 * This is composition as the LoopMetrics class has a HAS-A relationship
+	 * with the LatencyHistogram class and the histograms will be destroyed if
+	 * the LoopMetrics object is destroyed.
+	 */
+	private final LatencyHistogram updateTimes;
+	private final LatencyHistogram renderTimes;
+
+	/*
+	 * Constructor.
+	 */
+	public LoopMetrics() {
+		updateTimes = new LatencyHistogram();
+		renderTimes = new LatencyHistogram();
+		reset();
+	}
+
+	/*
+	 * Forgets everything recorded so far.
+	 */
+	public synchronized void reset() {
+		startTime = System.nanoTime();
+		numGameCycles = 0;
+		numGameLoopWakeUps = 0;
+		sumLatenessNanos = 0;
+		sumSquaredLatenessNanos = 0;
+		maxLatenessNanos = 0;
+		numMissedGameCycles = 0;
+		totalUpdateNanos = 0;
+		numFrames = 0;
+		totalRenderNanos = 0;
+		maxRenderNanos = 0;
+		numMissedFrames = 0;
+		numInputEvents = 0;
+		totalInputLatencyNanos = 0;
+		maxInputLatencyNanos = 0;
+		numDroppedInputEvents = 0;
+	}
+
+	/*
+	 * Records that the game loop woke up latenessNanos nanoseconds after the
+	 * game cycle it woke up for was meant to start, and then ran
+	 * numCyclesRun game cycles in updateNanos nanoseconds, skipping
+	 * numCyclesMissed game cycles.
+	 */
+	public synchronized void recordGameCycles(long latenessNanos,
+			int numCyclesRun, long numCyclesMissed, long updateNanos) {
+		numGameLoopWakeUps++;
+		sumLatenessNanos += latenessNanos;
+		sumSquaredLatenessNanos += (double) latenessNanos * latenessNanos;
+		maxLatenessNanos = Math.max(maxLatenessNanos, latenessNanos);
+		numGameCycles += numCyclesRun;
+		numMissedGameCycles += numCyclesMissed;
+		totalUpdateNanos += updateNanos;
+	}
+
+	/*
+	 * Records that a single game cycle took updateNanos nanoseconds to update.
+	 * Must only be called by the game loop thread.
+	 */
+	public void recordUpdate(long updateNanos) {
+		updateTimes.record(updateNanos);
+	}
+
+	/*
+	 * Records that a frame took renderNanos nanoseconds to render, and that
+	 * numFramesMissed frames were skipped before it.
+	 */
+	public synchronized void recordFrame(long renderNanos, long numFramesMissed) {
+		renderTimes.record(renderNanos);
+		numFrames++;
+		totalRenderNanos += renderNanos;
+		maxRenderNanos = Math.max(maxRenderNanos, renderNanos);
+		numMissedFrames += numFramesMissed;
+	}
+
+	/*
+	 * Records that a key press was handled latencyNanos nanoseconds after it
+	 * was pressed.
+	 */
+	public synchronized void recordInputEvent(long latencyNanos) {
+		numInputEvents++;
+		totalInputLatencyNanos += latencyNanos;
+		maxInputLatencyNanos = Math.max(maxInputLatencyNanos, latencyNanos);
+	}
+
+	/*
+	 * Records that a key press was dropped because too many were waiting to
+	 * be handled.
+	 */
+	public synchronized void recordDroppedInputEvent() {
+		numDroppedInputEvents++;
+	}
+
+	/*
+	 * Returns the mean time key presses waited to be handled, in
+	 * nanoseconds.
+	 */
+	public synchronized double getMeanInputLatencyNanos() {
+		return numInputEvents == 0 ? 0 : (double) totalInputLatencyNanos
+				/ numInputEvents;
+	}
+
+	/*
+	 * Returns the mean of how late the game loop woke up, in nanoseconds.
+	 */
+	public synchronized double getMeanLatenessNanos() {
+		return numGameLoopWakeUps == 0 ? 0 : sumLatenessNanos
+				/ numGameLoopWakeUps;
+	}
+
+	/*
+	 * Returns the standard deviation of how late the game loop woke up, in
+	 * nanoseconds, which is how much the time between game cycles varies.
+	 */
+	public synchronized double getJitterNanos() {
+		if (numGameLoopWakeUps == 0) {
+			return 0;
+		}
+		double mean = sumLatenessNanos / numGameLoopWakeUps;
+		return Math.sqrt(Math.max(0, sumSquaredLatenessNanos
+				/ numGameLoopWakeUps - mean * mean));
+	}
+
+	/*
+	 * Returns the fraction of the time since the metrics started being
+	 * recorded that was spent updating.
+	 */
+	public synchronized double getUpdateTimeFraction() {
+		return (double) totalUpdateNanos / (System.nanoTime() - startTime);
+	}
+
+	/*
+	 * Returns the fraction of the time since the metrics started being
+	 * recorded that was spent rendering.
+	 */
+	public synchronized double getRenderTimeFraction() {
+		return (double) totalRenderNanos / (System.nanoTime() - startTime);
+	}
+
+	/*
+	 * Getters.
+	 */
+
+	public synchronized long getNumGameCycles() {
+		return numGameCycles;
+	}
+
+	public synchronized long getNumMissedGameCycles() {
+		return numMissedGameCycles;
+	}
+
+	public synchronized long getMaxLatenessNanos() {
+		return maxLatenessNanos;
+	}
+
+	public synchronized long getNumFrames() {
+		return numFrames;
+	}
+
+	public synchronized long getNumMissedFrames() {
+		return numMissedFrames;
+	}
+
+	public synchronized long getNumInputEvents() {
+		return numInputEvents;
+	}
+
+	public synchronized long getMaxInputLatencyNanos() {
+		return maxInputLatencyNanos;
+	}
+
+	public synchronized long getNumDroppedInputEvents() {
+		return numDroppedInputEvents;
+	}
+
+	public LatencyHistogram getUpdateTimes() {
+		return updateTimes;
+	}
+
+	public LatencyHistogram getRenderTimes() {
+		return renderTimes;
+	}
+
+}
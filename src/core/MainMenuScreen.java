@@ -4,8 +4,10 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.event.KeyEvent;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class MainMenuScreen implements Screen {
@@ -83,12 +85,22 @@ public class MainMenuScreen implements Screen {
 	public void update() {
 	}
 
+	/*
+	 * Returns an empty list as nothing on this screen changes while it is
+	 * displayed.
+	 */
+	@Override
+	public List<Rectangle> getDirtyRegions() {
+		return Collections.emptyList();
+	}
+
 	/*
 	 * Renders the menu, displaying the background image, title, instructions on
-	 * what to do, and all the menu options.
+	 * what to do, and all the menu options. interpolation is not used as
+	 * nothing on this screen moves.
 	 */
 	@Override
-	public void render(Graphics graphics) {
+	public void render(Graphics graphics, double interpolation) {
 		/*
 		 * The colour and font used in the graphics object before this method is
 		 * called needs to be stored so that it can be restored at the end of
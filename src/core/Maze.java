@@ -2,12 +2,19 @@ package core;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 import java.util.Stack;
 
@@ -39,16 +46,86 @@ public class Maze extends Entity {
 	 */
 	private final Color groundColor;
 
+	/*
+	 * The colour of the walls. Used for rendering purposes only.
+	 */
+	private final Color wallColor;
+
 	/*
 	 * The number of checkpoint cells in the maze.
 	 */
 	private final int numCheckpoints;
 
+	/*
+	 * The checkpoint Cell objects in the maze, so that the parts of the maze
+	 * that change during a round can be rendered without going through the
+	 * whole cells matrix. This is aggregation as the Maze class has a HAS-A
+	 * relationship with the Cell class but the Cell objects in the
+	 * checkpointCells list will not be destroyed if the Maze object is
+	 * destroyed.
+	 */
+	private final List<Cell> checkpointCells;
+
+	/*
+	 * An image of everything in the maze that does not change during a round
+	 * (the ground, the surfaces of the cells, the base checkpoint indicators
+	 * and the walls), or null if it has not been drawn yet. It is drawn once
+	 * by the renderStaticLayer method, so that rendering the maze every frame
+	 * only takes one drawImage call plus the checkpoints that players have
+	 * reached, rather than drawing every Cell object and wall again. The
+	 * image extends staticLayerMargin pixels past each side of the maze so
+	 * that the rounded ends of the outer walls are not cut off. It is volatile
+	 * as it may be drawn on a different thread from the one rendering the
+	 * maze.
+	 */
+	private volatile BufferedImage staticLayer;
+	private final int staticLayerMargin;
+
+	/*
+	 * The thickness of the walls and the size of the checkpoint indicators
+	 * relative to the dimensions of the Cell objects, and the colour of the
+	 * checkpoint indicators, which are needed to create the raster object.
+	 * Used for rendering purposes only.
+	 */
+	private final double wallProportionOfCellDimensions;
+	private final double checkpointProportionOfCellDimensions;
+	private final Color checkpointColor;
+
+	/*
+	 * Every wall in the maze merged into one path, so that the walls can be
+	 * drawn with one draw call whenever the maze is drawn without the static
+	 * layer image (see the WallMesh class). This is composition as the Maze
+	 * class has a HAS-A relationship with the WallMesh class and the wallMesh
+	 * object will be destroyed if the Maze object is destroyed.
+	 */
+	private final WallMesh wallMesh;
+
+	/*
+	 * The maze packed into one cell mask per Cell object, for rendering the
+	 * maze pixel by pixel when its cells are too small to draw as shapes (see
+	 * the MazeRaster class), or null if it has not been needed yet. It is
+	 * volatile as it may be created on a different thread from the one
+	 * rendering the maze. This is composition as the Maze class has a HAS-A
+	 * relationship with the MazeRaster class and the raster object will be
+	 * destroyed if the Maze object is destroyed.
+	 */
+	private volatile MazeRaster raster;
+
+	/*
+	 * The random number generator that every random choice made while
+	 * generating the maze is taken from, so that the maze only depends on its
+	 * state. This is aggregation as the Maze class has a HAS-A relationship
+	 * with the Random class but the Random object will not be destroyed if
+	 * the Maze object is destroyed.
+	 */
+	private final Random random;
+
 	/*
 	 * Constructor. Generates the maze, including the setting of checkpoints,
 	 * using the other methods. mazeType is the style of maze that is to be
 	 * generated and determines the algorithm used to generate the maze (i.e.
-	 * randomised Kruskals or depth-first search).
+	 * randomised Kruskals or depth-first search). The random choices are
+	 * taken from Application.randomNumberGenerator.
 	 */
 	public Maze(int numCellsWide, int numCellsHigh, double x, double y,
 			double cellSideLength, double deadEndProbability,
@@ -57,6 +134,28 @@ public class Maze extends Entity {
 			int numCheckpointsExcludingEndpoints,
 			EnumMap<Surface, Double> surfaceRatios, Color checkpointColor,
 			Color wallColor, Color groundColor, MazeType mazeType) {
+		this(numCellsWide, numCellsHigh, x, y, cellSideLength,
+				deadEndProbability, wallProportionOfCellDimensions,
+				checkpointProportionOfCellDimensions,
+				numCheckpointsExcludingEndpoints, surfaceRatios,
+				checkpointColor, wallColor, groundColor, mazeType,
+				Application.randomNumberGenerator);
+	}
+
+	/*
+	 * The same as above, except that the random choices are taken from the
+	 * given random number generator, so a new Random object made from a seed
+	 * always gives the same maze, without changing the state of any other
+	 * random number generator.
+	 */
+	public Maze(int numCellsWide, int numCellsHigh, double x, double y,
+			double cellSideLength, double deadEndProbability,
+			double wallProportionOfCellDimensions,
+			double checkpointProportionOfCellDimensions,
+			int numCheckpointsExcludingEndpoints,
+			EnumMap<Surface, Double> surfaceRatios, Color checkpointColor,
+			Color wallColor, Color groundColor, MazeType mazeType,
+			Random random) {
 		/*
 		 * The superclass's constructor must be called first. The width of the
 		 * maze is equal to the side length per cell multiplied by the number of
@@ -66,8 +165,14 @@ public class Maze extends Entity {
 		super(x, y, numCellsWide * cellSideLength, numCellsHigh
 				* cellSideLength);
 
+		this.random = random;
 		this.groundColor = groundColor;
+		this.wallColor = wallColor;
 		this.numCheckpoints = numCheckpointsExcludingEndpoints + 2;
+		checkpointCells = new ArrayList<Cell>();
+		staticLayer = null;
+		staticLayerMargin = (int) Math.ceil(wallProportionOfCellDimensions
+				* cellSideLength) + 1;
 		/*
 		 * The Cell objects must be created first before the maze generation
 		 * algorithms are applied, otherwise runtime errors will arise as there
@@ -109,6 +214,17 @@ public class Maze extends Entity {
 		 * Randomly sets a given number of Cell objects as checkpoints.
 		 */
 		placeCheckpoints(numCheckpointsExcludingEndpoints);
+
+		/*
+		 * The walls do not change after this point, so they can be merged
+		 * into the wall mesh.
+		 */
+		wallMesh = new WallMesh(cells, cellSideLength,
+				wallProportionOfCellDimensions, wallColor);
+		this.wallProportionOfCellDimensions = wallProportionOfCellDimensions;
+		this.checkpointProportionOfCellDimensions = checkpointProportionOfCellDimensions;
+		this.checkpointColor = checkpointColor;
+		raster = null;
 	}
 
 	/*
@@ -133,7 +249,7 @@ public class Maze extends Entity {
 		/*
 		 * Selects a random double between 0 and totalRatio
 		 */
-		double rand = Application.randomNumberGenerator.nextDouble()
+		double rand = random.nextDouble()
 				* totalRatio;
 
 		/*
@@ -292,8 +408,7 @@ public class Maze extends Entity {
 				 * creating a maze with a biased structure.
 				 */
 				Cell randomUnvisitedNeighbouringCell = unvisitedNeighbouringCells
-						.get(Application.randomNumberGenerator
-								.nextInt(unvisitedNeighbouringCells.size()));
+						.get(random.nextInt(unvisitedNeighbouringCells.size()));
 
 				/*
 				 * The current Cell object is pushed onto the stack so that the
@@ -426,7 +541,15 @@ public class Maze extends Entity {
 			}
 		}
 
-		Set<Wall> wallsSet = new HashSet<Wall>();
+		/*
+		 * A LinkedHashSet is used so that the Wall objects are iterated over in
+		 * the order in which they were added (which is the same every time)
+		 * rather than in an order that depends on the hash codes of the Cell
+		 * objects (which are different every time the program is run). This
+		 * means that the maze only depends on the state of random, so the same
+		 * maze can be generated again from the same seed.
+		 */
+		Set<Wall> wallsSet = new LinkedHashSet<Wall>();
 
 		/*
 		 * This loop populates cellDisjointSet with the Cell objects in the
@@ -468,7 +591,7 @@ public class Maze extends Entity {
 		 * shuffled into a random order  otherwise, the walls would be deleted
 		 * in a biased order, leading to the maze looking too structured.
 		 */
-		Collections.shuffle(wallsList, Application.randomNumberGenerator);
+		Collections.shuffle(wallsList, random);
 
 		for (Wall wall : wallsList) {
 			Cell cell1 = wall.getCell1();
@@ -522,7 +645,7 @@ public class Maze extends Entity {
 		 * shuffled into a random order  otherwise, the maze may have a biased
 		 * structure with more dead ends in some areas than others.
 		 */
-		Collections.shuffle(cellsList, Application.randomNumberGenerator);
+		Collections.shuffle(cellsList, random);
 
 		for (Cell cell : cellsList) {
 
@@ -540,14 +663,14 @@ public class Maze extends Entity {
 				 * probability that a dead end should be removed should be 1 
 				 * deadEndProbability, which is why this works.
 				 */
-				if (Application.randomNumberGenerator.nextFloat() > deadEndProbability) {
+				if (random.nextFloat() > deadEndProbability) {
 
 					/*
 					 * This removes the dead end by setting cell to a random
 					 * neighbouring Cell object that cell is not adjacent to.
 					 */
 					cell.setAdjacentTo(cell
-							.getRandomNeighbouringNonAdjacentCell());
+							.getRandomNeighbouringNonAdjacentCell(random));
 				}
 			}
 		}
@@ -561,14 +684,17 @@ public class Maze extends Entity {
 	private void placeCheckpoints(int numCheckpointsExcludingEndpoints) {
 		getStartCell().setCheckpoint();
 		getEndCell().setCheckpoint();
+		checkpointCells.add(getStartCell());
+		checkpointCells.add(getEndCell());
 		for (int i = 0; i < numCheckpointsExcludingEndpoints; i++) {
-			int x = Application.randomNumberGenerator.nextInt(cells.length);
-			int y = Application.randomNumberGenerator.nextInt(cells[x].length);
+			int x = random.nextInt(cells.length);
+			int y = random.nextInt(cells[x].length);
 			Cell checkpointCell = cells[x][y];
 			if (checkpointCell.isCheckpoint()) {
 				i--;
 			} else {
 				checkpointCell.setCheckpoint();
+				checkpointCells.add(checkpointCell);
 			}
 		}
 	}
@@ -587,11 +713,221 @@ public class Maze extends Entity {
 	}
 
 	/*
-	 * Renders the maze by rendering each Cell object in the Cells matrix and
-	 * then rendering the walls for each Cell object.
+	 * Renders the maze by drawing the static layer image (drawing it first if
+	 * it has not been drawn yet) and then rendering the progress of each
+	 * checkpoint Cell object on top of it. This takes about the same time
+	 * however many cells there are in the maze. If the maze is too big for a
+	 * static layer image, only the Cell objects that can be seen are rendered
+	 * (see the renderVisibleCells method).
 	 */
 	@Override
 	public void render(Graphics g) {
+		render(g, getCheckpointProgressSprites(null));
+	}
+
+	/*
+	 * The same as above, but with the sprites of the progress of the
+	 * checkpoint Cell objects as they were when they were fetched by the
+	 * getCheckpointProgressSprites method, rather than as they are now.
+	 */
+	public void render(Graphics g, BufferedImage[] checkpointProgressSprites) {
+		BufferedImage staticLayer = this.staticLayer;
+		if (staticLayer == null) {
+			staticLayer = renderStaticLayer(((Graphics2D) g)
+					.getDeviceConfiguration());
+		}
+		if (staticLayer == null) {
+			renderVisibleCells(g, checkpointProgressSprites);
+			return;
+		}
+		g.drawImage(staticLayer, (int) x - staticLayerMargin, (int) y
+				- staticLayerMargin, null);
+		for (int i = 0; i < checkpointCells.size(); i++) {
+			checkpointCells.get(i).renderCheckpointProgress(g,
+					checkpointProgressSprites[i]);
+		}
+	}
+
+	/*
+	 * Fetches the sprite of the progress of each checkpoint Cell object (see
+	 * the renderCheckpointProgress method of the Cell class) into sprites, in
+	 * the same order as the checkpointCells list, and returns it. If sprites
+	 * is null or the wrong length, a new array is returned instead, so the
+	 * same array can be reused every time.
+	 */
+	public BufferedImage[] getCheckpointProgressSprites(BufferedImage[] sprites) {
+		if (sprites == null || sprites.length != checkpointCells.size()) {
+			sprites = new BufferedImage[checkpointCells.size()];
+		}
+		for (int i = 0; i < sprites.length; i++) {
+			sprites[i] = checkpointCells.get(i).getCheckpointProgressSprite();
+		}
+		return sprites;
+	}
+
+	/*
+	 * Renders only the Cell objects that are inside the clip of the graphics
+	 * object (i.e. the part of the screen being drawn to), along with their
+	 * walls and checkpoint progress. The clip is converted into the range of
+	 * columns and rows of the cells matrix that it covers, plus one Cell
+	 * object on each side for the ends of walls that stick out of their
+	 * cells, so the time taken depends on the size of the clip rather than
+	 * the size of the maze. If there is no clip, the whole maze is rendered.
+	 */
+	public void renderVisibleCells(Graphics g) {
+		renderVisibleCells(g, getCheckpointProgressSprites(null));
+	}
+
+	/*
+	 * The same as above, but with the sprites of the progress of the
+	 * checkpoint Cell objects as they were when they were fetched by the
+	 * getCheckpointProgressSprites method.
+	 */
+	public void renderVisibleCells(Graphics g,
+			BufferedImage[] checkpointProgressSprites) {
+		int firstColumn = 0;
+		int lastColumn = cells.length - 1;
+		int firstRow = 0;
+		int lastRow = cells[0].length - 1;
+		Rectangle clip = g.getClipBounds();
+		if (clip != null) {
+			double cellSideLength = getCellSideLength();
+			firstColumn = Math.max(firstColumn,
+					(int) Math.floor((clip.x - x) / cellSideLength) - 1);
+			lastColumn = Math.min(lastColumn, (int) Math.floor((clip.x
+					+ clip.width - x)
+					/ cellSideLength) + 1);
+			firstRow = Math.max(firstRow,
+					(int) Math.floor((clip.y - y) / cellSideLength) - 1);
+			lastRow = Math.min(lastRow, (int) Math.floor((clip.y
+					+ clip.height - y)
+					/ cellSideLength) + 1);
+		}
+		if (firstColumn > lastColumn || firstRow > lastRow) {
+			return;
+		}
+		renderCells(g, firstColumn, lastColumn, firstRow, lastRow);
+		for (int i = 0; i < checkpointCells.size(); i++) {
+			Cell checkpointCell = checkpointCells.get(i);
+			if (clip == null || clip.intersects(checkpointCell.getBounds())) {
+				checkpointCell.renderCheckpointProgress(g,
+						checkpointProgressSprites[i]);
+			}
+		}
+	}
+
+	/*
+	 * Draws the static layer image (see the staticLayer attribute) and
+	 * returns it. graphicsConfiguration should be the configuration of the
+	 * screen the maze will be rendered to, so that the image is stored in the
+	 * same format as the screen and can be copied to it quickly, or null if
+	 * it is not known. Called by the GameScreen class when a level is set up,
+	 * so that the image is usually ready before the first frame is rendered.
+	 * Returns null without drawing anything if the image would have more than
+	 * GameConstants.MAX_STATIC_LAYER_PIXELS pixels, as it would take up too
+	 * much memory.
+	 */
+	public BufferedImage renderStaticLayer(
+			GraphicsConfiguration graphicsConfiguration) {
+		int imageWidth = (int) width + 2 * staticLayerMargin;
+		int imageHeight = (int) height + 2 * staticLayerMargin;
+		if ((long) imageWidth * imageHeight > GameConstants.MAX_STATIC_LAYER_PIXELS) {
+			return null;
+		}
+		BufferedImage image;
+		if (graphicsConfiguration != null) {
+			image = graphicsConfiguration.createCompatibleImage(imageWidth,
+					imageHeight);
+		} else {
+			image = new BufferedImage(imageWidth, imageHeight,
+					BufferedImage.TYPE_INT_RGB);
+		}
+		Graphics2D imageGraphics = image.createGraphics();
+
+		/*
+		 * Antialiasing is set on, as it is for the screen (see the
+		 * ScreenDisplayer class). The margin around the maze is filled with
+		 * the wall colour, which is the colour drawn behind the maze by the
+		 * GameScreen class.
+		 */
+		imageGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		imageGraphics.setColor(wallColor);
+		imageGraphics.fillRect(0, 0, imageWidth, imageHeight);
+
+		/*
+		 * The image is drawn at the position of the maze minus the margin, so
+		 * the graphics object is moved by the same amount the other way. This
+		 * means the cells are drawn at exactly the same pixel coordinates as
+		 * they would be if they were drawn straight to the screen.
+		 */
+		imageGraphics.translate(staticLayerMargin - (int) x, staticLayerMargin
+				- (int) y);
+
+		/*
+		 * If the cells are too small to be worth drawing as shapes, the maze
+		 * is rendered pixel by pixel instead.
+		 */
+		if (getCellSideLength() < GameConstants.MIN_VECTOR_CELL_SIDE_LENGTH) {
+			imageGraphics.drawImage(getRaster().render(getCellSideLength()),
+					(int) x, (int) y, null);
+		} else {
+			renderCells(imageGraphics);
+		}
+		imageGraphics.dispose();
+		staticLayer = image;
+		return image;
+	}
+
+	/*
+	 * Returns an image of the whole maze, scaled to be as big as it can be
+	 * without being wider than maxWidth or higher than maxHeight. This is
+	 * rendered pixel by pixel (see the MazeRaster class), so it only takes a
+	 * few milliseconds even for mazes with millions of cells.
+	 */
+	public BufferedImage renderOverview(int maxWidth, int maxHeight) {
+		return getRaster().renderOverview(maxWidth, maxHeight);
+	}
+
+	/*
+	 * Returns the raster object, creating it first if it has not been created
+	 * yet by working out the cell mask of every Cell object.
+	 */
+	private MazeRaster getRaster() {
+		MazeRaster raster = this.raster;
+		if (raster == null) {
+			int numColumns = cells.length;
+			int numRows = cells[0].length;
+			byte[] cellMasks = new byte[numColumns * numRows];
+			for (int i = 0; i < numColumns; i++) {
+				for (int j = 0; j < numRows; j++) {
+					cellMasks[j * numColumns + i] = MazeRaster
+							.getCellMask(cells[i][j]);
+				}
+			}
+			raster = new MazeRaster(numColumns, numRows, cellMasks,
+					wallProportionOfCellDimensions,
+					checkpointProportionOfCellDimensions, groundColor,
+					wallColor, checkpointColor);
+			this.raster = raster;
+		}
+		return raster;
+	}
+
+	/*
+	 * Renders the static parts of the maze by rendering each Cell object in
+	 * the Cells matrix and then rendering the wall mesh.
+	 */
+	public void renderCells(Graphics g) {
+		renderCells(g, 0, cells.length - 1, 0, cells[0].length - 1);
+	}
+
+	/*
+	 * The same as above, but only for the Cell objects in the given range of
+	 * columns and rows of the cells matrix.
+	 */
+	private void renderCells(Graphics g, int firstColumn, int lastColumn,
+			int firstRow, int lastRow) {
 		/*
 		 * The colour used in the graphics object before this method is called
 		 * needs to be stored so that it can be restored at the end of the
@@ -609,8 +945,8 @@ public class Maze extends Entity {
 		/*
 		 * Draws all the base cells first.
 		 */
-		for (int i = 0; i < cells.length; i++) {
-			for (int j = 0; j < cells[i].length; j++) {
+		for (int i = firstColumn; i <= lastColumn; i++) {
+			for (int j = firstRow; j <= lastRow; j++) {
 				Cell currentCell = cells[i][j];
 				currentCell.render(g);
 			}
@@ -618,14 +954,10 @@ public class Maze extends Entity {
 
 		/*
 		 * Draws the walls after (so that the walls appear above the surfaces of
-		 * the cells.
+		 * the cells). The whole wall mesh is drawn with one draw call, and the
+		 * graphics object leaves out the parts of it outside its clip.
 		 */
-		for (int i = 0; i < cells.length; i++) {
-			for (int j = 0; j < cells[i].length; j++) {
-				Cell currentCell = cells[i][j];
-				currentCell.renderWalls(g);
-			}
-		}
+		wallMesh.render(g);
 		g.setColor(lastColor);
 	}
 
@@ -655,6 +987,14 @@ public class Maze extends Entity {
 		return numCheckpoints;
 	}
 
+	public Cell[][] getCells() {
+		return cells;
+	}
+
+	public WallMesh getWallMesh() {
+		return wallMesh;
+	}
+
 	/*
 	 * Tests
 	 */
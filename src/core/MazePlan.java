@@ -0,0 +1,474 @@
+package core;
+
+import java.util.List;
+
+public class MazePlan {
+	/*
+	 * This class is used to hold the planning data that every AIPlayer object
+	 * in the same maze needs, whatever its start and end: the reduced graph
+	 * of the maze, the weights of the shortest paths between every pair of
+	 * checkpoints, the shortest path trees that those paths can be
+	 * reconstructed from, and the neighbour list of each checkpoint. Finding
+	 * these takes k runs of Dijkstras algorithm, which is by far the most
+	 * expensive part of setting up an AIPlayer object, so a MazePlan object is
+	 * built once per maze and shared, and adding another AIPlayer object only
+	 * costs planning its route.
+	 *
+	 * Everything is found in the constructor and never changed afterwards, and
+	 * all the fields are final, so a MazePlan object can be used by any
+	 * number of AIPlayer objects and their route planner threads at the same
+	 * time without any locking. The arrays returned by its methods must not be
+	 * changed.
+	 *
+	 * If the maze has more than GameConstants.MAX_DISTANCE_MATRIX_CHECKPOINTS
+	 * checkpoints, or so many vertices in its reduced graph that the number
+	 * of checkpoints times the number of vertices is more than
+	 * GameConstants.MAX_DISTANCE_MATRIX_VERTEX_ENTRIES, only the reduced graph
+	 * is held (hasDistanceMatrix returns false), and each AIPlayer object finds the shortest paths that it needs
+	 * with its own SpatialRoutePlanner object instead, as those are found
+	 * while the route is planned.
+	 */
+
+	/*
+	 * The reduced graph representation of the cell-based maze. This is
+	 * aggregation as the MazePlan class has a HAS-A relationship with the
+	 * ReducedGraph class but the ReducedGraph object will not be destroyed if
+	 * the MazePlan object is destroyed.
+	 */
+	private final ReducedGraph reducedGraph;
+
+	/*
+	 * All the checkpoint RGVertex objects in the reduced graph. The index of a
+	 * checkpoint RGVertex object in this list is its checkpoint index (see the
+	 * RGVertex class), so the checkpoints are numbered 0 to k-1. This is
+	 * aggregation as the MazePlan class has a HAS-A relationship with the
+	 * RGVertex class but the RGVertex objects in the checkpointVertices list
+	 * will not be destroyed if the MazePlan object is destroyed.
+	 */
+	private final List<RGVertex> checkpointVertices;
+
+	/*
+	 * The weights of the shortest paths between every pair of checkpoint
+	 * RGVertex objects. This is effectively an adjacency matrix for a weighted,
+	 * undirected, complete graph (the checkpoint graph), where the vertices are
+	 * the checkpoint indices and the weight of an edge is the total weight of
+	 * all of the RGEdge objects in the shortest path between the two checkpoint
+	 * RGVertex objects. As the matrix is symmetric, only the lower triangle
+	 * (including the diagonal, which is always 0) is stored, packed row by row
+	 * into a single primitive array (see the getCheckpointPairIndex method).
+	 * This means that looking up a weight is just some integer arithmetic and
+	 * an array access, rather than allocating a key object and doing a hash
+	 * table look-up.
+	 */
+	private final double[] shortestPathWeightsBetweenCheckpoints;
+
+	/*
+	 * The shortest path trees found by Dijkstras algorithm, one for each
+	 * source checkpoint. predecessorTrees[i][v] is the vertex index (see the
+	 * RGVertex class) of the RGVertex object just before the RGVertex object
+	 * with vertex index v on the shortest path from the checkpoint with
+	 * checkpoint index i, or -1 if there is none. This takes kV ints rather
+	 * than storing a list of RGVertex objects for each of the k pairs of
+	 * checkpoints, and the shortest path between a pair of checkpoints i < j
+	 * can be reconstructed from predecessorTrees[i] when it is needed (see
+	 * the getShortestPathBetweenCheckpoints method), which is only for the
+	 * pairs that a route actually uses.
+	 */
+	private final int[][] predecessorTrees;
+
+	/*
+	 * The neighbour lists of the checkpoints (see the
+	 * getCheckpointNeighbourLists method).
+	 */
+	private final int[][] checkpointNeighbourLists;
+
+	/*
+	 * Constructor. All the shortest paths between the checkpoints of
+	 * reducedGraph are found before the constructor returns.
+	 */
+	public MazePlan(ReducedGraph reducedGraph) {
+		this(reducedGraph, new PlanningProgress());
+	}
+
+	/*
+	 * The same as above, but reporting how far it has got to progress.
+	 */
+	public MazePlan(ReducedGraph reducedGraph, PlanningProgress progress) {
+		progress.setStage(PlanningStage.FINDING_SHORTEST_PATHS);
+		this.reducedGraph = reducedGraph;
+		checkpointVertices = reducedGraph.getCheckpointVertices();
+		if (checkpointVertices.size() > GameConstants.MAX_DISTANCE_MATRIX_CHECKPOINTS
+				|| (long) checkpointVertices.size()
+						* reducedGraph.getVertices().size() > GameConstants.MAX_DISTANCE_MATRIX_VERTEX_ENTRIES) {
+			shortestPathWeightsBetweenCheckpoints = null;
+			predecessorTrees = null;
+			checkpointNeighbourLists = null;
+		} else {
+
+			/*
+			 * The packed array holds one entry for each pair of checkpoint
+			 * indices (i, j) with j <= i, of which there are k(k+1)/2.
+			 */
+			shortestPathWeightsBetweenCheckpoints = new double[checkpointVertices
+					.size() * (checkpointVertices.size() + 1) / 2];
+			predecessorTrees = new int[checkpointVertices.size()][];
+			initShortestPathsBetweenCheckpointVertices(progress);
+			checkpointNeighbourLists = createCheckpointNeighbourLists();
+		}
+	}
+
+	/*
+	 * Runs Dijkstras algorithm from every RGVertex object in the reduced graph
+	 * that represents a checkpoint Cell object. The weight of the shortest path
+	 * between every pair of checkpoint RGVertex objects is put into the
+	 * shortestPathWeightsBetweenCheckpoints array, and the shortest paths
+	 * themselves are kept as one predecessor tree per source checkpoint in the
+	 * predecessorTrees array, from which they can be reconstructed on demand
+	 * using the getShortestPathBetweenCheckpoints method. The fraction of the
+	 * checkpoints that have acted as the source so far is reported to
+	 * progress.
+	 */
+	private void initShortestPathsBetweenCheckpointVertices(
+			PlanningProgress progress) {
+		/*
+		 * All the traversable RGVertex objects in the reduced graph, indexed
+		 * by their vertex indices.
+		 */
+		List<RGVertex> vertices = reducedGraph.getVertices();
+		int numVertices = vertices.size();
+
+		/*
+		 * Dijkstras algorithm is carried out from each checkpoint RGVertex
+		 * object (called sourceVertex here) in checkpointVertices, in order of
+		 * checkpoint index. This means that, when Dijkstras algorithm is
+		 * carried out from the checkpoint with index sourceCheckpointIndex,
+		 * the checkpoints with lower indices have already acted as source
+		 * vertices, so the shortest paths to them have already been found.
+		 */
+		for (int sourceCheckpointIndex = 0; sourceCheckpointIndex < checkpointVertices
+				.size(); sourceCheckpointIndex++) {
+			progress.setStageProgress((double) sourceCheckpointIndex
+					/ checkpointVertices.size());
+			RGVertex sourceVertex = checkpointVertices
+					.get(sourceCheckpointIndex);
+
+			/*
+			 * This array is to store the weight of the of the minimum weight
+			 * path found, at any given time, from sourceVertex to each RGVertex
+			 * object in reducedGraph, indexed by vertex index.
+			 */
+			double[] weightsFromSource = new double[numVertices];
+
+			/*
+			 * This array is to store the vertex index of the RGVertex that is
+			 * just before each RGVertex object in the minimum weight path
+			 * found, at any given time, from sourceVertex to it, or -1 if there
+			 * is no such RGVertex object. Once the algorithm finishes, this is
+			 * the shortest path tree from sourceVertex.
+			 */
+			int[] previousVertices = new int[numVertices];
+
+			/*
+			 * FibonacciHeap is a class (source:
+			 * http://www.keithschwarz.com/interesting
+			 * /code/fibonacci-heap/FibonacciHeap.java.html) implementing a
+			 * Fibonacci heap, which is a data structure that can be used as a
+			 * minimum priority queue. This queue is to store the RGVertex
+			 * objects for which shortest paths from sourceVertex have not been
+			 * found yet. The priority of RGVertex objects in the queue should
+			 * represent their value in weightsFromSource.
+			 */
+			FibonacciHeap<RGVertex> vertexQueue = new FibonacciHeap<RGVertex>();
+
+			/*
+			 * The particular implementation of a Fibonacci heap stores RGVertex
+			 * objects with their priorities using a class called Entry. Thus,
+			 * in order for us to access the corresponding entry for a RGVertex
+			 * object, we store the Entry objects in an array indexed by vertex
+			 * index, which has constant look-up time complexity.
+			 */
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			FibonacciHeap.Entry<RGVertex>[] queueEntries = new FibonacciHeap.Entry[numVertices];
+
+			/*
+			 * This array is to record which RGVertex objects have been
+			 * visited.
+			 */
+			boolean[] visitedVertices = new boolean[numVertices];
+
+			/*
+			 * This integer counts how many checkpoint RGVertex objects in
+			 * reducedGraph either do not need shortest paths from sourceVertex
+			 * calculated again (as it would have been done in a previous
+			 * iteration, i.e. those with lower checkpoint indices) or have been
+			 * visited in this Dijkstras algorithm.
+			 */
+			int numVisitedCheckpointVertices = sourceCheckpointIndex;
+
+			/*
+			 * Populates weightsFromSource, previousVertices and vertexQueue.
+			 */
+			for (RGVertex vertex : vertices) {
+
+				/*
+				 * No path has been found yet from each RGVertex object to
+				 * sourceVertex, so weights should not exist, but rather than
+				 * using a special value for the weights, we can simply use a
+				 * very large weight (e.g. 1 billion) that will be greater than
+				 * the weight of any possible path in reducedGraph. This means
+				 * that any value for alternativeWeight later on in the
+				 * algorithm would be less than this very large value and so the
+				 * weight stored in weightsFromSource would be updated to
+				 * alternativeWeight.
+				 */
+				int vertexIndex = vertex.getVertexIndex();
+				weightsFromSource[vertexIndex] = 1000000000d;
+				previousVertices[vertexIndex] = -1;
+				queueEntries[vertexIndex] = vertexQueue.enqueue(vertex,
+						1000000000d);
+			}
+
+			/*
+			 * However, the minimum path from sourceVertex to sourceVertex is
+			 * clearly 0. Rather than checking every iteration whether the
+			 * RGVertex object is sourceVertex in the loop above, we just change
+			 * the weight value to 0 here, as it uses fewer operations, making
+			 * the algorithm slightly more efficient
+			 */
+			weightsFromSource[sourceVertex.getVertexIndex()] = 0.0;
+			vertexQueue.decreaseKey(
+					queueEntries[sourceVertex.getVertexIndex()], 0.0);
+
+			/*
+			 * This is the main loop of Dijkstras algorithm. Once vertexQueue
+			 * is empty or once numVisitedCheckpointVertices = number of
+			 * checkpoint RGVertex objects, shortest paths will have been found
+			 * from sourceVertex to all the checkpoint RGVertex objects that
+			 * still need them, so we can terminate the loop below.
+			 */
+			while (!vertexQueue.isEmpty()
+					&& checkpointVertices.size() != numVisitedCheckpointVertices) {
+
+				/*
+				 * We select the RGVertex object whose weight of the minimum
+				 * weight path found, at this stage, from sourceVertex to the
+				 * RGVertex object, is the lowest, because the optimum minimum
+				 * weight path to this RGVertex object has been found (and so we
+				 * also mark it as visited because we do not need to check it
+				 * again).
+				 */
+				RGVertex currentVertex = vertexQueue.dequeueMin().getValue();
+				int currentVertexIndex = currentVertex.getVertexIndex();
+				visitedVertices[currentVertexIndex] = true;
+
+				/*
+				 * Checks if currentVertex is a checkpoint RGVertex object that
+				 * has not already acted as a source and updates the counting
+				 * variable numVisitedCheckpointVertices.
+				 */
+				if (currentVertex.getCheckpointIndex() >= sourceCheckpointIndex) {
+					numVisitedCheckpointVertices++;
+				}
+
+				/*
+				 * We look at each unvisited adjacent RGVertex object of
+				 * currentVertex and check whether the minimum weight path to
+				 * currentVertex from sourceVertex (which we know cannot be made
+				 * shorter) added to the weight between the unvisited adjacent
+				 * RGVertex object and currentVertex (this sum being called
+				 * alternativeWeight) is less than the minimum weight path found
+				 * so far to that adjacent RGVertex object from sourceVertex.
+				 */
+				for (RGAdjacency adjacency : currentVertex.getAdjacencies()) {
+					int adjacentVertexIndex = adjacency.getAdjacentVertex()
+							.getVertexIndex();
+					if (!visitedVertices[adjacentVertexIndex]) {
+
+						double alternativeWeight = weightsFromSource[currentVertexIndex]
+								+ adjacency.getEdge().getTotalWeight();
+						if (alternativeWeight < weightsFromSource[adjacentVertexIndex]) {
+
+							/*
+							 * This means we have found a shorter path to the
+							 * adjacent RGVertex object from sourceVertex and we
+							 * know that it goes through currentVertex, so we
+							 * update the relevant arrays and decrease the
+							 * priority of the adjacent RGVertex object in
+							 * vertexQueue.
+							 */
+							weightsFromSource[adjacentVertexIndex] = alternativeWeight;
+							previousVertices[adjacentVertexIndex] = currentVertexIndex;
+							vertexQueue.decreaseKey(
+									queueEntries[adjacentVertexIndex],
+									alternativeWeight);
+						}
+					}
+				}
+			}
+
+			/*
+			 * Once the loop ends, the shortest paths from sourceVertex to all
+			 * the checkpoint RGVertex objects with higher checkpoint indices
+			 * have been found. We can then update the
+			 * shortestPathWeightsBetweenCheckpoints array with their weights
+			 * and keep previousVertices as the predecessor tree of
+			 * sourceVertex. The paths themselves are only reconstructed from
+			 * this tree when they are needed.
+			 */
+			for (int checkpointIndex = sourceCheckpointIndex + 1; checkpointIndex < checkpointVertices
+					.size(); checkpointIndex++) {
+				shortestPathWeightsBetweenCheckpoints[getCheckpointPairIndex(
+						sourceCheckpointIndex, checkpointIndex)] = weightsFromSource[checkpointVertices
+						.get(checkpointIndex).getVertexIndex()];
+			}
+			predecessorTrees[sourceCheckpointIndex] = previousVertices;
+		}
+	}
+
+	/*
+	 * Reconstructs the RGPath object representing the shortest path
+	 * (consisting of RGVertex objects) between the two checkpoints with the
+	 * checkpoint indices in the parameters from the predecessor tree of the
+	 * checkpoint with the lower index (which is the one that was the source
+	 * when Dijkstras algorithm found the path).
+	 */
+	public RGPath getShortestPathBetweenCheckpoints(int checkpointIndex1,
+			int checkpointIndex2) {
+		RGVertex sourceVertex = checkpointVertices.get(Math.min(
+				checkpointIndex1, checkpointIndex2));
+		RGVertex checkpointVertex = checkpointVertices.get(Math.max(
+				checkpointIndex1, checkpointIndex2));
+		int[] predecessorTree = predecessorTrees[sourceVertex
+				.getCheckpointIndex()];
+		List<RGVertex> vertices = reducedGraph.getVertices();
+
+		RGPath pairPath = new RGPath();
+		int currentVertexIndex = checkpointVertex.getVertexIndex();
+
+		/*
+		 * pairPath is iteratively built up starting from checkpointVertex.
+		 * When currentVertexIndex is -1, it means sourceVertex has been added
+		 * (as it has no previous RGVertex object) and pairPath has been built.
+		 */
+		while (currentVertexIndex != -1) {
+			pairPath.appendVertex(vertices.get(currentVertexIndex));
+			currentVertexIndex = predecessorTree[currentVertexIndex];
+		}
+
+		if (!(sourceVertex == pairPath.getVertex1() && checkpointVertex == pairPath
+				.getVertex2())
+				&& !(sourceVertex == pairPath.getVertex2() && checkpointVertex == pairPath
+						.getVertex1())) {
+			/*
+			 * If the RGVertex objects on either end of pairPath are not
+			 * sourceVertex and checkpointVertex, then there is a logical error
+			 * elsewhere in the code, so a RuntimeException is thrown to quit
+			 * the program and make debugging and tracing the error easier. A
+			 * try-catch block would not be useful here as the issue cannot be
+			 * fixed without changing the code.
+			 */
+			throw new RuntimeException();
+		}
+		return pairPath;
+	}
+
+	/*
+	 * Returns the index in the packed shortestPathWeightsBetweenCheckpoints
+	 * array of the entry for the pair of checkpoint indices in the
+	 * parameters. Row i of the lower triangle starts at index i(i+1)/2 and
+	 * holds the entries for columns 0 to i, so the order of the two
+	 * checkpoint indices does not matter.
+	 */
+	private static int getCheckpointPairIndex(int checkpointIndex1,
+			int checkpointIndex2) {
+		int row = Math.max(checkpointIndex1, checkpointIndex2);
+		return row * (row + 1) / 2
+				+ Math.min(checkpointIndex1, checkpointIndex2);
+	}
+
+	/*
+	 * Returns the weight of the shortest path between the two checkpoints with
+	 * the checkpoint indices in the parameters, as found in the
+	 * shortestPathWeightsBetweenCheckpoints array. This is 0 if the two
+	 * checkpoint indices are the same.
+	 */
+	public double getShortestPathWeightBetweenCheckpoints(
+			int checkpointIndex1, int checkpointIndex2) {
+		return shortestPathWeightsBetweenCheckpoints[getCheckpointPairIndex(
+				checkpointIndex1, checkpointIndex2)];
+	}
+
+	/*
+	 * Creates the neighbour lists of the checkpoints. The neighbour list of a
+	 * checkpoint holds the checkpoint indices of the (at most)
+	 * NUM_ROUTE_NEIGHBOURS other checkpoints with the lowest shortest path
+	 * weights from it, in ascending order of weight.
+	 */
+	private int[][] createCheckpointNeighbourLists() {
+		int numCheckpoints = checkpointVertices.size();
+		int numNeighbours = Math.min(GameConstants.NUM_ROUTE_NEIGHBOURS,
+				numCheckpoints - 1);
+		int[][] neighbourLists = new int[numCheckpoints][numNeighbours];
+		for (int i = 0; i < numCheckpoints; i++) {
+			int[] neighbourList = neighbourLists[i];
+			int listSize = 0;
+
+			/*
+			 * The neighbour list is kept sorted while it is built up by
+			 * inserting each other checkpoint into it (insertion sort),
+			 * dropping the checkpoint at the back when it is full. This
+			 * takes O(km) time rather than sorting all k checkpoints.
+			 */
+			for (int j = 0; j < numCheckpoints; j++) {
+				if (j == i) {
+					continue;
+				}
+				double weight = getShortestPathWeightBetweenCheckpoints(
+						i, j);
+				if (listSize == numNeighbours
+						&& weight >= getShortestPathWeightBetweenCheckpoints(
+								i, neighbourList[listSize - 1])) {
+					continue;
+				}
+				int insertIndex = listSize < numNeighbours ? listSize++
+						: listSize - 1;
+				while (insertIndex > 0
+						&& weight < getShortestPathWeightBetweenCheckpoints(
+								i, neighbourList[insertIndex - 1])) {
+					neighbourList[insertIndex] = neighbourList[insertIndex - 1];
+					insertIndex--;
+				}
+				neighbourList[insertIndex] = j;
+			}
+		}
+		return neighbourLists;
+	}
+
+	/*
+	 * Returns the neighbour lists of the checkpoints. These are the only
+	 * checkpoints that the RouteImprover class of the AIPlayer class tries to
+	 * connect a checkpoint to, which is what makes each of its passes
+	 * near-linear in the number of checkpoints.
+	 */
+	public int[][] getCheckpointNeighbourLists() {
+		return checkpointNeighbourLists;
+	}
+
+	/*
+	 * Returns whether the shortest paths between every pair of checkpoints
+	 * were found, which is only if there are few enough checkpoints and
+	 * vertices (see the class comment).
+	 */
+	public boolean hasDistanceMatrix() {
+		return shortestPathWeightsBetweenCheckpoints != null;
+	}
+
+	public ReducedGraph getReducedGraph() {
+		return reducedGraph;
+	}
+
+	public List<RGVertex> getCheckpointVertices() {
+		return checkpointVertices;
+	}
+
+}
@@ -0,0 +1,310 @@
+package core;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+public class MazeRaster {
+	/*
+	 * This class is used to render mazes whose cells are only a few pixels
+	 * across (or less than a pixel, e.g. an overview of a whole maze with
+	 * millions of cells). At that size, drawing a shape for every cell and
+	 * wall through a Graphics object takes far longer than it is worth, so
+	 * instead the colour of every pixel is worked out directly and written
+	 * straight into the int array behind a BufferedImage.
+	 *
+	 * Everything about a Cell object that affects how it looks is packed into
+	 * one byte, its cell mask (see the getCellMask method): a bit for each
+	 * Direction in which there is a wall, its Surface and whether it is a
+	 * checkpoint. The cell masks are stored in one array in row order, so
+	 * that the pixels of a row of the image read the cell masks of one row of
+	 * the maze one after another. The rows of the image are independent of
+	 * each other, so they are worked out in parallel.
+	 *
+	 * The cell masks only describe what does not change during a round, so
+	 * MazeRaster objects are immutable and can be used by more than one
+	 * thread.
+	 */
+
+	/*
+	 * The bits of a cell mask: bit n is set if there is a wall in the
+	 * Direction with ordinal n, the Surface ordinal is stored from bit
+	 * SURFACE_SHIFT, and CHECKPOINT_BIT is set for checkpoints.
+	 */
+	public static final int SURFACE_SHIFT = 4;
+	public static final int SURFACE_BITS = 3 << SURFACE_SHIFT;
+	public static final int CHECKPOINT_BIT = 1 << 6;
+
+	/*
+	 * The number of columns and rows of cells, and the cell mask of every
+	 * cell, with the cell in column i and row j at index j * numColumns + i.
+	 */
+	private final int numColumns, numRows;
+	private final byte[] cellMasks;
+
+	/*
+	 * The indices in cellMasks of the checkpoints, so that they can be drawn
+	 * on their own when they are too small to be found by sampling the cells.
+	 */
+	private final int[] checkpointIndices;
+
+	/*
+	 * The colours of the walls and checkpoints as RGB ints, the colour of
+	 * each Surface on the ground (indexed by ordinal), and the colour of a cell seen from
+	 * so far away that its walls cannot be told apart from it, for each
+	 * combination of walls and Surface (indexed by the lower bits of the cell
+	 * mask).
+	 */
+	private final int wallRGB, checkpointRGB;
+	private final int[] surfaceRGBs;
+	private final int[] overviewRGBs;
+
+	/*
+	 * The thickness of the walls and the size of the checkpoint indicators
+	 * relative to the dimensions of a cell, as for the Cell class.
+	 */
+	private final double wallProportionOfCellDimensions;
+	private final double checkpointProportionOfCellDimensions;
+
+	/*
+	 * Constructor. cellMasks is not copied, so it must not be changed
+	 * afterwards.
+	 */
+	public MazeRaster(int numColumns, int numRows, byte[] cellMasks,
+			double wallProportionOfCellDimensions,
+			double checkpointProportionOfCellDimensions, Color groundColor,
+			Color wallColor, Color checkpointColor) {
+		/*
+		 * If there is not one cell mask per cell, then there is a logical
+		 * error elsewhere in the program.
+		 */
+		if (cellMasks.length != numColumns * numRows) {
+			throw new RuntimeException();
+		}
+		this.numColumns = numColumns;
+		this.numRows = numRows;
+		this.cellMasks = cellMasks;
+		this.wallProportionOfCellDimensions = wallProportionOfCellDimensions;
+		this.checkpointProportionOfCellDimensions = checkpointProportionOfCellDimensions;
+		wallRGB = wallColor.getRGB();
+		checkpointRGB = checkpointColor.getRGB();
+
+		/*
+		 * The surface colours can be see-through, in which case the Cell class
+		 * draws them over the ground colour, so they are mixed with the ground
+		 * colour in the same way here.
+		 */
+		Surface[] surfaces = Surface.values();
+		surfaceRGBs = new int[surfaces.length];
+		for (Surface surface : surfaces) {
+			Color surfaceColor = surface.getColor();
+			surfaceRGBs[surface.ordinal()] = mix(groundColor.getRGB(),
+					surfaceColor.getRGB(), surfaceColor.getAlpha() / 255.0);
+		}
+
+		/*
+		 * From far away, each wall of a cell takes up about an eighth of it
+		 * (half the wall belongs to the cell on the other side), so the
+		 * overview colour mixes in an eighth of the wall colour per wall.
+		 */
+		overviewRGBs = new int[CHECKPOINT_BIT];
+		for (int mask = 0; mask < overviewRGBs.length; mask++) {
+			int surfaceIndex = (mask & SURFACE_BITS) >> SURFACE_SHIFT;
+			if (surfaceIndex < surfaceRGBs.length) {
+				overviewRGBs[mask] = mix(surfaceRGBs[surfaceIndex], wallRGB,
+						Integer.bitCount(mask & ((1 << SURFACE_SHIFT) - 1)) / 8.0);
+			}
+		}
+
+		int numCheckpoints = 0;
+		for (byte cellMask : cellMasks) {
+			if ((cellMask & CHECKPOINT_BIT) != 0) {
+				numCheckpoints++;
+			}
+		}
+		checkpointIndices = new int[numCheckpoints];
+		for (int i = 0, j = 0; i < cellMasks.length; i++) {
+			if ((cellMasks[i] & CHECKPOINT_BIT) != 0) {
+				checkpointIndices[j++] = i;
+			}
+		}
+	}
+
+	/*
+	 * Returns the cell mask of cell (see above). The walls are the
+	 * neighbouring Cell objects that cell is not adjacent to.
+	 */
+	public static byte getCellMask(Cell cell) {
+		int cellMask = 0;
+		for (Neighbouring neighbouring : cell.getNeighbourings()) {
+			if (!cell.isAdjacentTo(neighbouring.getNeighbouringCell())) {
+				cellMask |= 1 << neighbouring.getDirectionToNeighbouringCell()
+						.ordinal();
+			}
+		}
+		cellMask |= cell.getSurface().ordinal() << SURFACE_SHIFT;
+		if (cell.isCheckpoint()) {
+			cellMask |= CHECKPOINT_BIT;
+		}
+		return (byte) cellMask;
+	}
+
+	/*
+	 * Returns an image of the whole maze scaled so that it is as big as it
+	 * can be without being wider than maxWidth or higher than maxHeight.
+	 */
+	public BufferedImage renderOverview(int maxWidth, int maxHeight) {
+		return render(Math.min((double) maxWidth / numColumns,
+				(double) maxHeight / numRows));
+	}
+
+	/*
+	 * Returns an image of the whole maze with each cell pixelsPerCell pixels
+	 * across, with the top left corner of the maze at the top left of the
+	 * image. If the cells are at least
+	 * GameConstants.MIN_DETAILED_RASTER_CELL_SIDE_LENGTH pixels across, the
+	 * walls and checkpoint indicators are drawn as they are by the Cell class
+	 * (without antialiasing). Otherwise, each pixel takes the overview colour
+	 * of the cell at its centre, and then each checkpoint is drawn as a single
+	 * pixel on top so that none of them are missed.
+	 */
+	public BufferedImage render(final double pixelsPerCell) {
+		final int imageWidth = Math.max(1,
+				(int) Math.ceil(numColumns * pixelsPerCell));
+		final int imageHeight = Math.max(1,
+				(int) Math.ceil(numRows * pixelsPerCell));
+		BufferedImage image = new BufferedImage(imageWidth, imageHeight,
+				BufferedImage.TYPE_INT_RGB);
+
+		/*
+		 * The pixels of a new TYPE_INT_RGB image are stored one int per pixel,
+		 * row after row, with no gaps between the rows. Getting the array
+		 * stops Java2D from caching the image in video memory, which does not
+		 * matter as it is only drawn once into the static layer of the maze or
+		 * shown as an overview.
+		 */
+		final int[] pixels = ((DataBufferInt) image.getRaster()
+				.getDataBuffer()).getData();
+
+		/*
+		 * Everything about a pixel that depends only on its column (the
+		 * column of cells it is in, and whether it is near the left or right
+		 * wall of the cell or how far it is from the centre of the cell) is
+		 * the same for every row, so it is worked out once here.
+		 */
+		final int[] cellColumns = new int[imageWidth];
+		final int[] wallMasksX = new int[imageWidth];
+		final double[] squaredDistancesX = new double[imageWidth];
+		final double halfWallThickness = Math.max(0.5,
+				wallProportionOfCellDimensions * pixelsPerCell / 2);
+		for (int pixelX = 0; pixelX < imageWidth; pixelX++) {
+			int cellColumn = Math.min(numColumns - 1,
+					(int) ((pixelX + 0.5) / pixelsPerCell));
+			double localX = pixelX + 0.5 - cellColumn * pixelsPerCell;
+			cellColumns[pixelX] = cellColumn;
+			wallMasksX[pixelX] = getWallMask(localX, pixelsPerCell,
+					halfWallThickness, Direction.LEFT, Direction.RIGHT);
+			squaredDistancesX[pixelX] = (localX - pixelsPerCell / 2)
+					* (localX - pixelsPerCell / 2);
+		}
+		final boolean detailed = pixelsPerCell >= GameConstants.MIN_DETAILED_RASTER_CELL_SIDE_LENGTH;
+		final double checkpointRadius = checkpointProportionOfCellDimensions
+				* pixelsPerCell / 2;
+
+		IntStream.range(0, imageHeight).parallel().forEach(new IntConsumer() {
+			@Override
+			public void accept(int pixelY) {
+				int cellRow = Math.min(numRows - 1,
+						(int) ((pixelY + 0.5) / pixelsPerCell));
+				int rowStart = cellRow * numColumns;
+				int pixelIndex = pixelY * imageWidth;
+				if (!detailed) {
+					for (int pixelX = 0; pixelX < imageWidth; pixelX++) {
+						pixels[pixelIndex + pixelX] = overviewRGBs[cellMasks[rowStart
+								+ cellColumns[pixelX]]
+								& (CHECKPOINT_BIT - 1)];
+					}
+					return;
+				}
+				double localY = pixelY + 0.5 - cellRow * pixelsPerCell;
+				int wallMaskY = getWallMask(localY, pixelsPerCell,
+						halfWallThickness, Direction.UP, Direction.DOWN);
+				double squaredDistanceY = (localY - pixelsPerCell / 2)
+						* (localY - pixelsPerCell / 2);
+				double squaredRadius = checkpointRadius * checkpointRadius;
+				for (int pixelX = 0; pixelX < imageWidth; pixelX++) {
+					int cellMask = cellMasks[rowStart + cellColumns[pixelX]];
+					int rgb;
+					if ((cellMask & (wallMasksX[pixelX] | wallMaskY)) != 0) {
+						rgb = wallRGB;
+					} else if ((cellMask & CHECKPOINT_BIT) != 0
+							&& squaredDistancesX[pixelX] + squaredDistanceY <= squaredRadius) {
+						rgb = checkpointRGB;
+					} else {
+						rgb = surfaceRGBs[(cellMask & SURFACE_BITS) >> SURFACE_SHIFT];
+					}
+					pixels[pixelIndex + pixelX] = rgb;
+				}
+			}
+		});
+
+		if (!detailed) {
+			for (int checkpointIndex : checkpointIndices) {
+				int pixelX = Math.min(imageWidth - 1, (int) ((checkpointIndex
+						% numColumns + 0.5) * pixelsPerCell));
+				int pixelY = Math.min(imageHeight - 1, (int) ((checkpointIndex
+						/ numColumns + 0.5) * pixelsPerCell));
+				pixels[pixelY * imageWidth + pixelX] = checkpointRGB;
+			}
+		}
+		return image;
+	}
+
+	/*
+	 * Returns the bits of a cell mask for the walls that a pixel local pixels
+	 * from the start of its cell (along one axis) is close enough to to be
+	 * covered by: the wall in startDirection at the start of the cell, or the
+	 * wall in endDirection at the end.
+	 */
+	private static int getWallMask(double local, double pixelsPerCell,
+			double halfWallThickness, Direction startDirection,
+			Direction endDirection) {
+		int wallMask = 0;
+		if (local <= halfWallThickness) {
+			wallMask |= 1 << startDirection.ordinal();
+		}
+		if (pixelsPerCell - local <= halfWallThickness) {
+			wallMask |= 1 << endDirection.ordinal();
+		}
+		return wallMask;
+	}
+
+	/*
+	 * Returns the colour that is fraction of the way from rgb1 to rgb2.
+	 */
+	private static int mix(int rgb1, int rgb2, double fraction) {
+		int mixedRGB = 0;
+		for (int shift = 0; shift < 24; shift += 8) {
+			int component1 = (rgb1 >> shift) & 0xFF;
+			int component2 = (rgb2 >> shift) & 0xFF;
+			mixedRGB |= (int) Math.round(component1 + (component2 - component1)
+					* fraction) << shift;
+		}
+		return mixedRGB;
+	}
+
+	/*
+	 * Getters.
+	 */
+
+	public int getNumColumns() {
+		return numColumns;
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+}
@@ -0,0 +1,365 @@
+package core;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+
+public class PerformanceOverlay {
+	/*
+	 * This class is used to show how the game is performing in the top left
+	 * corner of the game screen (see the GameScreen class, which shows and
+	 * hides it when GameConstants.PERFORMANCE_OVERLAY_KEY is pressed): the
+	 * frames and game cycles per second, the p50, p99 and maximum times taken
+	 * to update a game cycle and render a frame, how late the game loop has
+	 * woken up and how much that varies (the jitter), how many game cycles
+	 * and frames have been missed, what fraction of the time has been spent
+	 * updating and rendering, how long key presses waited to be handled by a
+	 * game cycle and how many were dropped, how much of the heap is
+	 * used and how many times and for how long the garbage collectors have
+	 * run, how long the current level took to set up, and how far the AI
+	 * player's route is at most from optimal.
+	 *
+	 * The times are recorded all the time by the LoopMetrics class, which
+	 * costs a few nanoseconds per game cycle and frame (see the
+	 * LatencyHistogram class), so the overlay can show them as soon as it is
+	 * shown. Everything else (reading the histograms and the memory and
+	 * garbage collector figures, and building and drawing the text) is only
+	 * done by this class while the overlay is shown, and the figures are only
+	 * worked out every GameConstants.PERFORMANCE_OVERLAY_REFRESH_MILLIS
+	 * milliseconds, over the time since they were last worked out, so the
+	 * overlay costs nothing while it is hidden and very little while it is
+	 * shown.
+	 *
+	 * The render method is only called by the thread that renders the game,
+	 * so apart from bounds, the attributes are only used by that thread.
+	 */
+
+	/*
+	 * The metrics of the ScreenDisplayer object showing the game. This is
+	 * aggregation as the PerformanceOverlay class has a HAS-A relationship
+	 * with the LoopMetrics class but the loopMetrics object will not be
+	 * destroyed if the PerformanceOverlay object is destroyed.
+	 */
+	private final LoopMetrics loopMetrics;
+
+	/*
+	 * The Java virtual machine's interfaces for the heap and for each of its
+	 * garbage collectors. These are aggregation as the PerformanceOverlay
+	 * class has a HAS-A relationship with the MemoryMXBean and
+	 * GarbageCollectorMXBean interfaces but the objects will not be destroyed
+	 * if the PerformanceOverlay object is destroyed.
+	 */
+	private final MemoryMXBean memoryBean;
+	private final List<GarbageCollectorMXBean> garbageCollectorBeans;
+
+	/*
+	 * Copies of the counts of the update and render time histograms as of
+	 * the last time the figures were worked out and as of now, and the
+	 * difference between them (i.e. the counts of just the times since the
+	 * figures were last worked out). They are made once and reused.
+	 */
+	private final long[] lastUpdateCounts;
+	private final long[] updateCounts;
+	private final long[] lastRenderCounts;
+	private final long[] renderCounts;
+	private final long[] intervalCounts;
+
+	/*
+	 * The time (in System.nanoTime units) at which the figures were last
+	 * worked out, and the number of game cycles and frames, and the garbage
+	 * collection count and time, at that time.
+	 */
+	private long lastRefreshTime;
+	private long lastNumGameCycles;
+	private long lastNumFrames;
+	private long lastNumCollections;
+	private long lastCollectionMillis;
+
+	/*
+	 * The lines of text shown, and the size of the box they are shown in,
+	 * as of the last time the figures were worked out.
+	 */
+	private static final int NUM_LINES = 9;
+	private final String[] lines;
+	private int boxWidth;
+	private int boxHeight;
+
+	/*
+	 * The region of the screen that the overlay has been drawn in so far,
+	 * which the GameScreen class marks as changed every game cycle while the
+	 * overlay is shown. It only ever grows, so that it still covers the old
+	 * box if the text gets shorter. It is volatile as it is read by the game
+	 * loop thread.
+	 */
+	private volatile Rectangle bounds;
+
+	/*
+	 * Constructor.
+	 */
+	public PerformanceOverlay(LoopMetrics loopMetrics) {
+		this.loopMetrics = loopMetrics;
+		memoryBean = ManagementFactory.getMemoryMXBean();
+		garbageCollectorBeans = ManagementFactory.getGarbageCollectorMXBeans();
+		lastUpdateCounts = new long[LatencyHistogram.NUM_BUCKETS];
+		updateCounts = new long[LatencyHistogram.NUM_BUCKETS];
+		lastRenderCounts = new long[LatencyHistogram.NUM_BUCKETS];
+		renderCounts = new long[LatencyHistogram.NUM_BUCKETS];
+		intervalCounts = new long[LatencyHistogram.NUM_BUCKETS];
+		lines = new String[NUM_LINES];
+		bounds = new Rectangle();
+
+		/*
+		 * This makes the first call of the render method start the
+		 * measurements again (see below).
+		 */
+		lastRefreshTime = System.nanoTime() - 2
+				* GameConstants.PERFORMANCE_OVERLAY_REFRESH_MILLIS * 1000000L;
+	}
+
+	/*
+	 * Draws the overlay in the top left corner using the graphics object,
+	 * working the figures out again first if it is time to. The time the
+	 * current level's maze took to generate is mazeGenerationNanos, and
+	 * planningProgress is the progress of the planning of the current
+	 * level's AIPlayer object, or null if there is no AIPlayer object.
+	 */
+	public void render(Graphics g, long mazeGenerationNanos,
+			PlanningProgress planningProgress) {
+		long currentTime = System.nanoTime();
+		long refreshNanos = GameConstants.PERFORMANCE_OVERLAY_REFRESH_MILLIS * 1000000L;
+		if (currentTime - lastRefreshTime >= 2 * refreshNanos) {
+			/*
+			 * The overlay has just been shown (or the game has stopped for a
+			 * while), so the figures since they were last worked out would
+			 * mostly be from while it was hidden. Instead, the measurements
+			 * start again from now.
+			 */
+			startMeasuring(currentTime);
+			setLines(g, "Measuring...");
+		} else if (currentTime - lastRefreshTime >= refreshNanos) {
+			refresh(currentTime, mazeGenerationNanos, planningProgress, g);
+		}
+
+		/*
+		 * The colour and font used in the graphics object before this method
+		 * is called needs to be stored so that it can be restored at the end
+		 * of the method (see below). This prevents side effects when the
+		 * graphics object is used again.
+		 */
+		Color lastColor = g.getColor();
+		Font lastFont = g.getFont();
+
+		g.setColor(GameConstants.PERFORMANCE_OVERLAY_COLOR);
+		g.fillRect(0, 0, boxWidth, boxHeight);
+		g.setColor(GameConstants.PERFORMANCE_OVERLAY_TEXT_COLOR);
+		g.setFont(GameConstants.PERFORMANCE_OVERLAY_FONT);
+		FontMetrics fontMetrics = g.getFontMetrics();
+		int lineHeight = fontMetrics.getHeight();
+		int padding = lineHeight / 2;
+		for (int i = 0; i < lines.length; i++) {
+			g.drawString(lines[i], padding, padding + i * lineHeight
+					+ fontMetrics.getAscent());
+		}
+
+		g.setFont(lastFont);
+		g.setColor(lastColor);
+	}
+
+	/*
+	 * Forgets everything measured before currentTime, so that the next
+	 * figures are worked out over the time from then.
+	 */
+	private void startMeasuring(long currentTime) {
+		lastRefreshTime = currentTime;
+		lastNumGameCycles = loopMetrics.getNumGameCycles();
+		lastNumFrames = loopMetrics.getNumFrames();
+		loopMetrics.getUpdateTimes().copyCounts(lastUpdateCounts);
+		loopMetrics.getRenderTimes().copyCounts(lastRenderCounts);
+		loopMetrics.getUpdateTimes().getAndResetMax();
+		loopMetrics.getRenderTimes().getAndResetMax();
+		lastNumCollections = getNumCollections();
+		lastCollectionMillis = getCollectionMillis();
+	}
+
+	/*
+	 * Works out the figures over the time since they were last worked out,
+	 * and then starts measuring again from currentTime.
+	 */
+	private void refresh(long currentTime, long mazeGenerationNanos,
+			PlanningProgress planningProgress, Graphics g) {
+		double seconds = (currentTime - lastRefreshTime) / 1e9;
+		long numGameCycles = loopMetrics.getNumGameCycles();
+		long numFrames = loopMetrics.getNumFrames();
+		String rateLine = String.format("FPS %6.1f   UPS %6.1f",
+				(numFrames - lastNumFrames) / seconds,
+				(numGameCycles - lastNumGameCycles) / seconds);
+
+		loopMetrics.getUpdateTimes().copyCounts(updateCounts);
+		String updateLine = getTimesLine("Update", updateCounts,
+				lastUpdateCounts, loopMetrics.getUpdateTimes()
+						.getAndResetMax());
+		loopMetrics.getRenderTimes().copyCounts(renderCounts);
+		String renderLine = getTimesLine("Render", renderCounts,
+				lastRenderCounts, loopMetrics.getRenderTimes()
+						.getAndResetMax());
+
+		/*
+		 * Unlike the figures above, these are over the whole time since the
+		 * game loop started.
+		 */
+		String latenessLine = String.format(
+				"Loop late mean %.3fms  max %.3fms  jitter %.3fms",
+				loopMetrics.getMeanLatenessNanos() / 1e6,
+				loopMetrics.getMaxLatenessNanos() / 1e6,
+				loopMetrics.getJitterNanos() / 1e6);
+		String missedLine = String.format(
+				"Missed %d cycles, %d frames   Time %.1f%% update, %.1f%% render",
+				loopMetrics.getNumMissedGameCycles(),
+				loopMetrics.getNumMissedFrames(),
+				loopMetrics.getUpdateTimeFraction() * 100,
+				loopMetrics.getRenderTimeFraction() * 100);
+		String inputLine = String.format(
+				"Input to tick mean %.3fms  max %.3fms  dropped %d",
+				loopMetrics.getMeanInputLatencyNanos() / 1e6,
+				loopMetrics.getMaxInputLatencyNanos() / 1e6,
+				loopMetrics.getNumDroppedInputEvents());
+
+		long numCollections = getNumCollections();
+		long collectionMillis = getCollectionMillis();
+		String memoryLine = String.format(
+				"Heap %.1f/%.1fMB   GC %d (+%d), %dms (+%dms)",
+				memoryBean.getHeapMemoryUsage().getUsed() / 1048576.0,
+				memoryBean.getHeapMemoryUsage().getCommitted() / 1048576.0,
+				numCollections, numCollections - lastNumCollections,
+				collectionMillis, collectionMillis - lastCollectionMillis);
+
+		String levelLine;
+		String routeLine;
+		if (planningProgress == null) {
+			levelLine = String.format("Level: maze %.1fms, no AI",
+					mazeGenerationNanos / 1e6);
+			routeLine = "AI route: none";
+		} else {
+			levelLine = String
+					.format("Level: maze %.1fms, reduction %.1fms, AI planning %.1fms%s",
+							mazeGenerationNanos / 1e6,
+							planningProgress
+									.getStageNanos(PlanningStage.REDUCING_MAZE) / 1e6,
+							planningProgress.getTotalNanos() / 1e6,
+							planningProgress.getStage() == PlanningStage.READY ? ""
+									: " so far");
+
+			/*
+			 * The gap is not found for a route that was planned before or in
+			 * a maze with too many checkpoints, and takes a moment to find
+			 * after the planning has finished.
+			 */
+			double routeOptimalityGap = planningProgress
+					.getRouteOptimalityGap();
+			routeLine = Double.isNaN(routeOptimalityGap) ? "AI route: gap to optimal not known"
+					: String.format(
+							"AI route: at most %.2f%% longer than optimal",
+							routeOptimalityGap);
+		}
+		setLines(g, rateLine, updateLine, renderLine, latenessLine, missedLine,
+				inputLine, memoryLine, levelLine, routeLine);
+
+		/*
+		 * The current counts become the last counts for next time. The arrays
+		 * are swapped by copying, as they are final.
+		 */
+		System.arraycopy(updateCounts, 0, lastUpdateCounts, 0,
+				LatencyHistogram.NUM_BUCKETS);
+		System.arraycopy(renderCounts, 0, lastRenderCounts, 0,
+				LatencyHistogram.NUM_BUCKETS);
+		lastRefreshTime = currentTime;
+		lastNumGameCycles = numGameCycles;
+		lastNumFrames = numFrames;
+		lastNumCollections = numCollections;
+		lastCollectionMillis = collectionMillis;
+	}
+
+	/*
+	 * Returns a line of text with the p50, p99 and maximum of the times
+	 * counted in counts but not in lastCounts, which is labelled with name.
+	 * The percentiles are the longest times in their buckets, so they are
+	 * made no longer than the exact maximum, maxNanos.
+	 */
+	private String getTimesLine(String name, long[] counts, long[] lastCounts,
+			long maxNanos) {
+		for (int i = 0; i < LatencyHistogram.NUM_BUCKETS; i++) {
+			intervalCounts[i] = counts[i] - lastCounts[i];
+		}
+		long p50Nanos = Math.min(maxNanos,
+				LatencyHistogram.getValueAtPercentile(intervalCounts, 50));
+		long p99Nanos = Math.min(maxNanos,
+				LatencyHistogram.getValueAtPercentile(intervalCounts, 99));
+		return String.format("%s p50 %7.3fms  p99 %7.3fms  max %7.3fms",
+				name, p50Nanos / 1e6, p99Nanos / 1e6, maxNanos / 1e6);
+	}
+
+	/*
+	 * Sets the lines of text shown (at most NUM_LINES, with any lines not
+	 * given left empty, so that the box is always the same height), and
+	 * works out the size of the box they are shown in using the font metrics
+	 * of the graphics object.
+	 */
+	private void setLines(Graphics g, String... newLines) {
+		for (int i = 0; i < NUM_LINES; i++) {
+			lines[i] = i < newLines.length ? newLines[i] : "";
+		}
+		FontMetrics fontMetrics = g
+				.getFontMetrics(GameConstants.PERFORMANCE_OVERLAY_FONT);
+		int lineHeight = fontMetrics.getHeight();
+		int maxLineWidth = 0;
+		for (String line : lines) {
+			maxLineWidth = Math.max(maxLineWidth,
+					fontMetrics.stringWidth(line));
+		}
+		boxWidth = maxLineWidth + lineHeight;
+		boxHeight = lines.length * lineHeight + lineHeight;
+		bounds = bounds.union(new Rectangle(0, 0, boxWidth, boxHeight));
+	}
+
+	/*
+	 * Returns the total number of garbage collections so far, over every
+	 * garbage collector. A garbage collector that does not know returns -1,
+	 * so it is left out.
+	 */
+	private long getNumCollections() {
+		long numCollections = 0;
+		for (GarbageCollectorMXBean garbageCollectorBean : garbageCollectorBeans) {
+			numCollections += Math.max(0,
+					garbageCollectorBean.getCollectionCount());
+		}
+		return numCollections;
+	}
+
+	/*
+	 * Returns the total time in milliseconds spent on garbage collection so
+	 * far, in the same way.
+	 */
+	private long getCollectionMillis() {
+		long collectionMillis = 0;
+		for (GarbageCollectorMXBean garbageCollectorBean : garbageCollectorBeans) {
+			collectionMillis += Math.max(0,
+					garbageCollectorBean.getCollectionTime());
+		}
+		return collectionMillis;
+	}
+
+	/*
+	 * Getters.
+	 */
+
+	public Rectangle getBounds() {
+		return bounds;
+	}
+
+}
@@ -0,0 +1,214 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class PlanCache {
+	/*
+	 * This class is used to remember the finished routes of AIPlayer objects,
+	 * so that an AI player in a maze that has been planned before (e.g. when a
+	 * round is replayed) does not have to be planned again. A route is stored
+	 * as the bytes returned by the getFinishedRoute method of the AIPlayer
+	 * class, keyed by the string returned by getKey, which identifies the
+	 * maze and the endpoints of the route.
+	 *
+	 * The cache holds at most maxBytes bytes of routes in memory, and when it
+	 * is full the route that was used least recently is removed. If a disk
+	 * directory is given, removed routes are written there and read back in
+	 * if they are asked for again, and the directory holds at most
+	 * maxDiskEntries routes (the oldest files are deleted). All the public
+	 * methods are synchronized, as routes are looked up and stored on the
+	 * threads that plan the AI players.
+	 */
+
+	/*
+	 * The routes in memory, in order from least recently used to most
+	 * recently used (as the LinkedHashMap is created in access order).
+	 */
+	private final LinkedHashMap<String, byte[]> routes;
+
+	/*
+	 * The total length of the routes in memory and the most that it can be.
+	 */
+	private long numBytes;
+	private final long maxBytes;
+
+	/*
+	 * The directory that routes removed from memory are written to, or null if
+	 * they are just forgotten, and the most route files it can hold.
+	 */
+	private final File diskDirectory;
+	private final int maxDiskEntries;
+
+	/*
+	 * Constructor. diskDirectory can be null, in which case the cache is only
+	 * held in memory.
+	 */
+	public PlanCache(long maxBytes, File diskDirectory, int maxDiskEntries) {
+		routes = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+		numBytes = 0;
+		this.maxBytes = maxBytes;
+		this.diskDirectory = diskDirectory;
+		this.maxDiskEntries = maxDiskEntries;
+	}
+
+	/*
+	 * Returns the route stored with key, or null if there is none. A route
+	 * that is only on disk is moved back into memory.
+	 */
+	public synchronized byte[] get(String key) {
+		byte[] route = routes.get(key);
+		if (route == null && diskDirectory != null) {
+			File routeFile = new File(diskDirectory, key);
+			if (routeFile.isFile()) {
+				try {
+					route = Files.readAllBytes(routeFile.toPath());
+				} catch (IOException e) {
+					/*
+					 * The cache is only there to save time, so if the route
+					 * cannot be read, it is planned again as if it had never
+					 * been stored.
+					 */
+					e.printStackTrace();
+					return null;
+				}
+				put(key, route);
+			}
+		}
+		return route;
+	}
+
+	/*
+	 * Stores route with key, replacing any route already stored with it.
+	 */
+	public synchronized void put(String key, byte[] route) {
+		byte[] oldRoute = routes.put(key, route);
+		if (oldRoute != null) {
+			numBytes -= oldRoute.length;
+		}
+		numBytes += route.length;
+
+		/*
+		 * Removes the least recently used routes until the cache fits in
+		 * maxBytes again, which may remove route itself if it is bigger than
+		 * maxBytes on its own.
+		 */
+		Iterator<Map.Entry<String, byte[]>> iterator = routes.entrySet()
+				.iterator();
+		while (numBytes > maxBytes && iterator.hasNext()) {
+			Map.Entry<String, byte[]> entry = iterator.next();
+			iterator.remove();
+			numBytes -= entry.getValue().length;
+			spill(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/*
+	 * Writes a route removed from memory to diskDirectory, if there is one,
+	 * and deletes the oldest route files if there are more than
+	 * maxDiskEntries of them.
+	 */
+	private void spill(String key, byte[] route) {
+		if (diskDirectory == null) {
+			return;
+		}
+		try {
+			Files.createDirectories(diskDirectory.toPath());
+			Files.write(new File(diskDirectory, key).toPath(), route);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		File[] routeFiles = diskDirectory.listFiles();
+		if (routeFiles != null && routeFiles.length > maxDiskEntries) {
+			Arrays.sort(routeFiles, new Comparator<File>() {
+				@Override
+				public int compare(File file1, File file2) {
+					return Long.compare(file1.lastModified(),
+							file2.lastModified());
+				}
+			});
+			for (int i = 0; i < routeFiles.length - maxDiskEntries; i++) {
+				routeFiles[i].delete();
+			}
+		}
+	}
+
+	/*
+	 * Returns the key for the route from startCell to endCell in maze. Rather
+	 * than using the random seed that the maze was generated from, the key is
+	 * a SHA-256 hash of everything about the maze that the route depends on:
+	 * its dimensions, which neighbouring Cell objects are adjacent (i.e. have
+	 * no wall between them), the Surface of every Cell object, which Cell
+	 * objects are checkpoints, and where the endpoints are. This means that
+	 * two mazes only ever share a key if they would be planned the same way,
+	 * even if the way that mazes are generated changes, and it takes O(N)
+	 * time for N Cell objects, which is far less than planning a route.
+	 */
+	public static String getKey(Maze maze, Cell startCell, Cell endCell) {
+		Cell[][] cells = maze.getCells();
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			/*
+			 * Every Java platform has to support SHA-256, so this should not
+			 * happen.
+			 */
+			throw new RuntimeException(e);
+		}
+		digest.update((cells.length + "x" + cells[0].length + ":")
+				.getBytes(StandardCharsets.US_ASCII));
+		byte[] cellBytes = new byte[cells[0].length];
+		int startIndex = -1, endIndex = -1;
+		for (int i = 0; i < cells.length; i++) {
+			for (int j = 0; j < cells[i].length; j++) {
+				Cell cell = cells[i][j];
+
+				/*
+				 * One byte per Cell object: a bit for each Direction in which
+				 * it is adjacent to its neighbouring Cell object, then its
+				 * Surface and whether it is a checkpoint.
+				 */
+				int cellByte = 0;
+				for (Direction direction : Direction.values()) {
+					Cell neighbouringCell = cell.getNeighbouringCell(direction);
+					if (neighbouringCell != null
+							&& cell.isAdjacentTo(neighbouringCell)) {
+						cellByte |= 1 << direction.ordinal();
+					}
+				}
+				cellByte |= cell.getSurface().ordinal() << 4;
+				if (cell.isCheckpoint()) {
+					cellByte |= 1 << 7;
+				}
+				cellBytes[j] = (byte) cellByte;
+				if (cell == startCell) {
+					startIndex = i * cells[i].length + j;
+				}
+				if (cell == endCell) {
+					endIndex = i * cells[i].length + j;
+				}
+			}
+			digest.update(cellBytes);
+		}
+		digest.update((":" + startIndex + ":" + endIndex)
+				.getBytes(StandardCharsets.US_ASCII));
+
+		StringBuilder keyBuilder = new StringBuilder();
+		for (byte hashByte : digest.digest()) {
+			keyBuilder.append(String.format("%02x", hashByte));
+		}
+		return keyBuilder.toString();
+	}
+
+}
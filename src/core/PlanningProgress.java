@@ -0,0 +1,163 @@
+package core;
+
+import java.util.concurrent.CancellationException;
+
+public class PlanningProgress {
+	/*
+	 * This class is used to report how far the planning of an AIPlayer object
+	 * has got (see the PlanningStage enum type) from the thread doing the
+	 * planning to the game loop thread, which shows it to the user, and to
+	 * let the game loop thread tell the planning to stop if it is no longer
+	 * needed. The fields are volatile so that each thread always sees what the
+	 * other has last written, and only the planning thread writes the stage
+	 * and the stage progress, so no locking is needed.
+	 *
+	 * It also records how long the planning spent in each stage and how far
+	 * the finished route is at most from optimal, which are shown by the
+	 * PerformanceOverlay class.
+	 */
+
+	/*
+	 * The stage that the planning is at. This is aggregation as the
+	 * PlanningProgress class has a HAS-A relationship with the PlanningStage
+	 * enum type but the stage enum will not be destroyed if the
+	 * PlanningProgress object is destroyed.
+	 */
+	private volatile PlanningStage stage;
+
+	/*
+	 * The fraction (from 0 to 1) of the current stage that has been done, or
+	 * 0 if the stage does not report how far it has got.
+	 */
+	private volatile double stageProgress;
+
+	/*
+	 * Whether the planning should stop.
+	 */
+	private volatile boolean cancelled;
+
+	/*
+	 * The time (in System.nanoTime units) at which the planning started and
+	 * at which the current stage started, and the total time in nanoseconds
+	 * spent in each finished stage, indexed by the ordinal of the stage. Only
+	 * the planning thread writes stageNanos, and it does so before it writes
+	 * stage, so other threads see the times of every stage before the one
+	 * that they read from stage.
+	 */
+	private final long startTime;
+	private volatile long stageStartTime;
+	private final long[] stageNanos;
+
+	/*
+	 * The percentage by which the finished route is at most longer than the
+	 * optimal route (see the calculateRouteOptimalityGap method of the
+	 * AIPlayer class), or NaN if it has not been found. It is found after
+	 * the planning has reached the READY stage, while the AIPlayer object is
+	 * already following its route.
+	 */
+	private volatile double routeOptimalityGap;
+
+	/*
+	 * Constructor.
+	 */
+	public PlanningProgress() {
+		stage = PlanningStage.LOOKING_UP_ROUTE;
+		stageProgress = 0;
+		cancelled = false;
+		startTime = System.nanoTime();
+		stageStartTime = startTime;
+		stageNanos = new long[PlanningStage.values().length];
+		routeOptimalityGap = Double.NaN;
+	}
+
+	/*
+	 * Moves the planning on to the given stage. If the planning has been
+	 * cancelled, a CancellationException is thrown instead, which stops the
+	 * planning between stages.
+	 */
+	public void setStage(PlanningStage stage) {
+		checkCancelled();
+		long currentTime = System.nanoTime();
+		stageNanos[this.stage.ordinal()] += currentTime - stageStartTime;
+		stageStartTime = currentTime;
+		stageProgress = 0;
+		this.stage = stage;
+	}
+
+	/*
+	 * Sets how far the current stage has got. As above, a
+	 * CancellationException is thrown if the planning has been cancelled, so
+	 * long stages that call this often can be stopped part of the way
+	 * through.
+	 */
+	public void setStageProgress(double stageProgress) {
+		checkCancelled();
+		this.stageProgress = stageProgress;
+	}
+
+	private void checkCancelled() {
+		if (cancelled) {
+			throw new CancellationException();
+		}
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/*
+	 * Returns the time in nanoseconds that the planning has spent in the
+	 * given stage so far, including the time since it started if it is the
+	 * current stage. Read from another thread while the stage is changing,
+	 * this may be out by the time taken to change stage, which is fine for
+	 * showing to the user.
+	 */
+	public long getStageNanos(PlanningStage stage) {
+		PlanningStage currentStage = this.stage;
+		long nanos = stageNanos[stage.ordinal()];
+		if (stage == currentStage && currentStage != PlanningStage.READY) {
+			nanos += System.nanoTime() - stageStartTime;
+		}
+		return nanos;
+	}
+
+	/*
+	 * Returns the time in nanoseconds from the start of the planning until it
+	 * reached the READY stage, or until now if it has not reached it yet.
+	 */
+	public long getTotalNanos() {
+		if (stage == PlanningStage.READY) {
+			return stageStartTime - startTime;
+		}
+		return System.nanoTime() - startTime;
+	}
+
+	/*
+	 * Getters.
+	 */
+
+	public PlanningStage getStage() {
+		return stage;
+	}
+
+	public double getStageProgress() {
+		return stageProgress;
+	}
+
+	public double getRouteOptimalityGap() {
+		return routeOptimalityGap;
+	}
+
+	/*
+	 * Setters.
+	 */
+
+	public void setRouteOptimalityGap(double routeOptimalityGap) {
+		this.routeOptimalityGap = routeOptimalityGap;
+	}
+
+}
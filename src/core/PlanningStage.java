@@ -0,0 +1,36 @@
+package core;
+
+public enum PlanningStage {
+	/*
+	 * The predefined constants, representing the stages that an AIPlayer
+	 * object goes through before it can start moving, in the order in which
+	 * they happen.
+	 */
+	LOOKING_UP_ROUTE("Looking for a saved route"), REDUCING_MAZE(
+			"Reducing the maze"), FINDING_SHORTEST_PATHS(
+			"Finding the shortest paths between checkpoints"), PLANNING_ROUTE(
+			"Planning the route"), IMPROVING_ROUTE("Improving the route"), EXPANDING_ROUTE(
+			"Expanding the route into steps"), READY("Ready");
+
+	/*
+	 * The description of the stage shown to the user while it is happening.
+	 */
+	private final String description;
+
+	/*
+	 * Constructor. Used to create the predefined constants with the given
+	 * arguments.
+	 */
+	private PlanningStage(String description) {
+		this.description = description;
+	}
+
+	/*
+	 * Getters.
+	 */
+
+	public String getDescription() {
+		return description;
+	}
+
+}
@@ -2,6 +2,7 @@ package core;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.image.BufferedImage;
 
 public abstract class Player extends Entity {
 	/*
@@ -86,6 +87,21 @@ public abstract class Player extends Entity {
 	 */
 	private final int numCheckpointsToReach;
 
+	/*
+	 * The pixel x-coordinate and y-coordinate of the player at the start of
+	 * the current game cycle (see the rememberPosition method). Used for
+	 * rendering purposes only.
+	 */
+	private double previousX, previousY;
+
+	/*
+	 * The sprite of the player circle (see the SpriteCache class), or null if
+	 * it has not been needed yet. It is volatile as it may be fetched on a
+	 * different thread from the one that next renders the player. Used for
+	 * rendering purposes only.
+	 */
+	private volatile BufferedImage sprite;
+
 	/*
 	 * Constructor.
 	 */
@@ -106,6 +122,9 @@ public abstract class Player extends Entity {
 		 * The player starts at startCell.
 		 */
 		currentCell = startCell;
+		previousX = x;
+		previousY = y;
+		sprite = null;
 
 		/*
 		 * The direction chosen is arbitrary.
@@ -341,6 +360,18 @@ public abstract class Player extends Entity {
 				&& currentCell == endCell;
 	}
 
+	/*
+	 * Stores the current position of the player as its previous position.
+	 * Called at the start of every game cycle, whether or not the player
+	 * moves in it, so that the player can be rendered part of the way between
+	 * where it was before the cycle and where it is after it (see the render
+	 * method).
+	 */
+	public void rememberPosition() {
+		previousX = x;
+		previousY = y;
+	}
+
 	/*
 	 * Methods from the Entity abstract class that need to be implemented
 	 * (polymorphism).
@@ -359,39 +390,48 @@ public abstract class Player extends Entity {
 	}
 
 	/*
-	 * Renders the player as a coloured circle.
+	 * Renders the player as a coloured circle where it is now.
 	 */
 	@Override
 	public void render(Graphics g) {
-		/*
-		 * The colour used in the graphics object before this method is called
-		 * needs to be stored so that it can be restored at the end of the
-		 * method (see below). This prevents side effects when the graphics
-		 * object is used again.
-		 */
-		Color lastColor = g.getColor();
+		render(g, 1);
+	}
 
-		/*
-		 * Draws the coloured circle representing the player.
-		 */
-		g.setColor(color);
-		g.fillOval((int) (x + width * (1 - playerProportionOfCellDimensions)
-				/ 2), (int) (y + height
-				* (1 - playerProportionOfCellDimensions) / 2),
-				(int) (width * playerProportionOfCellDimensions),
-				(int) (height * playerProportionOfCellDimensions));
+	/*
+	 * Renders the player as a coloured circle the fraction interpolation (from
+	 * 0 to 1) of the way from its previous position to where it is now. This
+	 * means that the player moves smoothly on screen when there are more
+	 * frames per second than game cycles per second, as it is rendered where
+	 * it would be between game cycles rather than jumping once per cycle.
+	 */
+	public void render(Graphics g, double interpolation) {
+		renderAt(g, previousX + (x - previousX) * interpolation, previousY
+				+ (y - previousY) * interpolation);
+	}
 
+	/*
+	 * Renders the player as a coloured circle as if its pixel coordinates were
+	 * renderX and renderY, which can be where the player was at some earlier
+	 * time (see the GameScreen class).
+	 */
+	public void renderAt(Graphics g, double renderX, double renderY) {
 		/*
-		 * Draws the outline of the circle.
+		 * The coloured circle representing the player and its outline are
+		 * drawn from the sprite, which is fetched from the SpriteCache class
+		 * the first time the player is rendered. The circle is at the same
+		 * whole pixel coordinates as it would be drawn with fillOval.
 		 */
-		g.setColor(Color.BLACK);
-		g.drawOval((int) (x + width * (1 - playerProportionOfCellDimensions)
-				/ 2), (int) (y + height
-				* (1 - playerProportionOfCellDimensions) / 2),
-				(int) (width * playerProportionOfCellDimensions),
-				(int) (height * playerProportionOfCellDimensions));
-
-		g.setColor(lastColor);
+		BufferedImage sprite = this.sprite;
+		if (sprite == null) {
+			sprite = SpriteCache.getPlayerSprite(color,
+					(int) (width * playerProportionOfCellDimensions));
+			this.sprite = sprite;
+		}
+		g.drawImage(sprite, (int) (renderX + width
+				* (1 - playerProportionOfCellDimensions) / 2)
+				- SpriteCache.SPRITE_PADDING, (int) (renderY + height
+				* (1 - playerProportionOfCellDimensions) / 2)
+				- SpriteCache.SPRITE_PADDING, null);
 	}
 
 	/*
@@ -406,4 +446,16 @@ public abstract class Player extends Entity {
 		return name;
 	}
 
+	public Cell getCurrentCell() {
+		return currentCell;
+	}
+
+	public double getPreviousX() {
+		return previousX;
+	}
+
+	public double getPreviousY() {
+		return previousY;
+	}
+
 }
@@ -33,11 +33,31 @@ public class RGVertex {
 	 */
 	private final Cell superCell;
 
+	/*
+	 * The index of this RGVertex object in the checkpointVertices list of the
+	 * reduced graph if it represents a checkpoint Cell object, or -1 if it does
+	 * not. Numbering the checkpoint RGVertex objects 0 to k-1 like this allows
+	 * them to be used as indices into primitive arrays (e.g. the checkpoint
+	 * distance matrix in the AIPlayer class) rather than as keys of hash
+	 * tables.
+	 */
+	private int checkpointIndex;
+
+	/*
+	 * The index of this RGVertex object in the vertices list of the reduced
+	 * graph. Numbering all the RGVertex objects 0 to V-1 allows per-vertex
+	 * state in graph algorithms (e.g. the predecessor trees of Dijkstras
+	 * algorithm in the AIPlayer class) to be stored in primitive arrays.
+	 */
+	private int vertexIndex;
+
 	/*
 	 * Constructor.
 	 */
 	public RGVertex(Cell superCell) {
 		this.superCell = superCell;
+		checkpointIndex = -1;
+		vertexIndex = -1;
 
 		/*
 		 * An ArrayList implementation is used because it is efficient with
@@ -161,6 +181,22 @@ public class RGVertex {
 		return superCell;
 	}
 
+	public int getCheckpointIndex() {
+		return checkpointIndex;
+	}
+
+	public void setCheckpointIndex(int checkpointIndex) {
+		this.checkpointIndex = checkpointIndex;
+	}
+
+	public int getVertexIndex() {
+		return vertexIndex;
+	}
+
+	public void setVertexIndex(int vertexIndex) {
+		this.vertexIndex = vertexIndex;
+	}
+
 	public List<RGAdjacency> getAdjacencies() {
 		return Collections.unmodifiableList(rgAdjacencies);
 	}
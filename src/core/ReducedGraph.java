@@ -1,7 +1,6 @@
 package core;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -36,6 +35,16 @@ public class ReducedGraph {
 	 */
 	private final Map<Cell, RGVertex> cellsToVerticesMap;
 
+	/*
+	 * All the RGVertex objects of the reduced graph in the order they are
+	 * found, so that each RGVertex object's index in this list can be used as
+	 * its vertex index. This is composition as the ReducedGraph class has a
+	 * HAS-A relationship with the RGVertex class and the RGVertex objects in
+	 * the vertices list will be destroyed if the ReducedGraph object is
+	 * destroyed.
+	 */
+	private final List<RGVertex> vertices;
+
 	/*
 	 * The RGVertex objects of the reduced graph that represent super Cell
 	 * objects that are checkpoints (checkpoint Cell objects). This is
@@ -57,6 +66,12 @@ public class ReducedGraph {
 		 */
 		cellsToVerticesMap = new HashMap<Cell, RGVertex>();
 
+		/*
+		 * An ArrayList implementation is used because it has constant look-up
+		 * time complexity by index.
+		 */
+		vertices = new ArrayList<RGVertex>();
+
 		/*
 		 * An ArrayList implementation is used because it is efficient with
 		 * respect to memory and iteration time complexity.
@@ -93,9 +108,12 @@ public class ReducedGraph {
 		/*
 		 * When the algorithm recurses from a newly visited RGVertex object
 		 * (currentVertex), we store it by adding the super Cell object it
-		 * represents and currentVertex to cellsToVerticesMap
+		 * represents and currentVertex to cellsToVerticesMap, and we number
+		 * it with its vertex index by adding it to the vertices list.
 		 */
 		cellsToVerticesMap.put(currentVertex.getSuperCell(), currentVertex);
+		currentVertex.setVertexIndex(vertices.size());
+		vertices.add(currentVertex);
 
 		/*
 		 * We add the RGVertex object to checkpointVertices if it represents a
@@ -104,6 +122,12 @@ public class ReducedGraph {
 		 * creating the ReducedGraph to find the checkpoint RGVertex objects.
 		 */
 		if (currentVertex.getSuperCell().isCheckpoint()) {
+			/*
+			 * The index of the RGVertex object in checkpointVertices is stored
+			 * in the RGVertex object so that the checkpoints are numbered 0 to
+			 * k-1 in the order they are found.
+			 */
+			currentVertex.setCheckpointIndex(checkpointVertices.size());
 			checkpointVertices.add(currentVertex);
 		}
 
@@ -267,8 +291,8 @@ public class ReducedGraph {
 	 * Getters.
 	 */
 
-	public Collection<RGVertex> getVertices() {
-		return Collections.unmodifiableCollection(cellsToVerticesMap.values());
+	public List<RGVertex> getVertices() {
+		return Collections.unmodifiableList(vertices);
 	}
 
 	public List<RGVertex> getCheckpointVertices() {
@@ -1,7 +1,9 @@
 package core;
 
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.event.KeyEvent;
+import java.util.List;
 
 public interface Screen {
 	/*
@@ -17,13 +19,28 @@ public interface Screen {
 	public void update();
 
 	/*
-	 * Called every game cycle in the game loop. Draws the display using the
-	 * graphics object.
+	 * Called every frame. Draws the display using the graphics object.
+	 * interpolation (from 0 to 1) is how far the frame is between the last
+	 * game cycle and the next one, so that moving things can be drawn part of
+	 * the way between where they were before the last game cycle and where
+	 * they are now.
 	 */
-	public void render(Graphics graphics);
+	public void render(Graphics graphics, double interpolation);
 
 	/*
-	 * Called when a key is pressed.
+	 * Called every game cycle in the game loop, after update, if the screen
+	 * is rendered by Swing (it is not called at all if the screen is
+	 * rendered actively, as every frame is then rendered in full). Returns
+	 * the regions of the display that have changed since this method was
+	 * last called, so that only they are rendered again, or an empty list if
+	 * nothing has changed. The whole display is always rendered when the
+	 * screen is first displayed.
+	 */
+	public List<Rectangle> getDirtyRegions();
+
+	/*
+	 * Called in the game loop, at the start of a game cycle, once for each key
+	 * pressed since the last game cycle, in the order they were pressed.
 	 */
 	public void keyPressed(KeyEvent e);
 }
@@ -1,10 +1,16 @@
 package core;
 
+import java.awt.BorderLayout;
+import java.awt.Canvas;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.Toolkit;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.swing.JPanel;
 
@@ -31,30 +37,101 @@ public class ScreenDisplayer extends JPanel implements KeyListener {
 	 */
 
 	/*
-	 * The Screen object that is currently being updated and displayed. This is
+	 * The Screen object that is currently being updated and displayed. It is
+	 * volatile as it is changed by the game loop thread (when a key press
+	 * changes the screen) and read by the render loop thread. This is
 	 * aggregation as the ScreenDisplayer class has a HAS-A relationship with
 	 * the Screen interface but the currentScreen object will not be destroyed
 	 * if the ScreenDisplayer object is destroyed.
 	 */
-	private Screen currentScreen;
+	private volatile Screen currentScreen;
 
 	/*
 	 * Whether the game is running. This will be true during the running of the
-	 * game.
+	 * game. It is volatile as it is read by both the game loop thread and the
+	 * render loop thread.
 	 */
-	private boolean running;
+	private volatile boolean running;
 
 	/*
-	 * The target number of game cycles per second. Used for consistent
-	 * gameplay. This is calculated as the reciprocal of the
-	 * desiredGameCycleFrequency parameter passed into the constructor.
+	 * The target number of game cycles per second, and the target time per
+	 * game cycle in nanoseconds, which is its reciprocal. Used for consistent
+	 * gameplay.
 	 */
+	private final int gameCycleFrequency;
 	private final double desiredTimePerGameCycle;
 
 	/*
-	 * Constructor.
+	 * The time (in System.nanoTime units) that the last game cycle was meant
+	 * to happen at, which is used to work out how far each frame is between
+	 * game cycles. It is volatile as it is set by the game loop thread and
+	 * read by the render loop thread.
+	 */
+	private volatile long lastGameCycleTime;
+
+	/*
+	 * The Canvas that currentScreen is rendered to when the screen is rendered
+	 * actively (see the renderLoop method), or null if it is rendered by
+	 * Swing calling the paintComponent method. This is composition as the
+	 * ScreenDisplayer class has a HAS-A relationship with the Canvas class and
+	 * the canvas object will be destroyed if the ScreenDisplayer object is
+	 * destroyed.
+	 */
+	private final Canvas canvas;
+
+	/*
+	 * The most frames rendered per second when the screen is rendered
+	 * actively, or 0 if there is no limit.
+	 */
+	private final int maxFramesPerSecond;
+
+	/*
+	 * The threads running the game loop and the render loop (which is null
+	 * if the screen is not rendered actively), so that they can be stopped
+	 * by the stop method. This is composition as the ScreenDisplayer class
+	 * has a HAS-A relationship with the Thread class and the threads will be
+	 * destroyed if the ScreenDisplayer object is destroyed.
+	 */
+	private Thread gameLoopThread;
+	private Thread renderLoopThread;
+
+	/*
+	 * Measurements of how well the game loop and render loop keep to their
+	 * schedules. This is composition as the ScreenDisplayer class has a HAS-A
+	 * relationship with the LoopMetrics class and the loopMetrics object will
+	 * be destroyed if the ScreenDisplayer object is destroyed.
+	 */
+	private final LoopMetrics loopMetrics;
+
+	/*
+	 * The key presses waiting to be handled at the start of the next game
+	 * cycle. Key presses are listened for on Swing's event dispatch thread,
+	 * but currentScreen is only ever updated by the game loop thread, so
+	 * rather than handling them straight away (which would change the game
+	 * while the game loop thread is in the middle of updating it), they are
+	 * added to this queue and handled by the game loop thread (see the
+	 * handleKeyPresses method). This is composition as the ScreenDisplayer
+	 * class has a HAS-A relationship with the InputQueue class and the
+	 * inputQueue object will be destroyed if the ScreenDisplayer object is
+	 * destroyed.
+	 */
+	private final InputQueue inputQueue;
+
+	/*
+	 * Constructor. The screen is rendered by Swing.
 	 */
 	public ScreenDisplayer(int desiredGameCycleFrequency) {
+		this(desiredGameCycleFrequency, false, 0);
+	}
+
+	/*
+	 * Constructor. If activeRendering is true, then the screen is rendered
+	 * actively at up to maxFramesPerSecond frames per second, or as many as
+	 * possible if maxFramesPerSecond is 0, regardless of
+	 * desiredGameCycleFrequency.
+	 */
+	public ScreenDisplayer(int desiredGameCycleFrequency,
+			boolean activeRendering, int maxFramesPerSecond) {
 		/*
 		 * The superclass's constructor must be called first.
 		 */
@@ -85,20 +162,77 @@ public class ScreenDisplayer extends JPanel implements KeyListener {
 		 * nanoseconds, we multiply by 1e9 (i.e. 1,000,000,000) to convert
 		 * seconds to nanoseconds.
 		 */
+		gameCycleFrequency = desiredGameCycleFrequency;
 		desiredTimePerGameCycle = 1e9 / desiredGameCycleFrequency;
+		this.maxFramesPerSecond = maxFramesPerSecond;
+		loopMetrics = new LoopMetrics();
+		inputQueue = new InputQueue(GameConstants.INPUT_QUEUE_CAPACITY);
+
+		if (activeRendering) {
+			/*
+			 * Unlike a JPanel, a Canvas is a heavyweight AWT component, so it
+			 * can have a BufferStrategy and be drawn to directly. It fills
+			 * this panel, so the size of this panel is still the size of the
+			 * screen. setIgnoreRepaint stops AWT from also painting it. Key
+			 * actions go to the canvas once it is focused, so this object
+			 * listens for them there as well.
+			 */
+			canvas = new Canvas();
+			canvas.setIgnoreRepaint(true);
+			canvas.setFocusable(true);
+			canvas.addKeyListener(this);
+			setLayout(new BorderLayout());
+			add(canvas, BorderLayout.CENTER);
+		} else {
+			canvas = null;
+		}
 	}
 
 	/*
-	 * Creates and starts a thread that runs the game loop.
+	 * Creates and starts a thread that runs the game loop and, if the screen
+	 * is rendered actively, another thread that runs the render loop.
 	 */
 	public void run() {
-		Thread loop = new Thread() {
+		gameLoopThread = new Thread("Game loop") {
 			public void run() {
 				gameLoop();
 			}
 		};
 		running = true;
-		loop.start();
+		loopMetrics.reset();
+		gameLoopThread.start();
+		if (canvas != null) {
+			renderLoopThread = new Thread("Render loop") {
+				public void run() {
+					renderLoop();
+				}
+			};
+			renderLoopThread.start();
+		}
+	}
+
+	/*
+	 * Stops the game loop and render loop, waiting for up to
+	 * GameConstants.LOOP_SHUTDOWN_TIMEOUT_MILLIS milliseconds for each of them
+	 * to finish the game cycle or frame it is in the middle of. Called when
+	 * the window is closed.
+	 */
+	public void stop() {
+		running = false;
+		for (Thread thread : new Thread[] { gameLoopThread, renderLoopThread }) {
+			if (thread != null) {
+				/*
+				 * Wakes the thread up if it is parked waiting for its next game
+				 * cycle or frame, so that it sees that running is false.
+				 */
+				LockSupport.unpark(thread);
+				try {
+					thread.join(GameConstants.LOOP_SHUTDOWN_TIMEOUT_MILLIS);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
 	}
 
 	/*
@@ -107,21 +241,54 @@ public class ScreenDisplayer extends JPanel implements KeyListener {
 	 * desiredGameLoopCycleFrequency, in order to keep the speed of the gameplay
 	 * consistent regardless of how fast the users computer is (unless it is
 	 * extremely slow, in which case the game would not be enjoyable anyway).
+	 *
+	 * The time each game cycle is meant to start at is worked out from the
+	 * time the schedule started and the number of game cycles since then,
+	 * rather than by adding the time per game cycle to the time of the last
+	 * one, so that rounding errors and late wake-ups never build up into the
+	 * game running slowly (drift). All times are long nanoseconds.
 	 */
 	private void gameLoop() {
-		double previousCycleTime = System.nanoTime();
+		long scheduleStartTime = System.nanoTime();
+		long numCyclesScheduled = 0;
+		lastGameCycleTime = scheduleStartTime;
 		while (running) {
-			double currentTime = System.nanoTime();
+			long nextCycleTime = scheduleStartTime + (numCyclesScheduled + 1)
+					* 1000000000L / gameCycleFrequency;
+			waitUntil(nextCycleTime);
+			if (!running) {
+				break;
+			}
+			long currentTime = System.nanoTime();
 
 			/*
-			 * If the time difference between now and the previous cycle is
-			 * greater than the desired time per game loop cycle, then that
-			 * means the game is running behind schedule. To ensure that
-			 * gameplay consistent, we need to update the game repeatedly
-			 * (without rendering the game, to save time) until it is back on
-			 * schedule, which is what this loop does.
+			 * If the game loop woke up more than one game cycle late, then the
+			 * game is running behind schedule. To keep gameplay consistent,
+			 * we need to update the game repeatedly (without rendering the
+			 * game, to save time) until it is back on schedule. However, after
+			 * a long pause (e.g. a garbage collection pause, or the computer
+			 * going to sleep), catching up would mean a burst of a great many
+			 * game cycles, so at most GameConstants.MAX_CATCH_UP_GAME_CYCLES
+			 * are run, and the rest are skipped by starting the schedule again
+			 * from now.
 			 */
-			while (currentTime - previousCycleTime > desiredTimePerGameCycle) {
+			long numCyclesDue = Math.max(1, (currentTime - scheduleStartTime)
+					* gameCycleFrequency / 1000000000L - numCyclesScheduled);
+			long numCyclesMissed = 0;
+			if (numCyclesDue > GameConstants.MAX_CATCH_UP_GAME_CYCLES) {
+				numCyclesMissed = numCyclesDue
+						- GameConstants.MAX_CATCH_UP_GAME_CYCLES;
+				numCyclesDue = GameConstants.MAX_CATCH_UP_GAME_CYCLES;
+			}
+
+			long updateStartTime = System.nanoTime();
+			for (int i = 0; i < numCyclesDue; i++) {
+				/*
+				 * Key presses are handled at the start of each game cycle, so
+				 * that they always take effect between updates.
+				 */
+				handleKeyPresses();
+
 				/*
 				 * If currentScreen is pointing to a null reference, then
 				 * calling the update method would lead to a
@@ -134,54 +301,219 @@ public class ScreenDisplayer extends JPanel implements KeyListener {
 					 * the update method can contain different code depending on
 					 * which class is implementing the Screen interface.
 					 */
+					long cycleStartTime = System.nanoTime();
 					currentScreen.update();
+					loopMetrics.recordUpdate(System.nanoTime() - cycleStartTime);
 				}
-				previousCycleTime += desiredTimePerGameCycle;
 			}
+			loopMetrics.recordGameCycles(currentTime - nextCycleTime,
+					(int) numCyclesDue, numCyclesMissed, System.nanoTime()
+							- updateStartTime);
+			if (numCyclesMissed > 0) {
+				scheduleStartTime = currentTime;
+				numCyclesScheduled = 0;
+			} else {
+				numCyclesScheduled += numCyclesDue;
+			}
+			lastGameCycleTime = scheduleStartTime + numCyclesScheduled
+					* 1000000000L / gameCycleFrequency;
 
 			/*
-			 * Calls the paintComponent method, which renders CurrentScreen.
+			 * Calls the paintComponent method, which renders CurrentScreen,
+			 * for only the regions of the screen that have changed. Swing
+			 * joins the regions together into one call, and nothing is
+			 * rendered at all if nothing has changed (e.g. if the game is
+			 * paused), which saves a lot of time on large windows. If the
+			 * screen is rendered actively, then the render loop renders every
+			 * frame in full anyway, so the regions are not asked for at all
+			 * (see the isRenderedActively method).
 			 */
-			repaint();
+			if (currentScreen != null && canvas == null) {
+				for (Rectangle dirtyRegion : currentScreen.getDirtyRegions()) {
+					repaint(dirtyRegion);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Takes every key press waiting in inputQueue, in the order the keys were
+	 * pressed, and passes it to currentScreen, recording how long it waited.
+	 * Called by the game loop thread only.
+	 */
+	private void handleKeyPresses() {
+		long currentTime = System.nanoTime();
+		KeyEvent keyEvent = inputQueue.poll();
+		while (keyEvent != null) {
+			loopMetrics.recordInputEvent(currentTime
+					- inputQueue.getLastPolledAddTime());
 
 			/*
-			 * If the time difference between now and the previous cycle is less
-			 * than the desired time per game loop cycle, then that means the
-			 * game is running faster than needed. To ensure that gameplay is
-			 * consistent, this means that we should wait until it is time for
-			 * the next cycle, allowing us to free up CPU resources while
-			 * waiting. This is what this loop does.
+			 * If currentScreen is pointing to a null reference, then calling
+			 * the keyPressed method would lead to a NullPointerException.
 			 */
-			while (currentTime - previousCycleTime < desiredTimePerGameCycle) {
-
+			if (currentScreen != null) {
 				/*
-				 * A try-catch block is used because threads can be interrupted,
-				 * leading to exceptions which can be handled. If this thread is
-				 * interrupted, it doesn't matter much so exiting the program is
-				 * not required and the program can still continue.
+				 * Executes code that the currentScreen object requires to be
+				 * executed when a key, corresponding to the keyEvent argument,
+				 * is pressed. This is dynamic polymorphism as currentScreen can
+				 * be an object of any class implementing the Screen interface
+				 * and the keyPressed method can contain different code
+				 * depending on which class is implementing the Screen
+				 * interface.
 				 */
-				try {
+				currentScreen.keyPressed(keyEvent);
+			}
+			keyEvent = inputQueue.poll();
+		}
+	}
+
+	/*
+	 * While the game is running, renders currentScreen to canvas, on its own
+	 * thread so that rendering never holds up the game loop and each frame is
+	 * shown as soon as it has been rendered, rather than whenever Swing gets
+	 * round to it. Each frame is rendered in full to the back buffer of a
+	 * BufferStrategy and then shown, at most maxFramesPerSecond times a
+	 * second, on a schedule worked out in the same way as the game loop's.
+	 */
+	private void renderLoop() {
+		/*
+		 * The BufferStrategy can only be created once canvas is displayable
+		 * (i.e. once the window it is in has been set up).
+		 */
+		while (running && !canvas.isDisplayable()) {
+			waitUntil(System.nanoTime() + 1000000);
+		}
+		if (!running) {
+			return;
+		}
+		canvas.createBufferStrategy(GameConstants.NUM_RENDER_BUFFERS);
+		BufferStrategy bufferStrategy = canvas.getBufferStrategy();
+
+		/*
+		 * canvas covers this panel, so it needs to be focused for key actions
+		 * to be listened for.
+		 */
+		canvas.requestFocus();
+
+		long scheduleStartTime = System.nanoTime();
+		long numFramesScheduled = 0;
+		long numFramesMissed = 0;
+		while (running) {
+			long renderStartTime = System.nanoTime();
+
+			/*
+			 * The contents of the buffers can be lost at any time (e.g. if
+			 * the window is minimised), in which case the frame has to be
+			 * rendered again. These loops are how the BufferStrategy class is
+			 * meant to be used.
+			 */
+			do {
+				do {
 					/*
-					 * Causes the game thread to sleep for a very short time (1
-					 * millisecond) to free up CPU resources.
+					 * The frame is rendered the fraction of the way between
+					 * the last game cycle and the next one that the time now
+					 * is, so that things move smoothly however many frames
+					 * there are per game cycle.
 					 */
-					Thread.sleep(1);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
+					double interpolation = Math.min(1, Math.max(0,
+							(System.nanoTime() - lastGameCycleTime)
+									/ desiredTimePerGameCycle));
+					Graphics graphics = bufferStrategy.getDrawGraphics();
+					renderScreen(graphics, interpolation);
+					graphics.dispose();
+				} while (bufferStrategy.contentsRestored());
+				bufferStrategy.show();
+			} while (bufferStrategy.contentsLost());
+
+			/*
+			 * Makes sure the frame is sent to the display now, as some
+			 * platforms (e.g. Linux) hold back graphics commands.
+			 */
+			Toolkit.getDefaultToolkit().sync();
+			loopMetrics.recordFrame(System.nanoTime() - renderStartTime,
+					numFramesMissed);
+			numFramesMissed = 0;
+
+			if (maxFramesPerSecond > 0) {
+				numFramesScheduled++;
+				long nextFrameTime = scheduleStartTime + numFramesScheduled
+						* 1000000000L / maxFramesPerSecond;
+
+				/*
+				 * Unlike game cycles, frames that are behind schedule are not
+				 * caught up on, as rendering the same screen several times in
+				 * a row would be pointless. They are counted as missed and the
+				 * schedule starts again from now.
+				 */
+				long currentTime = System.nanoTime();
+				if (currentTime > nextFrameTime) {
+					numFramesMissed = (currentTime - nextFrameTime)
+							* maxFramesPerSecond / 1000000000L;
+					scheduleStartTime = currentTime;
+					numFramesScheduled = 0;
+				} else {
+					waitUntil(nextFrameTime);
 				}
-				currentTime = System.nanoTime();
+			} else {
+				/*
+				 * There is no limit on the frames per second, but the game
+				 * loop thread still needs a chance to run.
+				 */
+				Thread.yield();
 			}
 		}
 	}
 
+	/*
+	 * Waits until System.nanoTime() reaches time, or until the game stops
+	 * running. The thread is parked, which frees up the CPU, until
+	 * GameConstants.LOOP_SPIN_NANOS nanoseconds before time, as a parked
+	 * thread can wake up late by up to a millisecond or so on some platforms.
+	 * It then spins for the rest of the time, which is much more precise,
+	 * yielding on each pass so that any other thread that is ready to run
+	 * (such as the render loop on a single-core computer) is not held up.
+	 */
+	private void waitUntil(long time) {
+		long timeLeft = time - System.nanoTime();
+		while (running && timeLeft > 0) {
+			if (timeLeft > GameConstants.LOOP_SPIN_NANOS) {
+				LockSupport.parkNanos(timeLeft - GameConstants.LOOP_SPIN_NANOS);
+			} else {
+				Thread.yield();
+			}
+			timeLeft = time - System.nanoTime();
+		}
+	}
+
 	/*
 	 * This method is inherited and overridden from a GUI panel superclass
 	 * (polymorphism). The repaint method is used to call this method and render
-	 * the screen.
+	 * the screen, unless the screen is rendered actively.
 	 */
 	@Override
 	protected void paintComponent(Graphics graphics) {
+		/*
+		 * Executes the code in the inherited method.
+		 */
+		super.paintComponent(graphics);
+		/*
+		 * The regions repainted by Swing are the ones that changed in the
+		 * last game cycle (see the gameLoop method), so the screen is rendered
+		 * as it is now rather than between game cycles.
+		 */
+		if (canvas == null) {
+			long renderStartTime = System.nanoTime();
+			renderScreen(graphics, 1);
+			loopMetrics.recordFrame(System.nanoTime() - renderStartTime, 0);
+		}
+	}
 
+	/*
+	 * Renders currentScreen using the graphics object, interpolation of the
+	 * way between the last game cycle and the next one.
+	 */
+	private void renderScreen(Graphics graphics, double interpolation) {
 		/*
 		 * Sets antialiasing on in order to make curved and diagonal lines look
 		 * smoother. A Graphics2D cast is done because the regular Graphics
@@ -191,10 +523,6 @@ public class ScreenDisplayer extends JPanel implements KeyListener {
 				RenderingHints.KEY_ANTIALIASING,
 				RenderingHints.VALUE_ANTIALIAS_ON);
 
-		/*
-		 * Executes the code in the inherited method.
-		 */
-		super.paintComponent(graphics);
 		/*
 		 * If currentScreen is pointing to a null reference, then calling the
 		 * render method would lead to a NullPointerException.
@@ -206,7 +534,7 @@ public class ScreenDisplayer extends JPanel implements KeyListener {
 			 * can contain different code depending on which class is
 			 * implementing the Screen interface.
 			 */
-			currentScreen.render(graphics);
+			currentScreen.render(graphics, interpolation);
 		}
 	}
 
@@ -217,26 +545,16 @@ public class ScreenDisplayer extends JPanel implements KeyListener {
 	 */
 
 	/*
-	 * Called when a key is pressed. Executes code that the currentScreen object
-	 * requires to be executed when a key, corresponding to the keyEvent
-	 * argument, is pressed.
+	 * Called when a key is pressed. Adds the key press to inputQueue, along
+	 * with the time now, to be handled by currentScreen at the start of the
+	 * next game cycle (see the handleKeyPresses method). If too many key
+	 * presses are already waiting (which would only happen if the game loop
+	 * had stopped), the key press is dropped.
 	 */
 	@Override
 	public void keyPressed(KeyEvent keyEvent) {
-		/*
-		 * If currentScreen is pointing to a null reference, then calling the
-		 * keyPressed method would lead to a NullPointerException.
-		 */
-		if (currentScreen != null) {
-			/*
-			 * Executes code that the currentScreen object requires to be
-			 * executed when a key, corresponding to the keyEvent argument, is
-			 * pressed. This is dynamic polymorphism as currentScreen can be an
-			 * object of any class implementing the Screen interface and the
-			 * keyPressed method can contain different code depending on which
-			 * class is implementing the Screen interface.
-			 */
-			currentScreen.keyPressed(keyEvent);
+		if (!inputQueue.offer(keyEvent, System.nanoTime())) {
+			loopMetrics.recordDroppedInputEvent();
 		}
 	}
 
@@ -256,6 +574,24 @@ public class ScreenDisplayer extends JPanel implements KeyListener {
 
 	}
 
+	/*
+	 * Getters.
+	 */
+
+	public LoopMetrics getLoopMetrics() {
+		return loopMetrics;
+	}
+
+	/*
+	 * Returns whether the screen is rendered actively by the render loop
+	 * rather than by Swing. If it is, the getDirtyRegions method of the
+	 * Screen interface is never called, so screens do not need to work out
+	 * which regions have changed.
+	 */
+	public boolean isRenderedActively() {
+		return canvas != null;
+	}
+
 	/*
 	 * Setters.
 	 */
@@ -268,6 +604,12 @@ public class ScreenDisplayer extends JPanel implements KeyListener {
 	 */
 	public void setScreen(Screen nextScreen) {
 		currentScreen = nextScreen;
+
+		/*
+		 * The new screen needs to be rendered in full, as the game loop only
+		 * renders the regions that change.
+		 */
+		repaint();
 	}
 
 }
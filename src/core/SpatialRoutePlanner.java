@@ -0,0 +1,809 @@
+package core;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class SpatialRoutePlanner {
+	/*
+	 * This class is used by the AIPlayer class to plan routes through mazes
+	 * with so many checkpoints that finding the shortest path between every
+	 * pair of them (k Dijkstra searches over the whole reduced graph and k
+	 * weights) would take too long or use too much memory. Instead, each
+	 * checkpoint's nearest checkpoints are found with a Dijkstra search that
+	 * stops as soon as it has reached them, and the initial route is made
+	 * from these and the coordinates of the checkpoints' cells in O(k log k)
+	 * time (see generateCheckpointVertexRoute). The AIPlayer class then
+	 * improves this route with its RouteImprover class, whose moves only join
+	 * each checkpoint to one of its nearest checkpoints, so it only needs the
+	 * shortest paths between checkpoints that are near each other. These are
+	 * found with searches that give up once they have gone further than the
+	 * move needs, and the weights found are kept in a cache of fixed size.
+	 */
+
+	/*
+	 * The RGVertex objects of the reduced graph that the routes are planned in
+	 * (indexed by vertex index) and its checkpoint RGVertex objects (indexed
+	 * by checkpoint index). This is aggregation as the SpatialRoutePlanner
+	 * class has a HAS-A relationship with the RGVertex class but the RGVertex
+	 * objects will not be destroyed if the SpatialRoutePlanner object is
+	 * destroyed.
+	 */
+	private final List<RGVertex> vertices;
+	private final List<RGVertex> checkpointVertices;
+
+	/*
+	 * The weights of the shortest paths between the pairs of checkpoints that
+	 * have been found so far, keyed by getCheckpointPairKey. Every search
+	 * adds the weights from its source to the first
+	 * MAX_CACHED_WEIGHTS_PER_SEARCH checkpoints it visits, not just to the
+	 * one it was looking for, as the local search tends to ask for those
+	 * next. Only the nearest ones are added so that one long search does not
+	 * push the weights that are still needed out of the cache. This is
+	 * composition as the SpatialRoutePlanner class
+	 * has a HAS-A relationship with the CheckpointPairWeightCache class and
+	 * the cache will be destroyed if the SpatialRoutePlanner object is
+	 * destroyed.
+	 */
+	private final CheckpointPairWeightCache shortestPathWeights;
+	private static final int MAX_CACHED_WEIGHTS_PER_SEARCH =
+			2 * GameConstants.NUM_ROUTE_NEIGHBOURS;
+
+	/*
+	 * For the pairs of checkpoints whose shortest path weights have not been
+	 * found because a search gave up, the largest weight that a search gave up
+	 * at, which the shortest path weight must be greater than. This stops the
+	 * same search from being run over and over again. This is composition
+	 * for the same reason as above.
+	 */
+	private final CheckpointPairWeightCache shortestPathWeightLowerBounds;
+
+	/*
+	 * The lists returned by getNearestCheckpointLists, which are null until
+	 * it is first called, and the weight from each checkpoint to each
+	 * checkpoint in its list. Every checkpoint that is not in the list is at
+	 * least as far away as the last one in it.
+	 */
+	private int[][] nearestCheckpointLists;
+	private double[][] nearestCheckpointListWeights;
+
+	/*
+	 * The arrays used by the Dijkstra searches, indexed by vertex index.
+	 * Rather than clearing them before each search (which would take O(V)
+	 * time even for a search that only reaches a few RGVertex objects), each
+	 * search has a new stamp, and an entry is only valid if the matching stamp
+	 * array holds the current stamp.
+	 */
+	private final double[] weightsFromSource;
+	private final int[] previousVertices;
+	private final int[] reachedStamps;
+	private final int[] visitedStamps;
+	private int currentStamp;
+
+	/*
+	 * The binary min-heap of RGVertex objects to visit in the Dijkstra
+	 * searches, as parallel primitive arrays of weights and vertex indices.
+	 * Rather than decreasing the key of an RGVertex object that is already in
+	 * the heap, it is added again with the lower weight, and the old entry is
+	 * skipped when it comes out.
+	 */
+	private double[] heapWeights;
+	private int[] heapVertices;
+	private int heapSize;
+
+	/*
+	 * The column and row of the super cell of each RGVertex object (indexed
+	 * by vertex index), and the lowest weight that a step from one cell to
+	 * the next can have, which is the height of a cell over the highest
+	 * speed multiplier of any surface. A path from one cell to another has
+	 * to take at least as many steps as the number of columns plus the
+	 * number of rows between them, so this gives a lower bound on the weight
+	 * of the shortest path between any two RGVertex objects (see the
+	 * getWeightLowerBound method).
+	 */
+	private final int[] vertexColumns;
+	private final int[] vertexRows;
+	private final double minStepWeight;
+
+	/*
+	 * Constructor.
+	 */
+	public SpatialRoutePlanner(ReducedGraph reducedGraph) {
+		vertices = reducedGraph.getVertices();
+		checkpointVertices = reducedGraph.getCheckpointVertices();
+
+		/*
+		 * Far fewer searches give up than succeed, so the lower bounds are
+		 * given a quarter of the space.
+		 */
+		int cacheCapacity = Integer.highestOneBit(Math.min(
+				GameConstants.MAX_SPATIAL_CACHE_SLOTS,
+				Math.max(4, checkpointVertices.size()
+						* GameConstants.SPATIAL_CACHE_SLOTS_PER_CHECKPOINT)));
+		shortestPathWeights = new CheckpointPairWeightCache(cacheCapacity);
+		shortestPathWeightLowerBounds = new CheckpointPairWeightCache(
+				cacheCapacity / 4);
+		weightsFromSource = new double[vertices.size()];
+		previousVertices = new int[vertices.size()];
+		reachedStamps = new int[vertices.size()];
+		visitedStamps = new int[vertices.size()];
+		heapWeights = new double[64];
+		heapVertices = new int[64];
+
+		vertexColumns = new int[vertices.size()];
+		vertexRows = new int[vertices.size()];
+		for (int i = 0; i < vertices.size(); i++) {
+			Cell superCell = vertices.get(i).getSuperCell();
+			vertexColumns[i] = (int) Math.round(superCell.getX()
+					/ superCell.getWidth());
+			vertexRows[i] = (int) Math.round(superCell.getY()
+					/ superCell.getHeight());
+		}
+		double maxSpeedMultiplier = 0;
+		for (Surface surface : Surface.values()) {
+			maxSpeedMultiplier = Math.max(maxSpeedMultiplier,
+					surface.getSpeedMultiplier());
+		}
+
+		/*
+		 * The bound is made very slightly lower so that rounding errors in
+		 * adding up the weights of the steps of a path can never make it
+		 * higher than the weight of the path.
+		 */
+		minStepWeight = vertices.get(0).getSuperCell().getHeight()
+				/ maxSpeedMultiplier * (1 - 1e-9);
+	}
+
+	/*
+	 * Returns the RGPath object representing the shortest path between the
+	 * two checkpoints with the checkpoint indices in the parameters.
+	 */
+	public RGPath getShortestPath(int checkpointIndex1, int checkpointIndex2) {
+		RGVertex sourceVertex = checkpointVertices.get(checkpointIndex1);
+		RGVertex targetVertex = checkpointVertices.get(checkpointIndex2);
+		runDijkstra(sourceVertex.getVertexIndex(),
+				targetVertex.getVertexIndex(), new int[0],
+				Double.POSITIVE_INFINITY);
+
+		/*
+		 * The path is built up starting from targetVertex. When
+		 * currentVertexIndex is -1, it means sourceVertex has been added (as
+		 * it has no previous RGVertex object) and the path has been built.
+		 */
+		RGPath path = new RGPath();
+		int currentVertexIndex = targetVertex.getVertexIndex();
+		while (currentVertexIndex != -1) {
+			path.appendVertex(vertices.get(currentVertexIndex));
+			currentVertexIndex = previousVertices[currentVertexIndex];
+		}
+		return path;
+	}
+
+	/*
+	 * Returns the weight of the shortest path between the two checkpoints with
+	 * the checkpoint indices in the parameters, running a Dijkstra search to
+	 * find it if it has not been found yet.
+	 */
+	public double getShortestPathWeight(int checkpointIndex1,
+			int checkpointIndex2) {
+		return getShortestPathWeight(checkpointIndex1, checkpointIndex2,
+				Double.POSITIVE_INFINITY);
+	}
+
+	/*
+	 * The same as above, except that if the weight is greater than maxWeight,
+	 * infinity may be returned instead. The local search only needs to know
+	 * the exact weight of a new route edge if it is light enough for the move
+	 * to be an improvement, and a search that gives up once it has gone
+	 * further than maxWeight from the source only covers a small part of the
+	 * maze, even when the two checkpoints are far apart.
+	 */
+	public double getShortestPathWeight(int checkpointIndex1,
+			int checkpointIndex2, double maxWeight) {
+		if (checkpointIndex1 == checkpointIndex2) {
+			return 0;
+		}
+		long key = getCheckpointPairKey(checkpointIndex1, checkpointIndex2);
+		double weight = shortestPathWeights.get(key);
+		if (Double.isNaN(weight)) {
+			/*
+			 * The cache may have dropped the pair, but if either checkpoint is
+			 * in the other's nearest checkpoint list, the weight is still
+			 * known from the search that made the list. Otherwise, each
+			 * checkpoint is at least as far from the other as the last
+			 * checkpoint in its list, and if the pair's weight is known to be
+			 * at least maxWeight, there is no need to search.
+			 */
+			double lowerBound = shortestPathWeightLowerBounds.get(key);
+			if (nearestCheckpointLists != null) {
+				weight = getNearestCheckpointListWeight(checkpointIndex1,
+						checkpointIndex2);
+				if (Double.isNaN(weight)) {
+					weight = getNearestCheckpointListWeight(checkpointIndex2,
+							checkpointIndex1);
+				}
+				if (!Double.isNaN(weight)) {
+					return weight;
+				}
+				double radius = Math.max(
+						getNearestCheckpointListRadius(checkpointIndex1),
+						getNearestCheckpointListRadius(checkpointIndex2));
+				if (Double.isNaN(lowerBound) || radius > lowerBound) {
+					lowerBound = radius;
+				}
+			}
+			if (lowerBound >= maxWeight) {
+				return Double.POSITIVE_INFINITY;
+			}
+
+			/*
+			 * The local search is kept to checkpoints that are near each
+			 * other, so a bounded search never goes further than
+			 * GameConstants.SPATIAL_SEARCH_WINDOW times the distance to
+			 * the furthest of the two checkpoints' nearest checkpoints.
+			 */
+			if (nearestCheckpointLists != null
+					&& maxWeight != Double.POSITIVE_INFINITY) {
+				maxWeight = Math.min(maxWeight,
+						GameConstants.SPATIAL_SEARCH_WINDOW
+								* Math.max(
+										getNearestCheckpointListRadius(checkpointIndex1),
+										getNearestCheckpointListRadius(checkpointIndex2)));
+				if (lowerBound >= maxWeight) {
+					return Double.POSITIVE_INFINITY;
+				}
+			}
+			int targetVertexIndex = checkpointVertices.get(checkpointIndex2)
+					.getVertexIndex();
+			if (!runDijkstra(checkpointVertices.get(checkpointIndex1)
+					.getVertexIndex(), targetVertexIndex, new int[0], maxWeight)) {
+				shortestPathWeightLowerBounds.put(key, maxWeight);
+				return Double.POSITIVE_INFINITY;
+			}
+			weight = weightsFromSource[targetVertexIndex];
+		}
+		return weight;
+	}
+
+	/*
+	 * Returns an array holding, for each checkpoint, the checkpoint indices of
+	 * the GameConstants.NUM_ROUTE_NEIGHBOURS checkpoints nearest to it in
+	 * order of increasing shortest path weight, which can be used in place of
+	 * the neighbour lists of the AIPlayer class. Each list is found with one
+	 * Dijkstra search, which also finds the weights to the checkpoints in it.
+	 */
+	public int[][] getNearestCheckpointLists() {
+		if (nearestCheckpointLists == null) {
+			int numCheckpoints = checkpointVertices.size();
+			int[][] lists = new int[numCheckpoints][Math.min(
+					GameConstants.NUM_ROUTE_NEIGHBOURS, numCheckpoints - 1)];
+			double[][] weights = new double[numCheckpoints][lists[0].length];
+			for (int i = 0; i < numCheckpoints; i++) {
+				runDijkstra(checkpointVertices.get(i).getVertexIndex(), -1,
+						lists[i], Double.POSITIVE_INFINITY);
+				for (int j = 0; j < lists[i].length; j++) {
+					weights[i][j] = weightsFromSource[checkpointVertices.get(
+							lists[i][j]).getVertexIndex()];
+				}
+			}
+			nearestCheckpointLists = lists;
+			nearestCheckpointListWeights = weights;
+		}
+		return nearestCheckpointLists;
+	}
+
+	/*
+	 * Returns the weight from the checkpoint with the index checkpointIndex1
+	 * to the checkpoint with the index checkpointIndex2 if the second is in
+	 * the nearest checkpoint list of the first, or NaN if it is not. Must
+	 * only be called once the lists have been found.
+	 */
+	private double getNearestCheckpointListWeight(int checkpointIndex1,
+			int checkpointIndex2) {
+		int[] list = nearestCheckpointLists[checkpointIndex1];
+		for (int i = 0; i < list.length; i++) {
+			if (list[i] == checkpointIndex2) {
+				return nearestCheckpointListWeights[checkpointIndex1][i];
+			}
+		}
+		return Double.NaN;
+	}
+
+	/*
+	 * Returns the weight from the checkpoint with the given checkpoint index
+	 * to the last checkpoint in its nearest checkpoint list. Must only be
+	 * called once the lists have been found.
+	 */
+	private double getNearestCheckpointListRadius(int checkpointIndex) {
+		double[] weights = nearestCheckpointListWeights[checkpointIndex];
+		return weights.length > 0 ? weights[weights.length - 1] : 0;
+	}
+
+	/*
+	 * Returns a key for the pair of checkpoint indices in the parameters that
+	 * does not depend on their order.
+	 */
+	private long getCheckpointPairKey(int checkpointIndex1,
+			int checkpointIndex2) {
+		return (long) Math.min(checkpointIndex1, checkpointIndex2)
+				* checkpointVertices.size()
+				+ Math.max(checkpointIndex1, checkpointIndex2);
+	}
+
+	/*
+	 * Returns a route that starts at the start checkpoint, ends at the end
+	 * checkpoint and visits every other checkpoint in between, found by a
+	 * depth-first walk of a spanning tree of the checkpoints. The tree is
+	 * made with Kruskal's algorithm from the edges between each checkpoint
+	 * and its nearest checkpoints (whose weights are already known from
+	 * getNearestCheckpointLists), so it never looks at the rest of the
+	 * reduced graph and takes O(k log k) time for k checkpoints. The
+	 * coordinates of the checkpoints' cells are used wherever the weights do
+	 * not decide the order: the checkpoints are sorted by their position
+	 * along a Hilbert curve over the cells of the maze (a space-filling curve,
+	 * which visits every square of a grid and stays in each quarter of the
+	 * grid until it has visited all of it), the parts of the tree that the
+	 * nearest checkpoint edges do not join are joined in that order, and the
+	 * children of each checkpoint in the tree are visited in that order too,
+	 * except that the child leading to the end checkpoint is visited last.
+	 *
+	 * Ordering the checkpoints by the Hilbert curve alone was tried, but in a
+	 * maze two cells next to each other can be far apart along the paths, so
+	 * the route had many long edges, and the local search took far longer to
+	 * remove them than this takes.
+	 */
+	public int[] generateCheckpointVertexRoute(int startCheckpointIndex,
+			int endCheckpointIndex) {
+		int numCheckpoints = checkpointVertices.size();
+		int[] checkpointRoute = new int[numCheckpoints];
+		checkpointRoute[0] = startCheckpointIndex;
+		checkpointRoute[numCheckpoints - 1] = endCheckpointIndex;
+		if (numCheckpoints <= 2) {
+			return checkpointRoute;
+		}
+
+		/*
+		 * curvePositions holds the position of each checkpoint in the
+		 * Hilbert curve order, and curveOrder the checkpoint index at each
+		 * position. The sort keys hold the position along the curve in the
+		 * high 32 bits and the checkpoint index in the low 32 bits, so that
+		 * they can be sorted as primitive longs.
+		 */
+		int maxCoordinate = 1;
+		for (int i = 0; i < vertices.size(); i++) {
+			maxCoordinate = Math.max(maxCoordinate,
+					Math.max(vertexColumns[i], vertexRows[i]));
+		}
+		int gridSize = Integer.highestOneBit(maxCoordinate) * 2;
+		long[] sortKeys = new long[numCheckpoints];
+		for (int i = 0; i < numCheckpoints; i++) {
+			int vertexIndex = checkpointVertices.get(i).getVertexIndex();
+			sortKeys[i] = getHilbertCurvePosition(gridSize,
+					vertexColumns[vertexIndex], vertexRows[vertexIndex]) << 32
+					| i;
+		}
+		Arrays.sort(sortKeys);
+		int[] curveOrder = new int[numCheckpoints];
+		int[] curvePositions = new int[numCheckpoints];
+		for (int i = 0; i < numCheckpoints; i++) {
+			curveOrder[i] = (int) sortKeys[i];
+			curvePositions[curveOrder[i]] = i;
+		}
+
+		/*
+		 * The nearest checkpoint edges are sorted by weight in the same way,
+		 * with the weight as a float in the high 32 bits (the bits of
+		 * non-negative floats sort in the same order as the floats) and the
+		 * position of the edge in the nearest checkpoint lists in the low 32
+		 * bits.
+		 */
+		int[][] lists = getNearestCheckpointLists();
+		int listLength = lists[0].length;
+		long[] edgeKeys = new long[numCheckpoints * listLength];
+		for (int i = 0; i < numCheckpoints; i++) {
+			for (int j = 0; j < listLength; j++) {
+				edgeKeys[i * listLength + j] = (long) Float
+						.floatToIntBits((float) nearestCheckpointListWeights[i][j]) << 32
+						| (i * listLength + j);
+			}
+		}
+		Arrays.sort(edgeKeys);
+
+		int[] treeEdgeEnds1 = new int[numCheckpoints - 1];
+		int[] treeEdgeEnds2 = new int[numCheckpoints - 1];
+		int numTreeEdges = 0;
+		DisjointSet<RGVertex> trees = new DisjointSet<RGVertex>(
+				checkpointVertices);
+		for (int i = 0; i < edgeKeys.length
+				&& numTreeEdges < numCheckpoints - 1; i++) {
+			int edgeIndex = (int) edgeKeys[i];
+			int checkpointIndex1 = edgeIndex / listLength;
+			int checkpointIndex2 = lists[checkpointIndex1][edgeIndex
+					% listLength];
+			if (!trees.areJoined(checkpointVertices.get(checkpointIndex1),
+					checkpointVertices.get(checkpointIndex2))) {
+				trees.join(checkpointVertices.get(checkpointIndex1),
+						checkpointVertices.get(checkpointIndex2));
+				treeEdgeEnds1[numTreeEdges] = checkpointIndex1;
+				treeEdgeEnds2[numTreeEdges++] = checkpointIndex2;
+			}
+		}
+		for (int i = 1; i < numCheckpoints
+				&& numTreeEdges < numCheckpoints - 1; i++) {
+			if (!trees.areJoined(checkpointVertices.get(curveOrder[i - 1]),
+					checkpointVertices.get(curveOrder[i]))) {
+				trees.join(checkpointVertices.get(curveOrder[i - 1]),
+						checkpointVertices.get(curveOrder[i]));
+				treeEdgeEnds1[numTreeEdges] = curveOrder[i - 1];
+				treeEdgeEnds2[numTreeEdges++] = curveOrder[i];
+			}
+		}
+
+		/*
+		 * The checkpoints next to each checkpoint in the tree are stored one
+		 * after another in treeNeighbours, starting at
+		 * treeNeighbourOffsets[checkpoint index], and sorted by their position
+		 * along the curve.
+		 */
+		int[] treeNeighbourOffsets = new int[numCheckpoints + 1];
+		for (int i = 0; i < numTreeEdges; i++) {
+			treeNeighbourOffsets[treeEdgeEnds1[i] + 1]++;
+			treeNeighbourOffsets[treeEdgeEnds2[i] + 1]++;
+		}
+		for (int i = 0; i < numCheckpoints; i++) {
+			treeNeighbourOffsets[i + 1] += treeNeighbourOffsets[i];
+		}
+		long[] treeNeighbourKeys = new long[2 * numTreeEdges];
+		int[] nextSlots = Arrays.copyOf(treeNeighbourOffsets, numCheckpoints);
+		for (int i = 0; i < numTreeEdges; i++) {
+			int end1 = treeEdgeEnds1[i];
+			int end2 = treeEdgeEnds2[i];
+			treeNeighbourKeys[nextSlots[end1]++] = (long) curvePositions[end2] << 32
+					| end2;
+			treeNeighbourKeys[nextSlots[end2]++] = (long) curvePositions[end1] << 32
+					| end1;
+		}
+		for (int i = 0; i < numCheckpoints; i++) {
+			Arrays.sort(treeNeighbourKeys, treeNeighbourOffsets[i],
+					treeNeighbourOffsets[i + 1]);
+		}
+
+		/*
+		 * The parent of each checkpoint in the tree (rooted at the start
+		 * checkpoint) is found first, so that the checkpoints on the path from
+		 * the end checkpoint back to the root can be marked. The walks use an
+		 * explicit stack, as the tree can be thousands of checkpoints deep.
+		 */
+		int[] parents = new int[numCheckpoints];
+		int[] stack = new int[numCheckpoints];
+		int stackSize = 0;
+		parents[startCheckpointIndex] = -1;
+		stack[stackSize++] = startCheckpointIndex;
+		while (stackSize > 0) {
+			int checkpointIndex = stack[--stackSize];
+			int endSlot = treeNeighbourOffsets[checkpointIndex + 1];
+			for (int i = treeNeighbourOffsets[checkpointIndex]; i < endSlot; i++) {
+				int childIndex = (int) treeNeighbourKeys[i];
+				if (childIndex != parents[checkpointIndex]) {
+					parents[childIndex] = checkpointIndex;
+					stack[stackSize++] = childIndex;
+				}
+			}
+		}
+		boolean[] isOnEndPath = new boolean[numCheckpoints];
+		for (int i = endCheckpointIndex; i != -1; i = parents[i]) {
+			isOnEndPath[i] = true;
+		}
+
+		/*
+		 * The children of each checkpoint are pushed onto the stack in
+		 * reverse order, so that they come off it in order, with the child on
+		 * the end path pushed first so that it comes off last.
+		 */
+		int numRouteCheckpoints = 1;
+		stack[stackSize++] = startCheckpointIndex;
+		while (stackSize > 0) {
+			int checkpointIndex = stack[--stackSize];
+			if (checkpointIndex != startCheckpointIndex
+					&& checkpointIndex != endCheckpointIndex) {
+				checkpointRoute[numRouteCheckpoints++] = checkpointIndex;
+			}
+			int firstSlot = treeNeighbourOffsets[checkpointIndex];
+			int lastSlot = treeNeighbourOffsets[checkpointIndex + 1] - 1;
+			for (int i = firstSlot; i <= lastSlot; i++) {
+				int childIndex = (int) treeNeighbourKeys[i];
+				if (childIndex != parents[checkpointIndex]
+						&& isOnEndPath[childIndex]) {
+					stack[stackSize++] = childIndex;
+				}
+			}
+			for (int i = lastSlot; i >= firstSlot; i--) {
+				int childIndex = (int) treeNeighbourKeys[i];
+				if (childIndex != parents[checkpointIndex]
+						&& !isOnEndPath[childIndex]) {
+					stack[stackSize++] = childIndex;
+				}
+			}
+		}
+		return checkpointRoute;
+	}
+
+	/*
+	 * Returns the position along a Hilbert curve over a gridSize by gridSize
+	 * grid (gridSize must be a power of two) of the square in the given
+	 * column and row. The grid is split into quarters, then each quarter into
+	 * quarters, and so on; at each level, the quarter that the square is in
+	 * gives the next two bits of the position, and the square is rotated or
+	 * reflected into the frame of that quarter, as the curve is within it.
+	 */
+	private static long getHilbertCurvePosition(int gridSize, int column,
+			int row) {
+		long position = 0;
+		for (int quarterSize = gridSize / 2; quarterSize > 0; quarterSize /= 2) {
+			int inRightHalf = (column & quarterSize) != 0 ? 1 : 0;
+			int inBottomHalf = (row & quarterSize) != 0 ? 1 : 0;
+			position += (long) quarterSize * quarterSize
+					* ((3 * inRightHalf) ^ inBottomHalf);
+			if (inBottomHalf == 0) {
+				if (inRightHalf == 1) {
+					column = gridSize - 1 - column;
+					row = gridSize - 1 - row;
+				}
+				int temp = column;
+				column = row;
+				row = temp;
+			}
+		}
+		return position;
+	}
+
+	/*
+	 * Returns a lower bound on the weight of the shortest path between the
+	 * two RGVertex objects with the vertex indices in the parameters (see
+	 * minStepWeight).
+	 */
+	private double getWeightLowerBound(int vertexIndex1, int vertexIndex2) {
+		return (Math.abs(vertexColumns[vertexIndex1]
+				- vertexColumns[vertexIndex2]) + Math
+				.abs(vertexRows[vertexIndex1] - vertexRows[vertexIndex2]))
+				* minStepWeight;
+	}
+
+	/*
+	 * Runs Dijkstra's algorithm from the RGVertex object with vertex index
+	 * sourceVertexIndex until the RGVertex object with vertex index
+	 * targetVertexIndex (if it is not -1) has been visited, and until as many
+	 * checkpoint RGVertex objects (other than the source) as will fit in
+	 * nearestCheckpointIndices have been visited, whose checkpoint indices are
+	 * put in it in the order they were visited. The shortest path weights are
+	 * then in weightsFromSource and the shortest paths can be found by
+	 * following previousVertices back to the source. RGVertex objects further
+	 * than maxWeight from the source are never added to the heap, and the
+	 * method returns whether the target was reached.
+	 *
+	 * A search for a target alone is an A* search: the heap is ordered by
+	 * the weight from the source plus the lower bound on the weight to the
+	 * target (see the getWeightLowerBound method), so the search heads
+	 * towards the target rather than spreading out evenly, and an RGVertex
+	 * object is not added to the heap if that sum is more than maxWeight, as
+	 * no path through it to the target can be light enough. The lower bound
+	 * never drops by more than the weight of an edge from one end of it to
+	 * the other, so the weight of every RGVertex object visited is still its
+	 * shortest path weight from the source, as in Dijkstra's algorithm.
+	 */
+	private boolean runDijkstra(int sourceVertexIndex, int targetVertexIndex,
+			int[] nearestCheckpointIndices, double maxWeight) {
+		currentStamp++;
+		boolean directed = targetVertexIndex != -1
+				&& nearestCheckpointIndices.length == 0;
+		boolean targetVisited = targetVertexIndex == -1;
+		int sourceCheckpointIndex = vertices.get(sourceVertexIndex)
+				.getCheckpointIndex();
+		int numNearestCheckpoints = 0;
+		int numCachedWeights = 0;
+		heapSize = 0;
+		reachedStamps[sourceVertexIndex] = currentStamp;
+		weightsFromSource[sourceVertexIndex] = 0;
+		previousVertices[sourceVertexIndex] = -1;
+		push(directed ? getWeightLowerBound(sourceVertexIndex,
+				targetVertexIndex) : 0, sourceVertexIndex);
+		while (heapSize > 0
+				&& (!targetVisited
+						|| numNearestCheckpoints < nearestCheckpointIndices.length)) {
+			double estimate = heapWeights[0];
+			int currentVertexIndex = heapVertices[0];
+			pop();
+
+			/*
+			 * Entries that were added before a lower weight was found for the
+			 * same RGVertex object are skipped.
+			 */
+			double weight = weightsFromSource[currentVertexIndex];
+			if (visitedStamps[currentVertexIndex] == currentStamp
+					|| estimate > weight
+							+ (directed ? getWeightLowerBound(
+									currentVertexIndex, targetVertexIndex)
+									: 0)) {
+				continue;
+			}
+			visitedStamps[currentVertexIndex] = currentStamp;
+			if (currentVertexIndex == targetVertexIndex) {
+				targetVisited = true;
+			}
+			int checkpointIndex = vertices.get(currentVertexIndex)
+					.getCheckpointIndex();
+			if (checkpointIndex != -1 && currentVertexIndex != sourceVertexIndex
+					&& numNearestCheckpoints < nearestCheckpointIndices.length) {
+				nearestCheckpointIndices[numNearestCheckpoints++] = checkpointIndex;
+			}
+			if (checkpointIndex != -1
+					&& sourceCheckpointIndex != -1
+					&& currentVertexIndex != sourceVertexIndex
+					&& (numCachedWeights++ < MAX_CACHED_WEIGHTS_PER_SEARCH
+							|| currentVertexIndex == targetVertexIndex)) {
+				shortestPathWeights.put(getCheckpointPairKey(
+						sourceCheckpointIndex, checkpointIndex), weight);
+			}
+			for (RGAdjacency adjacency : vertices.get(currentVertexIndex)
+					.getAdjacencies()) {
+				int adjacentVertexIndex = adjacency.getAdjacentVertex()
+						.getVertexIndex();
+				if (visitedStamps[adjacentVertexIndex] == currentStamp) {
+					continue;
+				}
+				double alternativeWeight = weight
+						+ adjacency.getEdge().getTotalWeight();
+				double alternativeEstimate = directed ? alternativeWeight
+						+ getWeightLowerBound(adjacentVertexIndex,
+								targetVertexIndex) : alternativeWeight;
+				if (alternativeEstimate > maxWeight) {
+					continue;
+				}
+				if (reachedStamps[adjacentVertexIndex] != currentStamp
+						|| alternativeWeight < weightsFromSource[adjacentVertexIndex]) {
+					reachedStamps[adjacentVertexIndex] = currentStamp;
+					weightsFromSource[adjacentVertexIndex] = alternativeWeight;
+					previousVertices[adjacentVertexIndex] = currentVertexIndex;
+					push(alternativeEstimate, adjacentVertexIndex);
+				}
+			}
+		}
+		if (!targetVisited && maxWeight < Double.POSITIVE_INFINITY) {
+			/*
+			 * The target is further than maxWeight from the source, so the
+			 * search ran out of RGVertex objects that it could visit.
+			 */
+			return false;
+		}
+		if (!targetVisited
+				|| numNearestCheckpoints < nearestCheckpointIndices.length) {
+			/*
+			 * The maze has no isolated sections, so every checkpoint can be
+			 * reached. If one cannot, there is a logical error elsewhere in the
+			 * program, so a RuntimeException is thrown to make debugging and
+			 * tracing the error easier.
+			 */
+			throw new RuntimeException();
+		}
+		return true;
+	}
+
+	/*
+	 * Adds an entry to the heap, doubling the size of the heap arrays if they
+	 * are full.
+	 */
+	private void push(double weight, int vertexIndex) {
+		if (heapSize == heapWeights.length) {
+			heapWeights = Arrays.copyOf(heapWeights, heapSize * 2);
+			heapVertices = Arrays.copyOf(heapVertices, heapSize * 2);
+		}
+		int index = heapSize++;
+		while (index > 0 && heapWeights[(index - 1) / 2] > weight) {
+			heapWeights[index] = heapWeights[(index - 1) / 2];
+			heapVertices[index] = heapVertices[(index - 1) / 2];
+			index = (index - 1) / 2;
+		}
+		heapWeights[index] = weight;
+		heapVertices[index] = vertexIndex;
+	}
+
+	/*
+	 * Removes the entry with the lowest weight from the heap.
+	 */
+	private void pop() {
+		heapSize--;
+		double weight = heapWeights[heapSize];
+		int vertexIndex = heapVertices[heapSize];
+		int index = 0;
+		while (2 * index + 1 < heapSize) {
+			int childIndex = 2 * index + 1;
+			if (childIndex + 1 < heapSize
+					&& heapWeights[childIndex + 1] < heapWeights[childIndex]) {
+				childIndex++;
+			}
+			if (heapWeights[childIndex] >= weight) {
+				break;
+			}
+			heapWeights[index] = heapWeights[childIndex];
+			heapVertices[index] = heapVertices[childIndex];
+			index = childIndex;
+		}
+		heapWeights[index] = weight;
+		heapVertices[index] = vertexIndex;
+	}
+
+	/*
+	 * This class is used to store the weights found for pairs of checkpoints
+	 * (see above) in a fixed amount of memory, however many pairs are asked
+	 * about. It is a hash table with open addressing, where the keys and the
+	 * weights are kept in parallel primitive arrays, so unlike a HashMap it
+	 * does not create an object for each key and weight. A pair is looked
+	 * for in the MAX_PROBES slots starting at the one its key hashes to. If
+	 * all of them are taken by other pairs when a pair is added, the pair in
+	 * the first of them is dropped, so the table never grows, and the pairs
+	 * dropped can be found again with another search if they are needed.
+	 * Slots are never emptied, so a pair that is in the table can always be
+	 * found.
+	 */
+	private static class CheckpointPairWeightCache {
+		private static final int MAX_PROBES = 8;
+		private static final long EMPTY_KEY = -1;
+		private final long[] keys;
+		private final double[] weights;
+		private final int mask;
+
+		/*
+		 * Constructor. capacity must be a power of two.
+		 */
+		private CheckpointPairWeightCache(int capacity) {
+			keys = new long[capacity];
+			weights = new double[capacity];
+			Arrays.fill(keys, EMPTY_KEY);
+			mask = capacity - 1;
+		}
+
+		/*
+		 * Returns the weight stored for key, or NaN if there is none.
+		 */
+		private double get(long key) {
+			int index = getFirstIndex(key);
+			for (int probe = 0; probe < MAX_PROBES; probe++) {
+				if (keys[index] == key) {
+					return weights[index];
+				}
+				if (keys[index] == EMPTY_KEY) {
+					return Double.NaN;
+				}
+				index = (index + 1) & mask;
+			}
+			return Double.NaN;
+		}
+
+		/*
+		 * Stores weight for key, replacing any weight already stored for it.
+		 */
+		private void put(long key, double weight) {
+			int firstIndex = getFirstIndex(key);
+			int index = firstIndex;
+			for (int probe = 0; probe < MAX_PROBES; probe++) {
+				if (keys[index] == key || keys[index] == EMPTY_KEY) {
+					break;
+				}
+				index = (index + 1) & mask;
+			}
+			if (keys[index] != key && keys[index] != EMPTY_KEY) {
+				index = firstIndex;
+			}
+			keys[index] = key;
+			weights[index] = weight;
+		}
+
+		/*
+		 * Returns the slot that the key hashes to. Keys of nearby pairs are
+		 * close together, so they are multiplied by a large odd constant to
+		 * spread them over the whole table.
+		 */
+		private int getFirstIndex(long key) {
+			return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package core;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SpriteCache {
+	/*
+	 * This class is used to draw the circles representing players and the
+	 * progress of checkpoints once into small images (sprites), so that they
+	 * can be rendered every frame with one drawImage call rather than
+	 * antialiased ovals and arcs. Sprites are kept for as long as the program
+	 * runs, keyed by what is drawn in them and their diameter (which depends
+	 * on the size of the cells in the maze), so a player or checkpoint that
+	 * looks the same as one drawn before, in this level or an earlier one,
+	 * shares its sprite. There are only a few player colours and cell sizes,
+	 * so there are never many sprites.
+	 *
+	 * Sprites are made on two threads: player sprites on whichever thread
+	 * renders the game, and checkpoint sprites on the game loop thread, when
+	 * a player reaches a checkpoint (see the addEncounteredPlayer method of
+	 * the Cell class). The methods are static as there is only ever one
+	 * cache, so they are synchronized so that both threads can use it at
+	 * once. The Player and Cell classes keep hold of the sprite they are
+	 * using, so they only call these methods when what they look like
+	 * changes.
+	 */
+
+	/*
+	 * The number of transparent pixels around the circle in each sprite, so
+	 * that the antialiased outline is not cut off.
+	 */
+	public static final int SPRITE_PADDING = 2;
+
+	/*
+	 * The sprites made so far, keyed by the strings returned by the
+	 * getPlayerKey and getCheckpointKey methods.
+	 */
+	private static final Map<String, BufferedImage> sprites = new HashMap<String, BufferedImage>();
+
+	/*
+	 * Returns the sprite of a player circle of the given colour and diameter
+	 * with a black outline, in the same way as it would be drawn by fillOval
+	 * and drawOval with antialiasing. The circle is at (SPRITE_PADDING,
+	 * SPRITE_PADDING) in the sprite.
+	 */
+	public static synchronized BufferedImage getPlayerSprite(Color color,
+			int diameter) {
+		String key = "player " + color.getRGB() + " " + diameter;
+		BufferedImage sprite = sprites.get(key);
+		if (sprite == null) {
+			sprite = createSprite(diameter);
+			Graphics2D spriteGraphics = createSpriteGraphics(sprite);
+			spriteGraphics.setColor(color);
+			spriteGraphics.fillOval(SPRITE_PADDING, SPRITE_PADDING, diameter,
+					diameter);
+			spriteGraphics.setColor(Color.BLACK);
+			spriteGraphics.drawOval(SPRITE_PADDING, SPRITE_PADDING, diameter,
+					diameter);
+			spriteGraphics.dispose();
+			sprites.put(key, sprite);
+		}
+		return sprite;
+	}
+
+	/*
+	 * Returns the sprite of the progress of a checkpoint that the players in
+	 * encounteredPlayers (in that order) have reached: an equally-sized
+	 * sector of a circle of the given diameter for each player in its colour,
+	 * with one sector left empty for the base checkpoint indicator to show
+	 * through, and a black outline. The circle is at (SPRITE_PADDING,
+	 * SPRITE_PADDING) in the sprite.
+	 */
+	public static synchronized BufferedImage getCheckpointSprite(
+			List<Player> encounteredPlayers, int diameter) {
+		StringBuilder keyBuilder = new StringBuilder("checkpoint");
+		for (Player player : encounteredPlayers) {
+			keyBuilder.append(' ').append(player.getColor().getRGB());
+		}
+		keyBuilder.append(' ').append(diameter);
+		String key = keyBuilder.toString();
+		BufferedImage sprite = sprites.get(key);
+		if (sprite == null) {
+			sprite = createSprite(diameter);
+			Graphics2D spriteGraphics = createSpriteGraphics(sprite);
+			int numPlayersEncountered = encounteredPlayers.size();
+			double startAngle = 0;
+			double arcAngle = 360 / (numPlayersEncountered + 1);
+			for (Player player : encounteredPlayers) {
+				spriteGraphics.setColor(player.getColor());
+				spriteGraphics.fillArc(SPRITE_PADDING, SPRITE_PADDING,
+						diameter, diameter, (int) startAngle, (int) arcAngle);
+				startAngle += arcAngle;
+			}
+			spriteGraphics.setColor(Color.BLACK);
+			spriteGraphics.drawOval(SPRITE_PADDING, SPRITE_PADDING, diameter,
+					diameter);
+			spriteGraphics.dispose();
+			sprites.put(key, sprite);
+		}
+		return sprite;
+	}
+
+	/*
+	 * Returns a new transparent sprite big enough for a circle of the given
+	 * diameter and its outline. TYPE_INT_ARGB_PRE is used as it is the
+	 * quickest type of translucent image to draw onto the screen.
+	 */
+	private static BufferedImage createSprite(int diameter) {
+		int sideLength = diameter + 2 * SPRITE_PADDING + 1;
+		return new BufferedImage(sideLength, sideLength,
+				BufferedImage.TYPE_INT_ARGB_PRE);
+	}
+
+	/*
+	 * Returns a graphics object for drawing into sprite with antialiasing on,
+	 * as it is for the screen (see the ScreenDisplayer class).
+	 */
+	private static Graphics2D createSpriteGraphics(BufferedImage sprite) {
+		Graphics2D spriteGraphics = sprite.createGraphics();
+		spriteGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		return spriteGraphics;
+	}
+
+}
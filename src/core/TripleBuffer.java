@@ -0,0 +1,88 @@
+package core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TripleBuffer<T> {
+	/*
+	 * This class is used to hand objects from one thread (the writer) to
+	 * another (the reader) without either of them ever waiting for the other.
+	 * There are three buffers: the one the writer is filling, the one the
+	 * reader is reading, and the one in the middle, which is the most recent
+	 * buffer that the writer has finished with. When the writer publishes the
+	 * buffer it has filled, it swaps it with the middle buffer, and when the
+	 * reader wants the latest buffer, it swaps the buffer it was reading with
+	 * the middle buffer if a new one has been published since. Each swap is a
+	 * single atomic operation, so the writer and reader never touch the same
+	 * buffer at the same time, and the reader always sees a buffer exactly as
+	 * the writer left it.
+	 *
+	 * The buffers are reused rather than created for every handoff, so there
+	 * should only ever be one writer thread and one reader thread at a time.
+	 */
+
+	/*
+	 * The marker in middleState showing that the middle buffer has been
+	 * published since the reader last took it.
+	 */
+	private static final int FRESH = 4;
+
+	/*
+	 * The three buffers.
+	 */
+	private final T[] buffers;
+
+	/*
+	 * The index in buffers of the middle buffer, plus FRESH if it has not
+	 * been taken by the reader yet.
+	 */
+	private final AtomicInteger middleState;
+
+	/*
+	 * The indices in buffers of the buffer the writer is filling and the
+	 * buffer the reader is reading. Each is only used by its own thread.
+	 */
+	private int writeIndex;
+	private int readIndex;
+
+	/*
+	 * Constructor. The three buffers must be different objects. Until the
+	 * writer first publishes a buffer, the reader reads buffer3.
+	 */
+	@SuppressWarnings("unchecked")
+	public TripleBuffer(T buffer1, T buffer2, T buffer3) {
+		buffers = (T[]) new Object[] { buffer1, buffer2, buffer3 };
+		writeIndex = 0;
+		middleState = new AtomicInteger(1);
+		readIndex = 2;
+	}
+
+	/*
+	 * Returns the buffer for the writer to fill. It is the same buffer until
+	 * the publish method is called.
+	 */
+	public T getWriteBuffer() {
+		return buffers[writeIndex];
+	}
+
+	/*
+	 * Hands the buffer the writer has filled to the reader, and gives the
+	 * writer the old middle buffer to fill next. If the reader did not take
+	 * the old middle buffer, it is simply overwritten later, as the reader
+	 * only ever wants the latest one.
+	 */
+	public void publish() {
+		writeIndex = middleState.getAndSet(writeIndex | FRESH) & ~FRESH;
+	}
+
+	/*
+	 * Returns the latest buffer that the writer has published, which the
+	 * reader can read until it next calls this method.
+	 */
+	public T getReadBuffer() {
+		if ((middleState.get() & FRESH) != 0) {
+			readIndex = middleState.getAndSet(readIndex) & ~FRESH;
+		}
+		return buffers[readIndex];
+	}
+
+}
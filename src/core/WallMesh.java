@@ -0,0 +1,239 @@
+package core;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Stroke;
+import java.awt.geom.Path2D;
+
+public class WallMesh {
+	/*
+	 * This class is used to draw all the walls of a maze at once. Drawing the
+	 * walls cell by cell (see the renderWalls method of the Cell class) takes
+	 * one drawLine call per wall per Cell object, so every wall between two
+	 * Cell objects is drawn twice, once from each side. Instead, the walls
+	 * along each row boundary and each column boundary of the cells matrix
+	 * are merged into runs, where a run is a straight line covering as many
+	 * walls in a row as there are without a gap, and the runs are added to
+	 * Path2D objects which are each stroked with one draw call. This takes
+	 * one to two orders of magnitude fewer calls than drawing the walls cell
+	 * by cell.
+	 *
+	 * Rather than one path for the whole maze, the maze is split into square
+	 * chunks of GameConstants.WALL_MESH_CHUNK_SIDE_CELLS by
+	 * GameConstants.WALL_MESH_CHUNK_SIDE_CELLS Cell objects with one path
+	 * each (runs are split where they cross from one chunk to the next). Every
+	 * maze in the levels fits in one chunk, but when only part of a very big
+	 * maze is being drawn (see the renderVisibleCells method of the Maze
+	 * class), the chunks outside the clip can be skipped altogether instead
+	 * of the whole maze being stroked and then clipped.
+	 *
+	 * The walls of a maze do not change once it has been generated, so
+	 * WallMesh objects are immutable and can be used by more than one thread.
+	 */
+
+	/*
+	 * The path of each chunk, made of the runs of walls in that chunk, in the
+	 * same pixel coordinates as the Cell objects, indexed in the same way as
+	 * the cells matrix (i.e. by column and then row). Path2D.Float is used
+	 * rather than Path2D.Double as it takes half the memory, and float
+	 * coordinates are more than accurate enough for whole pixels.
+	 */
+	private final Path2D[][] chunkPaths;
+
+	/*
+	 * The pixels that each path in chunkPaths can draw into (including the
+	 * thickness and rounded ends of the walls), or null if the chunk has no
+	 * walls in it.
+	 */
+	private final Rectangle[][] chunkBounds;
+
+	/*
+	 * The stroke used to draw the paths, which is shared by every run. It has
+	 * the same thickness, caps and joins as the stroke used by the renderWalls
+	 * method of the Cell class, so the walls look the same.
+	 */
+	private final Stroke stroke;
+
+	/*
+	 * The colour of the walls.
+	 */
+	private final Color wallColor;
+
+	/*
+	 * The number of walls in the maze and the number of runs that they were
+	 * merged into.
+	 */
+	private final int numWalls;
+	private final int numRuns;
+
+	/*
+	 * Constructor. Builds the paths from the walls between the Cell objects in
+	 * cells, which must have been generated already, in O(N) time for N Cell
+	 * objects.
+	 */
+	public WallMesh(Cell[][] cells, double cellSideLength,
+			double wallProportionOfCellDimensions, Color wallColor) {
+		this.wallColor = wallColor;
+		stroke = new BasicStroke(
+				(int) (wallProportionOfCellDimensions * cellSideLength),
+				BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+		int numColumns = cells.length;
+		int numRows = cells[0].length;
+		int chunkSide = GameConstants.WALL_MESH_CHUNK_SIDE_CELLS;
+		int numChunksWide = (numColumns + chunkSide - 1) / chunkSide;
+		int numChunksHigh = (numRows + chunkSide - 1) / chunkSide;
+		chunkPaths = new Path2D[numChunksWide][numChunksHigh];
+		for (int i = 0; i < numChunksWide; i++) {
+			for (int j = 0; j < numChunksHigh; j++) {
+				chunkPaths[i][j] = new Path2D.Float();
+			}
+		}
+		int numWalls = 0;
+		int numRuns = 0;
+
+		/*
+		 * Horizontal walls. For each boundary between a row and the row below
+		 * it, the columns are scanned from left to right, and a run starts at
+		 * the first wall after a gap and ends at the last wall before the next
+		 * gap (or the end of the row or chunk). The walls are drawn along the
+		 * top edges of the Cell objects in the lower row, with the same whole
+		 * pixel coordinates as the renderWalls method of the Cell class uses.
+		 */
+		for (int row = 1; row < numRows; row++) {
+			int runStartColumn = -1;
+			for (int column = 0; column <= numColumns; column++) {
+				if (runStartColumn != -1
+						&& (column == numColumns || column % chunkSide == 0 || cells[column][row]
+								.isAdjacentTo(cells[column][row - 1]))) {
+					Cell firstCell = cells[runStartColumn][row];
+					Cell lastCell = cells[column - 1][row];
+					Path2D chunkPath = chunkPaths[runStartColumn / chunkSide][row
+							/ chunkSide];
+					chunkPath.moveTo((int) firstCell.getX(),
+							(int) firstCell.getY());
+					chunkPath.lineTo((int) (lastCell.getX() + cellSideLength),
+							(int) firstCell.getY());
+					numRuns++;
+					runStartColumn = -1;
+				}
+				if (column < numColumns
+						&& !cells[column][row]
+								.isAdjacentTo(cells[column][row - 1])) {
+					numWalls++;
+					if (runStartColumn == -1) {
+						runStartColumn = column;
+					}
+				}
+			}
+		}
+
+		/*
+		 * Vertical walls, in the same way, along the left edges of the Cell
+		 * objects in the right column of each boundary.
+		 */
+		for (int column = 1; column < numColumns; column++) {
+			int runStartRow = -1;
+			for (int row = 0; row <= numRows; row++) {
+				if (runStartRow != -1
+						&& (row == numRows || row % chunkSide == 0 || cells[column][row]
+								.isAdjacentTo(cells[column - 1][row]))) {
+					Cell firstCell = cells[column][runStartRow];
+					Cell lastCell = cells[column][row - 1];
+					Path2D chunkPath = chunkPaths[column / chunkSide][runStartRow
+							/ chunkSide];
+					chunkPath.moveTo((int) firstCell.getX(),
+							(int) firstCell.getY());
+					chunkPath.lineTo((int) firstCell.getX(),
+							(int) (lastCell.getY() + cellSideLength));
+					numRuns++;
+					runStartRow = -1;
+				}
+				if (row < numRows
+						&& !cells[column][row]
+								.isAdjacentTo(cells[column - 1][row])) {
+					numWalls++;
+					if (runStartRow == -1) {
+						runStartRow = row;
+					}
+				}
+			}
+		}
+		this.numWalls = numWalls;
+		this.numRuns = numRuns;
+
+		/*
+		 * The walls stick out of their paths by half their thickness on every
+		 * side (plus a pixel for antialiasing), so the bounds of each path are
+		 * made bigger by a whole thickness to be safe.
+		 */
+		int wallThickness = (int) (wallProportionOfCellDimensions * cellSideLength);
+		chunkBounds = new Rectangle[numChunksWide][numChunksHigh];
+		for (int i = 0; i < numChunksWide; i++) {
+			for (int j = 0; j < numChunksHigh; j++) {
+				if (chunkPaths[i][j].getCurrentPoint() != null) {
+					Rectangle bounds = chunkPaths[i][j].getBounds();
+					bounds.grow(wallThickness + 1, wallThickness + 1);
+					chunkBounds[i][j] = bounds;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Draws every wall in the maze with one draw call per chunk, skipping the
+	 * chunks that are completely outside the clip of the graphics object (the
+	 * graphics object leaves out the parts of the other chunks outside the
+	 * clip), so this can be used to draw part of the maze as well.
+	 */
+	public void render(Graphics graphics) {
+		/*
+		 * A Graphics2D cast is done because the regular Graphics class does not
+		 * have the setStroke and draw methods used below.
+		 */
+		Graphics2D graphics2D = (Graphics2D) graphics;
+
+		/*
+		 * The colour and stroke used in the graphics object before this method
+		 * is called needs to be stored so that it can be restored at the end
+		 * of the method (see below). This prevents side effects when the
+		 * graphics object is used again.
+		 */
+		Color lastColor = graphics2D.getColor();
+		Stroke lastStroke = graphics2D.getStroke();
+
+		graphics2D.setColor(wallColor);
+		graphics2D.setStroke(stroke);
+		Rectangle clip = graphics2D.getClipBounds();
+		for (int i = 0; i < chunkPaths.length; i++) {
+			for (int j = 0; j < chunkPaths[i].length; j++) {
+				if (chunkBounds[i][j] != null
+						&& (clip == null || clip.intersects(chunkBounds[i][j]))) {
+					graphics2D.draw(chunkPaths[i][j]);
+				}
+			}
+		}
+
+		graphics2D.setStroke(lastStroke);
+		graphics2D.setColor(lastColor);
+	}
+
+	/*
+	 * Getters.
+	 */
+
+	public int getNumWalls() {
+		return numWalls;
+	}
+
+	public int getNumRuns() {
+		return numRuns;
+	}
+
+	public int getNumChunks() {
+		return chunkPaths.length * chunkPaths[0].length;
+	}
+
+}